@@ -5,56 +5,201 @@
 package com.shai_mahfud.cameraprominentcolors.view;
 
 import android.content.Context;
-import android.content.Intent;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ImageFormat;
+import android.graphics.Paint;
 import android.hardware.Camera;
-import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
-import android.os.Messenger;
 import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 import android.widget.LinearLayout;
 
 import com.shai_mahfud.cameraprominentcolors.R;
-import com.shai_mahfud.cameraprominentcolors.services.FrameDiagnosisService;
+import com.shai_mahfud.colorcore.ColorAnalysisResult;
+import com.shai_mahfud.colorcore.ColorResultExchanger;
+import com.shai_mahfud.colorcore.ColorTimeline;
+import com.shai_mahfud.colorcore.FrameAnalysisEngine;
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+import com.shai_mahfud.colorcore.FrameRecorder;
+import com.shai_mahfud.colorcore.FrameScheduler;
+import com.shai_mahfud.colorcore.PipelineMetrics;
+import com.shai_mahfud.colorcore.PreviewBufferPool;
+import com.shai_mahfud.colorcore.YuvPlanes;
 
-// The new (non-deprecated) Camera2 API is reported to be broken and people advice to stick with
-// the older API
+import java.io.File;
+import java.io.IOException;
+
+// Receives the frames of the older API itself. Where CameraSession opens the camera with Camera2,
+// ImageReaderFrameSource delivers its frames without copies.
 @SuppressWarnings("deprecation")
 public class CameraColorDistributionView extends LinearLayout implements Camera.PreviewCallback {
     private class UpdateUIHandler extends Handler {
+        UpdateUIHandler() {
+            super(Looper.getMainLooper());
+        }
+
         @Override
         public void handleMessage(Message msg) {
-            if (root == null) {
-                return;
+            switch (msg.what) {
+                case MSG_FRAME_RELEASED:
+                    // The analysis is done with the frame, the camera can fill it again
+                    bufferPool.release((byte[]) msg.obj);
+                    break;
+                case MSG_FRAME_DROPPED:
+                    bufferPool.drop((byte[]) msg.obj);
+                    break;
+                case MSG_RESULT:
+                    showResult(resultExchanger.acquire());
+                    break;
+                case MSG_REFRESH_OVERLAY:
+                    refreshDebugOverlay();
+                    break;
             }
+        }
 
-            Bundle bundle = msg.getData();
-            int[] mostProminentColors = bundle.getIntArray(
-                    FrameDiagnosisService.MESSAGE_KEY_MOST_PROMINENT_COLORS);
-            String[] mostProminentPopDistribution =
-                    bundle.getStringArray(
-                            FrameDiagnosisService.MESSAGE_KEY_MOST_PROMINENT_POP_DISTRIBUTION);
-            if (mostProminentColors == null || mostProminentPopDistribution == null) {
+        private void showResult(ColorAnalysisResult result) {
+            if (root == null || result == null) {
                 return;
             }
+            metrics.recordLatency(PipelineMetrics.STAGE_DELIVERY,
+                    System.nanoTime() - result.getTimestampNanos());
+            metrics.increment(PipelineMetrics.COUNTER_RESULTS_SHOWN);
+            if (coldStartNanos != 0) {
+                metrics.recordLatency(PipelineMetrics.STAGE_COLD_START,
+                        System.nanoTime() - coldStartNanos);
+                coldStartNanos = 0;
+            }
+
             for (int i = 0; i < numOfItems; i++) {
                 ColorDistributionItem item = (ColorDistributionItem) root.getChildAt(i);
-                item.setData(mostProminentColors[i], mostProminentPopDistribution[i]);
+                percentageText.setLength(0);
+                if (i < result.getCount()) {
+                    result.appendPercentage(i, percentageText);
+                    item.setData(result.getColor(i), percentageText);
+                } else {
+                    item.setData(Color.TRANSPARENT, percentageText);
+                }
+            }
+
+            int tiles = result.getGridColumns() * result.getGridRows();
+            if (tiles == 0 && gridColumns == 0) {
+                return;
+            }
+            if (gridColors.length < tiles) {
+                gridColors = new int[tiles];
+            }
+            for (int tile = 0; tile < tiles; tile++) {
+                gridColors[tile] = result.getGridColor(tile);
+            }
+            gridColumns = result.getGridColumns();
+            gridRows = result.getGridRows();
+            gridRegionWidth = result.getGridRegionWidth();
+            gridRegionHeight = result.getGridRegionHeight();
+            invalidate();
+        }
+    }
+
+    // Called by the engine. Everything is forwarded to the UI thread through the one handler.
+    private class AnalysisListener implements FrameAnalysisEngine.Listener {
+        @Override
+        public void onFrameAnalyzed(FrameAnalyzer analyzer) {
+            ColorAnalysisResult result = resultExchanger.getWriteBuffer();
+            result.set(analyzer);
+            result.setTimestampNanos(System.nanoTime());
+            ColorTimeline timeline = colorTimeline;
+            if (timeline != null) {
+                timeline.append(result);
+            }
+            // The UI picks up the latest result when it gets to it, one message is enough
+            if (resultExchanger.publish()) {
+                uiHandler.sendEmptyMessage(MSG_RESULT);
             }
         }
+
+        @Override
+        public void onFrameReleased(byte[] data, boolean dropped) {
+            uiHandler.obtainMessage(dropped ? MSG_FRAME_DROPPED : MSG_FRAME_RELEASED, data)
+                    .sendToTarget();
+        }
+
+        // Closing an Image doesn't need the UI thread, it's given back right away
+        @Override
+        public void onPlanesReleased(YuvPlanes planes, boolean dropped) {
+            ImageReaderFrameSource.release(planes);
+        }
     }
 
 
     private static final int MAX_POSSIBLE_PROMINENT_COLORS = 16;
-    private static final int TIME_BETWEEN_COLOR_PROCESSING = 10000;
+    // Monotonic, and measures the CPU time of the analysis thread rather than its wall time
+    private static final FrameScheduler.Clock ANDROID_CLOCK = new FrameScheduler.Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentThreadCpuTimeNanos() {
+            long cpuNanos = Debug.threadCpuTimeNanos();
+            return cpuNanos >= 0 ? cpuNanos : System.nanoTime();
+        }
+    };
+    // One buffer being filled by the camera, one being analyzed and one waiting in the engine's
+    // mailbox
+    private static final int NUM_OF_PREVIEW_BUFFERS = 3;
+    private static final int MSG_RESULT = 1;
+    private static final int MSG_FRAME_RELEASED = 2;
+    private static final int MSG_FRAME_DROPPED = 3;
+    private static final int MSG_REFRESH_OVERLAY = 4;
+    private static final long OVERLAY_REFRESH_MILLIS = 500;
+    // Frames that can wait for the disk while recording
+    private static final int RECORDING_SLOTS = 4;
+    private static final String TAG = "CameraColorDistribution";
 
 
     private ViewGroup root;
     private int numOfItems;
-    private long prevTime = -1;
+    private final FrameScheduler frameScheduler = new FrameScheduler(ANDROID_CLOCK);
+    private final PreviewBufferPool bufferPool = new PreviewBufferPool(NUM_OF_PREVIEW_BUFFERS);
+    private final UpdateUIHandler uiHandler = new UpdateUIHandler();
+    private final ColorResultExchanger resultExchanger =
+            new ColorResultExchanger(MAX_POSSIBLE_PROMINENT_COLORS);
+    // Only used by the UI thread
+    private final StringBuilder percentageText = new StringBuilder();
+    private final FrameAnalyzer frameAnalyzer = new FrameAnalyzer(MAX_POSSIBLE_PROMINENT_COLORS);
+    private final FrameAnalysisEngine analysisEngine = new FrameAnalysisEngine(frameAnalyzer,
+            new AnalysisListener());
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    // The debug overlay, only used by the UI thread. The summary is drawn line by line.
+    private boolean debugOverlayEnabled;
+    private final StringBuilder overlayText = new StringBuilder();
+    private char[] overlayChars = new char[256];
+    private int overlayLength;
+    private final Paint overlayTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint overlayBackgroundPaint = new Paint();
+    private FrameRecorder frameRecorder;
+    // The grid of dominant colors shown over the items, copied from the last result
+    private int[] gridColors = new int[0];
+    private int gridColumns;
+    private int gridRows;
+    private int gridRegionWidth;
+    private int gridRegionHeight;
+    private final Paint gridPaint = new Paint();
+    private volatile ColorTimeline colorTimeline;
+    // The format and size of the legacy camera's frames, set when it starts delivering them
+    private int frameFormat;
+    private int frameWidth;
+    private int frameHeight;
+    // When the camera was asked for, until the first results are shown. Only used by the UI thread.
+    private long coldStartNanos;
 
 
     public CameraColorDistributionView(Context context) {
@@ -79,29 +224,269 @@ public class CameraColorDistributionView extends LinearLayout implements Camera.
 
     @Override
     public synchronized void onPreviewFrame(byte[] data, Camera camera) {
-        // Avoid refreshing the colors too often:
-        long curTime = System.nanoTime();
-        if (curTime < prevTime + TIME_BETWEEN_COLOR_PROCESSING ||
-                FrameDiagnosisService.data != null) {
+        metrics.increment(PipelineMetrics.COUNTER_FRAMES_RECEIVED);
+        // Avoid refreshing the colors more often than the analysis policy allows:
+        boolean analyze = frameScheduler.shouldAnalyze();
+        if (!analyze && frameRecorder == null) {
+            metrics.increment(PipelineMetrics.COUNTER_FRAMES_SKIPPED);
+            bufferPool.drop(data);
+            return;
+        }
+
+        if (frameRecorder != null) {
+            // Every frame the camera delivers, whether it's analyzed or not
+            frameRecorder.record(data, data.length, frameFormat, frameWidth, frameHeight,
+                    System.nanoTime());
+        }
+        if (!analyze) {
+            metrics.increment(PipelineMetrics.COUNTER_FRAMES_SKIPPED);
+            bufferPool.drop(data);
+            return;
+        }
+
+        // The buffer stays out of the camera's queue until the engine releases it. If the engine
+        // is still busy with an older frame, this one replaces any frame waiting for it.
+        bufferPool.acquire(data);
+        analysisEngine.submit(data, frameFormat, frameWidth, frameHeight);
+    }
+
+    /*
+     * Record the preview frames to file, with their format, size and timing, until
+     * stopRecording(). FrameReplayer replays them. Frames that arrive while the disk is behind
+     * aren't recorded, see FrameRecorder.getDroppedCount(). Only the frames of the legacy camera
+     * are recorded, Camera2 frames would have to be copied out of their Images first.
+     */
+    public void startRecording(File file) throws IOException {
+        FrameRecorder recorder = new FrameRecorder(file, RECORDING_SLOTS);
+        FrameRecorder previous;
+        synchronized (this) {
+            previous = frameRecorder;
+            frameRecorder = recorder;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /*
+     * Writes the frames still waiting and closes the recording, if there is one. The recorder is
+     * closed outside the lock, so preview frames don't wait for the disk meanwhile.
+     */
+    public void stopRecording() throws IOException {
+        FrameRecorder recorder;
+        synchronized (this) {
+            recorder = frameRecorder;
+            frameRecorder = null;
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    // Analyze at most targetHz frames per second
+    public void setFixedAnalysisRate(double targetHz) {
+        frameScheduler.setFixedRate(targetHz);
+    }
+
+    // Analyze the latest frame whenever the previous analysis is done. This is the default.
+    public void setAnalysisAsFastAsPossible() {
+        frameScheduler.setAsFastAsPossible();
+    }
+
+    // Adapt the analysis rate so it keeps a core busy for at most maxDutyCycle of the time
+    public void setAdaptiveAnalysis(double maxDutyCycle) {
+        frameScheduler.setAdaptive(maxDutyCycle);
+    }
+
+    /*
+     * Only analyze a part of the preview, given as fractions of its size. For example, 0.25,
+     * 0.25, 0.75, 0.75 analyzes the center of the preview.
+     */
+    public void setAnalysisRegion(float left, float top, float right, float bottom) {
+        frameAnalyzer.setRegionOfInterest(left, top, right, bottom);
+    }
+
+    public void clearAnalysisRegion() {
+        frameAnalyzer.clearRegionOfInterest();
+    }
+
+    // Only analyze every stride-th pixel of every stride-th row
+    public void setAnalysisSampleStride(int stride) {
+        frameAnalyzer.setSampleStride(stride);
+    }
+
+    // Analyze about sampleCount evenly spread pixels of every frame, 0 to go back to the stride
+    public void setAnalysisTargetSampleCount(int sampleCount) {
+        frameAnalyzer.setTargetSampleCount(sampleCount);
+    }
+
+    /*
+     * Average the colors over about windowFrames frames, so every frame only has to add a few
+     * samples to what the previous ones found. 0 analyzes every frame on its own.
+     */
+    public void setAnalysisTemporalWindow(int windowFrames) {
+        frameAnalyzer.setTemporalWindow(windowFrames);
+    }
+
+    /*
+     * Build the color histogram of big preview frames (1080p and up) on this many threads, e.g.
+     * Runtime.getRuntime().availableProcessors(). The colors found don't change. Note that the
+     * adaptive analysis rate only measures the CPU time of the analysis thread itself.
+     */
+    public void setAnalysisThreads(int threads) {
+        frameAnalyzer.setHistogramThreads(threads);
+    }
+
+    /*
+     * Skip the analysis of frames that differ from the last analyzed one by at most threshold
+     * levels on average, and show the previous colors again. 0 analyzes every frame.
+     */
+    public void setSceneChangeThreshold(float threshold) {
+        frameAnalyzer.setSceneChangeThreshold(threshold);
+    }
+
+    /*
+     * Show shades closer than deltaE in OKLab as a single color, e.g. 0.05. 0 only merges equal
+     * colors.
+     */
+    public void setPerceptualMergeThreshold(float deltaE) {
+        frameAnalyzer.setPerceptualMergeThreshold(deltaE);
+    }
+
+    // FrameAnalyzer.QUANTIZER_MEDIAN_CUT, the default, or FrameAnalyzer.QUANTIZER_K_MEANS
+    public void setQuantizer(int algorithm) {
+        frameAnalyzer.setQuantizer(algorithm);
+    }
+
+    // The most k-means iterations per frame, 2 by default
+    public void setKMeansIterations(int iterations) {
+        frameAnalyzer.setKMeansIterations(iterations);
+    }
+
+    // Frames whose analysis was skipped because the scene didn't change
+    public long getSceneUnchangedCount() {
+        return frameAnalyzer.getSceneUnchangedCount();
+    }
+
+    // Frames that were analyzed because the scene changed
+    public long getSceneChangedCount() {
+        return frameAnalyzer.getSceneChangedCount();
+    }
+
+    /*
+     * Frame counts and stage latencies (p50/p95/p99) of the analysis pipeline. Always recorded,
+     * recording costs a few atomic adds per frame.
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /*
+     * Also find the dominant color of every tile of a columns x rows grid over the analysis
+     * region, up to 32 each way, and draw it over the colors at the top of the view. 0, 0, the
+     * default, turns it off.
+     */
+    public void setGridAnalysis(int columns, int rows) {
+        frameAnalyzer.setGridSize(columns, rows);
+        if (columns == 0) {
+            gridColumns = 0;
+            gridRows = 0;
+            invalidate();
+        }
+    }
+
+    /*
+     * Instead of the prominent colors, show how much of the preview is close to each of these
+     * colors, e.g. brand colors, in this order. maxDeltaE is how far in OKLab a pixel may be from a
+     * color to count for it, e.g. 0.1. Up to 16 colors.
+     */
+    public void setReferenceColors(int[] colors, float maxDeltaE) {
+        frameAnalyzer.setReferenceColors(colors, colors.length, maxDeltaE);
+    }
+
+    // Go back to showing the prominent colors
+    public void clearReferenceColors() {
+        frameAnalyzer.clearReferenceColors();
+    }
+
+    /*
+     * Where to keep the history of the colors shown, or null (the default) not to. The analysis
+     * thread appends every result to it; read it with a ColorTimeline.Cursor or export it from
+     * any thread. Its timestamps are System.nanoTime().
+     */
+    public void setColorTimeline(ColorTimeline timeline) {
+        colorTimeline = timeline;
+    }
+
+    // Draw the metrics over the colors, refreshed twice a second. Off by default.
+    public void setDebugOverlayEnabled(boolean enabled) {
+        if (enabled == debugOverlayEnabled) {
             return;
         }
-        prevTime = curTime;
+        debugOverlayEnabled = enabled;
+        if (enabled) {
+            refreshDebugOverlay();
+        } else {
+            uiHandler.removeMessages(MSG_REFRESH_OVERLAY);
+            invalidate();
+        }
+    }
+
+    /*
+     * Lets the camera fill the buffers of the pool instead of allocating a new array for every
+     * preview frame. Called on the thread of the CameraSession, like stopReceivingFrames().
+     */
+    synchronized void startReceivingFrames(final Camera camera, int format, int width,
+                                           int height) {
+        frameFormat = format;
+        frameWidth = width;
+        frameHeight = height;
+        int bufferSize = width * height * ImageFormat.getBitsPerPixel(format) / 8;
+        camera.setPreviewCallbackWithBuffer(this);
+        onFrameSourceStarted();
+        bufferPool.start(new PreviewBufferPool.CallbackBufferSink() {
+            @Override
+            public void addCallbackBuffer(byte[] buffer) {
+                camera.addCallbackBuffer(buffer);
+            }
+        }, bufferSize);
+    }
+
+    void stopReceivingFrames(Camera camera) {
+        camera.setPreviewCallbackWithBuffer(null);
+        bufferPool.stop();
+    }
+
+    // Called on the UI thread when a camera is asked for, to time its first results
+    void onCameraRequested() {
+        coldStartNanos = System.nanoTime();
+    }
 
-        // Can't pass the data using Intent. Doing so yields a TransactionTooLargeException
-        FrameDiagnosisService.data = data;
+    // Called by a FrameSource that starts delivering frames, possibly from another camera
+    void onFrameSourceStarted() {
+        // The frames of another camera shouldn't be averaged with those of the previous one
+        frameAnalyzer.resetTemporalHistory();
+    }
+
+    /*
+     * Called by a FrameSource for every frame it receives. Returns whether the analysis policy
+     * allows analyzing it; if not, the source keeps the frame.
+     */
+    boolean shouldAnalyzeFrame() {
+        metrics.increment(PipelineMetrics.COUNTER_FRAMES_RECEIVED);
+        if (frameScheduler.shouldAnalyze()) {
+            return true;
+        }
+        metrics.increment(PipelineMetrics.COUNTER_FRAMES_SKIPPED);
+        return false;
+    }
 
-        Intent intent = new Intent(getContext(), FrameDiagnosisService.class);
-        Messenger messenger = new Messenger(new UpdateUIHandler());
-        intent.putExtra(FrameDiagnosisService.KEY_MESSENGER, messenger);
-        intent.putExtra(FrameDiagnosisService.KEY_NUM_OF_ITEMS, numOfItems);
-        Camera.Parameters parameters = camera.getParameters();
-        int frameFormat = parameters.getPreviewFormat();
-        intent.putExtra(FrameDiagnosisService.KEY_CAMERA_PREVIEW_FRAME_FORMAT, frameFormat);
-        int frameWidth = parameters.getPreviewSize().width;
-        intent.putExtra(FrameDiagnosisService.KEY_CAMERA_PREVIEW_FRAME_WIDTH, frameWidth);
-        int frameHeight = parameters.getPreviewSize().height;
-        intent.putExtra(FrameDiagnosisService.KEY_CAMERA_PREVIEW_FRAME_HEIGHT, frameHeight);
-        getContext().startService(intent);
+    /*
+     * Hands the planes of a frame to the analysis, which gives them back through
+     * ImageReaderFrameSource.release() when it's done with them.
+     */
+    void submitFrame(YuvPlanes planes) {
+        analysisEngine.submit(planes);
     }
 
     void insertItems(Context ctx, int numOfItems) {
@@ -121,7 +506,108 @@ public class CameraColorDistributionView extends LinearLayout implements Camera.
         }
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        analysisEngine.start();
+        if (debugOverlayEnabled) {
+            refreshDebugOverlay();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        uiHandler.removeMessages(MSG_REFRESH_OVERLAY);
+        analysisEngine.stop();
+        frameAnalyzer.release();
+        // The analysis thread, the timeline's only writer, is done: write the periods it left
+        ColorTimeline timeline = colorTimeline;
+        if (timeline != null) {
+            timeline.flush();
+        }
+        try {
+            stopRecording();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to finish the recording", e);
+        }
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (gridColumns > 0) {
+            drawGrid(canvas);
+        }
+        if (!debugOverlayEnabled) {
+            return;
+        }
+
+        canvas.drawRect(0, 0, getWidth(), getHeight(), overlayBackgroundPaint);
+        float lineHeight = overlayTextPaint.getFontSpacing();
+        float y = getPaddingTop() - overlayTextPaint.ascent();
+        int lineStart = 0;
+        for (int i = 0; i <= overlayLength; i++) {
+            if (i == overlayLength || overlayChars[i] == '\n') {
+                canvas.drawText(overlayChars, lineStart, i - lineStart, getPaddingLeft(), y,
+                        overlayTextPaint);
+                y += lineHeight;
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    // Draws the tiles at the aspect ratio of the analyzed region, as wide as the view allows
+    private void drawGrid(Canvas canvas) {
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float width = getWidth() - getPaddingRight() - left;
+        float height = Math.min(getHeight() - getPaddingBottom() - top,
+                width * gridRegionHeight / gridRegionWidth);
+        float tileWidth = width / gridColumns;
+        float tileHeight = height / gridRows;
+        for (int row = 0; row < gridRows; row++) {
+            for (int column = 0; column < gridColumns; column++) {
+                int color = gridColors[row * gridColumns + column];
+                if (color == Color.TRANSPARENT) {
+                    continue;
+                }
+                gridPaint.setColor(color);
+                float tileLeft = left + column * tileWidth;
+                float tileTop = top + row * tileHeight;
+                canvas.drawRect(tileLeft, tileTop, tileLeft + tileWidth, tileTop + tileHeight,
+                        gridPaint);
+            }
+        }
+    }
+
+    // Copies the current summary into the overlay and schedules the next refresh
+    private void refreshDebugOverlay() {
+        if (!debugOverlayEnabled) {
+            return;
+        }
+        overlayText.setLength(0);
+        metrics.appendSummary(overlayText);
+        overlayLength = overlayText.length();
+        if (overlayChars.length < overlayLength) {
+            overlayChars = new char[overlayLength * 2];
+        }
+        overlayText.getChars(0, overlayLength, overlayChars, 0);
+        invalidate();
+        // Never more than one refresh pending, whoever called this
+        uiHandler.removeMessages(MSG_REFRESH_OVERLAY);
+        uiHandler.sendEmptyMessageDelayed(MSG_REFRESH_OVERLAY, OVERLAY_REFRESH_MILLIS);
+    }
+
     private void init(Context ctx) {
+        analysisEngine.setFrameScheduler(frameScheduler);
+        analysisEngine.setMetrics(metrics);
+        overlayTextPaint.setColor(Color.WHITE);
+        overlayTextPaint.setTextSize(ctx.getResources().getDimension(
+                R.dimen.camera_color_distribution_debug_overlay_text_size));
+        overlayBackgroundPaint.setColor(ContextCompat.getColor(ctx,
+                R.color.cameraColorDistributionDebugOverlayBackground));
+
         LayoutInflater li = (LayoutInflater) ctx.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         if (li == null) {
             return;
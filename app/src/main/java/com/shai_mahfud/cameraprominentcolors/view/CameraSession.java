@@ -0,0 +1,434 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.cameraprominentcolors.view;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+
+import com.shai_mahfud.colorcore.PreviewSizeSelector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Opens the camera and configures its preview on a thread of its own, so the UI thread never
+ * waits for the camera service. The id of the camera is looked up on the first open only, and
+ * the parameters of the camera are read and set once per open: the frame source gets the preview
+ * format and size chosen then.
+ *
+ * Cameras that Camera2 drives natively (any hardware level above LEGACY) are opened with it: a
+ * CameraDevice whose capture session renders to the preview surface and to the ImageReader of an
+ * ImageReaderFrameSource, whose YUV_420_888 frames are analyzed without copies. Camera2 on LEGACY
+ * devices is a layer over the old API that is reported to be broken, so those, and cameras that
+ * fail to open with Camera2, go through the legacy API and a LegacyCameraFrameSource.
+ *
+ * The preview is the smallest size that has the analysis resolution, in the cheapest format the
+ * analysis reads, see PreviewSizeSelector. Since the camera is opened on the session's thread, its
+ * preview frames and its Camera2 callbacks are delivered there too, not on the UI thread.
+ *
+ * Called from the UI thread, and calls its listener there. The camera itself is only touched on
+ * the session's thread, apart from the preview buffers the frame source hands back to it.
+ */
+@SuppressWarnings("deprecation")
+class CameraSession {
+    interface Listener {
+        // The camera is open and configured; its frames come once its preview is started
+        void onCameraOpened(FrameSource frameSource);
+
+        void onCameraFailed();
+    }
+
+
+    private static final String TAG = "CameraSession";
+    private static final int NO_CAMERA = -1;
+
+
+    private final CameraColorDistributionView view;
+    private final Listener listener;
+    private final int analysisWidth;
+    private final int analysisHeight;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread thread;
+    private Handler handler;
+    // Bumped by every open() and close(), so an open that was closed meanwhile isn't reported
+    private int generation;
+    // Only used by the session's thread
+    private int cameraId = NO_CAMERA;
+    private Camera camera;
+    private String camera2Id;
+    private CameraDevice cameraDevice;
+    private ImageReaderFrameSource imageSource;
+    private CameraCaptureSession captureSession;
+    private boolean previewRequested;
+    // Bumped whenever the camera is released, so a Camera2 callback of an older open is ignored
+    private int cameraGeneration;
+
+
+    CameraSession(CameraColorDistributionView view, Listener listener, int analysisWidth,
+                  int analysisHeight) {
+        this.view = view;
+        this.listener = listener;
+        this.analysisWidth = analysisWidth;
+        this.analysisHeight = analysisHeight;
+    }
+
+
+    // Opens the camera, closing the one open before, and reports it to the listener
+    void open() {
+        if (thread == null) {
+            thread = new HandlerThread("CameraSession");
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        final int openGeneration = ++generation;
+        view.onCameraRequested();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!openCamera2(openGeneration)) {
+                    reportOpened(openCamera(), openGeneration);
+                }
+            }
+        });
+    }
+
+    // Shows the preview on the surface. The frame source should be started first.
+    void startPreview(final SurfaceHolder holder) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                previewRequested = true;
+                if (cameraDevice != null) {
+                    startCaptureSession(holder.getSurface());
+                    return;
+                }
+                if (camera == null) {
+                    return;
+                }
+                try {
+                    camera.setPreviewDisplay(holder);
+                    camera.startPreview();
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "Failed to start the preview", e);
+                }
+            }
+        });
+    }
+
+    // Stops the preview, and then closes the readers of a stopped Camera2 frame source
+    void stopPreview() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                previewRequested = false;
+                closeCaptureSession();
+                if (imageSource != null) {
+                    imageSource.onCaptureSessionClosed();
+                }
+                if (camera != null) {
+                    camera.stopPreview();
+                }
+            }
+        });
+    }
+
+    /*
+     * Releases the camera. A legacy frame source should be stopped first, since it posts the
+     * removal of its preview callback to the session's thread; a Camera2 one is released here,
+     * after its capture session.
+     */
+    void close() {
+        generation++;
+        post(new Runnable() {
+            @Override
+            public void run() {
+                releaseCamera();
+            }
+        });
+    }
+
+    // Closes the camera and ends the session's thread once it's released
+    void quit() {
+        if (thread == null) {
+            return;
+        }
+        close();
+        thread.quitSafely();
+        thread = null;
+        handler = null;
+    }
+
+    private void post(Runnable task) {
+        if (handler != null) {
+            handler.post(task);
+        }
+    }
+
+    // Reports the result of an open on the UI thread, unless the session was closed meanwhile
+    private void reportOpened(final FrameSource frameSource, final int openGeneration) {
+        uiHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (openGeneration != generation) {
+                    return; // Closed meanwhile, the camera was released after this open
+                }
+                if (frameSource != null) {
+                    listener.onCameraOpened(frameSource);
+                } else {
+                    listener.onCameraFailed();
+                }
+            }
+        });
+    }
+
+    /*
+     * On the session's thread. Starts opening the camera with Camera2 and returns true if it
+     * drives the camera natively; the result is reported once the device is open. Returns false
+     * to open the camera with the legacy API instead. MainActivity only opens the camera once it
+     * has the permission.
+     */
+    @SuppressLint("MissingPermission")
+    private boolean openCamera2(final int openGeneration) {
+        releaseCamera();
+        CameraManager manager =
+                (CameraManager) view.getContext().getSystemService(Context.CAMERA_SERVICE);
+        try {
+            if (camera2Id == null) {
+                camera2Id = findCamera2(manager);
+            }
+            if (camera2Id == null) {
+                return false;
+            }
+            CameraCharacteristics characteristics = manager.getCameraCharacteristics(camera2Id);
+            Integer level = characteristics.get(
+                    CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+            StreamConfigurationMap map = characteristics.get(
+                    CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+            if (level == null || map == null ||
+                    level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
+                return false;
+            }
+            Size[] sizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+            int[] widths = new int[sizes.length];
+            int[] heights = new int[sizes.length];
+            for (int i = 0; i < sizes.length; i++) {
+                widths[i] = sizes[i].getWidth();
+                heights[i] = sizes[i].getHeight();
+            }
+            int size = PreviewSizeSelector.selectSize(widths, heights, widths.length,
+                    analysisWidth, analysisHeight);
+            if (size < 0) {
+                return false;
+            }
+
+            final int width = widths[size];
+            final int height = heights[size];
+            final int openedGeneration = cameraGeneration;
+            manager.openCamera(camera2Id, new CameraDevice.StateCallback() {
+                @Override
+                public void onOpened(CameraDevice device) {
+                    if (openedGeneration != cameraGeneration) {
+                        device.close(); // Released meanwhile
+                        return;
+                    }
+                    cameraDevice = device;
+                    imageSource = new ImageReaderFrameSource(view, width, height);
+                    reportOpened(imageSource, openGeneration);
+                }
+
+                @Override
+                public void onDisconnected(CameraDevice device) {
+                    // Taken by another app; the preview stops until the camera is opened again
+                    if (device == cameraDevice) {
+                        releaseCamera();
+                        return;
+                    }
+                    device.close();
+                    if (openedGeneration == cameraGeneration) {
+                        reportOpened(null, openGeneration); // It was taken before it opened
+                    }
+                }
+
+                @Override
+                public void onError(CameraDevice device, int error) {
+                    Log.e(TAG, "Camera2 failed with error " + error);
+                    if (device == cameraDevice) {
+                        releaseCamera();
+                        return;
+                    }
+                    device.close();
+                    if (openedGeneration == cameraGeneration) {
+                        // It never opened, the legacy API may still get it
+                        reportOpened(openCamera(), openGeneration);
+                    }
+                }
+            }, handler);
+            return true;
+        } catch (CameraAccessException | RuntimeException e) {
+            Log.w(TAG, "Failed to open the camera with Camera2", e);
+            return false;
+        }
+    }
+
+    // Renders the repeating preview request to the preview surface and to the frame source's
+    private void startCaptureSession(final Surface previewSurface) {
+        final Surface frameSurface = imageSource.getSurface();
+        if (frameSurface == null) {
+            return; // The frame source isn't started
+        }
+        final CameraDevice device = cameraDevice;
+        try {
+            device.createCaptureSession(Arrays.asList(previewSurface, frameSurface),
+                    new CameraCaptureSession.StateCallback() {
+                        @Override
+                        public void onConfigured(CameraCaptureSession session) {
+                            if (device != cameraDevice || !previewRequested) {
+                                session.close(); // Stopped or released meanwhile
+                                return;
+                            }
+                            closeCaptureSession();
+                            captureSession = session;
+                            try {
+                                CaptureRequest.Builder request = device.createCaptureRequest(
+                                        CameraDevice.TEMPLATE_PREVIEW);
+                                request.addTarget(previewSurface);
+                                request.addTarget(frameSurface);
+                                session.setRepeatingRequest(request.build(), null, handler);
+                            } catch (CameraAccessException | RuntimeException e) {
+                                Log.e(TAG, "Failed to start the preview", e);
+                            }
+                        }
+
+                        @Override
+                        public void onConfigureFailed(CameraCaptureSession session) {
+                            Log.e(TAG, "Failed to configure the capture session");
+                        }
+                    }, handler);
+        } catch (CameraAccessException | RuntimeException e) {
+            Log.e(TAG, "Failed to start the preview", e);
+        }
+    }
+
+    private void closeCaptureSession() {
+        if (captureSession != null) {
+            captureSession.close();
+            captureSession = null;
+        }
+    }
+
+    // On the session's thread. The frame source of the opened camera, null if it failed to open.
+    private FrameSource openCamera() {
+        releaseCamera();
+        try {
+            if (cameraId == NO_CAMERA) {
+                cameraId = findCamera();
+            }
+            camera = Camera.open(cameraId);
+            Camera.Parameters parameters = camera.getParameters();
+            configurePreview(parameters);
+            try {
+                camera.setParameters(parameters);
+            } catch (RuntimeException e) {
+                // Some devices reject sizes they list; their default preview still works
+                Log.w(TAG, "Failed to configure the preview", e);
+                parameters = camera.getParameters();
+            }
+            Camera.Size previewSize = parameters.getPreviewSize();
+            return new LegacyCameraFrameSource(view, camera, handler,
+                    parameters.getPreviewFormat(), previewSize.width, previewSize.height);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to open the camera", e);
+            releaseCamera();
+            return null;
+        }
+    }
+
+    private void configurePreview(Camera.Parameters parameters) {
+        List<Camera.Size> sizes = parameters.getSupportedPreviewSizes();
+        int[] widths = new int[sizes.size()];
+        int[] heights = new int[sizes.size()];
+        for (int i = 0; i < sizes.size(); i++) {
+            widths[i] = sizes.get(i).width;
+            heights[i] = sizes.get(i).height;
+        }
+        int size = PreviewSizeSelector.selectSize(widths, heights, widths.length, analysisWidth,
+                analysisHeight);
+        if (size >= 0) {
+            parameters.setPreviewSize(widths[size], heights[size]);
+        }
+
+        List<Integer> supportedFormats = parameters.getSupportedPreviewFormats();
+        int[] formats = new int[supportedFormats.size()];
+        for (int i = 0; i < formats.length; i++) {
+            formats[i] = supportedFormats.get(i);
+        }
+        int format = PreviewSizeSelector.selectFormat(formats, formats.length);
+        if (format != PreviewSizeSelector.NO_FORMAT) {
+            parameters.setPreviewFormat(format);
+        }
+    }
+
+    private void releaseCamera() {
+        cameraGeneration++;
+        previewRequested = false;
+        closeCaptureSession();
+        if (cameraDevice != null) {
+            cameraDevice.close();
+            cameraDevice = null;
+        }
+        if (imageSource != null) {
+            imageSource.release();
+            imageSource = null;
+        }
+        if (camera != null) {
+            camera.stopPreview();
+            camera.release();
+            camera = null;
+        }
+    }
+
+    // The first back facing camera, or the first camera if there is none; null without cameras
+    private static String findCamera2(CameraManager manager) throws CameraAccessException {
+        String[] ids = manager.getCameraIdList();
+        for (String id : ids) {
+            Integer facing = manager.getCameraCharacteristics(id).get(
+                    CameraCharacteristics.LENS_FACING);
+            if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) {
+                return id;
+            }
+        }
+        return ids.length > 0 ? ids[0] : null;
+    }
+
+    // The first back facing camera, or the first camera if there is none
+    private static int findCamera() {
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        int numberOfCameras = Camera.getNumberOfCameras();
+        for (int i = 0; i < numberOfCameras; i++) {
+            Camera.getCameraInfo(i, info);
+            if (info.facing == Camera.CameraInfo.CAMERA_FACING_BACK) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
@@ -15,7 +15,30 @@ import android.widget.TextView;
 import com.shai_mahfud.cameraprominentcolors.R;
 
 public class ColorDistributionItem extends LinearLayout {
+    // Linear light values of the sRGB channel values, in 1/65536, for the contrast decision
+    private static final int[] LINEAR_CHANNEL = new int[256];
+    /*
+     * White text contrasts better than black text with colors whose relative luminance is below
+     * this (the point where (L + 0.05) / 0.05 equals 1.05 / (L + 0.05), per WCAG), in 1/65536.
+     */
+    private static final int WHITE_TEXT_LUMINANCE = (int) (0.17912878 * 65536);
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            double linear = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+            LINEAR_CHANNEL[i] = (int) Math.round(linear * 65536);
+        }
+    }
+
+
     private TextView colorBar, rgbField;
+    private boolean hasData;
+    private int currentColor;
+    private char[] distributionChars = new char[8];
+    private int distributionLength;
+    // "R: 255, G: 255, B: 255" at most
+    private final char[] rgbChars = new char[22];
 
 
     public ColorDistributionItem(Context context) {
@@ -37,23 +60,88 @@ public class ColorDistributionItem extends LinearLayout {
     }
 
 
-    void setData(int color, String distribution) {
-        String hexColor = String.format("%06X", (0xFFFFFF & color));
-        String redHex = hexColor.substring(0, 2);
-        String greenHex = hexColor.substring(2, 4);
-        String blueHex = hexColor.substring(4);
-        int red = Integer.parseInt(redHex, 16);
-        int green = Integer.parseInt(greenHex, 16);
-        int blue = Integer.parseInt(blueHex, 16);
-        // Make the text that appears inside the rectangle differ from the color of the rectangle
-        int rectangleTextColor = ((red < 50 && green < 50 && blue < 50) ? Color.WHITE : Color.BLACK);
-        if (rectangleTextColor != colorBar.getCurrentTextColor()) {
-            colorBar.setTextColor(rectangleTextColor);
+    /*
+     * Called for every item on every result, on the UI thread, so it allocates nothing: the texts
+     * are built into char arrays that TextView wraps without copying. Items whose color and text
+     * didn't change aren't touched at all, which spares their invalidation.
+     */
+    void setData(int color, CharSequence distribution) {
+        boolean colorChanged = !hasData || color != currentColor;
+        boolean distributionChanged = !hasData || !sameDistribution(distribution);
+        if (!colorChanged && !distributionChanged) {
+            return;
+        }
+        hasData = true;
+
+        if (colorChanged) {
+            currentColor = color;
+            int red = (color >> 16) & 0xFF;
+            int green = (color >> 8) & 0xFF;
+            int blue = color & 0xFF;
+            // Make the text that appears inside the rectangle readable over its color
+            int rectangleTextColor = prefersWhiteText(red, green, blue) ? Color.WHITE :
+                    Color.BLACK;
+            if (rectangleTextColor != colorBar.getCurrentTextColor()) {
+                colorBar.setTextColor(rectangleTextColor);
+            }
+            colorBar.setBackgroundColor(color);
+
+            int length = 0;
+            length = appendText(rgbChars, length, "R: ");
+            length = appendInt(rgbChars, length, red);
+            length = appendText(rgbChars, length, ", G: ");
+            length = appendInt(rgbChars, length, green);
+            length = appendText(rgbChars, length, ", B: ");
+            length = appendInt(rgbChars, length, blue);
+            rgbField.setText(rgbChars, 0, length);
+        }
+
+        if (distributionChanged) {
+            if (distributionChars.length < distribution.length()) {
+                distributionChars = new char[distribution.length()];
+            }
+            distributionLength = distribution.length();
+            for (int i = 0; i < distributionLength; i++) {
+                distributionChars[i] = distribution.charAt(i);
+            }
+            colorBar.setText(distributionChars, 0, distributionLength);
+        }
+    }
+
+    // Relative luminance as WCAG defines it, with the Rec. 709 weights of the linear channels
+    private static boolean prefersWhiteText(int red, int green, int blue) {
+        long luminance = (2126L * LINEAR_CHANNEL[red] + 7152L * LINEAR_CHANNEL[green] +
+                722L * LINEAR_CHANNEL[blue]) / 10000;
+        return luminance < WHITE_TEXT_LUMINANCE;
+    }
+
+    private boolean sameDistribution(CharSequence distribution) {
+        if (distribution.length() != distributionLength) {
+            return false;
+        }
+        for (int i = 0; i < distributionLength; i++) {
+            if (distribution.charAt(i) != distributionChars[i]) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    private static int appendText(char[] out, int length, String text) {
+        text.getChars(0, text.length(), out, length);
+        return length + text.length();
+    }
 
-        colorBar.setBackgroundColor(color);
-        colorBar.setText(distribution);
-        rgbField.setText("R: " + red + ", G: " + green + ", B: " + blue);
+    // Appends a channel value, 0 - 255
+    private static int appendInt(char[] out, int length, int value) {
+        if (value >= 100) {
+            out[length++] = (char) ('0' + value / 100);
+        }
+        if (value >= 10) {
+            out[length++] = (char) ('0' + value / 10 % 10);
+        }
+        out[length++] = (char) ('0' + value % 10);
+        return length;
     }
 
     private void init(Context ctx) {
@@ -0,0 +1,27 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.cameraprominentcolors.view;
+
+/*
+ * A backend that delivers the camera's preview frames to CameraColorDistributionView:
+ *
+ * - LegacyCameraFrameSource gets them from the deprecated Camera API, as byte arrays the
+ *   framework copies every frame into, described by Camera.Parameters.
+ * - ImageReaderFrameSource gets them from a Camera2 capture session, as YUV_420_888 Images whose
+ *   planes are analyzed in place, described by the Image itself.
+ *
+ * Either way the view decides which frames to analyze, and every frame goes back to its source
+ * once the analysis is done with it.
+ */
+interface FrameSource {
+    // Starts delivering frames to the view
+    void start();
+
+    /*
+     * Stops delivering frames. Frames the analysis still holds are given back to the source as
+     * they are released.
+     */
+    void stop();
+}
@@ -0,0 +1,172 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.cameraprominentcolors.view;
+
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Surface;
+
+import com.shai_mahfud.colorcore.YuvPlanes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The frames of a Camera2 capture session, through an ImageReader in YUV_420_888. The caller adds
+ * getSurface() to the targets of its session and of its repeating request after start(). Nothing
+ * is copied: the planes of every Image go to the analysis as they are, with their strides, and
+ * the Image is closed once the analysis releases it.
+ *
+ * The reader holds MAX_IMAGES Images: one being analyzed, one waiting in the engine's mailbox and
+ * two for acquireLatestImage() to skip to the newest frame. stop() only stops delivering frames:
+ * the capture session may still render to the reader's surface, so the reader is closed once its
+ * CameraSession closed the session (onCaptureSessionClosed()), and once the analysis released all
+ * of its Images, since closing it frees their memory.
+ */
+class ImageReaderFrameSource implements FrameSource, ImageReader.OnImageAvailableListener {
+    // The planes of an Image, and the Image to close once the analysis is done with them
+    private static class ImagePlanes extends YuvPlanes {
+        final ImageReaderFrameSource source;
+        Image image;
+
+
+        ImagePlanes(ImageReaderFrameSource source) {
+            this.source = source;
+        }
+    }
+
+
+    private static final int MAX_IMAGES = 4;
+
+
+    private final CameraColorDistributionView view;
+    private final int width;
+    private final int height;
+    // The planes no Image is using, so handing over a frame allocates nothing
+    private final ArrayDeque<ImagePlanes> freePlanes = new ArrayDeque<>();
+    // Stopped readers a capture session may still render to
+    private final List<ImageReader> stoppedReaders = new ArrayList<>();
+    // Stopped readers no session renders to, whose Images are still being analyzed
+    private final List<ImageReader> closingReaders = new ArrayList<>();
+    private HandlerThread thread;
+    private ImageReader reader;
+    // Set once the camera is released, after which the source can't be started again
+    private boolean released;
+
+
+    ImageReaderFrameSource(CameraColorDistributionView view, int width, int height) {
+        this.view = view;
+        this.width = width;
+        this.height = height;
+        for (int i = 0; i < MAX_IMAGES; i++) {
+            freePlanes.add(new ImagePlanes(this));
+        }
+    }
+
+
+    // Gives planes the analysis is done with back to the source they came from
+    static void release(YuvPlanes planes) {
+        ImagePlanes imagePlanes = (ImagePlanes) planes;
+        imagePlanes.source.onReleased(imagePlanes);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (reader != null || released) {
+            return;
+        }
+        thread = new HandlerThread("ImageReaderFrameSource");
+        thread.start();
+        reader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, MAX_IMAGES);
+        reader.setOnImageAvailableListener(this, new Handler(thread.getLooper()));
+        view.onFrameSourceStarted();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (reader == null) {
+            return;
+        }
+        reader.setOnImageAvailableListener(null, null);
+        thread.quitSafely();
+        thread = null;
+        stoppedReaders.add(reader);
+        reader = null;
+    }
+
+    /*
+     * Called by the CameraSession on its thread once no capture session renders to the readers
+     * stopped so far, so they can be closed.
+     */
+    synchronized void onCaptureSessionClosed() {
+        closingReaders.addAll(stoppedReaders);
+        stoppedReaders.clear();
+        closeStoppedReaders();
+    }
+
+    // Called by the CameraSession on its thread once its camera is closed
+    synchronized void release() {
+        stop();
+        released = true;
+        onCaptureSessionClosed();
+    }
+
+    // The surface the camera should render the frames to, null unless started
+    synchronized Surface getSurface() {
+        return reader != null ? reader.getSurface() : null;
+    }
+
+    @Override
+    public synchronized void onImageAvailable(ImageReader imageReader) {
+        Image image;
+        try {
+            image = imageReader.acquireLatestImage();
+        } catch (IllegalStateException e) {
+            return; // The analysis holds too many Images, the next frame will be taken
+        }
+        if (image == null) {
+            return;
+        }
+        ImagePlanes planes = imageReader == reader ? freePlanes.poll() : null;
+        if (planes == null || !view.shouldAnalyzeFrame()) {
+            if (planes != null) {
+                freePlanes.add(planes);
+            }
+            image.close();
+            return;
+        }
+
+        Image.Plane[] imagePlanes = image.getPlanes();
+        planes.setSize(image.getWidth(), image.getHeight());
+        for (int i = 0; i < YuvPlanes.PLANE_COUNT; i++) {
+            Image.Plane plane = imagePlanes[i];
+            planes.setPlane(i, plane.getBuffer(), plane.getRowStride(), plane.getPixelStride());
+        }
+        planes.image = image;
+        view.submitFrame(planes);
+    }
+
+    private synchronized void onReleased(ImagePlanes planes) {
+        planes.image.close();
+        planes.image = null;
+        planes.clear();
+        freePlanes.add(planes);
+        closeStoppedReaders();
+    }
+
+    private void closeStoppedReaders() {
+        if (freePlanes.size() < MAX_IMAGES) {
+            return; // Some Image is still being analyzed
+        }
+        for (ImageReader stoppedReader : closingReaders) {
+            stoppedReader.close();
+        }
+        closingReaders.clear();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.cameraprominentcolors.view;
+
+import android.hardware.Camera;
+import android.os.Handler;
+
+/*
+ * The frames of an opened legacy Camera, received into the view's pool of preview buffers. The
+ * format and size are those the camera was configured with, so the parameters of the camera
+ * aren't read again for every frame.
+ *
+ * start() and stop() are called on the UI thread, but the camera is only touched on the thread
+ * of the CameraSession that opened it: they post the change of the preview callback to its
+ * handler, behind the other calls of the session.
+ */
+@SuppressWarnings("deprecation")
+class LegacyCameraFrameSource implements FrameSource {
+    private final CameraColorDistributionView view;
+    private final Camera camera;
+    private final Handler cameraHandler;
+    private final int format;
+    private final int width;
+    private final int height;
+
+
+    LegacyCameraFrameSource(CameraColorDistributionView view, Camera camera,
+                            Handler cameraHandler, int format, int width, int height) {
+        this.view = view;
+        this.camera = camera;
+        this.cameraHandler = cameraHandler;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+
+    @Override
+    public void start() {
+        cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                view.startReceivingFrames(camera, format, width, height);
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        cameraHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                view.stopReceivingFrames(camera);
+            }
+        });
+    }
+}
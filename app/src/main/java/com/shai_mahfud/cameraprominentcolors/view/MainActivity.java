@@ -6,7 +6,6 @@ package com.shai_mahfud.cameraprominentcolors.view;
 
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.hardware.Camera;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.Settings;
@@ -23,19 +22,26 @@ import android.view.View;
 
 import com.shai_mahfud.cameraprominentcolors.R;
 
-import java.io.IOException;
-
-// The new (non-deprecated) Camera2 API is reported to be broken and people advice to stick with
-// the older API
+// CameraSession opens the camera with Camera2 where the device supports it natively, and with the
+// older API on LEGACY devices, whose Camera2 layer is reported to be broken
 @SuppressWarnings("deprecation")
 public class MainActivity extends AppCompatActivity implements SurfaceHolder.Callback,
-        View.OnClickListener {
+        View.OnClickListener, CameraSession.Listener {
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 1;
     private static final int APP_PERMISSIONS_REQUEST_CODE = 2;
     private static final int NUM_OF_COLOR_DISTRIBUTIONS = 5;
-
-
-    private Camera camera;
+    // The resolution the color analysis needs; the preview is the smallest size that has it
+    private static final int ANALYSIS_WIDTH = 640;
+    private static final int ANALYSIS_HEIGHT = 480;
+
+
+    private CameraSession cameraSession;
+    // Whether the camera was asked for, and its frames once it's open
+    private boolean cameraRequested = false;
+    private FrameSource frameSource;
+    // The surface while it exists, and whether the preview was started on it
+    private SurfaceHolder surfaceHolder;
+    private boolean previewStarted = false;
     private SurfaceView surfaceView;
     private CameraColorDistributionView colorDistributionContainer;
     private FloatingActionButton fab;
@@ -55,6 +61,8 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
         fab.setOnClickListener(this);
 
         colorDistributionContainer.insertItems(this, NUM_OF_COLOR_DISTRIBUTIONS);
+        cameraSession = new CameraSession(colorDistributionContainer, this, ANALYSIS_WIDTH,
+                ANALYSIS_HEIGHT);
 
         tryLaunchCamera();
     }
@@ -92,7 +100,7 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
     @Override
     protected void onResume() {
         super.onResume();
-        if (camera == null) {
+        if (!cameraRequested) {
             tryLaunchCamera();
         }
     }
@@ -103,24 +111,38 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
         super.onPause();
     }
 
+    @Override
+    protected void onDestroy() {
+        cameraSession.quit();
+        super.onDestroy();
+    }
+
     @Override
     public void surfaceCreated(SurfaceHolder surfaceHolder) {
-        try {
-            camera.setPreviewDisplay(surfaceHolder);
-            camera.setPreviewCallback(colorDistributionContainer);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        this.surfaceHolder = surfaceHolder;
     }
 
     @Override
     public void surfaceChanged(SurfaceHolder holder, int format, int w, int h) {
-        camera.startPreview();
+        startPreviewIfReady();
     }
 
     @Override
     public void surfaceDestroyed(SurfaceHolder surfaceHolder) {
         releaseCameraAndPreview();
+        this.surfaceHolder = null;
+    }
+
+    @Override
+    public void onCameraOpened(FrameSource frameSource) {
+        this.frameSource = frameSource;
+        startPreviewIfReady();
+    }
+
+    @Override
+    public void onCameraFailed() {
+        Log.e(getString(R.string.app_name), "failed to open Camera");
+        cameraRequested = false;
     }
 
     @Override
@@ -128,15 +150,18 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
         int id = view.getId();
         switch (id) {
             case R.id.fab:
+                if (frameSource == null) {
+                    break; // The camera isn't open yet, there is nothing to pause
+                }
                 resumePlaying = !resumePlaying;
                 int newIcon = resumePlaying ? R.drawable.play : R.drawable.pause;
                 fab.setImageResource(newIcon);
                 if (resumePlaying) {
-                    camera.setPreviewCallback(null);
-                    camera.stopPreview();
+                    frameSource.stop();
+                    cameraSession.stopPreview();
                 } else {
-                    camera.setPreviewCallback(colorDistributionContainer);
-                    camera.startPreview();
+                    frameSource.start();
+                    cameraSession.startPreview(surfaceHolder);
                 }
                 break;
             default:
@@ -179,37 +204,33 @@ public class MainActivity extends AppCompatActivity implements SurfaceHolder.Cal
         surfaceHolder.setType(SurfaceHolder.SURFACE_TYPE_PUSH_BUFFERS);
     }
 
+    // Opens the camera in the background; onCameraOpened() or onCameraFailed() follows
     private void safeCameraOpen() {
-        int cameraId = getFrontFacingCamera();
-        try {
-            releaseCameraAndPreview();
-            camera = Camera.open(cameraId);
-        } catch (Exception e) {
-            Log.e(getString(R.string.app_name), "failed to open Camera");
-            e.printStackTrace();
-        }
+        releaseCameraAndPreview();
+        cameraRequested = true;
+        cameraSession.open();
     }
 
-    private void releaseCameraAndPreview() {
-        if (camera != null) {
-            camera.setPreviewCallback(null);
-            camera.stopPreview();
-            camera.release();
-            camera = null;
+    // Once both the camera and the surface are ready
+    private void startPreviewIfReady() {
+        if (frameSource == null || surfaceHolder == null || previewStarted) {
+            return;
         }
+        previewStarted = true;
+        frameSource.start();
+        cameraSession.startPreview(surfaceHolder);
     }
 
-    private int getFrontFacingCamera() {
-        int cameraId = -1;
-        int numberOfCameras = Camera.getNumberOfCameras();
-        for (int i = 0; i < numberOfCameras; i++) {
-            Camera.CameraInfo info = new Camera.CameraInfo();
-            Camera.getCameraInfo(i, info);
-            if (info.facing == Camera.CameraInfo.CAMERA_FACING_BACK) {
-                cameraId = i;
-                break;
-            }
+    private void releaseCameraAndPreview() {
+        if (!cameraRequested) {
+            return;
+        }
+        if (frameSource != null) {
+            frameSource.stop();
+            frameSource = null;
         }
-        return cameraId;
+        cameraSession.close();
+        cameraRequested = false;
+        previewStarted = false;
     }
 }
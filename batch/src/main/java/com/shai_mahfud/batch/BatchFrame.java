@@ -0,0 +1,38 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.batch;
+
+/*
+ * A frame travelling through the batch pipeline: either raw YUV bytes or packed ARGB pixels. The
+ * frames are pooled, so the buffers are reused once a worker is done with them.
+ */
+class BatchFrame {
+    int index;
+    String source;
+    int width;
+    int height;
+    // YUV frames set yuv and format, images set argb
+    byte[] yuv;
+    int format;
+    int[] argb;
+    boolean isYuv;
+
+
+    byte[] yuvBuffer(int size) {
+        if (yuv == null || yuv.length < size) {
+            yuv = new byte[size];
+        }
+        isYuv = true;
+        return yuv;
+    }
+
+    int[] argbBuffer(int size) {
+        if (argb == null || argb.length < size) {
+            argb = new int[size];
+        }
+        isYuv = false;
+        return argb;
+    }
+}
@@ -0,0 +1,14 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.batch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Where the batch pipeline reads its frames from. Only the producer thread calls it.
+interface BatchInput extends Closeable {
+    // Fills frame with the next frame and returns true, or returns false at the end of the input
+    boolean read(BatchFrame frame) throws IOException;
+}
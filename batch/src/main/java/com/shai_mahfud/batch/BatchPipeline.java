@@ -0,0 +1,148 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.batch;
+
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+ * Analyzes the frames of a BatchInput on several worker threads while the calling thread keeps
+ * reading the next ones. The frames come from a fixed pool: the reader takes a free frame, fills
+ * it and queues it, and a worker returns it to the pool once it's analyzed. So at most a few
+ * frames per worker are in memory however long the input is, and reading blocks when the workers
+ * fall behind.
+ *
+ * Every worker has its own FrameAnalyzer, configured like the live view's, so the numbers are the
+ * same as the app shows for the same frame. The lines are written in frame order whichever worker
+ * finishes first.
+ */
+class BatchPipeline {
+    // Frames per worker: one being analyzed, one queued and one being read
+    private static final int FRAMES_PER_WORKER = 3;
+    // Tells a worker there are no more frames
+    private static final BatchFrame END = new BatchFrame();
+
+
+    private final int threads;
+    private final int maxColors;
+    private final int sampleStride;
+    private final ResultFormat format;
+    private final Writer out;
+
+    private final Map<Integer, String> pendingLines = new HashMap<>();
+    private int nextLine;
+    private volatile Throwable failure;
+
+
+    BatchPipeline(int threads, int maxColors, int sampleStride, ResultFormat format, Writer out) {
+        if (threads <= 0 || maxColors <= 0 || sampleStride <= 0) {
+            throw new IllegalArgumentException("Invalid batch configuration");
+        }
+        this.threads = threads;
+        this.maxColors = maxColors;
+        this.sampleStride = sampleStride;
+        this.format = format;
+        this.out = out;
+    }
+
+
+    // Analyzes every frame of the input and returns their number
+    int run(BatchInput input) throws IOException, InterruptedException {
+        final BlockingQueue<BatchFrame> freeFrames =
+                new ArrayBlockingQueue<>(threads * FRAMES_PER_WORKER);
+        // The pool already bounds the frames in flight, and the end markers must never block
+        final BlockingQueue<BatchFrame> queuedFrames = new LinkedBlockingQueue<>();
+        for (int i = 0; i < threads * FRAMES_PER_WORKER; i++) {
+            freeFrames.add(new BatchFrame());
+        }
+
+        String header = format.header();
+        if (header != null) {
+            out.write(header);
+            out.write('\n');
+        }
+        pendingLines.clear();
+        nextLine = 0;
+        failure = null;
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    analyzeFrames(queuedFrames, freeFrames);
+                }
+            }, "BatchWorker-" + i);
+            workers[i].start();
+        }
+
+        int frameCount = 0;
+        try {
+            while (failure == null) {
+                BatchFrame frame = freeFrames.take();
+                if (!input.read(frame)) {
+                    break;
+                }
+                queuedFrames.put(frame);
+                frameCount++;
+            }
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                queuedFrames.put(END);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        if (failure != null) {
+            throw new IOException("Analysis failed", failure);
+        }
+        out.flush();
+        return frameCount;
+    }
+
+    private void analyzeFrames(BlockingQueue<BatchFrame> queuedFrames,
+                               BlockingQueue<BatchFrame> freeFrames) {
+        FrameAnalyzer analyzer = new FrameAnalyzer(maxColors);
+        analyzer.setSampleStride(sampleStride);
+        try {
+            while (true) {
+                BatchFrame frame = queuedFrames.take();
+                if (frame == END) {
+                    return;
+                }
+                boolean analyzed = frame.isYuv ?
+                        analyzer.analyze(frame.yuv, frame.format, frame.width, frame.height) :
+                        analyzer.analyzeArgb(frame.argb, frame.width, frame.height);
+                String line = format.format(frame.index, frame.source, analyzer, analyzed);
+                int index = frame.index;
+                freeFrames.put(frame);
+                writeInOrder(index, line);
+            }
+        } catch (Throwable t) {
+            failure = t;
+            // Keep the reader from waiting for a frame that will never be returned
+            freeFrames.offer(new BatchFrame());
+        }
+    }
+
+    private synchronized void writeInOrder(int index, String line) throws IOException {
+        pendingLines.put(index, line);
+        String next;
+        while ((next = pendingLines.remove(nextLine)) != null) {
+            out.write(next);
+            out.write('\n');
+            nextLine++;
+        }
+    }
+}
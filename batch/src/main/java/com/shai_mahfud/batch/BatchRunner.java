@@ -0,0 +1,143 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.batch;
+
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/*
+ * Computes the prominent colors of archived footage or photo sets, offline:
+ *   batch --nv21 <dump> --size <width>x<height> [options]
+ *   batch --images <directory> [options]
+ *   batch --recording <file> [options]       frames recorded with FrameRecorder
+ * Options:
+ *   --threads <n>        worker threads, all the cores by default
+ *   --colors <n>         ranked colors per frame, 16 by default like the live view
+ *   --stride <n>         analyze every nth pixel of every nth row, 1 by default
+ *   --format csv|json    csv by default
+ *   --output <file>      standard output by default
+ * One line is written per frame, and the frame rate is reported on standard error.
+ */
+public class BatchRunner {
+    private static final String USAGE = "Usage: batch (--nv21 <dump> --size <width>x<height> | " +
+            "--images <directory> | --recording <file>) [--threads <n>] [--colors <n>] " +
+            "[--stride <n>] [--format csv|json] [--output <file>]";
+
+
+    public static void main(String[] args) {
+        try {
+            System.exit(run(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Batch failed: " + e);
+            System.exit(1);
+        }
+    }
+
+    static int run(String[] args) throws IOException, InterruptedException {
+        String nv21 = null, images = null, recording = null, size = null, output = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int colors = FrameAnalyzer.NUM_OF_COLORS;
+        int stride = 1;
+        ResultFormat format = ResultFormat.CSV;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--nv21":
+                    nv21 = value;
+                    break;
+                case "--images":
+                    images = value;
+                    break;
+                case "--recording":
+                    recording = value;
+                    break;
+                case "--size":
+                    size = value;
+                    break;
+                case "--threads":
+                    threads = parsePositive(option, value);
+                    break;
+                case "--colors":
+                    colors = parsePositive(option, value);
+                    break;
+                case "--stride":
+                    stride = parsePositive(option, value);
+                    break;
+                case "--format":
+                    format = ResultFormat.valueOf(value.toUpperCase(Locale.US));
+                    break;
+                case "--output":
+                    output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if ((nv21 != null ? 1 : 0) + (images != null ? 1 : 0) + (recording != null ? 1 : 0) != 1) {
+            throw new IllegalArgumentException("Give one of --nv21, --images or --recording");
+        }
+
+        BatchInput input;
+        if (nv21 != null) {
+            if (size == null || size.indexOf('x') < 0) {
+                throw new IllegalArgumentException("--nv21 needs --size <width>x<height>");
+            }
+            int width = parsePositive("--size", size.substring(0, size.indexOf('x')));
+            int height = parsePositive("--size", size.substring(size.indexOf('x') + 1));
+            input = new Nv21DumpInput(new File(nv21), width, height);
+        } else if (recording != null) {
+            input = new RecordingInput(new File(recording));
+        } else {
+            input = new ImageDirectoryInput(new File(images));
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(output != null ?
+                new FileOutputStream(output) : System.out, Charset.forName("UTF-8")));
+        try {
+            BatchPipeline pipeline = new BatchPipeline(threads, colors, stride, format, out);
+            long start = System.nanoTime();
+            int frames = pipeline.run(input);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.println(String.format(Locale.US,
+                    "Analyzed %d frames in %.2f s (%.1f frames per second) on %d threads",
+                    frames, seconds, frames / seconds, threads));
+        } finally {
+            input.close();
+            out.flush();
+            if (output != null) {
+                out.close();
+            }
+        }
+        return 0;
+    }
+
+    private static int parsePositive(String option, String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.batch;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+/*
+ * Reads every image ImageIO can decode (JPEG, PNG, BMP, GIF...) from a directory, in file name
+ * order, as packed ARGB pixels. Files that aren't images are skipped.
+ */
+class ImageDirectoryInput implements BatchInput {
+    private final File[] files;
+    private int nextFile;
+    private int nextIndex;
+
+
+    ImageDirectoryInput(File directory) throws IOException {
+        File[] listed = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile();
+            }
+        });
+        if (listed == null) {
+            throw new IOException("Not a directory: " + directory);
+        }
+        Arrays.sort(listed);
+        files = listed;
+    }
+
+
+    @Override
+    public boolean read(BatchFrame frame) throws IOException {
+        while (nextFile < files.length) {
+            File file = files[nextFile++];
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                continue;
+            }
+            int width = image.getWidth();
+            int height = image.getHeight();
+            image.getRGB(0, 0, width, height, frame.argbBuffer(width * height), 0, width);
+            frame.index = nextIndex++;
+            frame.source = file.getName();
+            frame.width = width;
+            frame.height = height;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.batch;
+
+import com.shai_mahfud.colorcore.YuvDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Reads a raw dump of NV21 frames of a known size, one after the other, as the camera delivers
+ * them to onPreviewFrame(). The file is memory mapped a window of frames at a time, so reading a
+ * frame is a copy out of the page cache, and dumps bigger than 2 GB (the limit of a single
+ * mapping) work too. A partial frame at the end of the file is ignored.
+ */
+class Nv21DumpInput implements BatchInput {
+    private static final long WINDOW_BYTES = 64L << 20;
+
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final String name;
+    private final int width;
+    private final int height;
+    private final int frameSize;
+    private final long frameCount;
+    private final int framesPerWindow;
+    private MappedByteBuffer window;
+    private long windowFirstFrame = -1;
+    private long nextFrame;
+
+
+    Nv21DumpInput(File dump, int width, int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        frameSize = YuvDecoder.getFrameSize(YuvDecoder.FORMAT_NV21, width, height);
+        name = dump.getName();
+        file = new RandomAccessFile(dump, "r");
+        channel = file.getChannel();
+        frameCount = channel.size() / frameSize;
+        framesPerWindow = (int) Math.max(1, WINDOW_BYTES / frameSize);
+    }
+
+
+    long getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public boolean read(BatchFrame frame) throws IOException {
+        if (nextFrame >= frameCount) {
+            return false;
+        }
+        if (window == null || nextFrame >= windowFirstFrame + framesPerWindow) {
+            windowFirstFrame = nextFrame;
+            long frames = Math.min(framesPerWindow, frameCount - windowFirstFrame);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowFirstFrame * frameSize,
+                    frames * frameSize);
+        }
+
+        window.position((int) ((nextFrame - windowFirstFrame) * frameSize));
+        window.get(frame.yuvBuffer(frameSize), 0, frameSize);
+        frame.index = (int) nextFrame;
+        frame.source = name;
+        frame.format = YuvDecoder.FORMAT_NV21;
+        frame.width = width;
+        frame.height = height;
+        nextFrame++;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+}
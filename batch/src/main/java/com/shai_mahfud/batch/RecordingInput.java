@@ -0,0 +1,47 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.batch;
+
+import com.shai_mahfud.colorcore.FrameRecordingReader;
+
+import java.io.File;
+import java.io.IOException;
+
+/*
+ * Reads the frames of a FrameRecorder file, recorded from the live preview. Unlike an NV21 dump
+ * every frame carries its own format and size.
+ */
+class RecordingInput implements BatchInput {
+    private final FrameRecordingReader reader;
+    private final String name;
+    private int nextFrame;
+
+
+    RecordingInput(File recording) throws IOException {
+        reader = new FrameRecordingReader(recording);
+        name = recording.getName();
+    }
+
+
+    @Override
+    public boolean read(BatchFrame frame) throws IOException {
+        if (!reader.next()) {
+            return false;
+        }
+        System.arraycopy(reader.data(), 0, frame.yuvBuffer(reader.getLength()), 0,
+                reader.getLength());
+        frame.index = nextFrame++;
+        frame.source = name;
+        frame.format = reader.getFormat();
+        frame.width = reader.getWidth();
+        frame.height = reader.getHeight();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
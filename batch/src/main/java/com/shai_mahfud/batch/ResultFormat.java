@@ -0,0 +1,100 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.batch;
+
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+
+import java.util.Locale;
+
+/*
+ * Formats the results of a frame as one line of CSV or of JSON. Both hold the frame index, its
+ * source file, the total population and every ranked color with its population and its share in
+ * percent, rounded like the live view shows it. A frame that couldn't be analyzed has no colors.
+ */
+enum ResultFormat {
+    CSV {
+        @Override
+        String header() {
+            return "frame,source,total,color,population,share,...";
+        }
+
+        @Override
+        String format(int index, String source, FrameAnalyzer analyzer, boolean analyzed) {
+            StringBuilder line = new StringBuilder();
+            line.append(index).append(',').append(csvField(source)).append(',');
+            line.append(analyzed ? analyzer.getTotalPopulation() : 0);
+            int count = analyzed ? analyzer.getResultCount() : 0;
+            for (int i = 0; i < count; i++) {
+                line.append(',').append(hex(analyzer.getColor(i)));
+                line.append(',').append(analyzer.getPopulation(i));
+                line.append(',').append(share(analyzer, i));
+            }
+            return line.toString();
+        }
+    },
+
+    JSON {
+        @Override
+        String header() {
+            return null;
+        }
+
+        @Override
+        String format(int index, String source, FrameAnalyzer analyzer, boolean analyzed) {
+            StringBuilder line = new StringBuilder();
+            line.append("{\"frame\":").append(index);
+            line.append(",\"source\":").append(jsonString(source));
+            line.append(",\"total\":").append(analyzed ? analyzer.getTotalPopulation() : 0);
+            line.append(",\"colors\":[");
+            int count = analyzed ? analyzer.getResultCount() : 0;
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append("{\"color\":\"").append(hex(analyzer.getColor(i)));
+                line.append("\",\"population\":").append(analyzer.getPopulation(i));
+                line.append(",\"share\":").append(share(analyzer, i)).append('}');
+            }
+            return line.append("]}").toString();
+        }
+    };
+
+
+    // The first line of the output, or null if there is none
+    abstract String header();
+
+    abstract String format(int index, String source, FrameAnalyzer analyzer, boolean analyzed);
+
+    private static String hex(int color) {
+        return String.format("#%06X", color & 0xFFFFFF);
+    }
+
+    private static String share(FrameAnalyzer analyzer, int index) {
+        return String.format(Locale.US, "%.2f", (double) analyzer.getPopulation(index) * 100 /
+                analyzer.getTotalPopulation());
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
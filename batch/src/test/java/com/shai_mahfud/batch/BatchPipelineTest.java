@@ -0,0 +1,144 @@
+package com.shai_mahfud.batch;
+
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+import com.shai_mahfud.colorcore.FrameRecorder;
+import com.shai_mahfud.colorcore.YuvDecoder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class BatchPipelineTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int FRAMES = 40;
+
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void nv21Dump_matchesTheLiveAnalyzerInOrder() throws Exception {
+        byte[][] frames = new byte[FRAMES][];
+        File dump = folder.newFile("preview.nv21");
+        try (FileOutputStream out = new FileOutputStream(dump)) {
+            for (int i = 0; i < FRAMES; i++) {
+                frames[i] = randomFrame(i);
+                out.write(frames[i]);
+            }
+            // A partial frame at the end is ignored
+            out.write(new byte[100]);
+        }
+
+        StringWriter output = new StringWriter();
+        BatchPipeline pipeline = new BatchPipeline(4, FrameAnalyzer.NUM_OF_COLORS, 1,
+                ResultFormat.CSV, output);
+        assertEquals(FRAMES, pipeline.run(new Nv21DumpInput(dump, WIDTH, HEIGHT)));
+
+        String[] lines = output.toString().split("\n");
+        assertEquals(FRAMES + 1, lines.length);
+        assertEquals(ResultFormat.CSV.header(), lines[0]);
+        FrameAnalyzer live = new FrameAnalyzer(FrameAnalyzer.NUM_OF_COLORS);
+        for (int i = 0; i < FRAMES; i++) {
+            boolean analyzed = live.analyze(frames[i], YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+            assertEquals(ResultFormat.CSV.format(i, dump.getName(), live, analyzed),
+                    lines[i + 1]);
+        }
+    }
+
+    @Test
+    public void recording_isAnalyzedWithTheSizeOfEveryFrame() throws Exception {
+        File file = folder.newFile("preview.rec");
+        byte[][] frames = new byte[4][];
+        try (FrameRecorder recorder = new FrameRecorder(file, frames.length)) {
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = randomFrame(i);
+                // Every other frame is recorded at half the height
+                int height = i % 2 == 0 ? HEIGHT : HEIGHT / 2;
+                recorder.record(frames[i], YuvDecoder.getFrameSize(YuvDecoder.FORMAT_NV21, WIDTH,
+                        height), YuvDecoder.FORMAT_NV21, WIDTH, height, i);
+            }
+        }
+
+        StringWriter output = new StringWriter();
+        BatchPipeline pipeline = new BatchPipeline(2, FrameAnalyzer.NUM_OF_COLORS, 1,
+                ResultFormat.CSV, output);
+        assertEquals(frames.length, pipeline.run(new RecordingInput(file)));
+
+        String[] lines = output.toString().split("\n");
+        FrameAnalyzer live = new FrameAnalyzer(FrameAnalyzer.NUM_OF_COLORS);
+        for (int i = 0; i < frames.length; i++) {
+            int height = i % 2 == 0 ? HEIGHT : HEIGHT / 2;
+            boolean analyzed = live.analyze(frames[i], YuvDecoder.FORMAT_NV21, WIDTH, height);
+            assertEquals(ResultFormat.CSV.format(i, file.getName(), live, analyzed),
+                    lines[i + 1]);
+        }
+    }
+
+    @Test
+    public void images_areAnalyzedInNameOrder() throws Exception {
+        File directory = folder.newFolder("photos");
+        int[] colors = {0xFF3060C0, 0xFFC03030, 0xFF30C030};
+        for (int i = 0; i < colors.length; i++) {
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    image.setRGB(x, y, x < WIDTH / 4 ? 0xFFFFFFFF : colors[i]);
+                }
+            }
+            ImageIO.write(image, "png", new File(directory, "photo" + i + ".png"));
+        }
+        Files.write(new File(directory, "notes.txt").toPath(), "not an image".getBytes("UTF-8"));
+
+        File output = new File(folder.getRoot(), "colors.json");
+        assertEquals(0, BatchRunner.run(new String[]{"--images", directory.getPath(),
+                "--threads", "2", "--colors", "2", "--format", "json", "--output",
+                output.getPath()}));
+
+        List<String> lines = Files.readAllLines(output.toPath(), Charset.forName("UTF-8"));
+        assertEquals(colors.length, lines.size());
+        for (int i = 0; i < colors.length; i++) {
+            String line = lines.get(i);
+            assertTrue(line, line.startsWith("{\"frame\":" + i + ",\"source\":\"photo" + i +
+                    ".png\",\"total\":" + WIDTH * HEIGHT + ",\"colors\":[{\"color\":\""));
+            assertTrue(line, line.contains("\"share\":75.00}"));
+            assertTrue(line, line.contains("\"share\":25.00}"));
+        }
+    }
+
+    @Test
+    public void undecodableFrames_haveNoColors() throws IOException, InterruptedException {
+        File dump = folder.newFile("odd.nv21");
+        Files.write(dump.toPath(), new byte[15 * 2 * 3]);
+        StringWriter output = new StringWriter();
+
+        // An odd width isn't a valid preview size
+        new BatchPipeline(2, 5, 1, ResultFormat.JSON, output).run(
+                new Nv21DumpInput(dump, 15, 2));
+
+        assertEquals("{\"frame\":0,\"source\":\"odd.nv21\",\"total\":0,\"colors\":[]}\n",
+                output.toString().substring(0, output.toString().indexOf('\n') + 1));
+    }
+
+
+    private static byte[] randomFrame(long seed) {
+        byte[] frame = new byte[YuvDecoder.getFrameSize(YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT)];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+}
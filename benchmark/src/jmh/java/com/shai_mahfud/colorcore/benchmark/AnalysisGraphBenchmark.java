@@ -0,0 +1,117 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.AnalysisGraph;
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+import com.shai_mahfud.colorcore.SampledFrame;
+import com.shai_mahfud.colorcore.YuvDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * Three analyses of the same frame: prominent colors by median cut, by k-means, and the coverage
+ * of reference colors. Each decoding the frame itself, against an AnalysisGraph decoding it once
+ * for all three, on the benchmark thread and on a worker per core.
+ */
+@State(Scope.Thread)
+public class AnalysisGraphBenchmark {
+    private static final int MAX_RESULTS = 8;
+    private static final int[] REFERENCES = {0xFFE53935, 0xFF1E88E5, 0xFF43A047, 0xFFFDD835};
+    private static final int ANALYSES = 3;
+
+
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.FULL_HD})
+    public String size;
+
+    @Param({"1", "4"})
+    public int stride;
+
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private final FrameAnalyzer[] analyzers = new FrameAnalyzer[ANALYSES];
+    private final FrameAnalyzer[] inlineAnalyzers = new FrameAnalyzer[ANALYSES];
+    private final FrameAnalyzer[] parallelAnalyzers = new FrameAnalyzer[ANALYSES];
+    private AnalysisGraph inlineGraph;
+    private AnalysisGraph parallelGraph;
+
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkFrames.widthOf(size);
+        height = BenchmarkFrames.heightOf(size);
+        frame = BenchmarkFrames.nv21(width, height, 1);
+        for (int i = 0; i < ANALYSES; i++) {
+            analyzers[i] = newAnalyzer(i);
+            analyzers[i].setSampleStride(stride);
+        }
+        inlineGraph = newGraph(0, inlineAnalyzers);
+        parallelGraph = newGraph(Runtime.getRuntime().availableProcessors(), parallelAnalyzers);
+    }
+
+    @TearDown
+    public void tearDown() {
+        inlineGraph.shutdown();
+        parallelGraph.shutdown();
+    }
+
+    @Benchmark
+    public int separateDecodes() {
+        int results = 0;
+        for (FrameAnalyzer analyzer : analyzers) {
+            analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, width, height);
+            results += analyzer.getResultCount();
+        }
+        return results;
+    }
+
+    @Benchmark
+    public int sharedDecode() {
+        inlineGraph.analyze(frame, YuvDecoder.FORMAT_NV21, width, height);
+        return inlineAnalyzers[0].getResultCount();
+    }
+
+    // Waits for every analysis, so no frame is skipped and all of them are measured
+    @Benchmark
+    public int sharedDecodeParallel() throws InterruptedException {
+        parallelGraph.analyze(frame, YuvDecoder.FORMAT_NV21, width, height);
+        parallelGraph.awaitIdle();
+        return parallelAnalyzers[0].getResultCount();
+    }
+
+    // The graph's stride does the sampling, so its analyzers take every pixel they are given
+    private AnalysisGraph newGraph(int threads, FrameAnalyzer[] graphAnalyzers) {
+        AnalysisGraph graph = new AnalysisGraph(threads);
+        graph.setSampleStride(stride);
+        for (int i = 0; i < ANALYSES; i++) {
+            final FrameAnalyzer analyzer = newAnalyzer(i);
+            graphAnalyzers[i] = analyzer;
+            graph.register(new AnalysisGraph.Analysis() {
+                @Override
+                public void analyze(SampledFrame frame) {
+                    analyzer.analyzeArgb(frame.getPixels(), frame.getColumns(), frame.getRows());
+                }
+            });
+        }
+        return graph;
+    }
+
+    private static FrameAnalyzer newAnalyzer(int analysis) {
+        FrameAnalyzer analyzer = new FrameAnalyzer(MAX_RESULTS);
+        if (analysis == 1) {
+            analyzer.setQuantizer(FrameAnalyzer.QUANTIZER_K_MEANS);
+        } else if (analysis == 2) {
+            analyzer.setReferenceColors(REFERENCES, REFERENCES.length, 0.1f);
+        }
+        return analyzer;
+    }
+}
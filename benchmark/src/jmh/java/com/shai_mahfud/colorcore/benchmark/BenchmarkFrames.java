@@ -0,0 +1,110 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.YuvPlanes;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/*
+ * Synthetic NV21 preview frames for the benchmarks. A frame looks roughly like a camera scene: a
+ * grid of large regions, each with its own color, a brightness gradient and some sensor noise. So
+ * the histograms have a realistic number of colors, unlike random bytes which fill all of them.
+ */
+final class BenchmarkFrames {
+    // Common preview sizes, in the "widthxheight" form the benchmarks take as a parameter
+    static final String VGA = "640x480";
+    static final String HD = "1280x720";
+    static final String FULL_HD = "1920x1080";
+    static final String UHD = "3840x2160";
+
+    private static final int REGION_COLUMNS = 8;
+    private static final int REGION_ROWS = 6;
+    private static final int NOISE = 6;
+
+
+    private BenchmarkFrames() {
+    }
+
+
+    static int widthOf(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    static int heightOf(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    static byte[] nv21(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int regions = REGION_COLUMNS * REGION_ROWS;
+        int[] regionY = new int[regions];
+        int[] regionU = new int[regions];
+        int[] regionV = new int[regions];
+        for (int i = 0; i < regions; i++) {
+            regionY[i] = 40 + random.nextInt(160);
+            regionU[i] = 64 + random.nextInt(128);
+            regionV[i] = 64 + random.nextInt(128);
+        }
+
+        byte[] frame = new byte[width * height * 3 / 2];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int region = regionOf(col, row, width, height);
+                int gradient = 24 * col / width;
+                frame[row * width + col] = (byte) clamp(regionY[region] + gradient +
+                        random.nextInt(2 * NOISE + 1) - NOISE);
+            }
+        }
+        int chroma = width * height;
+        for (int row = 0; row < height; row += 2) {
+            for (int col = 0; col < width; col += 2) {
+                int region = regionOf(col, row, width, height);
+                frame[chroma++] = (byte) clamp(regionV[region] + random.nextInt(5) - 2);
+                frame[chroma++] = (byte) clamp(regionU[region] + random.nextInt(5) - 2);
+            }
+        }
+        return frame;
+    }
+
+    /*
+     * The same frame as YUV_420_888 planes in direct buffers, laid out like most camera HALs
+     * deliver them: rows padded to a multiple of 64 bytes, and the chroma interleaved, V first,
+     * with a pixel stride of 2.
+     */
+    static YuvPlanes planes(byte[] nv21, int width, int height) {
+        int rowStride = (width + 63) & ~63;
+        ByteBuffer y = ByteBuffer.allocateDirect(rowStride * height);
+        ByteBuffer chroma = ByteBuffer.allocateDirect(rowStride * height / 2);
+        for (int row = 0; row < height; row++) {
+            y.position(row * rowStride);
+            y.put(nv21, row * width, width);
+        }
+        for (int row = 0; row < height / 2; row++) {
+            chroma.position(row * rowStride);
+            chroma.put(nv21, width * height + row * width, width);
+        }
+        y.clear();
+        chroma.clear();
+        ByteBuffer v = chroma.duplicate();
+        chroma.position(1);
+
+        YuvPlanes planes = new YuvPlanes();
+        planes.setSize(width, height);
+        planes.setPlane(YuvPlanes.PLANE_Y, y, rowStride, 1);
+        planes.setPlane(YuvPlanes.PLANE_U, chroma.slice(), rowStride, 2);
+        planes.setPlane(YuvPlanes.PLANE_V, v, rowStride, 2);
+        return planes;
+    }
+
+    private static int regionOf(int col, int row, int width, int height) {
+        return row * REGION_ROWS / height * REGION_COLUMNS + col * REGION_COLUMNS / width;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
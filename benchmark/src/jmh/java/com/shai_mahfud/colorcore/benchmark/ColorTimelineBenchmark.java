@@ -0,0 +1,65 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.ColorTimeline;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/*
+ * Appending the 16 colors of a frame to a ColorTimeline, 30 frames a second, and reading the
+ * last minute of seconds back.
+ */
+@State(Scope.Thread)
+public class ColorTimelineBenchmark {
+    private static final int COLORS = 16;
+    private static final long FRAME_NANOS = 1000000000L / 30;
+
+
+    private final int[] colors = new int[COLORS];
+    private final int[] populations = new int[COLORS];
+    private ColorTimeline timeline;
+    private ColorTimeline.Cursor cursor;
+    private long timestampNanos;
+
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int i = 0; i < COLORS; i++) {
+            colors[i] = 0xFF000000 | random.nextInt(0x1000000);
+            populations[i] = 1000 - i * 50;
+        }
+        timeline = new ColorTimeline(COLORS);
+        cursor = new ColorTimeline.Cursor(timeline);
+        // An hour of frames, so every tier is full
+        for (int i = 0; i < 30 * 3600; i++) {
+            append();
+        }
+    }
+
+    @Benchmark
+    public long append() {
+        timestampNanos += FRAME_NANOS;
+        timeline.append(timestampNanos, colors, populations, COLORS, 10000);
+        return timestampNanos;
+    }
+
+    @Benchmark
+    public long queryLastMinuteOfSeconds() {
+        long sum = 0;
+        cursor.query(ColorTimeline.TIER_SECONDS, timestampNanos - 60 * 1000000000L,
+                timestampNanos);
+        while (cursor.next()) {
+            sum += cursor.getPopulation(0);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+import com.shai_mahfud.colorcore.YuvDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * The whole path from a preview frame to the ranked colors, as the analysis thread runs it. The
+ * frames alternate so the scene change detector and the temporal window, when enabled, see a
+ * changing scene.
+ */
+@State(Scope.Thread)
+public class FramePipelineBenchmark {
+    private static final int MAX_RESULTS = 5;
+
+
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.HD, BenchmarkFrames.FULL_HD})
+    public String size;
+
+    @Param({"1", "4"})
+    public int stride;
+
+    @Param({"0", "16"})
+    public int temporalWindow;
+
+
+    private int width;
+    private int height;
+    private final byte[][] frames = new byte[2][];
+    private int frameIndex;
+    private FrameAnalyzer analyzer;
+
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkFrames.widthOf(size);
+        height = BenchmarkFrames.heightOf(size);
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = BenchmarkFrames.nv21(width, height, 10 + i);
+        }
+        analyzer = new FrameAnalyzer(MAX_RESULTS);
+        analyzer.setSampleStride(stride);
+        analyzer.setTemporalWindow(temporalWindow);
+    }
+
+    @Benchmark
+    public int analyzeFrame() {
+        frameIndex ^= 1;
+        analyzer.analyze(frames[frameIndex], YuvDecoder.FORMAT_NV21, width, height);
+        return analyzer.getResultCount();
+    }
+}
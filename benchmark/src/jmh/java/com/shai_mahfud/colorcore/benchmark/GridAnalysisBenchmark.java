@@ -0,0 +1,81 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+import com.shai_mahfud.colorcore.GridColorAnalyzer;
+import com.shai_mahfud.colorcore.YuvDecoder;
+import com.shai_mahfud.colorcore.YuvPlanes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * The dominant colors of a grid x grid grid over a whole frame, with GridColorAnalyzer's single
+ * pass over the NV21 bytes or over YUV_420_888 planes, against running a FrameAnalyzer on the
+ * region of every tile.
+ */
+@State(Scope.Thread)
+public class GridAnalysisBenchmark {
+    @Param({"4", "8", "16"})
+    public int grid;
+
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.HD})
+    public String size;
+
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private YuvPlanes planes;
+    private GridColorAnalyzer gridAnalyzer;
+    private FrameAnalyzer tileAnalyzer;
+
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkFrames.widthOf(size);
+        height = BenchmarkFrames.heightOf(size);
+        frame = BenchmarkFrames.nv21(width, height, 1);
+        planes = BenchmarkFrames.planes(frame, width, height);
+        gridAnalyzer = new GridColorAnalyzer(grid, grid);
+        tileAnalyzer = new FrameAnalyzer(1);
+    }
+
+    @Benchmark
+    public int singlePass() {
+        gridAnalyzer.analyze(frame, YuvDecoder.FORMAT_NV21, width, height, 0, 0, width, height, 1);
+        return gridAnalyzer.getColor(0);
+    }
+
+    @Benchmark
+    public int singlePassPlanes() {
+        gridAnalyzer.analyze(planes, 0, 0, width, height, 1);
+        return gridAnalyzer.getColor(0);
+    }
+
+    @Benchmark
+    public int singlePassStride4() {
+        gridAnalyzer.analyze(frame, YuvDecoder.FORMAT_NV21, width, height, 0, 0, width, height, 4);
+        return gridAnalyzer.getColor(0);
+    }
+
+    @Benchmark
+    public int analyzerPerTile() {
+        int colors = 0;
+        for (int row = 0; row < grid; row++) {
+            for (int column = 0; column < grid; column++) {
+                tileAnalyzer.setRegionOfInterest((float) column / grid, (float) row / grid,
+                        (float) (column + 1) / grid, (float) (row + 1) / grid);
+                tileAnalyzer.analyze(frame, YuvDecoder.FORMAT_NV21, width, height);
+                colors ^= tileAnalyzer.getColor(0);
+            }
+        }
+        return colors;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.ColorHistogram;
+import com.shai_mahfud.colorcore.YuvDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Building the histogram of a frame on the calling thread: from already decoded pixels, and from
+ * the raw frame. The baseline of ParallelHistogramBenchmark.
+ */
+@State(Scope.Thread)
+public class HistogramBenchmark {
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.HD, BenchmarkFrames.FULL_HD,
+            BenchmarkFrames.UHD})
+    public String size;
+
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private int[] pixels;
+    private final ColorHistogram histogram = new ColorHistogram();
+
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkFrames.widthOf(size);
+        height = BenchmarkFrames.heightOf(size);
+        frame = BenchmarkFrames.nv21(width, height, 2);
+        pixels = new int[width * height];
+        YuvDecoder.decodeToArgb(frame, YuvDecoder.FORMAT_NV21, width, height, pixels);
+    }
+
+    @Benchmark
+    public long fromPixels() {
+        histogram.clear();
+        histogram.addAll(pixels, 0, pixels.length);
+        return histogram.getTotalCount();
+    }
+
+    @Benchmark
+    public long fromFrame() {
+        histogram.clear();
+        YuvDecoder.decodeToArgb(frame, YuvDecoder.FORMAT_NV21, width, height, pixels);
+        histogram.addAll(pixels, 0, pixels.length);
+        return histogram.getTotalCount();
+    }
+}
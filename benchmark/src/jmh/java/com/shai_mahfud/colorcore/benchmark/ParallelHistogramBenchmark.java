@@ -0,0 +1,59 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.ColorHistogram;
+import com.shai_mahfud.colorcore.ParallelHistogramBuilder;
+import com.shai_mahfud.colorcore.YuvDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/*
+ * Building the histogram of a raw frame with ParallelHistogramBuilder, which decodes as it goes,
+ * on a given number of threads; HistogramBenchmark.fromFrame() is the same on the calling thread.
+ * How it scales with the threads is bounded by the cores of the machine running it.
+ */
+@State(Scope.Thread)
+public class ParallelHistogramBenchmark {
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.HD, BenchmarkFrames.FULL_HD,
+            BenchmarkFrames.UHD})
+    public String size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private final ColorHistogram histogram = new ColorHistogram();
+    private ParallelHistogramBuilder builder;
+
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkFrames.widthOf(size);
+        height = BenchmarkFrames.heightOf(size);
+        frame = BenchmarkFrames.nv21(width, height, 2);
+        builder = new ParallelHistogramBuilder(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        builder.shutdown();
+    }
+
+    @Benchmark
+    public long fromFrame() {
+        histogram.clear();
+        return builder.build(frame, YuvDecoder.FORMAT_NV21, width, height, 0, 0, width, height,
+                1, histogram, 1);
+    }
+}
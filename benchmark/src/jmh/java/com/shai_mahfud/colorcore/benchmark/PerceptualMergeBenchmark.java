@@ -0,0 +1,140 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.ColorHistogram;
+import com.shai_mahfud.colorcore.ColorPopulationTable;
+import com.shai_mahfud.colorcore.OkLab;
+import com.shai_mahfud.colorcore.PerceptualClusterer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/*
+ * Merging and ranking colors the way FrameAnalyzer does by default (exact matches only) against
+ * merging them perceptually first, for up to 4096 colors, the occupied bins of a busy frame. The
+ * colors are shades scattered around a few base colors, like the bins of a real scene. The OKLab
+ * conversion is also measured alone: through the tables, and with the pow() per channel they
+ * replace.
+ */
+@State(Scope.Thread)
+public class PerceptualMergeBenchmark {
+    private static final int TOP_K = 5;
+    private static final int BASE_COLORS = 12;
+    private static final float MERGE_DELTA_E = 0.05f;
+
+
+    @Param({"16", "256", "1024", "4096"})
+    public int colorCount;
+
+
+    private int[] colors;
+    private int[] bins;
+    private int[] populations;
+    private ColorPopulationTable table;
+    private final PerceptualClusterer clusterer = new PerceptualClusterer();
+    private int[] clusterColors;
+    private int[] clusterPopulations;
+    private final float[] lab = new float[3];
+    private final int[] topColors = new int[TOP_K];
+    private final int[] topPopulations = new int[TOP_K];
+
+
+    @Setup
+    public void setUp() {
+        colors = new int[colorCount];
+        bins = new int[colorCount];
+        populations = new int[colorCount];
+        Random random = new Random(colorCount);
+        int[] baseColors = new int[BASE_COLORS];
+        for (int i = 0; i < BASE_COLORS; i++) {
+            baseColors[i] = random.nextInt(0x1000000);
+        }
+        for (int i = 0; i < colorCount; i++) {
+            int base = baseColors[random.nextInt(BASE_COLORS)];
+            int red = jitter((base >> 16) & 0xFF, random);
+            int green = jitter((base >> 8) & 0xFF, random);
+            int blue = jitter(base & 0xFF, random);
+            colors[i] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+            bins[i] = ColorHistogram.toBin(colors[i]);
+            populations[i] = 1 + random.nextInt(5000);
+        }
+        table = new ColorPopulationTable(colorCount);
+        clusterColors = new int[colorCount];
+        clusterPopulations = new int[colorCount];
+        // Builds the bin table outside of the measurements
+        OkLab.fromBin(0, lab, 0);
+    }
+
+    @Benchmark
+    public int exactMerge() {
+        return rank(colors, populations, colorCount);
+    }
+
+    @Benchmark
+    public int perceptualMerge() {
+        int clusterCount = clusterer.cluster(colors, populations, colorCount, MERGE_DELTA_E,
+                clusterColors, clusterPopulations);
+        return rank(clusterColors, clusterPopulations, clusterCount);
+    }
+
+    @Benchmark
+    public float okLabFromArgb() {
+        float sum = 0;
+        for (int i = 0; i < colorCount; i++) {
+            OkLab.fromArgb(colors[i], lab, 0);
+            sum += lab[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float okLabFromBin() {
+        float sum = 0;
+        for (int i = 0; i < colorCount; i++) {
+            OkLab.fromBin(bins[i], lab, 0);
+            sum += lab[0];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double okLabWithoutTables() {
+        double sum = 0;
+        for (int i = 0; i < colorCount; i++) {
+            int color = colors[i];
+            double r = toLinear((color >> 16) & 0xFF);
+            double g = toLinear((color >> 8) & 0xFF);
+            double b = toLinear(color & 0xFF);
+            double l = Math.cbrt(0.4122214708 * r + 0.5363325363 * g + 0.0514459929 * b);
+            double m = Math.cbrt(0.2119034982 * r + 0.6806995451 * g + 0.1073969566 * b);
+            double s = Math.cbrt(0.0883024619 * r + 0.2817188376 * g + 0.6299787005 * b);
+            sum += 0.2104542553 * l + 0.7936177850 * m - 0.0040720468 * s;
+        }
+        return sum;
+    }
+
+    private int rank(int[] rankedColors, int[] rankedPopulations, int count) {
+        table.clear();
+        for (int i = 0; i < count; i++) {
+            table.add(rankedColors[i], rankedPopulations[i]);
+        }
+        return table.selectTop(TOP_K, topColors, topPopulations);
+    }
+
+    private static int jitter(int channel, Random random) {
+        return Math.max(0, Math.min(255, channel + random.nextInt(25) - 12));
+    }
+
+    private static double toLinear(int channel) {
+        double c = channel / 255.0;
+        return c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+    }
+}
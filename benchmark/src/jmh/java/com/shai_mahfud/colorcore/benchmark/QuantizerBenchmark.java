@@ -0,0 +1,77 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.ColorHistogram;
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+import com.shai_mahfud.colorcore.KMeansQuantizer;
+import com.shai_mahfud.colorcore.MedianCutQuantizer;
+import com.shai_mahfud.colorcore.YuvDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Quantizing a ready histogram into FrameAnalyzer.NUM_OF_COLORS swatches: median cut, k-means
+ * warm started from the previous call as it is from frame to frame, with a given number of
+ * iterations, and k-means seeded from scratch every time. The warm start alternates between two
+ * histograms of a slightly panned frame, so it has something to converge to. QuantizerQualityTest
+ * in :colorcore compares their error.
+ */
+@State(Scope.Thread)
+public class QuantizerBenchmark {
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.FULL_HD})
+    public String size;
+
+    @Param({"1", "2", "4"})
+    public int kMeansIterations;
+
+
+    private final ColorHistogram histogram = new ColorHistogram();
+    private final ColorHistogram pannedHistogram = new ColorHistogram();
+    private boolean panned;
+    private final MedianCutQuantizer quantizer = new MedianCutQuantizer();
+    private final KMeansQuantizer kMeansQuantizer = new KMeansQuantizer();
+    private final int[] colors = new int[FrameAnalyzer.NUM_OF_COLORS];
+    private final int[] populations = new int[FrameAnalyzer.NUM_OF_COLORS];
+
+
+    @Setup
+    public void setUp() {
+        int width = BenchmarkFrames.widthOf(size);
+        int height = BenchmarkFrames.heightOf(size);
+        int[] pixels = new int[width * height];
+        YuvDecoder.decodeToArgb(BenchmarkFrames.nv21(width, height, 3), YuvDecoder.FORMAT_NV21,
+                width, height, pixels);
+        histogram.addAll(pixels, 0, pixels.length);
+        // The same frame without its top rows, as if the camera tilted down a little
+        int offset = width * (height / 16);
+        pannedHistogram.addAll(pixels, offset, pixels.length - offset);
+        kMeansQuantizer.setMaxIterations(kMeansIterations);
+        kMeansQuantizer.quantize(histogram, FrameAnalyzer.NUM_OF_COLORS, colors, populations);
+    }
+
+    @Benchmark
+    public int medianCut() {
+        return quantizer.quantize(histogram, FrameAnalyzer.NUM_OF_COLORS, colors, populations);
+    }
+
+    @Benchmark
+    public int kMeansWarmStart() {
+        panned = !panned;
+        return kMeansQuantizer.quantize(panned ? pannedHistogram : histogram,
+                FrameAnalyzer.NUM_OF_COLORS, colors, populations);
+    }
+
+    @Benchmark
+    public int kMeansColdStart() {
+        kMeansQuantizer.reset();
+        return kMeansQuantizer.quantize(histogram, FrameAnalyzer.NUM_OF_COLORS, colors,
+                populations);
+    }
+}
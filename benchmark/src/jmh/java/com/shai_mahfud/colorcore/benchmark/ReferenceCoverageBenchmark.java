@@ -0,0 +1,73 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.FrameAnalyzer;
+import com.shai_mahfud.colorcore.ReferenceColorTable;
+import com.shai_mahfud.colorcore.YuvDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Measuring the coverage of 8 reference colors against finding the prominent colors of the same
+ * frame, and the cost of rebuilding the lookup table when the references change.
+ */
+@State(Scope.Thread)
+public class ReferenceCoverageBenchmark {
+    private static final int MAX_RESULTS = 8;
+    private static final int[] REFERENCES = {0xFFE53935, 0xFF1E88E5, 0xFF43A047, 0xFFFDD835,
+            0xFF8E24AA, 0xFFFB8C00, 0xFF212121, 0xFFFAFAFA};
+    private static final float MAX_DELTA_E = 0.1f;
+
+
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.FULL_HD})
+    public String size;
+
+    @Param({"1", "4"})
+    public int stride;
+
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private FrameAnalyzer prominentAnalyzer;
+    private FrameAnalyzer coverageAnalyzer;
+    private final ReferenceColorTable table = new ReferenceColorTable();
+
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkFrames.widthOf(size);
+        height = BenchmarkFrames.heightOf(size);
+        frame = BenchmarkFrames.nv21(width, height, 1);
+        prominentAnalyzer = new FrameAnalyzer(MAX_RESULTS);
+        prominentAnalyzer.setSampleStride(stride);
+        coverageAnalyzer = new FrameAnalyzer(MAX_RESULTS);
+        coverageAnalyzer.setSampleStride(stride);
+        coverageAnalyzer.setReferenceColors(REFERENCES, REFERENCES.length, MAX_DELTA_E);
+    }
+
+    @Benchmark
+    public int prominentColors() {
+        prominentAnalyzer.analyze(frame, YuvDecoder.FORMAT_NV21, width, height);
+        return prominentAnalyzer.getResultCount();
+    }
+
+    @Benchmark
+    public int referenceCoverage() {
+        coverageAnalyzer.analyze(frame, YuvDecoder.FORMAT_NV21, width, height);
+        return coverageAnalyzer.getPopulation(0);
+    }
+
+    @Benchmark
+    public int rebuildTable() {
+        table.set(REFERENCES, REFERENCES.length, MAX_DELTA_E);
+        return table.lookup(REFERENCES[0]);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.ColorPopulationTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/*
+ * Merging the swatches that share a color and selecting the top 5: the boxed TreeMap with a
+ * rescan per ranked item that FrameDiagnosisService had, against ColorPopulationTable.
+ */
+@State(Scope.Thread)
+public class SwatchRankingBenchmark {
+    private static final int TOP_K = 5;
+
+
+    @Param({"16", "64", "256"})
+    public int swatchCount;
+
+
+    private int[] swatchColors;
+    private int[] swatchPopulations;
+    private final Map<Integer, Integer> treeMap = new TreeMap<>();
+    private ColorPopulationTable table;
+    private final int[] topColors = new int[TOP_K];
+    private final int[] topPopulations = new int[TOP_K];
+
+
+    @Setup
+    public void setUp() {
+        swatchColors = new int[swatchCount];
+        swatchPopulations = new int[swatchCount];
+        Random random = new Random(swatchCount);
+        for (int i = 0; i < swatchCount; i++) {
+            // Roughly one swatch in four repeats the color of an earlier one
+            swatchColors[i] = i > 0 && random.nextInt(4) == 0 ?
+                    swatchColors[random.nextInt(i)] : 0xFF000000 | random.nextInt(0x1000000);
+            swatchPopulations[i] = 1 + random.nextInt(5000);
+        }
+        table = new ColorPopulationTable(swatchCount);
+    }
+
+    @Benchmark
+    public int treeMap() {
+        treeMap.clear();
+        for (int i = 0; i < swatchCount; i++) {
+            int rgb = swatchColors[i];
+            int swatchPop = swatchPopulations[i];
+            treeMap.put(rgb, (treeMap.containsKey(rgb)) ? treeMap.get(rgb) + swatchPop :
+                    swatchPop);
+        }
+        int i = 0;
+        while (i < TOP_K && !treeMap.isEmpty()) {
+            int mostProminentRgb = -1;
+            int maxPop = -1;
+            for (Integer rgb : treeMap.keySet()) {
+                int pop = treeMap.get(rgb);
+                if (pop > maxPop) {
+                    maxPop = pop;
+                    mostProminentRgb = rgb;
+                }
+            }
+            treeMap.remove(mostProminentRgb);
+            topColors[i++] = mostProminentRgb;
+        }
+        return i;
+    }
+
+    @Benchmark
+    public int populationTable() {
+        table.clear();
+        for (int i = 0; i < swatchCount; i++) {
+            table.add(swatchColors[i], swatchPopulations[i]);
+        }
+        return table.selectTop(TOP_K, topColors, topPopulations);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore.benchmark;
+
+import com.shai_mahfud.colorcore.YuvDecoder;
+import com.shai_mahfud.colorcore.YuvPlanes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Decoding a whole NV21 frame to ARGB, and sampling every 4th pixel of every 4th row. The same
+ * for the YUV_420_888 planes of a Camera2 Image, read in place, and, for comparison, for planes
+ * first copied into a byte array the way the legacy camera API hands frames over.
+ */
+@State(Scope.Thread)
+public class YuvDecodeBenchmark {
+    @Param({BenchmarkFrames.VGA, BenchmarkFrames.HD, BenchmarkFrames.FULL_HD})
+    public String size;
+
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private int[] pixels;
+    private YuvPlanes planes;
+    private byte[] copy;
+
+
+    @Setup
+    public void setUp() {
+        width = BenchmarkFrames.widthOf(size);
+        height = BenchmarkFrames.heightOf(size);
+        frame = BenchmarkFrames.nv21(width, height, 1);
+        pixels = new int[width * height];
+        planes = BenchmarkFrames.planes(frame, width, height);
+        copy = new byte[frame.length];
+    }
+
+    @Benchmark
+    public int[] decodeFullFrame() {
+        YuvDecoder.decodeToArgb(frame, YuvDecoder.FORMAT_NV21, width, height, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public int sampleStride4() {
+        return YuvDecoder.sampleToArgb(frame, YuvDecoder.FORMAT_NV21, width, height, 0, 0, width,
+                height, 4, pixels);
+    }
+
+    @Benchmark
+    public int[] decodePlanesFullFrame() {
+        YuvDecoder.decodeToArgb(planes, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public int samplePlanesStride4() {
+        return YuvDecoder.sampleToArgb(planes, 0, 0, width, height, 4, pixels);
+    }
+
+    // Packs the planes into an NV21 array, then decodes it
+    @Benchmark
+    public int[] copyPlanesThenDecode() {
+        ByteBuffer y = planes.getBuffer(YuvPlanes.PLANE_Y).duplicate();
+        ByteBuffer v = planes.getBuffer(YuvPlanes.PLANE_V).duplicate();
+        int rowStride = planes.getRowStride(YuvPlanes.PLANE_Y);
+        for (int row = 0; row < height; row++) {
+            y.position(row * rowStride);
+            y.get(copy, row * width, width);
+        }
+        for (int row = 0; row < height / 2; row++) {
+            v.position(row * rowStride);
+            v.get(copy, width * height + row * width, width);
+        }
+        YuvDecoder.decodeToArgb(copy, YuvDecoder.FORMAT_NV21, width, height, pixels);
+        return pixels;
+    }
+}
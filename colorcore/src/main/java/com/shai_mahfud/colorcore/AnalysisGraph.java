@@ -0,0 +1,398 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Runs several analyses on every frame while decoding it only once. The graph samples the frame
+ * into a SampledFrame, with its own region of interest and stride, and every registered analysis
+ * gets that same frame: adding the grid colors of a GridColorAnalyzer or the brightness of the
+ * frame to the prominent colors of a FrameAnalyzer doesn't cost another decode.
+ *
+ * With worker threads, the analyses run in parallel, and analyze() returns as soon as the frame is
+ * decoded, so the caller can give the frame's buffer back to the camera right away. The decoded
+ * frame is recycled once the last analysis is done with it. An analysis still busy with an earlier
+ * frame when a new one comes skips the new one: a slow analysis only lowers its own frame rate,
+ * never that of the others, and a frame every analysis skips isn't even decoded. Without worker
+ * threads, the analyses run one after the other on the thread calling analyze() before it
+ * returns, and none of them skips.
+ *
+ * Every analysis has its own PipelineMetrics: the frames it received, skipped, analyzed and failed
+ * to analyze, how long they waited for a worker (STAGE_QUEUE) and how long it took
+ * (STAGE_ANALYSIS). The decode times go to the graph's metrics, if set.
+ *
+ * There are at most as many decoded frames as analyses, plus the one being decoded, and they are
+ * pooled, so analyzing frames of the same size allocates nothing. analyze() is called from one
+ * thread, like FrameAnalyzer.analyze(); the other methods may be called from any thread.
+ */
+public class AnalysisGraph {
+    public interface Analysis {
+        /*
+         * Called with every frame the analysis doesn't skip, on a worker thread of the graph, or
+         * on the thread calling analyze() if it has none. The frame is shared with the other
+         * analyses, so it must not be written to, and is only valid until this returns. An
+         * analysis is never called again before it returns. If it throws a RuntimeException, only
+         * that frame is lost: it counts as failed in the analysis's metrics, and the analysis
+         * gets the next frames as usual.
+         */
+        void analyze(SampledFrame frame);
+    }
+
+
+    // A registered analysis, and the frame it was given until it's done with it
+    private static class Node {
+        final Analysis analysis;
+        final PipelineMetrics metrics = new PipelineMetrics();
+        // Guarded by the lock
+        SampledFrame frame;
+        long queuedNanos;
+
+
+        Node(Analysis analysis) {
+            this.analysis = analysis;
+        }
+    }
+
+
+    private final Object lock = new Object();
+    private final Thread[] workers;
+    private volatile PipelineMetrics metrics;
+
+    // Guarded by the lock
+    private final List<Node> nodes = new ArrayList<>();
+    // Analyses that were given a frame and wait for a worker to run them
+    private final ArrayDeque<Node> readyNodes = new ArrayDeque<>();
+    private final ArrayDeque<SampledFrame> freeFrames = new ArrayDeque<>();
+    private boolean running = true;
+    private long frameCount;
+    // The sampling configuration, as fractions of the frame size
+    private float roiLeft = 0;
+    private float roiTop = 0;
+    private float roiRight = 1;
+    private float roiBottom = 1;
+    private int sampleStride = 1;
+
+    // The sampled rectangle of the current frame, only used by the thread calling analyze()
+    private int frameRight;
+    private int frameBottom;
+
+
+    // Runs the analyses on the given number of worker threads, or on the caller's thread with 0
+    public AnalysisGraph(int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runAnalyses();
+                }
+            }, "AnalysisGraph-" + i);
+            // Like the threads of ParallelHistogramBuilder, they never keep the process alive
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+
+    // Adds an analysis, which gets the frames from the next one on. Returns its index.
+    public int register(Analysis analysis) {
+        if (analysis == null) {
+            throw new IllegalArgumentException("No analysis");
+        }
+        synchronized (lock) {
+            nodes.add(new Node(analysis));
+            return nodes.size() - 1;
+        }
+    }
+
+    public int getAnalysisCount() {
+        synchronized (lock) {
+            return nodes.size();
+        }
+    }
+
+    // The frames and timing of the analysis with the given index
+    public PipelineMetrics getMetrics(int analysis) {
+        synchronized (lock) {
+            return nodes.get(analysis).metrics;
+        }
+    }
+
+    // Records the decode time of every frame; null stops recording
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Like FrameAnalyzer.setRegionOfInterest(), from the next frame
+    public void setRegionOfInterest(float left, float top, float right, float bottom) {
+        if (left < 0 || top < 0 || right > 1 || bottom > 1 || left >= right || top >= bottom) {
+            throw new IllegalArgumentException("Invalid region of interest");
+        }
+        synchronized (lock) {
+            roiLeft = left;
+            roiTop = top;
+            roiRight = right;
+            roiBottom = bottom;
+        }
+    }
+
+    public void clearRegionOfInterest() {
+        setRegionOfInterest(0, 0, 1, 1);
+    }
+
+    // Only decodes every stride-th pixel of every stride-th row, from the next frame
+    public void setSampleStride(int stride) {
+        if (stride <= 0) {
+            throw new IllegalArgumentException("Invalid stride: " + stride);
+        }
+        synchronized (lock) {
+            sampleStride = stride;
+        }
+    }
+
+    /*
+     * Decodes a frame in one of the formats YuvDecoder supports and hands it to the analyses.
+     * Returns false if the frame can't be decoded. The frame's bytes aren't used anymore once this
+     * returns.
+     */
+    public boolean analyze(byte[] data, int format, int width, int height) {
+        if (!YuvDecoder.isSupportedFormat(format)) {
+            return false;
+        }
+        try {
+            YuvDecoder.checkFrame(data, format, width, height);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        SampledFrame frame = beginFrame(width, height);
+        if (frame == null) {
+            return true;
+        }
+        long startNanos = System.nanoTime();
+        if (isWholeFrame(frame)) {
+            YuvDecoder.decodeToArgb(data, format, width, height, frame.getPixels());
+        } else {
+            YuvDecoder.sampleToArgb(data, format, width, height, frame.getLeft(), frame.getTop(),
+                    frameRight, frameBottom, frame.getStride(), frame.getPixels());
+        }
+        dispatch(frame, startNanos);
+        return true;
+    }
+
+    // Like analyze() for a byte array, for a YUV_420_888 frame given as planes
+    public boolean analyze(YuvPlanes planes) {
+        try {
+            planes.check();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        SampledFrame frame = beginFrame(planes.getWidth(), planes.getHeight());
+        if (frame == null) {
+            return true;
+        }
+        long startNanos = System.nanoTime();
+        if (isWholeFrame(frame)) {
+            YuvDecoder.decodeToArgb(planes, frame.getPixels());
+        } else {
+            YuvDecoder.sampleToArgb(planes, frame.getLeft(), frame.getTop(), frameRight,
+                    frameBottom, frame.getStride(), frame.getPixels());
+        }
+        dispatch(frame, startNanos);
+        return true;
+    }
+
+    /*
+     * Whether the analysis is working on a frame, or waiting for a worker to, in which case it
+     * skips the next frame.
+     */
+    public boolean isBusy(int analysis) {
+        synchronized (lock) {
+            return nodes.get(analysis).frame != null;
+        }
+    }
+
+    // Waits until every analysis is done with the frames it was given
+    public void awaitIdle() throws InterruptedException {
+        synchronized (lock) {
+            while (running && !isIdle()) {
+                lock.wait();
+            }
+        }
+    }
+
+    /*
+     * Stops the worker threads once the analyses they are running return. Analyses still waiting
+     * for a worker don't get their frame. The graph can't analyze frames anymore.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            running = false;
+            Node node;
+            while ((node = readyNodes.poll()) != null) {
+                release(node);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /*
+     * Gives a frame to every analysis that isn't busy with an earlier one, and works out which
+     * pixels of the frame are sampled. Null if every analysis skips the frame.
+     */
+    private SampledFrame beginFrame(int width, int height) {
+        SampledFrame frame;
+        long frameNumber;
+        int left, top, stride;
+        synchronized (lock) {
+            if (!running) {
+                throw new IllegalStateException("The graph was shut down");
+            }
+            frame = freeFrames.poll();
+            if (frame == null) {
+                // Every analysis holds a frame at most, so this stops once there is one per
+                // analysis
+                frame = new SampledFrame();
+            }
+            for (int i = 0; i < nodes.size(); i++) {
+                Node node = nodes.get(i);
+                node.metrics.increment(PipelineMetrics.COUNTER_FRAMES_RECEIVED);
+                if (node.frame != null) {
+                    node.metrics.increment(PipelineMetrics.COUNTER_FRAMES_SKIPPED);
+                } else {
+                    node.frame = frame;
+                    frame.pendingAnalyses++;
+                }
+            }
+            if (frame.pendingAnalyses == 0) {
+                freeFrames.add(frame);
+                return null;
+            }
+            frameNumber = ++frameCount;
+
+            left = (int) (roiLeft * width);
+            top = (int) (roiTop * height);
+            frameRight = Math.min(width, Math.max(left + 1, (int) Math.ceil(roiRight * width)));
+            frameBottom = Math.min(height, Math.max(top + 1,
+                    (int) Math.ceil(roiBottom * height)));
+            stride = sampleStride;
+        }
+        frame.reset(width, height, left, top, frameRight, frameBottom, stride, frameNumber);
+        return frame;
+    }
+
+    private boolean isWholeFrame(SampledFrame frame) {
+        return frame.getStride() == 1 && frame.getLeft() == 0 && frame.getTop() == 0 &&
+                frameRight == frame.getFrameWidth() && frameBottom == frame.getFrameHeight();
+    }
+
+    // Lets the analyses given the frame in beginFrame() run on it, now that it's decoded
+    private void dispatch(SampledFrame frame, long startNanos) {
+        long decodedNanos = System.nanoTime();
+        PipelineMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.recordLatency(PipelineMetrics.STAGE_DECODE, decodedNanos - startNanos);
+        }
+
+        synchronized (lock) {
+            for (int i = 0; i < nodes.size(); i++) {
+                Node node = nodes.get(i);
+                if (node.frame != frame) {
+                    continue;
+                }
+                if (running) {
+                    node.queuedNanos = decodedNanos;
+                    readyNodes.add(node);
+                } else {
+                    release(node); // Shut down while decoding
+                }
+            }
+            lock.notifyAll();
+        }
+
+        if (workers.length == 0) {
+            while (true) {
+                Node node;
+                synchronized (lock) {
+                    node = readyNodes.poll();
+                }
+                if (node == null) {
+                    break;
+                }
+                run(node);
+            }
+        }
+    }
+
+    private void runAnalyses() {
+        while (true) {
+            Node node;
+            synchronized (lock) {
+                while (running && readyNodes.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                node = readyNodes.poll();
+            }
+            run(node);
+        }
+    }
+
+    private void run(Node node) {
+        SampledFrame frame;
+        long queuedNanos;
+        synchronized (lock) {
+            frame = node.frame;
+            queuedNanos = node.queuedNanos;
+        }
+        long startNanos = System.nanoTime();
+        node.metrics.recordLatency(PipelineMetrics.STAGE_QUEUE, startNanos - queuedNanos);
+        try {
+            node.analysis.analyze(frame);
+            node.metrics.increment(PipelineMetrics.COUNTER_FRAMES_ANALYZED);
+            node.metrics.recordLatency(PipelineMetrics.STAGE_ANALYSIS,
+                    System.nanoTime() - startNanos);
+        } catch (RuntimeException e) {
+            // Only this frame is lost: a worker that died would leave the analyses it would have
+            // run waiting, and the caller of analyze() shouldn't fail for one analysis either
+            node.metrics.increment(PipelineMetrics.COUNTER_FRAMES_FAILED);
+        } finally {
+            synchronized (lock) {
+                release(node);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // The analysis is done with its frame. Must be called while holding the lock.
+    private void release(Node node) {
+        SampledFrame frame = node.frame;
+        node.frame = null;
+        if (--frame.pendingAnalyses == 0) {
+            freeFrames.add(frame);
+        }
+    }
+
+    // Must be called while holding the lock
+    private boolean isIdle() {
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i).frame != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * The ranked colors of a frame, copied out of a FrameAnalyzer so another thread can show them
+ * while the analyzer moves on to the next frame. It's plain primitive arrays, sized once, so
+ * filling it again for every frame allocates nothing. ColorResultExchanger hands instances
+ * between the threads.
+ *
+ * It also holds the grid of dominant colors when the analyzer has one. Its array is sized for the
+ * largest grid seen so far, so it's only allocated again when the grid grows.
+ */
+public class ColorAnalysisResult {
+    private final int[] colors;
+    private final int[] populations;
+    private int count;
+    private long totalPopulation;
+    private long timestampNanos;
+    private int[] gridColors = new int[0];
+    private int gridColumns;
+    private int gridRows;
+    private int gridRegionWidth;
+    private int gridRegionHeight;
+
+
+    public ColorAnalysisResult(int capacity) {
+        colors = new int[capacity];
+        populations = new int[capacity];
+    }
+
+
+    // Copies the results of the analyzer's last frame, as many as fit
+    public void set(FrameAnalyzer analyzer) {
+        count = Math.min(colors.length, analyzer.getResultCount());
+        for (int i = 0; i < count; i++) {
+            colors[i] = analyzer.getColor(i);
+            populations[i] = analyzer.getPopulation(i);
+        }
+        totalPopulation = analyzer.getTotalPopulation();
+
+        gridColumns = analyzer.getGridColumns();
+        gridRows = analyzer.getGridRows();
+        int tiles = gridColumns * gridRows;
+        if (gridColors.length < tiles) {
+            gridColors = new int[tiles];
+        }
+        for (int tile = 0; tile < tiles; tile++) {
+            gridColors[tile] = analyzer.getGridColor(tile);
+        }
+        gridRegionWidth = analyzer.getGridRegionWidth();
+        gridRegionHeight = analyzer.getGridRegionHeight();
+    }
+
+    public void clear() {
+        count = 0;
+        gridColumns = 0;
+        gridRows = 0;
+        totalPopulation = 0;
+        timestampNanos = 0;
+    }
+
+    // When the results were produced, in System.nanoTime(), so the reader can tell how late it is
+    public void setTimestampNanos(long nanos) {
+        timestampNanos = nanos;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getCapacity() {
+        return colors.length;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getColor(int index) {
+        return colors[index];
+    }
+
+    public int getPopulation(int index) {
+        return populations[index];
+    }
+
+    public long getTotalPopulation() {
+        return totalPopulation;
+    }
+
+    // The columns of the grid, 0 if the frame has none
+    public int getGridColumns() {
+        return gridColumns;
+    }
+
+    public int getGridRows() {
+        return gridRows;
+    }
+
+    // The dominant color of tile row * getGridColumns() + column
+    public int getGridColor(int tile) {
+        return gridColors[tile];
+    }
+
+    // The size in pixels of the part of the frame the grid covers
+    public int getGridRegionWidth() {
+        return gridRegionWidth;
+    }
+
+    public int getGridRegionHeight() {
+        return gridRegionHeight;
+    }
+
+    /*
+     * Appends the share of color index, in percent with two decimals and a % sign (like "12.35%"),
+     * to out. Unlike String.format() it creates no objects, so the UI can format into the same
+     * StringBuilder for every frame.
+     */
+    public void appendPercentage(int index, StringBuilder out) {
+        // In hundredths of a percent, rounded half up
+        long basisPoints = totalPopulation > 0 ?
+                (populations[index] * 20000L / totalPopulation + 1) / 2 : 0;
+        out.append(basisPoints / 100).append('.');
+        long fraction = basisPoints % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction).append('%');
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * A histogram of colors, quantized to 5 bits per channel like Palette does (32768 bins). Besides
+ * the counts, it keeps the list of bins that are in use, so clearing it between frames only
+ * touches those bins instead of the whole table.
+ */
+public class ColorHistogram {
+    public static final int BITS_PER_CHANNEL = 5;
+    public static final int BIN_COUNT = 1 << (3 * BITS_PER_CHANNEL);
+    public static final int CHANNEL_MAX = (1 << BITS_PER_CHANNEL) - 1;
+
+
+    // The bins are sorted 8 bits at a time, in two passes
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+
+    private final int[] counts = new int[BIN_COUNT];
+    private final int[] activeBins = new int[BIN_COUNT];
+    private int activeBinCount;
+    private long totalCount;
+    private final int[] radixCounts = new int[RADIX];
+
+
+    public void clear() {
+        for (int i = 0; i < activeBinCount; i++) {
+            counts[activeBins[i]] = 0;
+        }
+        activeBinCount = 0;
+        totalCount = 0;
+    }
+
+    public void add(int argb) {
+        addToBin(toBin(argb), 1);
+    }
+
+    public void addAll(int[] pixels, int offset, int count) {
+        for (int i = offset, end = offset + count; i < end; i++) {
+            addToBin(toBin(pixels[i]), 1);
+        }
+    }
+
+    // Adds every pixel with the given weight, e.g. to mix frames of different sample counts
+    public void addAll(int[] pixels, int offset, int count, int weight) {
+        for (int i = offset, end = offset + count; i < end; i++) {
+            addToBin(toBin(pixels[i]), weight);
+        }
+    }
+
+    // Adds the counts of another histogram, multiplied by weight
+    public void addAll(ColorHistogram other, int weight) {
+        for (int i = 0; i < other.activeBinCount; i++) {
+            int bin = other.activeBins[i];
+            addToBin(bin, other.counts[bin] * weight);
+        }
+    }
+
+    public void addToBin(int bin, int weight) {
+        if (counts[bin] == 0) {
+            activeBins[activeBinCount++] = bin;
+        }
+        counts[bin] += weight;
+        totalCount += weight;
+    }
+
+    /*
+     * Multiplies every count by numerator / denominator, rounding down, and forgets the bins that
+     * drop to 0. Used to decay the histogram over time. Only the bins in use are touched.
+     */
+    public void scale(int numerator, int denominator) {
+        int keptBins = 0;
+        long total = 0;
+        for (int i = 0; i < activeBinCount; i++) {
+            int bin = activeBins[i];
+            int count = (int) ((long) counts[bin] * numerator / denominator);
+            counts[bin] = count;
+            if (count > 0) {
+                activeBins[keptBins++] = bin;
+                total += count;
+            }
+        }
+        activeBinCount = keptBins;
+        totalCount = total;
+    }
+
+    public int getCount(int bin) {
+        return counts[bin];
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public int getActiveBinCount() {
+        return activeBinCount;
+    }
+
+    // The bins in use are 0 to getActiveBinCount() - 1, in no particular order
+    public int getActiveBin(int index) {
+        return activeBins[index];
+    }
+
+    /*
+     * Copies the bins in use to out in increasing order and returns their number, so what is
+     * computed from them doesn't depend on the order the colors were first seen in. scratch must
+     * be as long as out. Sorting the bins in use is cheaper than scanning all BIN_COUNT of them,
+     * unless a good part of them is in use.
+     */
+    public int copySortedActiveBins(int[] out, int[] scratch) {
+        if (activeBinCount >= BIN_COUNT / 8) {
+            int count = 0;
+            for (int bin = 0; bin < BIN_COUNT; bin++) {
+                if (counts[bin] > 0) {
+                    out[count++] = bin;
+                }
+            }
+            return count;
+        }
+        radixPass(activeBins, scratch, 0);
+        radixPass(scratch, out, RADIX_BITS);
+        return activeBinCount;
+    }
+
+    public static int toBin(int argb) {
+        int r = (argb >> (16 + 8 - BITS_PER_CHANNEL)) & CHANNEL_MAX;
+        int g = (argb >> (8 + 8 - BITS_PER_CHANNEL)) & CHANNEL_MAX;
+        int b = (argb >> (8 - BITS_PER_CHANNEL)) & CHANNEL_MAX;
+        return (r << (2 * BITS_PER_CHANNEL)) | (g << BITS_PER_CHANNEL) | b;
+    }
+
+    public static int redOf(int bin) {
+        return (bin >> (2 * BITS_PER_CHANNEL)) & CHANNEL_MAX;
+    }
+
+    public static int greenOf(int bin) {
+        return (bin >> BITS_PER_CHANNEL) & CHANNEL_MAX;
+    }
+
+    public static int blueOf(int bin) {
+        return bin & CHANNEL_MAX;
+    }
+
+    /*
+     * Widens 5 bit channels back to 8 bits by repeating the high bits, so 31 maps to 255 and the
+     * whole range is used.
+     */
+    public static int toArgb(int red, int green, int blue) {
+        return 0xFF000000 | (widen(red) << 16) | (widen(green) << 8) | widen(blue);
+    }
+
+    // A stable counting sort of the active bins by the RADIX_BITS bits at shift
+    private void radixPass(int[] from, int[] to, int shift) {
+        for (int i = 0; i < RADIX; i++) {
+            radixCounts[i] = 0;
+        }
+        for (int i = 0; i < activeBinCount; i++) {
+            radixCounts[(from[i] >> shift) & (RADIX - 1)]++;
+        }
+        int position = 0;
+        for (int i = 0; i < RADIX; i++) {
+            int count = radixCounts[i];
+            radixCounts[i] = position;
+            position += count;
+        }
+        for (int i = 0; i < activeBinCount; i++) {
+            int bin = from[i];
+            to[radixCounts[(bin >> shift) & (RADIX - 1)]++] = bin;
+        }
+    }
+
+    private static int widen(int channel) {
+        return (channel << (8 - BITS_PER_CHANNEL)) | (channel >> (2 * BITS_PER_CHANNEL - 8));
+    }
+}
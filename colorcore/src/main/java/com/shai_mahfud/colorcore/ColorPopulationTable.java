@@ -0,0 +1,172 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * Sums populations per color without boxing. The entries are stored densely in two parallel
+ * arrays, and an open addressing table (linear probing) maps each color to its entry. The table
+ * holds entry index + 1, so 0 marks an empty slot and every int is a valid color.
+ */
+public class ColorPopulationTable {
+    private int[] colors;
+    private int[] populations;
+    private int size;
+    private int[] slots;
+    private int slotMask;
+    // Scratch min-heap of entry indexes for selectTop()
+    private int[] heap;
+
+
+    public ColorPopulationTable(int expectedSize) {
+        allocate(Math.max(expectedSize, 1));
+    }
+
+
+    public void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = 0;
+        }
+        size = 0;
+    }
+
+    public void add(int color, int population) {
+        int slot = mix(color) & slotMask;
+        while (slots[slot] != 0) {
+            int index = slots[slot] - 1;
+            if (colors[index] == color) {
+                populations[index] += population;
+                return;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+
+        if (size == colors.length) {
+            grow();
+            add(color, population);
+            return;
+        }
+        colors[size] = color;
+        populations[size] = population;
+        size++;
+        slots[slot] = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getColor(int index) {
+        return colors[index];
+    }
+
+    public int getPopulation(int index) {
+        return populations[index];
+    }
+
+    /*
+     * Writes the k most populated colors, most populated first, into outColors and
+     * outPopulations and returns how many were written. Ties go to the smaller color value, the
+     * same order the TreeMap based selection used to produce. A min-heap of the best k entries
+     * seen so far gives the answer in a single pass over the entries.
+     */
+    public int selectTop(int k, int[] outColors, int[] outPopulations) {
+        k = Math.min(k, size);
+        if (k <= 0) {
+            return 0;
+        }
+        if (heap.length < k) {
+            heap = new int[colors.length];
+        }
+
+        int heapSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (heapSize < k) {
+                heap[heapSize] = i;
+                siftUp(heapSize);
+                heapSize++;
+            } else if (ranksBelow(heap[0], i)) {
+                heap[0] = i;
+                siftDown(0, heapSize);
+            }
+        }
+
+        // Popping the minimum repeatedly yields the entries from the least to the most populated
+        while (heapSize > 0) {
+            int index = heap[0];
+            heapSize--;
+            heap[0] = heap[heapSize];
+            siftDown(0, heapSize);
+            outColors[heapSize] = colors[index];
+            outPopulations[heapSize] = populations[index];
+        }
+        return k;
+    }
+
+    private boolean ranksBelow(int a, int b) {
+        if (populations[a] != populations[b]) {
+            return populations[a] < populations[b];
+        }
+        return colors[a] > colors[b];
+    }
+
+    private void siftUp(int position) {
+        int entry = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >> 1;
+            if (!ranksBelow(entry, heap[parent])) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = entry;
+    }
+
+    private void siftDown(int position, int heapSize) {
+        int entry = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && ranksBelow(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!ranksBelow(heap[child], entry)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = entry;
+    }
+
+    private void grow() {
+        int[] oldColors = colors;
+        int[] oldPopulations = populations;
+        int oldSize = size;
+        allocate(oldColors.length * 2);
+        for (int i = 0; i < oldSize; i++) {
+            add(oldColors[i], oldPopulations[i]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        colors = new int[capacity];
+        populations = new int[capacity];
+        heap = new int[capacity];
+        // Keep the load factor at or below 0.5
+        int slotCount = Integer.highestOneBit(capacity * 2 - 1) * 2;
+        slots = new int[slotCount];
+        slotMask = slotCount - 1;
+        size = 0;
+    }
+
+    // Spreads the bits of the color, so similar colors don't end up in neighbouring slots
+    private static int mix(int color) {
+        int h = color * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
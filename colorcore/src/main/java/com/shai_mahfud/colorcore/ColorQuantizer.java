@@ -0,0 +1,22 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * Reduces the colors of a frame to a small set of representative colors, each with the number of
+ * pixels it stands for. Implementations are expected to keep their working buffers between calls,
+ * because quantize() runs once for every analyzed preview frame. They are not thread safe.
+ */
+public interface ColorQuantizer {
+    /*
+     * Quantizes pixels[0, count), given as packed ARGB ints. Writes at most maxColors colors and
+     * their populations into outColors and outPopulations, which must hold at least maxColors
+     * items, and returns the number of colors written.
+     */
+    int quantize(int[] pixels, int count, int maxColors, int[] outColors, int[] outPopulations);
+
+    // Same as above, for callers that already built the color histogram themselves
+    int quantize(ColorHistogram histogram, int maxColors, int[] outColors, int[] outPopulations);
+}
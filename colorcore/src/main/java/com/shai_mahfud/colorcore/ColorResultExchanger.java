@@ -0,0 +1,63 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * Passes ColorAnalysisResults from the analysis thread to the UI thread without allocating and
+ * without either side ever waiting for the other. There are three results: the analysis thread
+ * fills its own, the UI thread shows its own, and the third holds the latest published result.
+ * Publishing and acquiring only swap references, under a lock held for a few instructions.
+ *
+ * If the analysis publishes faster than the UI acquires, the UI simply gets the latest result.
+ * publish() returns true only when the UI has taken the previous result, so the UI needs to be
+ * notified once per result it will actually show instead of once per frame.
+ */
+public class ColorResultExchanger {
+    private ColorAnalysisResult writeBuffer;
+    private ColorAnalysisResult latest;
+    private ColorAnalysisResult readBuffer;
+    private boolean latestIsNew;
+
+
+    public ColorResultExchanger(int capacity) {
+        writeBuffer = new ColorAnalysisResult(capacity);
+        latest = new ColorAnalysisResult(capacity);
+        readBuffer = new ColorAnalysisResult(capacity);
+    }
+
+
+    // The result the analysis thread fills before calling publish(). Owned by that thread.
+    public ColorAnalysisResult getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    /*
+     * Makes the write buffer the latest result. Returns true if the reader should be notified,
+     * i.e. it had already acquired the previous result.
+     */
+    public synchronized boolean publish() {
+        ColorAnalysisResult published = writeBuffer;
+        writeBuffer = latest;
+        latest = published;
+        boolean notify = !latestIsNew;
+        latestIsNew = true;
+        return notify;
+    }
+
+    /*
+     * Called by the UI thread. Returns the latest result, which stays valid until the next call,
+     * or null if nothing was published since the last call.
+     */
+    public synchronized ColorAnalysisResult acquire() {
+        if (!latestIsNew) {
+            return null;
+        }
+        ColorAnalysisResult acquired = latest;
+        latest = readBuffer;
+        readBuffer = acquired;
+        latestIsNew = false;
+        return acquired;
+    }
+}
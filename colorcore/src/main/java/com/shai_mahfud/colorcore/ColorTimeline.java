@@ -0,0 +1,514 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * The history of the ranked colors over a session, in memory. Every analyzed frame is appended
+ * with its timestamp, colors and populations, and goes into three tiers:
+ *
+ * - TIER_FRAMES keeps the frames themselves, the last frameCapacity of them.
+ * - TIER_SECONDS keeps one entry per second, the last secondCapacity seconds.
+ * - TIER_MINUTES keeps one entry per minute, the last minuteCapacity minutes.
+ *
+ * A downsampled entry sums the populations of its frames per color, merging the colors that fall
+ * in the same ColorHistogram bin into their population-weighted average, and keeps the most
+ * populated ones. Its total is the sum of the totals, so the shares are of the whole period.
+ * Entries are stamped with the start of their period, counted from the origin of the clock the
+ * timestamps come from; a period is only written once a frame of the next one arrives, or on
+ * flush(). With the default capacities the three tiers take about 1.5 MB for 16 colors and cover
+ * a minute of frames at 30 fps, an hour of seconds and a day of minutes.
+ *
+ * Every tier is a ring of primitive arrays allocated once, so appending allocates nothing. There
+ * must be a single writer, e.g. the analysis thread, but any number of threads may read at the
+ * same time through a Cursor, without locks: every slot has a version the writer makes odd while
+ * it rewrites the slot, like a seqlock, and a reader that sees the version change while it copies
+ * an entry skips the entry, since it was overwritten by a newer one. The arrays are atomic arrays
+ * written with lazySet(), so a reader that sees a version also sees what was written before it.
+ *
+ * exportCsv() and exportBinary() stream a range of a tier to a file or any other stream. The
+ * binary format is MAGIC, VERSION and the maximum number of colors, then one record per entry,
+ * all big endian:
+ *   long timestamp    in nanoseconds
+ *   long total        the total population
+ *   int count         the number of colors that follow
+ *   count times: int color (ARGB), long population
+ */
+public class ColorTimeline {
+    public static final int TIER_FRAMES = 0;
+    public static final int TIER_SECONDS = 1;
+    public static final int TIER_MINUTES = 2;
+    public static final int TIER_COUNT = 3;
+    public static final int DEFAULT_FRAME_CAPACITY = 1800;
+    public static final int DEFAULT_SECOND_CAPACITY = 3600;
+    public static final int DEFAULT_MINUTE_CAPACITY = 1440;
+    static final int MAGIC = 0x5043544C; // "PCTL"
+    static final int VERSION = 1;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    private static final long[] TIER_PERIOD_NANOS = {0, NANOS_PER_SECOND, NANOS_PER_SECOND * 60};
+    // How many distinct colors a period can gather per color it keeps. Beyond that, the
+    // populations of new colors only count in the total.
+    private static final int ACCUMULATOR_COLORS_PER_COLOR = 8;
+
+
+    /*
+     * Reads a range of a tier, an entry at a time: query() and then next() until it returns
+     * false, reading the entry through the getters in between. A cursor belongs to one reader
+     * thread and can be reused for any number of queries without allocating.
+     */
+    public static class Cursor {
+        private final ColorTimeline timeline;
+        private final int[] colors;
+        private final long[] populations;
+        private Tier tier;
+        private long nextEntry;
+        private long endEntry;
+        private long fromNanos;
+        private long toNanos;
+        private long timestampNanos;
+        private long totalPopulation;
+        private int count;
+
+
+        public Cursor(ColorTimeline timeline) {
+            this.timeline = timeline;
+            colors = new int[timeline.maxColors];
+            populations = new long[timeline.maxColors];
+        }
+
+
+        /*
+         * Starts reading the entries of a tier stamped from fromNanos to toNanos, both included,
+         * oldest first. Entries appended after this call aren't included.
+         */
+        public void query(int tier, long fromNanos, long toNanos) {
+            this.tier = timeline.tiers[tier];
+            endEntry = this.tier.written;
+            nextEntry = this.tier.findFirst(fromNanos, endEntry);
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+            count = 0;
+        }
+
+        /*
+         * Moves to the next entry of the range and returns true, or returns false at its end.
+         * Entries the writer overwrites before they are read are skipped, and so are entries
+         * stamped before the range, where the search started early because the writer overwrote
+         * the entries it looked at.
+         */
+        public boolean next() {
+            while (nextEntry < endEntry) {
+                long entry = nextEntry++;
+                if (!tier.read(entry, this)) {
+                    // Overwritten already. Jump to the oldest entry that may still be there.
+                    nextEntry = Math.max(nextEntry, tier.written - tier.capacity);
+                    continue;
+                }
+                if (timestampNanos < fromNanos) {
+                    continue;
+                }
+                if (timestampNanos > toNanos) {
+                    nextEntry = endEntry;
+                    return false;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public long getTotalPopulation() {
+            return totalPopulation;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getColor(int index) {
+            return colors[index];
+        }
+
+        public long getPopulation(int index) {
+            return populations[index];
+        }
+    }
+
+
+    // A ring of entries, each a slot of the arrays
+    private static final class Tier {
+        final int capacity;
+        final int maxColors;
+        // 2 * entry + 1 while the writer fills the slot with the entry, 2 * entry + 2 once done
+        final AtomicLongArray versions;
+        final AtomicLongArray timestamps;
+        final AtomicLongArray totals;
+        final AtomicIntegerArray counts;
+        final AtomicIntegerArray colors;
+        final AtomicLongArray populations;
+        // The entries written so far; entry n is in slot n % capacity
+        volatile long written;
+
+
+        Tier(int capacity, int maxColors) {
+            this.capacity = capacity;
+            this.maxColors = maxColors;
+            versions = new AtomicLongArray(capacity);
+            timestamps = new AtomicLongArray(capacity);
+            totals = new AtomicLongArray(capacity);
+            counts = new AtomicIntegerArray(capacity);
+            colors = new AtomicIntegerArray(capacity * maxColors);
+            populations = new AtomicLongArray(capacity * maxColors);
+        }
+
+
+        // Called by the writer only
+        void write(long timestampNanos, int[] entryColors, long[] entryPopulations, int count,
+                   long total) {
+            long entry = written;
+            int slot = (int) (entry % capacity);
+            versions.lazySet(slot, 2 * entry + 1);
+            timestamps.lazySet(slot, timestampNanos);
+            totals.lazySet(slot, total);
+            counts.lazySet(slot, count);
+            int base = slot * maxColors;
+            for (int i = 0; i < count; i++) {
+                colors.lazySet(base + i, entryColors[i]);
+                populations.lazySet(base + i, entryPopulations[i]);
+            }
+            versions.lazySet(slot, 2 * entry + 2);
+            written = entry + 1;
+        }
+
+        // Copies the entry to the cursor, or returns false if it isn't in its slot anymore
+        boolean read(long entry, Cursor cursor) {
+            int slot = (int) (entry % capacity);
+            long version = 2 * entry + 2;
+            if (versions.get(slot) != version) {
+                return false;
+            }
+            cursor.timestampNanos = timestamps.get(slot);
+            cursor.totalPopulation = totals.get(slot);
+            int count = Math.min(counts.get(slot), maxColors);
+            int base = slot * maxColors;
+            for (int i = 0; i < count; i++) {
+                cursor.colors[i] = colors.get(base + i);
+                cursor.populations[i] = populations.get(base + i);
+            }
+            cursor.count = count;
+            // Every get() above is a volatile read, so this one can't happen before them
+            return versions.get(slot) == version;
+        }
+
+        /*
+         * The first entry before end stamped at or after fromNanos, by binary search of the
+         * entries still in the ring. The timestamps never decrease, and an entry overwritten in
+         * the meantime only makes the search start a little early.
+         */
+        long findFirst(long fromNanos, long end) {
+            long low = Math.max(0, end - capacity);
+            long high = end;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (timestamps.get((int) (middle % capacity)) < fromNanos) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+
+    /*
+     * Sums the colors of the frames of one period per ColorHistogram bin. Only used by the
+     * writer.
+     */
+    private static final class Accumulator {
+        final long periodNanos;
+        // Index + 1 of the entry of every bin in use, 0 for the others
+        final int[] binEntries = new int[ColorHistogram.BIN_COUNT];
+        final int[] bins;
+        final long[] populations;
+        final long[] redSums;
+        final long[] greenSums;
+        final long[] blueSums;
+        int size;
+        long total;
+        long periodStart;
+        boolean empty = true;
+
+
+        Accumulator(long periodNanos, int capacity) {
+            this.periodNanos = periodNanos;
+            bins = new int[capacity];
+            populations = new long[capacity];
+            redSums = new long[capacity];
+            greenSums = new long[capacity];
+            blueSums = new long[capacity];
+        }
+
+
+        // The start of the period of a timestamp, rounding down for negative ones too
+        long periodOf(long timestampNanos) {
+            long offset = timestampNanos % periodNanos;
+            return timestampNanos - (offset < 0 ? offset + periodNanos : offset);
+        }
+
+        void add(int color, long population) {
+            int bin = ColorHistogram.toBin(color);
+            int entry = binEntries[bin] - 1;
+            if (entry < 0) {
+                if (size == bins.length) {
+                    return;
+                }
+                entry = size++;
+                binEntries[bin] = entry + 1;
+                bins[entry] = bin;
+                populations[entry] = 0;
+                redSums[entry] = 0;
+                greenSums[entry] = 0;
+                blueSums[entry] = 0;
+            }
+            populations[entry] += population;
+            redSums[entry] += population * ((color >> 16) & 0xFF);
+            greenSums[entry] += population * ((color >> 8) & 0xFF);
+            blueSums[entry] += population * (color & 0xFF);
+        }
+
+        /*
+         * Writes the k most populated colors, most populated first, to outColors and
+         * outPopulations, returns how many there are, and empties the accumulator.
+         */
+        int drain(int k, int[] outColors, long[] outPopulations) {
+            k = Math.min(k, size);
+            // A partial selection sort: k is small, and the accumulator is emptied anyway
+            for (int i = 0; i < k; i++) {
+                int best = i;
+                for (int j = i + 1; j < size; j++) {
+                    if (populations[j] > populations[best]) {
+                        best = j;
+                    }
+                }
+                swap(i, best);
+                long population = populations[i];
+                if (population == 0) {
+                    k = i;
+                    break;
+                }
+                long half = population / 2;
+                outColors[i] = 0xFF000000 | (int) ((redSums[i] + half) / population) << 16 |
+                        (int) ((greenSums[i] + half) / population) << 8 |
+                        (int) ((blueSums[i] + half) / population);
+                outPopulations[i] = population;
+            }
+            for (int i = 0; i < size; i++) {
+                binEntries[bins[i]] = 0;
+            }
+            size = 0;
+            total = 0;
+            empty = true;
+            return k;
+        }
+
+        private void swap(int a, int b) {
+            int bin = bins[a];
+            bins[a] = bins[b];
+            bins[b] = bin;
+            long population = populations[a];
+            populations[a] = populations[b];
+            populations[b] = population;
+            long red = redSums[a];
+            redSums[a] = redSums[b];
+            redSums[b] = red;
+            long green = greenSums[a];
+            greenSums[a] = greenSums[b];
+            greenSums[b] = green;
+            long blue = blueSums[a];
+            blueSums[a] = blueSums[b];
+            blueSums[b] = blue;
+        }
+    }
+
+
+    private final int maxColors;
+    private final Tier[] tiers = new Tier[TIER_COUNT];
+    // Indexed by tier, null for TIER_FRAMES
+    private final Accumulator[] accumulators = new Accumulator[TIER_COUNT];
+    // The frame being appended, and a period being written
+    private final int[] frameColors;
+    private final long[] framePopulations;
+    private final int[] periodColors;
+    private final long[] periodPopulations;
+    private long lastTimestampNanos = Long.MIN_VALUE;
+
+
+    public ColorTimeline(int maxColors) {
+        this(maxColors, DEFAULT_FRAME_CAPACITY, DEFAULT_SECOND_CAPACITY, DEFAULT_MINUTE_CAPACITY);
+    }
+
+    public ColorTimeline(int maxColors, int frameCapacity, int secondCapacity,
+                         int minuteCapacity) {
+        if (maxColors <= 0 || frameCapacity <= 0 || secondCapacity <= 0 || minuteCapacity <= 0) {
+            throw new IllegalArgumentException("Invalid timeline size");
+        }
+        this.maxColors = maxColors;
+        tiers[TIER_FRAMES] = new Tier(frameCapacity, maxColors);
+        tiers[TIER_SECONDS] = new Tier(secondCapacity, maxColors);
+        tiers[TIER_MINUTES] = new Tier(minuteCapacity, maxColors);
+        for (int tier = TIER_SECONDS; tier < TIER_COUNT; tier++) {
+            accumulators[tier] = new Accumulator(TIER_PERIOD_NANOS[tier],
+                    maxColors * ACCUMULATOR_COLORS_PER_COLOR);
+        }
+        frameColors = new int[maxColors];
+        framePopulations = new long[maxColors];
+        periodColors = new int[maxColors];
+        periodPopulations = new long[maxColors];
+    }
+
+
+    /*
+     * Appends the colors of a frame, as many as the timeline keeps, stamped with the result's
+     * timestamp. Only one thread may append.
+     */
+    public void append(ColorAnalysisResult result) {
+        int count = Math.min(maxColors, result.getCount());
+        for (int i = 0; i < count; i++) {
+            frameColors[i] = result.getColor(i);
+            framePopulations[i] = result.getPopulation(i);
+        }
+        appendFrame(result.getTimestampNanos(), count, result.getTotalPopulation());
+    }
+
+    // Same as append() for a result, from the first count colors and populations
+    public void append(long timestampNanos, int[] colors, int[] populations, int count,
+                       long totalPopulation) {
+        count = Math.min(maxColors, count);
+        for (int i = 0; i < count; i++) {
+            frameColors[i] = colors[i];
+            framePopulations[i] = populations[i];
+        }
+        appendFrame(timestampNanos, count, totalPopulation);
+    }
+
+    /*
+     * Writes the periods in progress to their tiers, e.g. when the session ends, so they can be
+     * read before a frame of the next period arrives. Only the appending thread may call it, or
+     * another thread once appending has stopped, e.g. after FrameAnalysisEngine.stop().
+     */
+    public void flush() {
+        for (int tier = TIER_SECONDS; tier < TIER_COUNT; tier++) {
+            writePeriod(tier);
+        }
+    }
+
+    public int getMaxColors() {
+        return maxColors;
+    }
+
+    // How many entries a tier can hold
+    public int getCapacity(int tier) {
+        return tiers[tier].capacity;
+    }
+
+    // How many entries were ever written to a tier, including those overwritten since
+    public long getWrittenCount(int tier) {
+        return tiers[tier].written;
+    }
+
+    /*
+     * Writes the entries of a tier stamped from fromNanos to toNanos as CSV: a header line, then
+     * a line per entry with its timestamp, its total population and its colors (#RRGGBB) and
+     * populations. Can be called from any thread.
+     */
+    public void exportCsv(int tier, long fromNanos, long toNanos, Writer out) throws IOException {
+        StringBuilder line = new StringBuilder("timestamp_nanos,total");
+        for (int i = 1; i <= maxColors; i++) {
+            line.append(",color").append(i).append(",population").append(i);
+        }
+        out.write(line.append('\n').toString());
+
+        Cursor cursor = new Cursor(this);
+        cursor.query(tier, fromNanos, toNanos);
+        while (cursor.next()) {
+            line.setLength(0);
+            line.append(cursor.getTimestampNanos()).append(',')
+                    .append(cursor.getTotalPopulation());
+            for (int i = 0; i < cursor.getCount(); i++) {
+                line.append(',').append(String.format("#%06X", cursor.getColor(i) & 0xFFFFFF))
+                        .append(',').append(cursor.getPopulation(i));
+            }
+            out.write(line.append('\n').toString());
+        }
+        out.flush();
+    }
+
+    /*
+     * Writes the entries of a tier stamped from fromNanos to toNanos in the binary format
+     * described above. Can be called from any thread.
+     */
+    public void exportBinary(int tier, long fromNanos, long toNanos, OutputStream out)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(maxColors);
+        Cursor cursor = new Cursor(this);
+        cursor.query(tier, fromNanos, toNanos);
+        while (cursor.next()) {
+            data.writeLong(cursor.getTimestampNanos());
+            data.writeLong(cursor.getTotalPopulation());
+            data.writeInt(cursor.getCount());
+            for (int i = 0; i < cursor.getCount(); i++) {
+                data.writeInt(cursor.getColor(i));
+                data.writeLong(cursor.getPopulation(i));
+            }
+        }
+        data.flush();
+    }
+
+    private void appendFrame(long timestampNanos, int count, long totalPopulation) {
+        // The tiers are searched by timestamp, which mustn't go back even if the clock does
+        timestampNanos = Math.max(timestampNanos, lastTimestampNanos);
+        lastTimestampNanos = timestampNanos;
+        tiers[TIER_FRAMES].write(timestampNanos, frameColors, framePopulations, count,
+                totalPopulation);
+
+        for (int tier = TIER_SECONDS; tier < TIER_COUNT; tier++) {
+            Accumulator accumulator = accumulators[tier];
+            long periodStart = accumulator.periodOf(timestampNanos);
+            if (!accumulator.empty && periodStart != accumulator.periodStart) {
+                writePeriod(tier);
+            }
+            accumulator.periodStart = periodStart;
+            accumulator.empty = false;
+            accumulator.total += totalPopulation;
+            for (int i = 0; i < count; i++) {
+                accumulator.add(frameColors[i], framePopulations[i]);
+            }
+        }
+    }
+
+    private void writePeriod(int tier) {
+        Accumulator accumulator = accumulators[tier];
+        if (accumulator.empty) {
+            return;
+        }
+        long total = accumulator.total;
+        long periodStart = accumulator.periodStart;
+        int count = accumulator.drain(maxColors, periodColors, periodPopulations);
+        tiers[tier].write(periodStart, periodColors, periodPopulations, count, total);
+    }
+}
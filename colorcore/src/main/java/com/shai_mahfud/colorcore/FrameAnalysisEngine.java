@@ -0,0 +1,311 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * Runs a FrameAnalyzer on a single long-lived thread. Frames are handed over through a mailbox
+ * with room for exactly one frame: submitting a frame while another one is still waiting replaces
+ * the waiting one, which is released unanalyzed. The analysis therefore always works on the
+ * latest frame, and the camera never waits for it.
+ *
+ * The mailbox is a handful of fields guarded by a lock, so handing over a frame allocates
+ * nothing. A frame is either a byte array, from the legacy camera API, or YuvPlanes, from Camera2;
+ * the mailbox holds one frame of either kind.
+ *
+ * With PipelineMetrics set, the engine records how long frames wait in the mailbox, how long
+ * their analysis takes, and the frames it analyzes or drops. The analyzer shares the same metrics
+ * for the stages of the analysis itself.
+ */
+public class FrameAnalysisEngine {
+    public interface Listener {
+        /*
+         * Called on the analysis thread after a frame was analyzed successfully. The results of
+         * the analyzer are only valid until this method returns.
+         */
+        void onFrameAnalyzed(FrameAnalyzer analyzer);
+
+        /*
+         * Called once the engine is done with a frame: after its analysis, or when a newer frame
+         * replaced it before the analysis started (dropped is true then). Dropped frames are
+         * reported on the thread that submitted the newer frame.
+         */
+        void onFrameReleased(byte[] data, boolean dropped);
+
+        // Like onFrameReleased(), for frames submitted as planes
+        void onPlanesReleased(YuvPlanes planes, boolean dropped);
+    }
+
+
+    private final FrameAnalyzer analyzer;
+    private final Listener listener;
+    private volatile FrameScheduler scheduler;
+    private volatile PipelineMetrics metrics;
+    private final Object lock = new Object();
+    private Thread worker;
+    private boolean running;
+
+    // The mailbox, holding pendingData or pendingPlanes
+    private byte[] pendingData;
+    private YuvPlanes pendingPlanes;
+    private int pendingFormat;
+    private int pendingWidth;
+    private int pendingHeight;
+    // When the frame was submitted, if there were metrics to record it then
+    private boolean pendingTimed;
+    private long pendingSubmitNanos;
+
+    private long submittedCount;
+    private long analyzedCount;
+    private long droppedCount;
+    private long failedCount;
+
+
+    public FrameAnalysisEngine(FrameAnalyzer analyzer, Listener listener) {
+        this.analyzer = analyzer;
+        this.listener = listener;
+    }
+
+
+    // The scheduler is told how long every analysis took, in wall time and in CPU time
+    public void setFrameScheduler(FrameScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    // Also hands the metrics to the analyzer; null stops recording
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+        analyzer.setMetrics(metrics);
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    analyzeFrames();
+                }
+            }, "FrameAnalysisEngine");
+            worker.start();
+        }
+    }
+
+    /*
+     * Stops the analysis thread and waits for the frame being analyzed, if any. A frame still
+     * waiting in the mailbox is released unanalyzed, and the analyzer releases its threads.
+     */
+    public void stop() {
+        Thread stoppedWorker;
+        byte[] droppedData;
+        YuvPlanes droppedPlanes;
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            stoppedWorker = worker;
+            worker = null;
+            droppedData = pendingData;
+            droppedPlanes = pendingPlanes;
+            clearPendingFrame();
+            countDropped(droppedData, droppedPlanes);
+            lock.notifyAll();
+        }
+        releaseDropped(droppedData, droppedPlanes);
+        try {
+            stoppedWorker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        analyzer.release();
+    }
+
+    /*
+     * Hands a frame to the analysis thread. The engine owns the frame until onFrameReleased() is
+     * called for it. Frames submitted while the engine is stopped are released right away.
+     */
+    public void submit(byte[] data, int format, int width, int height) {
+        submitFrame(data, null, format, width, height);
+    }
+
+    /*
+     * Hands a frame given as planes to the analysis thread, like submit() for a byte array. The
+     * planes, and the memory behind them, must stay valid until onPlanesReleased() is called for
+     * them.
+     */
+    public void submit(YuvPlanes planes) {
+        submitFrame(null, planes, YuvDecoder.FORMAT_YUV_420_888, planes.getWidth(),
+                planes.getHeight());
+    }
+
+    public long getSubmittedCount() {
+        synchronized (lock) {
+            return submittedCount;
+        }
+    }
+
+    // Frames taken out of the mailbox, including those that turned out not to be decodable
+    public long getAnalyzedCount() {
+        synchronized (lock) {
+            return analyzedCount;
+        }
+    }
+
+    /*
+     * Analyzed frames whose analysis, or the listener's onFrameAnalyzed(), threw. They are still
+     * released and counted by getAnalyzedCount(), and the frames after them are analyzed as usual.
+     */
+    public long getFailedCount() {
+        synchronized (lock) {
+            return failedCount;
+        }
+    }
+
+    // Frames that were replaced by a newer frame, or submitted while the engine was stopped
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    private void submitFrame(byte[] data, YuvPlanes planes, int format, int width, int height) {
+        byte[] droppedData;
+        YuvPlanes droppedPlanes;
+        boolean timed = metrics != null;
+        long submitNanos = timed ? System.nanoTime() : 0;
+        synchronized (lock) {
+            submittedCount++;
+            if (!running) {
+                droppedData = data;
+                droppedPlanes = planes;
+            } else {
+                droppedData = pendingData;
+                droppedPlanes = pendingPlanes;
+                pendingData = data;
+                pendingPlanes = planes;
+                pendingFormat = format;
+                pendingWidth = width;
+                pendingHeight = height;
+                pendingTimed = timed;
+                pendingSubmitNanos = submitNanos;
+                lock.notifyAll();
+            }
+            countDropped(droppedData, droppedPlanes);
+        }
+        releaseDropped(droppedData, droppedPlanes);
+    }
+
+    private void analyzeFrames() {
+        while (true) {
+            byte[] data;
+            YuvPlanes planes;
+            int format, width, height;
+            boolean timed;
+            long submitNanos;
+            synchronized (lock) {
+                while (running && pendingData == null && pendingPlanes == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                format = pendingFormat;
+                width = pendingWidth;
+                height = pendingHeight;
+                timed = pendingTimed;
+                submitNanos = pendingSubmitNanos;
+                data = pendingData;
+                planes = pendingPlanes;
+                clearPendingFrame();
+            }
+
+            PipelineMetrics metrics = this.metrics;
+            long analysisStartNanos = 0;
+            if (metrics != null) {
+                analysisStartNanos = System.nanoTime();
+                // A frame submitted before the metrics were set has no submission time
+                if (timed) {
+                    metrics.recordLatency(PipelineMetrics.STAGE_QUEUE,
+                            analysisStartNanos - submitNanos);
+                }
+            }
+
+            FrameScheduler scheduler = this.scheduler;
+            FrameScheduler.Clock clock = scheduler != null ? scheduler.getClock() : null;
+            long startNanos = clock != null ? clock.nanoTime() : 0;
+            long startCpuNanos = clock != null ? clock.currentThreadCpuTimeNanos() : 0;
+            try {
+                boolean analyzed = planes != null ? analyzer.analyze(planes) :
+                        analyzer.analyze(data, format, width, height);
+                if (metrics != null) {
+                    if (analyzed) {
+                        metrics.increment(PipelineMetrics.COUNTER_FRAMES_ANALYZED);
+                    }
+                    metrics.recordLatency(PipelineMetrics.STAGE_ANALYSIS,
+                            System.nanoTime() - analysisStartNanos);
+                }
+                if (analyzed) {
+                    if (clock != null) {
+                        scheduler.onAnalysisFinished(clock.nanoTime() - startNanos,
+                                clock.currentThreadCpuTimeNanos() - startCpuNanos);
+                    }
+                    listener.onFrameAnalyzed(analyzer);
+                }
+            } catch (RuntimeException e) {
+                // Only this frame is lost: the thread must live on, or no frame would be
+                // analyzed again while the engine still takes them
+                synchronized (lock) {
+                    failedCount++;
+                }
+            } finally {
+                synchronized (lock) {
+                    analyzedCount++;
+                }
+                if (planes != null) {
+                    listener.onPlanesReleased(planes, false);
+                } else {
+                    listener.onFrameReleased(data, false);
+                }
+            }
+        }
+    }
+
+    // Must be called while holding the lock
+    private void countDropped(byte[] data, YuvPlanes planes) {
+        if (data != null || planes != null) {
+            droppedCount++;
+        }
+    }
+
+    // Releases a frame the analysis won't see, if there is one, outside the lock
+    private void releaseDropped(byte[] data, YuvPlanes planes) {
+        if (data == null && planes == null) {
+            return;
+        }
+        PipelineMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.increment(PipelineMetrics.COUNTER_FRAMES_DROPPED);
+        }
+        if (planes != null) {
+            listener.onPlanesReleased(planes, true);
+        } else {
+            listener.onFrameReleased(data, true);
+        }
+    }
+
+    // Empties the mailbox. Must be called while holding the lock.
+    private void clearPendingFrame() {
+        pendingData = null;
+        pendingPlanes = null;
+    }
+}
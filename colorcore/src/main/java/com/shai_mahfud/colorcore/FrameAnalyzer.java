@@ -0,0 +1,728 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * Finds the most prominent colors of a single preview frame, or of any packed ARGB image: decodes
+ * it, quantizes the pixels and ranks the swatches. All the buffers are kept between frames, so
+ * analyzing frames of the same size allocates nothing. analyze() isn't thread safe;
+ * FrameAnalysisEngine calls it from its own thread. The sampling setters may be called from any
+ * thread and apply from the next frame.
+ *
+ * By default every pixel of the frame is analyzed. A region of interest restricts the analysis to
+ * part of the frame, and a sampling stride (or a target number of samples, from which the stride
+ * is derived) only takes every Nth pixel of every Nth row. Skipped pixels are never decoded.
+ *
+ * Consecutive preview frames are almost identical, so instead of quantizing every frame from
+ * scratch the analyzer can keep a color histogram across frames. Every frame first decays it by
+ * (window - 1) / window, an exponential moving average over about window frames, and then adds
+ * its own samples. The top colors are quantized from that histogram, which also keeps them from
+ * flickering. Combined with a sampling stride, each frame only contributes a small delta.
+ *
+ * Finally, with a scene change threshold, frames that barely differ from the last analyzed one
+ * aren't analyzed at all: SceneChangeDetector compares their signatures and the previous results
+ * are kept.
+ *
+ * The histogram of big frames can also be built on several threads (see
+ * ParallelHistogramBuilder).
+ *
+ * Swatches are merged only when their colors are exactly equal, unless a perceptual merge
+ * threshold is set: then swatches that look alike are merged first (see PerceptualClusterer).
+ *
+ * The swatches come from median cut by default, or from k-means (see KMeansQuantizer). With a
+ * scene change threshold, k-means seeds every changed scene afresh instead of warm starting it.
+ *
+ * With PipelineMetrics set, the decode and quantization times of every frame are recorded, and
+ * so are the frames whose scene didn't change.
+ *
+ * Frames come as byte arrays from the legacy camera API, or as YUV_420_888 planes (see
+ * YuvPlanes) from Camera2, which are analyzed without copying them first.
+ *
+ * With a grid size set, the dominant color of every tile of a grid over the region of interest is
+ * also found, in one more pass over the same samples (see GridColorAnalyzer).
+ *
+ * With reference colors set, nothing is quantized: the results are how much of the frame is close
+ * to each reference, looked up bin by bin from the histogram (see ReferenceColorTable).
+ */
+public class FrameAnalyzer {
+    public static final int NUM_OF_COLORS = 16;
+    public static final int QUANTIZER_MEDIAN_CUT = 0;
+    public static final int QUANTIZER_K_MEANS = 1;
+    // The weight of a sample in the temporal histogram, so the decay keeps some fractions instead
+    // of rounding small bins away right away
+    private static final int TEMPORAL_SAMPLE_WEIGHT = 16;
+    // Below this many samples, splitting the frame between threads costs more than it saves
+    private static final int PARALLEL_MIN_SAMPLES = 1 << 18;
+
+
+    private final int maxResults;
+    private int[] pixels;
+    private final ColorHistogram frameHistogram = new ColorHistogram();
+    private final MedianCutQuantizer medianCutQuantizer = new MedianCutQuantizer();
+    private KMeansQuantizer kMeansQuantizer;
+    private ColorQuantizer quantizer = medianCutQuantizer;
+    private final int[] swatchColors = new int[NUM_OF_COLORS];
+    private final int[] swatchPopulations = new int[NUM_OF_COLORS];
+    private final ColorPopulationTable rgbToPop = new ColorPopulationTable(NUM_OF_COLORS);
+    private final PerceptualClusterer clusterer = new PerceptualClusterer();
+    private final int[] clusterColors = new int[NUM_OF_COLORS];
+    private final int[] clusterPopulations = new int[NUM_OF_COLORS];
+
+    // The sampling configuration, as fractions of the frame size
+    private float roiLeft = 0;
+    private float roiTop = 0;
+    private float roiRight = 1;
+    private float roiBottom = 1;
+    private int sampleStride = 1;
+    private int targetSampleCount;
+    private int temporalWindow;
+    private boolean temporalResetPending;
+    private final ColorHistogram temporalHistogram = new ColorHistogram();
+    private float sceneChangeThreshold;
+    private boolean sceneResetPending;
+    private final SceneChangeDetector sceneChangeDetector = new SceneChangeDetector(0);
+    private boolean resultReused;
+    private int histogramThreads = 1;
+    private ParallelHistogramBuilder parallelBuilder;
+    private float perceptualMergeThreshold;
+    private int quantizerAlgorithm = QUANTIZER_MEDIAN_CUT;
+    private int kMeansIterations = KMeansQuantizer.DEFAULT_MAX_ITERATIONS;
+    private volatile PipelineMetrics metrics;
+    private int gridColumns;
+    private int gridRows;
+    private GridColorAnalyzer gridAnalyzer;
+    // Whether gridAnalyzer holds the grid of the last frame
+    private boolean gridValid;
+    // The reference colors as last set, and a copy for rebuilding the table outside the lock
+    private final int[] referenceColors = new int[ReferenceColorTable.MAX_REFERENCES];
+    private int referenceCount;
+    private float referenceDeltaE;
+    private boolean referencesChanged;
+    private final int[] frameReferenceColors = new int[ReferenceColorTable.MAX_REFERENCES];
+    private final ReferenceColorTable referenceTable = new ReferenceColorTable();
+    private final int[] referenceCoverage = new int[ReferenceColorTable.MAX_REFERENCES];
+
+    // The sampled rectangle and stride of the current frame, and where its samples go
+    private int frameLeft;
+    private int frameTop;
+    private int frameRight;
+    private int frameBottom;
+    private int frameStride;
+    private ColorHistogram frameTarget;
+    private int frameWeight;
+    private float frameMergeThreshold;
+
+    private final int[] resultColors;
+    private final int[] resultPopulations;
+    private int resultCount;
+    private long totalPopulation;
+
+
+    public FrameAnalyzer(int maxResults) {
+        this.maxResults = maxResults;
+        resultColors = new int[maxResults];
+        resultPopulations = new int[maxResults];
+    }
+
+
+    /*
+     * Analyzes a frame in one of the formats YuvDecoder supports. Returns false, and clears the
+     * results, if the frame can't be decoded. If the scene didn't change, the results of the
+     * previous frame are kept and isResultReused() returns true.
+     */
+    public boolean analyze(byte[] data, int format, int width, int height) {
+        if (!YuvDecoder.isSupportedFormat(format)) {
+            clearResults();
+            return false;
+        }
+        float threshold = takeSceneChangeThreshold();
+        try {
+            if (threshold > 0) {
+                if (!sceneChangeDetector.hasChanged(data, format, width, height)) {
+                    reuseResults();
+                    return true;
+                }
+                startNewScene();
+            }
+            YuvDecoder.checkFrame(data, format, width, height);
+        } catch (IllegalArgumentException e) {
+            clearResults();
+            sceneChangeDetector.reset();
+            return false;
+        }
+        analyzeSamples(data, format, null, width, height);
+        return true;
+    }
+
+    /*
+     * Analyzes a YUV_420_888 frame given as planes, e.g. the planes of a Camera2 Image, reading
+     * its buffers in place with their row and pixel strides. Otherwise the same as analyze() for
+     * a byte array.
+     */
+    public boolean analyze(YuvPlanes planes) {
+        float threshold = takeSceneChangeThreshold();
+        try {
+            if (threshold > 0) {
+                if (!sceneChangeDetector.hasChanged(planes)) {
+                    reuseResults();
+                    return true;
+                }
+                startNewScene();
+            }
+            planes.check();
+        } catch (IllegalArgumentException e) {
+            clearResults();
+            sceneChangeDetector.reset();
+            return false;
+        }
+        analyzeSamples(null, YuvDecoder.FORMAT_YUV_420_888, planes, planes.getWidth(),
+                planes.getHeight());
+        return true;
+    }
+
+    /*
+     * Analyzes pixels that are already packed ARGB ints, in row-major order, e.g. from a decoded
+     * image. The region of interest, the sampling and the temporal window apply as to camera
+     * frames; the scene change detector only works on YUV frames and is skipped. Returns false,
+     * and clears the results, if pixels doesn't hold width * height pixels.
+     */
+    public boolean analyzeArgb(int[] argb, int width, int height) {
+        if (argb == null || width <= 0 || height <= 0 || argb.length < width * height) {
+            clearResults();
+            return false;
+        }
+        // The next YUV frame shouldn't be compared with a frame from before these pixels
+        sceneChangeDetector.reset();
+
+        beginFrame(width, height);
+        ColorHistogram histogram = frameTarget;
+        int weight = frameWeight;
+        for (int row = frameTop; row < frameBottom; row += frameStride) {
+            for (int index = row * width + frameLeft, end = row * width + frameRight; index < end;
+                 index += frameStride) {
+                histogram.addToBin(ColorHistogram.toBin(argb[index]), weight);
+            }
+        }
+        finishFrame();
+        return true;
+    }
+
+    /*
+     * Restricts the analysis to a rectangle given as fractions of the frame size, e.g. 0.25, 0.25,
+     * 0.75, 0.75 for a centered crop of half the width and height.
+     */
+    public synchronized void setRegionOfInterest(float left, float top, float right,
+                                                 float bottom) {
+        if (left < 0 || top < 0 || right > 1 || bottom > 1 || left >= right || top >= bottom) {
+            throw new IllegalArgumentException("Invalid region of interest");
+        }
+        roiLeft = left;
+        roiTop = top;
+        roiRight = right;
+        roiBottom = bottom;
+        sceneResetPending = true;
+    }
+
+    public synchronized void clearRegionOfInterest() {
+        setRegionOfInterest(0, 0, 1, 1);
+    }
+
+    // Analyze every stride-th pixel of every stride-th row. 1 analyzes every pixel.
+    public synchronized void setSampleStride(int stride) {
+        if (stride <= 0) {
+            throw new IllegalArgumentException("Invalid stride: " + stride);
+        }
+        sampleStride = stride;
+        targetSampleCount = 0;
+        sceneResetPending = true;
+    }
+
+    /*
+     * Picks the stride for every frame so about sampleCount pixels of the region of interest are
+     * analyzed (never less than that, unless the region is smaller). 0 goes back to the stride
+     * given to setSampleStride().
+     */
+    public synchronized void setTargetSampleCount(int sampleCount) {
+        if (sampleCount < 0) {
+            throw new IllegalArgumentException("Invalid sample count: " + sampleCount);
+        }
+        targetSampleCount = sampleCount;
+        sceneResetPending = true;
+    }
+
+    /*
+     * Averages the colors over about windowFrames frames. 0 or 1 analyzes every frame on its own.
+     * Changing the window starts the history over.
+     */
+    public synchronized void setTemporalWindow(int windowFrames) {
+        if (windowFrames < 0) {
+            throw new IllegalArgumentException("Invalid window: " + windowFrames);
+        }
+        temporalWindow = windowFrames;
+        temporalResetPending = true;
+        sceneResetPending = true;
+    }
+
+    // Forgets the frames seen so far, e.g. when the camera is switched
+    public synchronized void resetTemporalHistory() {
+        temporalResetPending = true;
+        sceneResetPending = true;
+    }
+
+    /*
+     * Skips the analysis of frames whose signature differs from the last analyzed frame by at
+     * most threshold levels on average (see SceneChangeDetector). A few levels absorb the sensor
+     * noise of a static scene. 0 analyzes every frame.
+     */
+    public synchronized void setSceneChangeThreshold(float threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Invalid threshold: " + threshold);
+        }
+        sceneChangeThreshold = threshold;
+        sceneResetPending = true;
+    }
+
+    /*
+     * Builds the histogram of frames with many samples (a quarter megapixel and up) on the given
+     * number of threads. The results are the same as with a single thread, which is the default.
+     */
+    public synchronized void setHistogramThreads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        histogramThreads = threads;
+    }
+
+    /*
+     * Stops the threads building the histogram, if any. Call it when done analyzing, while no
+     * frame is being analyzed; a later frame starts them again.
+     */
+    public synchronized void release() {
+        if (parallelBuilder != null) {
+            parallelBuilder.shutdown();
+            parallelBuilder = null;
+        }
+    }
+
+    /*
+     * Merges the swatches whose colors are less than deltaE apart in OKLab before ranking them,
+     * so near identical shades count as one color. About 0.02 is barely noticeable; 0.05 merges
+     * the shades of a single surface under uneven light. 0, the default, only merges equal colors.
+     */
+    public synchronized void setPerceptualMergeThreshold(float deltaE) {
+        if (deltaE < 0) {
+            throw new IllegalArgumentException("Invalid delta E: " + deltaE);
+        }
+        perceptualMergeThreshold = deltaE;
+        sceneResetPending = true;
+    }
+
+    // Where to record the stage timings, or null (the default) not to
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // QUANTIZER_MEDIAN_CUT, the default, or QUANTIZER_K_MEANS
+    public synchronized void setQuantizer(int algorithm) {
+        if (algorithm != QUANTIZER_MEDIAN_CUT && algorithm != QUANTIZER_K_MEANS) {
+            throw new IllegalArgumentException("Unknown quantizer: " + algorithm);
+        }
+        quantizerAlgorithm = algorithm;
+        sceneResetPending = true;
+    }
+
+    /*
+     * Caps the k-means iterations per frame. Each frame starts from the swatches of the previous
+     * one, so 1 or 2 are usually enough; more cost more but follow fast changes better.
+     */
+    public synchronized void setKMeansIterations(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Invalid iteration count: " + iterations);
+        }
+        kMeansIterations = iterations;
+    }
+
+    /*
+     * Also finds the dominant color of every tile of a columns x rows grid over the region of
+     * interest, up to GridColorAnalyzer.MAX_GRID_SIZE each way. 0, 0, the default, turns it off.
+     * Only YUV frames get a grid, analyzeArgb() doesn't, and neither do frames sampled into more
+     * than GridColorAnalyzer.MAX_SAMPLES samples. To get the grid of frames an AnalysisGraph
+     * decoded, register a GridColorAnalyzer next to the analyzer instead.
+     */
+    public synchronized void setGridSize(int columns, int rows) {
+        int max = GridColorAnalyzer.MAX_GRID_SIZE;
+        if (columns < 0 || rows < 0 || (columns == 0) != (rows == 0) || columns > max ||
+                rows > max) {
+            throw new IllegalArgumentException("Invalid grid: " + columns + "x" + rows);
+        }
+        gridColumns = columns;
+        gridRows = rows;
+        sceneResetPending = true;
+    }
+
+    /*
+     * Measures how much of every frame is close to each of the first count colors instead of
+     * finding its prominent colors: a pixel counts for the closest reference less than maxDeltaE
+     * away in OKLab, or for none, as told by the bin it falls in (see ReferenceColorTable for how
+     * fine that is). The results are then the references in the given order, up to maxResults,
+     * each with the population close to it; the total population still counts every sample, so
+     * the shares are of the whole region. Up to ReferenceColorTable.MAX_REFERENCES.
+     */
+    public synchronized void setReferenceColors(int[] colors, int count, float maxDeltaE) {
+        if (count < 0 || count > ReferenceColorTable.MAX_REFERENCES || count > colors.length) {
+            throw new IllegalArgumentException("Invalid reference count: " + count);
+        }
+        if (maxDeltaE < 0) {
+            throw new IllegalArgumentException("Invalid delta E: " + maxDeltaE);
+        }
+        System.arraycopy(colors, 0, referenceColors, 0, count);
+        referenceCount = count;
+        referenceDeltaE = maxDeltaE;
+        referencesChanged = true;
+        sceneResetPending = true;
+    }
+
+    // Goes back to finding the prominent colors
+    public synchronized void clearReferenceColors() {
+        referenceCount = 0;
+        referencesChanged = true;
+        sceneResetPending = true;
+    }
+
+    // Whether the last analyze() kept the previous results because the scene didn't change
+    public boolean isResultReused() {
+        return resultReused;
+    }
+
+    // Frames whose analysis was skipped because the scene didn't change
+    public long getSceneUnchangedCount() {
+        return sceneChangeDetector.getUnchangedCount();
+    }
+
+    // Frames the scene change detector let through
+    public long getSceneChangedCount() {
+        return sceneChangeDetector.getChangedCount();
+    }
+
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    public int getColor(int index) {
+        return resultColors[index];
+    }
+
+    public int getPopulation(int index) {
+        return resultPopulations[index];
+    }
+
+    /*
+     * The population of all the swatches, not only of the ranked ones. With a temporal window it
+     * is a weighted sum over the recent frames, so only the ratios are meaningful.
+     */
+    public long getTotalPopulation() {
+        return totalPopulation;
+    }
+
+    // The columns of the grid of the last frame, 0 if it has none
+    public int getGridColumns() {
+        return gridValid ? gridAnalyzer.getColumns() : 0;
+    }
+
+    public int getGridRows() {
+        return gridValid ? gridAnalyzer.getRows() : 0;
+    }
+
+    /*
+     * The dominant color of tile row * getGridColumns() + column, transparent if it had no samples
+     * or if the last frame has no grid
+     */
+    public int getGridColor(int tile) {
+        return gridValid ? gridAnalyzer.getColor(tile) : 0;
+    }
+
+    // The size in pixels of the region the grid of the last frame covers, for its aspect ratio
+    public int getGridRegionWidth() {
+        return frameRight - frameLeft;
+    }
+
+    public int getGridRegionHeight() {
+        return frameBottom - frameTop;
+    }
+
+    // Applies a pending reset of the scene change detector and returns the threshold to use
+    private float takeSceneChangeThreshold() {
+        float threshold;
+        synchronized (this) {
+            threshold = sceneChangeThreshold;
+            if (sceneResetPending) {
+                sceneChangeDetector.reset();
+                sceneResetPending = false;
+            }
+        }
+        if (threshold > 0) {
+            sceneChangeDetector.setThreshold(threshold);
+        }
+        return threshold;
+    }
+
+    // The scene didn't change, the results of the previous frame stand
+    private void reuseResults() {
+        resultReused = true;
+        PipelineMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.increment(PipelineMetrics.COUNTER_FRAMES_UNCHANGED);
+        }
+    }
+
+    // The scene changed: k-means seeds the new one rather than starting from the old swatches
+    private void startNewScene() {
+        if (kMeansQuantizer != null) {
+            kMeansQuantizer.reset();
+        }
+    }
+
+    // Fills the histogram from data, or from planes if data is null, and quantizes it
+    private void analyzeSamples(byte[] data, int format, YuvPlanes planes, int width,
+                                int height) {
+        PipelineMetrics metrics = this.metrics;
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+        int sampleCount = beginFrame(width, height);
+        fillHistogram(data, format, planes, width, height, sampleCount);
+        if (gridAnalyzer != null && sampleCount <= GridColorAnalyzer.MAX_SAMPLES) {
+            if (planes != null) {
+                gridAnalyzer.analyze(planes, frameLeft, frameTop, frameRight, frameBottom,
+                        frameStride);
+            } else {
+                gridAnalyzer.analyze(data, format, width, height, frameLeft, frameTop, frameRight,
+                        frameBottom, frameStride);
+            }
+            gridValid = true;
+        }
+        if (metrics != null) {
+            long decodedNanos = System.nanoTime();
+            metrics.recordLatency(PipelineMetrics.STAGE_DECODE, decodedNanos - startNanos);
+            finishFrame();
+            metrics.recordLatency(PipelineMetrics.STAGE_QUANTIZE,
+                    System.nanoTime() - decodedNanos);
+        } else {
+            finishFrame();
+        }
+    }
+
+    private void clearResults() {
+        resultReused = false;
+        gridValid = false;
+        resultCount = 0;
+        totalPopulation = 0;
+    }
+
+    /*
+     * Clears the results and picks the histogram the samples of the frame go to: the temporal one,
+     * decayed, or an empty one. Returns the number of samples.
+     */
+    private int beginFrame(int width, int height) {
+        resultReused = false;
+        gridValid = false;
+        resultCount = 0;
+        totalPopulation = 0;
+
+        int window;
+        int references = -1;
+        float deltaE = 0;
+        synchronized (this) {
+            window = temporalWindow;
+            if (referencesChanged) {
+                references = referenceCount;
+                deltaE = referenceDeltaE;
+                System.arraycopy(referenceColors, 0, frameReferenceColors, 0, references);
+                referencesChanged = false;
+            }
+            frameMergeThreshold = perceptualMergeThreshold;
+            if (temporalResetPending) {
+                temporalHistogram.clear();
+                if (kMeansQuantizer != null) {
+                    kMeansQuantizer.reset();
+                }
+                temporalResetPending = false;
+            }
+            updateQuantizer();
+            updateGrid();
+        }
+        if (references >= 0) {
+            // Rebuilt here rather than in the setter: it takes a few milliseconds, and the table is
+            // only used by this thread
+            referenceTable.set(frameReferenceColors, references, deltaE);
+        }
+        int sampleCount = updateSampling(width, height);
+        if (window > 1) {
+            temporalHistogram.scale(window - 1, window);
+            frameTarget = temporalHistogram;
+            frameWeight = makeRoomForSamples(temporalHistogram, sampleCount);
+        } else {
+            frameHistogram.clear();
+            frameTarget = frameHistogram;
+            frameWeight = 1;
+        }
+        return sampleCount;
+    }
+
+    /*
+     * Big frames over a long window could overflow the int counts of the temporal histogram.
+     * Halves it until the samples of the frame fit, which keeps the ratios, all that matters, and
+     * returns the weight of the samples: TEMPORAL_SAMPLE_WEIGHT, unless there are so many samples
+     * that even an empty histogram couldn't take them at that weight.
+     */
+    static int makeRoomForSamples(ColorHistogram histogram, int sampleCount) {
+        int weight = Math.max(1, Math.min(TEMPORAL_SAMPLE_WEIGHT,
+                Integer.MAX_VALUE / Math.max(1, sampleCount)));
+        long weightedSamples = (long) sampleCount * weight;
+        while (histogram.getTotalCount() + weightedSamples > Integer.MAX_VALUE) {
+            histogram.scale(1, 2);
+        }
+        return weight;
+    }
+
+    // Swapped here rather than in the setters, since the quantizers are only used by this thread
+    private void updateQuantizer() {
+        if (quantizerAlgorithm == QUANTIZER_K_MEANS) {
+            if (kMeansQuantizer == null) {
+                kMeansQuantizer = new KMeansQuantizer();
+            }
+            kMeansQuantizer.setMaxIterations(kMeansIterations);
+            quantizer = kMeansQuantizer;
+        } else {
+            quantizer = medianCutQuantizer;
+        }
+    }
+
+    private void updateGrid() {
+        if (gridColumns == 0) {
+            gridAnalyzer = null;
+        } else if (gridAnalyzer == null || gridAnalyzer.getColumns() != gridColumns ||
+                gridAnalyzer.getRows() != gridRows) {
+            gridAnalyzer = new GridColorAnalyzer(gridColumns, gridRows);
+        }
+    }
+
+    private void finishFrame() {
+        if (referenceTable.getCount() > 0) {
+            calcReferenceCoverage();
+            return;
+        }
+        int swatchCount = quantizer.quantize(frameTarget, NUM_OF_COLORS, swatchColors,
+                swatchPopulations);
+        calcMostProminentData(swatchCount);
+    }
+
+    // One table lookup per color in the histogram, however many pixels it was sampled from
+    private void calcReferenceCoverage() {
+        int references = referenceTable.getCount();
+        int[] coverage = referenceCoverage;
+        for (int i = 0; i < references; i++) {
+            coverage[i] = 0;
+        }
+        ColorHistogram histogram = frameTarget;
+        for (int i = 0, bins = histogram.getActiveBinCount(); i < bins; i++) {
+            int bin = histogram.getActiveBin(i);
+            int reference = referenceTable.lookupBin(bin);
+            if (reference != ReferenceColorTable.NO_MATCH) {
+                coverage[reference] += histogram.getCount(bin);
+            }
+        }
+
+        resultCount = Math.min(maxResults, references);
+        for (int i = 0; i < resultCount; i++) {
+            resultColors[i] = referenceTable.getColor(i);
+            resultPopulations[i] = coverage[i];
+        }
+        totalPopulation = histogram.getTotalCount();
+    }
+
+    // Works out which pixels of the frame are sampled and returns their number
+    private int updateSampling(int width, int height) {
+        synchronized (this) {
+            frameLeft = (int) (roiLeft * width);
+            frameTop = (int) (roiTop * height);
+            frameRight = Math.min(width, Math.max(frameLeft + 1,
+                    (int) Math.ceil(roiRight * width)));
+            frameBottom = Math.min(height, Math.max(frameTop + 1,
+                    (int) Math.ceil(roiBottom * height)));
+            frameStride = sampleStride;
+            if (targetSampleCount > 0) {
+                double regionPixels = (double) (frameRight - frameLeft) * (frameBottom - frameTop);
+                frameStride = Math.max(1, (int) Math.sqrt(regionPixels / targetSampleCount));
+            }
+            if (histogramThreads != (parallelBuilder != null ? parallelBuilder.getParallelism() :
+                    1)) {
+                // Replaced here rather than in the setter, so a frame never uses a builder that
+                // is being shut down
+                if (parallelBuilder != null) {
+                    parallelBuilder.shutdown();
+                }
+                parallelBuilder = histogramThreads > 1 ?
+                        new ParallelHistogramBuilder(histogramThreads) : null;
+            }
+        }
+
+        int columns = (frameRight - frameLeft + frameStride - 1) / frameStride;
+        int rows = (frameBottom - frameTop + frameStride - 1) / frameStride;
+        return columns * rows;
+    }
+
+    private void fillHistogram(byte[] data, int format, YuvPlanes planes, int width, int height,
+                               int sampleCount) {
+        if (parallelBuilder != null && sampleCount >= PARALLEL_MIN_SAMPLES) {
+            if (planes != null) {
+                parallelBuilder.build(planes, frameLeft, frameTop, frameRight, frameBottom,
+                        frameStride, frameTarget, frameWeight);
+            } else {
+                parallelBuilder.build(data, format, width, height, frameLeft, frameTop,
+                        frameRight, frameBottom, frameStride, frameTarget, frameWeight);
+            }
+            return;
+        }
+
+        if (pixels == null || pixels.length < sampleCount) {
+            pixels = new int[sampleCount];
+        }
+        boolean wholeFrame = frameStride == 1 && frameLeft == 0 && frameTop == 0 &&
+                frameRight == width && frameBottom == height;
+        if (planes != null) {
+            if (wholeFrame) {
+                YuvDecoder.decodeToArgb(planes, pixels);
+            } else {
+                YuvDecoder.sampleToArgb(planes, frameLeft, frameTop, frameRight, frameBottom,
+                        frameStride, pixels);
+            }
+        } else if (wholeFrame) {
+            YuvDecoder.decodeToArgb(data, format, width, height, pixels);
+        } else {
+            YuvDecoder.sampleToArgb(data, format, width, height, frameLeft, frameTop, frameRight,
+                    frameBottom, frameStride, pixels);
+        }
+        frameTarget.addAll(pixels, 0, sampleCount, frameWeight);
+    }
+
+    private void calcMostProminentData(int swatchCount) {
+        int[] colors = swatchColors;
+        int[] populations = swatchPopulations;
+        if (frameMergeThreshold > 0) {
+            swatchCount = clusterer.cluster(swatchColors, swatchPopulations, swatchCount,
+                    frameMergeThreshold, clusterColors, clusterPopulations);
+            colors = clusterColors;
+            populations = clusterPopulations;
+        }
+
+        rgbToPop.clear();
+        for (int i = 0; i < swatchCount; i++) {
+            int swatchPop = populations[i];
+            rgbToPop.add(colors[i], swatchPop);
+            totalPopulation += swatchPop;
+        }
+        // Now there are no swatches that belong to the same RGB. Rank them in one pass:
+        resultCount = rgbToPop.selectTop(maxResults, resultColors, resultPopulations);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Records raw preview frames to a file, with what the analysis needs to decode them again: the
+ * format, width and height onPreviewFrame() reads from Camera.Parameters, and when the frame
+ * arrived. FrameRecordingReader reads the file back, and FrameReplayer feeds it to the analysis,
+ * so performance tests can run the same input every time.
+ *
+ * The file starts with MAGIC and VERSION, then has one record per frame, all big endian:
+ *   int length        the bytes of the record after this field, RECORD_HEADER_BYTES + data
+ *   long timestamp    in nanoseconds, from any fixed origin
+ *   int format, int width, int height
+ *   byte[] data
+ *
+ * The camera thread can't wait for the disk, so record() only copies the frame into one of a few
+ * slots and a writer thread writes the slots through a FileChannel. When every slot is waiting to
+ * be written, the frame isn't recorded and is counted as dropped. The slots are reused, so
+ * recording frames of the same size allocates nothing.
+ */
+public class FrameRecorder implements Closeable {
+    static final int MAGIC = 0x50434652; // "PCFR"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_BYTES = 8;
+    // The timestamp, format, width and height of a record
+    static final int RECORD_HEADER_BYTES = 20;
+    private static final ByteBuffer END_OF_RECORDING = ByteBuffer.allocate(0);
+
+
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> freeSlots;
+    private final BlockingQueue<ByteBuffer> filledSlots;
+    private final Thread writer;
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile IOException failure;
+    private boolean closed;
+
+
+    /*
+     * Creates or truncates the file. slotCount frames can wait to be written at the same time;
+     * a few are enough unless the storage stalls.
+     */
+    public FrameRecorder(File file, int slotCount) throws IOException {
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException("Invalid slot count: " + slotCount);
+        }
+        stream = new FileOutputStream(file);
+        channel = stream.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        try {
+            writeFully(header);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+
+        freeSlots = new ArrayBlockingQueue<>(slotCount);
+        // One more place for the end marker
+        filledSlots = new ArrayBlockingQueue<>(slotCount + 1);
+        for (int i = 0; i < slotCount; i++) {
+            freeSlots.add(ByteBuffer.allocate(0));
+        }
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeSlots();
+            }
+        }, "FrameRecorder");
+        writer.start();
+    }
+
+
+    /*
+     * Queues data[0, length) to be written and returns true, or returns false if the frame was
+     * dropped because the writer is behind or failed. Never blocks on the disk.
+     */
+    public synchronized boolean record(byte[] data, int length, int format, int width,
+                                       int height, long timestampNanos) {
+        if (closed) {
+            throw new IllegalStateException("The recorder is closed");
+        }
+        ByteBuffer slot = failure == null ? freeSlots.poll() : null;
+        if (slot == null) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        int recordBytes = 4 + RECORD_HEADER_BYTES + length;
+        if (slot.capacity() < recordBytes) {
+            slot = ByteBuffer.allocate(recordBytes);
+        }
+        slot.clear();
+        slot.putInt(RECORD_HEADER_BYTES + length).putLong(timestampNanos).putInt(format)
+                .putInt(width).putInt(height).put(data, 0, length).flip();
+        filledSlots.add(slot);
+        return true;
+    }
+
+    // Frames written to the file so far
+    public long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /*
+     * Writes the frames still waiting and closes the file. Throws the first write error, if
+     * there was one; the frames recorded before it are in the file.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            filledSlots.add(END_OF_RECORDING);
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        stream.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeSlots() {
+        while (true) {
+            ByteBuffer slot;
+            try {
+                slot = filledSlots.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (slot == END_OF_RECORDING) {
+                return;
+            }
+            if (failure == null) {
+                try {
+                    writeFully(slot);
+                    recordedCount.incrementAndGet();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            freeSlots.add(slot);
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
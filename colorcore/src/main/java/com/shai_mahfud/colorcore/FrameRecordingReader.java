@@ -0,0 +1,124 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Reads the frames of a FrameRecorder file back, one after the other. The frame data goes into
+ * a single buffer that is only reallocated for a bigger frame, so it's valid until the next call
+ * to next(). A record cut short at the end of the file, as a crash while recording leaves it, is
+ * ignored.
+ */
+public class FrameRecordingReader implements Closeable {
+    private final FileInputStream stream;
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(4 + FrameRecorder.RECORD_HEADER_BYTES);
+    private byte[] data = new byte[0];
+    private ByteBuffer dataBuffer = ByteBuffer.wrap(data);
+    private int length;
+    private long timestampNanos;
+    private int format;
+    private int width;
+    private int height;
+    private long frameCount;
+
+
+    public FrameRecordingReader(File file) throws IOException {
+        stream = new FileInputStream(file);
+        channel = stream.getChannel();
+        ByteBuffer fileHeader = ByteBuffer.allocate(FrameRecorder.FILE_HEADER_BYTES);
+        if (!readFully(fileHeader) || fileHeader.getInt(0) != FrameRecorder.MAGIC) {
+            stream.close();
+            throw new IOException("Not a frame recording: " + file);
+        }
+        int version = fileHeader.getInt(4);
+        if (version != FrameRecorder.VERSION) {
+            stream.close();
+            throw new IOException("Unsupported recording version " + version + ": " + file);
+        }
+    }
+
+
+    // Reads the next frame and returns true, or returns false at the end of the recording
+    public boolean next() throws IOException {
+        header.clear();
+        if (!readFully(header)) {
+            return false;
+        }
+        int recordLength = header.getInt(0);
+        if (recordLength < FrameRecorder.RECORD_HEADER_BYTES) {
+            throw new IOException("Corrupt record " + frameCount + ": length " + recordLength);
+        }
+        int dataLength = recordLength - FrameRecorder.RECORD_HEADER_BYTES;
+        if (data.length < dataLength) {
+            data = new byte[dataLength];
+            dataBuffer = ByteBuffer.wrap(data);
+        }
+        dataBuffer.clear();
+        dataBuffer.limit(dataLength);
+        if (!readFully(dataBuffer)) {
+            return false;
+        }
+
+        length = dataLength;
+        timestampNanos = header.getLong(4);
+        format = header.getInt(12);
+        width = header.getInt(16);
+        height = header.getInt(20);
+        frameCount++;
+        return true;
+    }
+
+    // The frame is data()[0, getLength())
+    public byte[] data() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Frames read so far
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    // Returns false if the file ends before the buffer is full
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Feeds a recording to a FrameAnalysisEngine in place of the camera, through a PreviewBufferPool
+ * like the live preview, so latency and throughput tests get the same input on every run:
+ *
+ * - MODE_RECORDED_TIMING submits every frame as long after the first one as it was recorded.
+ *   When every buffer is still in use the frame is skipped, as the camera skips it.
+ * - MODE_AS_FAST_AS_POSSIBLE submits the next frame as soon as the previous one is released.
+ *   Frames never wait in the engine's mailbox, so none is dropped: every frame is analyzed, in
+ *   order, and the results are the same on every run.
+ *
+ * The listener of the engine must hand every frame back with onFrameReleased(), like the view's
+ * listener hands it back to its pool.
+ */
+public class FrameReplayer {
+    public static final int MODE_RECORDED_TIMING = 0;
+    public static final int MODE_AS_FAST_AS_POSSIBLE = 1;
+
+
+    private final FrameAnalysisEngine engine;
+    private final PreviewBufferPool pool;
+    // Buffers given back by the pool, guarded by itself
+    private final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+    private final PreviewBufferPool.CallbackBufferSink sink =
+            new PreviewBufferPool.CallbackBufferSink() {
+                @Override
+                public void addCallbackBuffer(byte[] buffer) {
+                    synchronized (freeBuffers) {
+                        freeBuffers.add(buffer);
+                        freeBuffers.notifyAll();
+                    }
+                }
+            };
+    private int bufferSize = -1;
+    private long skippedCount;
+
+
+    // bufferCount buffers are shared by the replay and the engine, 3 like the live view
+    public FrameReplayer(FrameAnalysisEngine engine, int bufferCount) {
+        this.engine = engine;
+        pool = new PreviewBufferPool(bufferCount);
+    }
+
+
+    // To be called by the engine's listener for every frame it's done with
+    public void onFrameReleased(byte[] data, boolean dropped) {
+        if (dropped) {
+            pool.drop(data);
+        } else {
+            pool.release(data);
+        }
+    }
+
+    /*
+     * Submits the frames of the recording from where the reader is to its end, and waits until
+     * the engine released all of them. Returns the number of frames submitted.
+     */
+    public int replay(FrameRecordingReader reader, int mode)
+            throws IOException, InterruptedException {
+        if (mode != MODE_RECORDED_TIMING && mode != MODE_AS_FAST_AS_POSSIBLE) {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        int submitted = 0;
+        boolean first = true;
+        long firstTimestamp = 0;
+        long startNanos = 0;
+        while (reader.next()) {
+            if (reader.getLength() != bufferSize) {
+                resizeBuffers(reader.getLength());
+            }
+
+            byte[] buffer;
+            if (mode == MODE_AS_FAST_AS_POSSIBLE) {
+                awaitAllReleased();
+                buffer = takeFreeBuffer();
+            } else {
+                if (first) {
+                    firstTimestamp = reader.getTimestampNanos();
+                    startNanos = System.nanoTime();
+                    first = false;
+                }
+                sleepUntil(startNanos + reader.getTimestampNanos() - firstTimestamp);
+                buffer = takeFreeBuffer();
+                if (buffer == null) {
+                    skippedCount++;
+                    continue;
+                }
+            }
+
+            System.arraycopy(reader.data(), 0, buffer, 0, reader.getLength());
+            pool.acquire(buffer);
+            engine.submit(buffer, reader.getFormat(), reader.getWidth(), reader.getHeight());
+            submitted++;
+        }
+        awaitAllReleased();
+        return submitted;
+    }
+
+    // Frames of MODE_RECORDED_TIMING replays that found no free buffer
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    // The buffers can only be replaced once the engine is done with all of them
+    private void resizeBuffers(int size) throws InterruptedException {
+        awaitAllReleased();
+        pool.stop();
+        synchronized (freeBuffers) {
+            freeBuffers.clear();
+        }
+        pool.start(sink, size);
+        bufferSize = size;
+    }
+
+    private void awaitAllReleased() throws InterruptedException {
+        if (bufferSize < 0) {
+            return; // Nothing was submitted yet
+        }
+        synchronized (freeBuffers) {
+            while (freeBuffers.size() < pool.getCapacity()) {
+                freeBuffers.wait();
+            }
+        }
+    }
+
+    private byte[] takeFreeBuffer() {
+        synchronized (freeBuffers) {
+            return freeBuffers.poll();
+        }
+    }
+
+    private static void sleepUntil(long nanos) throws InterruptedException {
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * Decides which preview frames are worth analyzing. Three policies are supported:
+ * - FIXED_RATE: analyze at most targetHz frames per second.
+ * - AS_FAST_AS_POSSIBLE: hand every frame over. FrameAnalysisEngine only keeps the latest one, so
+ *   the analyzer runs back to back on the freshest frame.
+ * - ADAPTIVE: keep the CPU time spent on analysis under a fraction (the duty cycle) of the wall
+ *   time, based on the measured cost of the recent analyses. The rate never exceeds what the
+ *   analysis latency allows either.
+ *
+ * All the times come from a monotonic Clock, which tests replace with a fake one.
+ */
+public class FrameScheduler {
+    public enum Mode {
+        FIXED_RATE,
+        AS_FAST_AS_POSSIBLE,
+        ADAPTIVE
+    }
+
+    public interface Clock {
+        // Monotonic wall time, like System.nanoTime()
+        long nanoTime();
+
+        // CPU time consumed by the calling thread
+        long currentThreadCpuTimeNanos();
+    }
+
+
+    /*
+     * Reports the wall time as the CPU time too. The desktop JVM's per-thread CPU clock,
+     * ThreadMXBean.getCurrentThreadCpuTime(), lives in java.lang.management, which Android doesn't
+     * have, and this library runs on both. On Android, pass a clock backed by
+     * Debug.threadCpuTimeNanos().
+     */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentThreadCpuTimeNanos() {
+            return System.nanoTime();
+        }
+    };
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    // The adaptive interval before anything was measured, and its bounds
+    private static final long INITIAL_ADAPTIVE_INTERVAL_NANOS = NANOS_PER_SECOND / 10;
+    private static final long MAX_ADAPTIVE_INTERVAL_NANOS = NANOS_PER_SECOND * 2;
+    // Weight of the newest measurement in the moving averages, as a shift: 1/8
+    private static final int AVERAGE_WEIGHT_SHIFT = 3;
+
+
+    private final Clock clock;
+    private Mode mode = Mode.AS_FAST_AS_POSSIBLE;
+    private long fixedIntervalNanos;
+    private double dutyCycle;
+    private long nextDueNanos;
+    private boolean firstFrame = true;
+
+    private long averageWallNanos = -1;
+    private long averageCpuNanos = -1;
+    private long acceptedCount;
+    private long rejectedCount;
+
+
+    public FrameScheduler(Clock clock) {
+        this.clock = clock;
+    }
+
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public synchronized void setFixedRate(double targetHz) {
+        if (targetHz <= 0) {
+            throw new IllegalArgumentException("Invalid rate: " + targetHz);
+        }
+        mode = Mode.FIXED_RATE;
+        fixedIntervalNanos = (long) (NANOS_PER_SECOND / targetHz);
+        firstFrame = true;
+    }
+
+    public synchronized void setAsFastAsPossible() {
+        mode = Mode.AS_FAST_AS_POSSIBLE;
+    }
+
+    // maxDutyCycle is the largest fraction of time the analysis may keep a core busy, in (0, 1]
+    public synchronized void setAdaptive(double maxDutyCycle) {
+        if (maxDutyCycle <= 0 || maxDutyCycle > 1) {
+            throw new IllegalArgumentException("Invalid duty cycle: " + maxDutyCycle);
+        }
+        mode = Mode.ADAPTIVE;
+        dutyCycle = maxDutyCycle;
+        firstFrame = true;
+    }
+
+    public synchronized Mode getMode() {
+        return mode;
+    }
+
+    // Called for every frame the camera delivers. Returns true if the frame should be analyzed.
+    public synchronized boolean shouldAnalyze() {
+        if (mode == Mode.AS_FAST_AS_POSSIBLE) {
+            acceptedCount++;
+            return true;
+        }
+
+        long now = clock.nanoTime();
+        long interval = getIntervalNanos();
+        if (!firstFrame && now - nextDueNanos < 0) {
+            rejectedCount++;
+            return false;
+        }
+        // Frames arrive at the camera's pace, so the due time is rarely hit exactly. Advancing it
+        // from the previous due time keeps the average rate on target, and limiting the catch up
+        // to half an interval avoids a burst after a pause.
+        nextDueNanos = firstFrame ? now + interval :
+                Math.max(nextDueNanos + interval, now + interval / 2);
+        firstFrame = false;
+        acceptedCount++;
+        return true;
+    }
+
+    // Called by the analysis thread with the cost of every analysis
+    public synchronized void onAnalysisFinished(long wallNanos, long cpuNanos) {
+        averageWallNanos = average(averageWallNanos, wallNanos);
+        averageCpuNanos = average(averageCpuNanos, cpuNanos);
+    }
+
+    // The current minimum time between two analyzed frames, 0 when there is none
+    public synchronized long getIntervalNanos() {
+        switch (mode) {
+            case FIXED_RATE:
+                return fixedIntervalNanos;
+            case ADAPTIVE:
+                if (averageCpuNanos < 0) {
+                    return INITIAL_ADAPTIVE_INTERVAL_NANOS;
+                }
+                long interval = Math.max((long) (averageCpuNanos / dutyCycle), averageWallNanos);
+                return Math.min(interval, MAX_ADAPTIVE_INTERVAL_NANOS);
+            default:
+                return 0;
+        }
+    }
+
+    public synchronized long getAverageWallNanos() {
+        return averageWallNanos;
+    }
+
+    public synchronized long getAverageCpuNanos() {
+        return averageCpuNanos;
+    }
+
+    public synchronized long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    private static long average(long average, long sample) {
+        if (average < 0) {
+            return sample;
+        }
+        return average + ((sample - average) >> AVERAGE_WEIGHT_SHIFT);
+    }
+}
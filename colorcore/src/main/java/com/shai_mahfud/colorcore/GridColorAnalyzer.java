@@ -0,0 +1,320 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * Finds the dominant color of every tile of a columns x rows grid over a region of the frame,
+ * without quantizing each tile like a whole frame. The frame is read once, row by row, straight
+ * from its YUV bytes: every sample goes into a coarse histogram of its tile, 3 bits each of Y, U
+ * and V. Each bin also sums the exact Y, U and V of its samples, so the dominant color of a tile
+ * is the average of the samples in its most populated bin rather than the center of the bin.
+ * Picking the colors then only takes a scan of the bin counts of every tile. The samples an
+ * AnalysisGraph already decoded can be analyzed too, converted back to YUV, so the grid doesn't
+ * cost a second pass over the raw frame next to the other analyses of the graph.
+ *
+ * The results are plain arrays indexed by tile, row-major: the ARGB color of every tile, and how
+ * many of its samples were in the dominant bin. The histograms take 8 KB per tile and are
+ * allocated once, so analyzing frames allocates nothing. Their sums are ints, so a region is
+ * rejected above MAX_SAMPLES samples, a little more than a 4K frame; sample bigger ones with a
+ * stride.
+ *
+ * Not thread safe: FrameAnalyzer uses it from the analysis thread, and an AnalysisGraph never
+ * calls an analysis again before it returns.
+ */
+public class GridColorAnalyzer {
+    public static final int MAX_GRID_SIZE = 32;
+    // All of them in one bin of one tile still leave room for the sums and the rounding
+    public static final int MAX_SAMPLES = Integer.MAX_VALUE / 256;
+
+
+    private static final int BIN_BITS = 3;
+    private static final int BIN_SHIFT = 8 - BIN_BITS;
+    // Every bin is its count and the sums of Y, U and V, next to each other in memory
+    private static final int FIELDS = 4;
+    private static final int TILE_SHIFT = 3 * BIN_BITS + 2;
+    private static final int TILE_STRIDE = 1 << TILE_SHIFT;
+    /*
+     * The inverse of YuvDecoder's full range BT.601 conversion, in 16.16 fixed point. The 0.5 of
+     * U and V is rounded down, so pure blue and red stay within 255 rather than rounding up to 256.
+     */
+    private static final int SCALE_BITS = 16;
+    private static final int ONE_HALF = 1 << (SCALE_BITS - 1);
+    private static final int R_TO_Y = 19595;
+    private static final int G_TO_Y = 38470;
+    private static final int B_TO_Y = 7471;
+    private static final int R_TO_U = -11059;
+    private static final int G_TO_U = -21709;
+    private static final int B_TO_U = 32767;
+    private static final int R_TO_V = 32767;
+    private static final int G_TO_V = -27439;
+    private static final int B_TO_V = -5329;
+    private static final int CHROMA_OFFSET = (128 << SCALE_BITS) + ONE_HALF;
+
+
+    private final int columns;
+    private final int rows;
+    private final int[] bins;
+    // The count of the most populated bin of every tile
+    private final int[] dominantCounts;
+    private final int[] sampleCounts;
+    private final int[] colors;
+    /*
+     * The first sampled column of every column of tiles, and the end of the region, for the region
+     * and stride the grid was last laid over. A row is read a tile at a time from them.
+     */
+    private final int[] columnStarts;
+    private int layoutLeft = -1;
+    private int layoutRight;
+    private int layoutStride;
+
+
+    public GridColorAnalyzer(int columns, int rows) {
+        if (columns <= 0 || rows <= 0 || columns > MAX_GRID_SIZE || rows > MAX_GRID_SIZE) {
+            throw new IllegalArgumentException("Invalid grid: " + columns + "x" + rows);
+        }
+        this.columns = columns;
+        this.rows = rows;
+        int tiles = columns * rows;
+        bins = new int[tiles * TILE_STRIDE];
+        dominantCounts = new int[tiles];
+        sampleCounts = new int[tiles];
+        colors = new int[tiles];
+        columnStarts = new int[columns + 1];
+    }
+
+
+    /*
+     * Analyzes the pixels YuvDecoder.sampleToArgb() would sample from the region of a frame in one
+     * of the formats YuvDecoder supports. The grid divides the region as evenly as it can; a tile
+     * with no samples, when the region has fewer sampled rows or columns than the grid, is
+     * transparent. Throws IllegalArgumentException if the region has more than MAX_SAMPLES
+     * samples.
+     */
+    public void analyze(byte[] data, int format, int width, int height, int left, int top,
+                        int right, int bottom, int stride) {
+        YuvDecoder.checkFrame(data, format, width, height);
+        beginFrame(width, height, left, top, right, bottom, stride);
+        int frameSize = width * height;
+        int yStep = format == YuvDecoder.FORMAT_YUY2 ? 2 : 1;
+        int uOffset = format == YuvDecoder.FORMAT_NV16 ? 0 : 1;
+        int vOffset = format == YuvDecoder.FORMAT_NV21 ? 0 : (format == YuvDecoder.FORMAT_NV16 ?
+                1 : 3);
+
+        for (int row = top; row < bottom; row += stride) {
+            int yRow, chromaRow;
+            switch (format) {
+                case YuvDecoder.FORMAT_NV21:
+                    yRow = row * width;
+                    chromaRow = frameSize + (row >> 1) * width;
+                    break;
+                case YuvDecoder.FORMAT_NV16:
+                    yRow = row * width;
+                    chromaRow = frameSize + row * width;
+                    break;
+                default:
+                    yRow = row * width * 2;
+                    chromaRow = yRow;
+                    break;
+            }
+            int tileRow = (row - top) * rows / (bottom - top);
+            int rowOffset = (tileRow * columns) << TILE_SHIFT;
+            for (int tileColumn = 0; tileColumn < columns; tileColumn++) {
+                int tileOffset = rowOffset + (tileColumn << TILE_SHIFT);
+                for (int col = columnStarts[tileColumn], end = columnStarts[tileColumn + 1];
+                     col < end; col += stride) {
+                    int chromaIndex = chromaRow + (col & ~1) * yStep;
+                    add(tileOffset, data[yRow + col * yStep] & 0xFF,
+                            data[chromaIndex + uOffset] & 0xFF,
+                            data[chromaIndex + vOffset] & 0xFF);
+                }
+            }
+        }
+        finishFrame();
+    }
+
+    // Like analyze() for a byte array, for a frame given as planes
+    public void analyze(YuvPlanes planes, int left, int top, int right, int bottom, int stride) {
+        planes.check();
+        beginFrame(planes.getWidth(), planes.getHeight(), left, top, right, bottom, stride);
+        ByteBuffer yBuffer = planes.getBuffer(YuvPlanes.PLANE_Y);
+        ByteBuffer uBuffer = planes.getBuffer(YuvPlanes.PLANE_U);
+        ByteBuffer vBuffer = planes.getBuffer(YuvPlanes.PLANE_V);
+        int yRowStride = planes.getRowStride(YuvPlanes.PLANE_Y);
+        int yPixelStride = planes.getPixelStride(YuvPlanes.PLANE_Y);
+        int uRowStride = planes.getRowStride(YuvPlanes.PLANE_U);
+        int uPixelStride = planes.getPixelStride(YuvPlanes.PLANE_U);
+        int vRowStride = planes.getRowStride(YuvPlanes.PLANE_V);
+        int vPixelStride = planes.getPixelStride(YuvPlanes.PLANE_V);
+
+        for (int row = top; row < bottom; row += stride) {
+            int yRow = row * yRowStride;
+            int uRow = (row >> 1) * uRowStride;
+            int vRow = (row >> 1) * vRowStride;
+            int tileRow = (row - top) * rows / (bottom - top);
+            int rowOffset = (tileRow * columns) << TILE_SHIFT;
+            for (int tileColumn = 0; tileColumn < columns; tileColumn++) {
+                int tileOffset = rowOffset + (tileColumn << TILE_SHIFT);
+                for (int col = columnStarts[tileColumn], end = columnStarts[tileColumn + 1];
+                     col < end; col += stride) {
+                    add(tileOffset, yBuffer.get(yRow + col * yPixelStride) & 0xFF,
+                            uBuffer.get(uRow + (col >> 1) * uPixelStride) & 0xFF,
+                            vBuffer.get(vRow + (col >> 1) * vPixelStride) & 0xFF);
+                }
+            }
+        }
+        finishFrame();
+    }
+
+    /*
+     * Like analyze() for a byte array, for the samples an AnalysisGraph decoded. The grid is laid
+     * over the region and stride the frame was sampled with, so every sample goes to the tile it
+     * would from the raw frame. The samples go back to YUV for the bins; a sample on the edge of a
+     * bin may land in the next one after the round trip, so the colors can differ slightly from
+     * those of the raw frame.
+     */
+    public void analyze(SampledFrame frame) {
+        int left = frame.getLeft();
+        int top = frame.getTop();
+        int bottom = frame.getBottom();
+        int stride = frame.getStride();
+        beginFrame(frame.getFrameWidth(), frame.getFrameHeight(), left, top, frame.getRight(),
+                bottom, stride);
+        int[] pixels = frame.getPixels();
+        int sampleColumns = frame.getColumns();
+
+        for (int sampleRow = 0, sampleRows = frame.getRows(); sampleRow < sampleRows;
+             sampleRow++) {
+            int tileRow = sampleRow * stride * rows / (bottom - top);
+            int rowOffset = (tileRow * columns) << TILE_SHIFT;
+            int rowStart = sampleRow * sampleColumns;
+            for (int tileColumn = 0; tileColumn < columns; tileColumn++) {
+                int tileOffset = rowOffset + (tileColumn << TILE_SHIFT);
+                // The column starts are sampled columns, apart from the end of the region
+                int start = rowStart + (columnStarts[tileColumn] - left + stride - 1) / stride;
+                int end = rowStart + (columnStarts[tileColumn + 1] - left + stride - 1) / stride;
+                for (int i = start; i < end; i++) {
+                    int argb = pixels[i];
+                    int r = (argb >> 16) & 0xFF;
+                    int g = (argb >> 8) & 0xFF;
+                    int b = argb & 0xFF;
+                    add(tileOffset, (R_TO_Y * r + G_TO_Y * g + B_TO_Y * b + ONE_HALF) >> SCALE_BITS,
+                            (R_TO_U * r + G_TO_U * g + B_TO_U * b + CHROMA_OFFSET) >> SCALE_BITS,
+                            (R_TO_V * r + G_TO_V * g + B_TO_V * b + CHROMA_OFFSET) >> SCALE_BITS);
+                }
+            }
+        }
+        finishFrame();
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    // The number of tiles, columns * rows
+    public int getTileCount() {
+        return colors.length;
+    }
+
+    // The dominant color of tile row * getColumns() + column
+    public int getColor(int tile) {
+        return colors[tile];
+    }
+
+    // The samples of the tile in its dominant color's bin
+    public int getDominantCount(int tile) {
+        return dominantCounts[tile];
+    }
+
+    public int getSampleCount(int tile) {
+        return sampleCounts[tile];
+    }
+
+    // Copies the colors of all the tiles, row-major, to out
+    public void copyColors(int[] out) {
+        System.arraycopy(colors, 0, out, 0, colors.length);
+    }
+
+    private void beginFrame(int width, int height, int left, int top, int right, int bottom,
+                            int stride) {
+        if (left < 0 || top < 0 || right > width || bottom > height || left >= right ||
+                top >= bottom || stride <= 0) {
+            throw new IllegalArgumentException("Invalid region or stride");
+        }
+        long samples = (long) ((right - left + stride - 1) / stride) *
+                ((bottom - top + stride - 1) / stride);
+        if (samples > MAX_SAMPLES) {
+            throw new IllegalArgumentException("Too many samples for the grid: " + samples);
+        }
+        if (left != layoutLeft || right != layoutRight || stride != layoutStride) {
+            layOutColumns(left, right, stride);
+        }
+    }
+
+    private void layOutColumns(int left, int right, int stride) {
+        // Sample i goes to tile column i * stride * columns / (right - left), like the rows
+        int tileColumn = 0;
+        for (int col = left; col < right; col += stride) {
+            int sampleColumn = (col - left) * columns / (right - left);
+            while (tileColumn <= sampleColumn) {
+                columnStarts[tileColumn++] = col;
+            }
+        }
+        while (tileColumn <= columns) {
+            columnStarts[tileColumn++] = right;
+        }
+        layoutLeft = left;
+        layoutRight = right;
+        layoutStride = stride;
+    }
+
+    // Adds a sample to the histogram of the tile at tileOffset in bins
+    private void add(int tileOffset, int y, int u, int v) {
+        int index = tileOffset + (((y >> BIN_SHIFT) << (2 * BIN_BITS)) |
+                ((u >> BIN_SHIFT) << BIN_BITS) | (v >> BIN_SHIFT)) * FIELDS;
+        bins[index]++;
+        bins[index + 1] += y;
+        bins[index + 2] += u;
+        bins[index + 3] += v;
+    }
+
+    /*
+     * Finds the most populated bin of every tile. Keeping track of it while adding the samples
+     * would be a hard to predict branch per sample; a scan of the counts per frame is cheaper.
+     */
+    private void finishFrame() {
+        for (int tile = 0; tile < colors.length; tile++) {
+            int tileOffset = tile << TILE_SHIFT;
+            int index = tileOffset;
+            int count = 0;
+            int samples = 0;
+            for (int bin = tileOffset, end = tileOffset + TILE_STRIDE; bin < end; bin += FIELDS) {
+                int binCount = bins[bin];
+                samples += binCount;
+                if (binCount > count) {
+                    count = binCount;
+                    index = bin;
+                }
+            }
+            sampleCounts[tile] = samples;
+            dominantCounts[tile] = count;
+            if (count == 0) {
+                colors[tile] = 0;
+                continue;
+            }
+            int half = count / 2;
+            colors[tile] = YuvDecoder.yuvToArgb((bins[index + 1] + half) / count,
+                    (bins[index + 2] + half) / count, (bins[index + 3] + half) / count);
+            // Cleared for the next frame while it's still in the cache
+            Arrays.fill(bins, tileOffset, tileOffset + TILE_STRIDE, 0);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.util.Random;
+
+/*
+ * K-means over the color histogram: the distinct colors, weighted by their counts, are assigned
+ * to the nearest of maxColors centroids, and every centroid moves to the average of its colors,
+ * which lowers the quantization error where median cut's boxes leave it. The swatches also move
+ * smoothly between frames, where median cut can split a box differently from one frame to the
+ * next.
+ *
+ * The first frame is seeded with k-means++: the most populated color, then colors drawn with a
+ * probability proportional to their count and squared distance from the centroids so far. Every
+ * later frame starts from the centroids of the previous one, which already fit a frame that is
+ * almost the same, so one or two iterations per frame are enough. A cold start gets a few more.
+ * A centroid left without colors, e.g. when the camera turns to a different scene, is moved to
+ * the color that adds the most to the error, so it doesn't stay unused on the old colors.
+ *
+ * Everything is integer arithmetic: the channels are the 5 bit components of the histogram bins
+ * and the centroids keep 8 more fractional bits. The buffers are allocated once, like in
+ * MedianCutQuantizer.
+ */
+public class KMeansQuantizer implements ColorQuantizer {
+    public static final int DEFAULT_MAX_ITERATIONS = 2;
+    private static final int COLD_START_ITERATIONS = 8;
+    private static final int FRACTION_BITS = 8;
+    private static final long SEED = 0x5EEDL;
+
+
+    private final ColorHistogram histogram = new ColorHistogram();
+    // The distinct colors of the histogram, each channel in fixed point, and their counts:
+    private final int[] colorRed = new int[ColorHistogram.BIN_COUNT];
+    private final int[] colorGreen = new int[ColorHistogram.BIN_COUNT];
+    private final int[] colorBlue = new int[ColorHistogram.BIN_COUNT];
+    private final int[] colorCount = new int[ColorHistogram.BIN_COUNT];
+    // The squared distance of each color to its nearest centroid, while seeding and iterating
+    private final int[] nearestDistance = new int[ColorHistogram.BIN_COUNT];
+    private final Random random = new Random(SEED);
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+    private int centroidCount;
+    private int[] centroidRed = new int[0];
+    private int[] centroidGreen = new int[0];
+    private int[] centroidBlue = new int[0];
+    private long[] sumRed = new long[0];
+    private long[] sumGreen = new long[0];
+    private long[] sumBlue = new long[0];
+    private long[] population = new long[0];
+
+
+    // Caps the iterations of a warm started frame; the more, the closer to convergence
+    public void setMaxIterations(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Invalid iteration count: " + iterations);
+        }
+        maxIterations = iterations;
+    }
+
+    // Seeds the next frame from scratch, e.g. after a scene cut
+    public void reset() {
+        centroidCount = 0;
+    }
+
+    @Override
+    public int quantize(int[] pixels, int count, int maxColors, int[] outColors,
+                        int[] outPopulations) {
+        histogram.clear();
+        histogram.addAll(pixels, 0, count);
+        return quantize(histogram, maxColors, outColors, outPopulations);
+    }
+
+    @Override
+    public int quantize(ColorHistogram histogram, int maxColors, int[] outColors,
+                        int[] outPopulations) {
+        if (maxColors <= 0 || histogram.getActiveBinCount() == 0) {
+            return 0;
+        }
+
+        // Take the bins in order, like MedianCutQuantizer, so the result only depends on the
+        // counts. They are sorted into colorCount, with nearestDistance as the scratch space,
+        // and every bin is replaced by its count once its channels are read.
+        int distinctColors = histogram.copySortedActiveBins(colorCount, nearestDistance);
+        for (int i = 0; i < distinctColors; i++) {
+            int bin = colorCount[i];
+            colorRed[i] = ColorHistogram.redOf(bin) << FRACTION_BITS;
+            colorGreen[i] = ColorHistogram.greenOf(bin) << FRACTION_BITS;
+            colorBlue[i] = ColorHistogram.blueOf(bin) << FRACTION_BITS;
+            colorCount[i] = histogram.getCount(bin);
+        }
+
+        if (distinctColors <= maxColors) {
+            // Nothing to quantize, every color is its own swatch. There is nothing to warm start
+            // from either.
+            for (int i = 0; i < distinctColors; i++) {
+                outColors[i] = toArgb(colorRed[i], colorGreen[i], colorBlue[i]);
+                outPopulations[i] = colorCount[i];
+            }
+            centroidCount = 0;
+            return distinctColors;
+        }
+
+        int iterations = maxIterations;
+        if (centroidCount != maxColors) {
+            ensureCapacity(maxColors);
+            seed(distinctColors, maxColors);
+            iterations = Math.max(iterations, COLD_START_ITERATIONS);
+        }
+        for (int i = 0; i < iterations; i++) {
+            boolean moved = iterate(distinctColors);
+            if (reseedEmptyCentroids(distinctColors)) {
+                if (i == iterations - 1) {
+                    iterate(distinctColors); // Hands the reseeded centroids their colors
+                }
+            } else if (!moved) {
+                break; // Converged
+            }
+        }
+
+        // The centroids are the averages of the colors last assigned to them. Those still
+        // without colors are skipped, and reseeded with the next frame.
+        int swatchCount = 0;
+        for (int i = 0; i < centroidCount; i++) {
+            if (population[i] > 0) {
+                outColors[swatchCount] = toArgb(centroidRed[i], centroidGreen[i],
+                        centroidBlue[i]);
+                outPopulations[swatchCount] = (int) population[i];
+                swatchCount++;
+            }
+        }
+        return swatchCount;
+    }
+
+    private void ensureCapacity(int maxColors) {
+        if (centroidRed.length >= maxColors) {
+            return;
+        }
+        centroidRed = new int[maxColors];
+        centroidGreen = new int[maxColors];
+        centroidBlue = new int[maxColors];
+        sumRed = new long[maxColors];
+        sumGreen = new long[maxColors];
+        sumBlue = new long[maxColors];
+        population = new long[maxColors];
+    }
+
+    // k-means++, with a fixed seed so the same histogram always gives the same swatches
+    private void seed(int distinctColors, int maxColors) {
+        random.setSeed(SEED);
+        int first = 0;
+        for (int i = 1; i < distinctColors; i++) {
+            if (colorCount[i] > colorCount[first]) {
+                first = i;
+            }
+        }
+        centroidCount = 0;
+        addCentroid(first);
+        for (int i = 0; i < distinctColors; i++) {
+            nearestDistance[i] = distance(i, 0);
+        }
+
+        while (centroidCount < maxColors) {
+            long total = 0;
+            for (int i = 0; i < distinctColors; i++) {
+                total += (long) colorCount[i] * nearestDistance[i];
+            }
+            // There are more distinct colors than centroids, so some color is still uncovered
+            // and the total is positive
+            long target = (long) (random.nextDouble() * total);
+            int chosen = 0;
+            long cumulative = (long) colorCount[0] * nearestDistance[0];
+            while (cumulative <= target && chosen < distinctColors - 1) {
+                chosen++;
+                cumulative += (long) colorCount[chosen] * nearestDistance[chosen];
+            }
+            while (nearestDistance[chosen] == 0) {
+                chosen--; // Rounding can land on a covered color; the previous one isn't
+            }
+
+            int centroid = centroidCount;
+            addCentroid(chosen);
+            for (int i = 0; i < distinctColors; i++) {
+                nearestDistance[i] = Math.min(nearestDistance[i], distance(i, centroid));
+            }
+        }
+    }
+
+    private void addCentroid(int color) {
+        centroidRed[centroidCount] = colorRed[color];
+        centroidGreen[centroidCount] = colorGreen[color];
+        centroidBlue[centroidCount] = colorBlue[color];
+        centroidCount++;
+    }
+
+    // One assignment and update step. Returns whether any centroid moved.
+    private boolean iterate(int distinctColors) {
+        for (int i = 0; i < centroidCount; i++) {
+            sumRed[i] = 0;
+            sumGreen[i] = 0;
+            sumBlue[i] = 0;
+            population[i] = 0;
+        }
+        for (int i = 0; i < distinctColors; i++) {
+            int nearest = 0;
+            int best = distance(i, 0);
+            for (int centroid = 1; centroid < centroidCount; centroid++) {
+                int distance = distance(i, centroid);
+                if (distance < best) {
+                    best = distance;
+                    nearest = centroid;
+                }
+            }
+            nearestDistance[i] = best;
+            long count = colorCount[i];
+            sumRed[nearest] += colorRed[i] * count;
+            sumGreen[nearest] += colorGreen[i] * count;
+            sumBlue[nearest] += colorBlue[i] * count;
+            population[nearest] += count;
+        }
+
+        boolean moved = false;
+        for (int i = 0; i < centroidCount; i++) {
+            long count = population[i];
+            if (count == 0) {
+                continue;
+            }
+            int red = (int) ((sumRed[i] + count / 2) / count);
+            int green = (int) ((sumGreen[i] + count / 2) / count);
+            int blue = (int) ((sumBlue[i] + count / 2) / count);
+            moved |= red != centroidRed[i] || green != centroidGreen[i] || blue != centroidBlue[i];
+            centroidRed[i] = red;
+            centroidGreen[i] = green;
+            centroidBlue[i] = blue;
+        }
+        return moved;
+    }
+
+    /*
+     * Moves every centroid that got no colors in the last iteration to the color with the largest
+     * weighted distance to its nearest centroid, using the distances iterate() left behind.
+     * Returns whether any centroid was moved. There are more distinct colors than centroids, so
+     * while a centroid is empty, some color is away from every centroid.
+     */
+    private boolean reseedEmptyCentroids(int distinctColors) {
+        boolean reseeded = false;
+        for (int centroid = 0; centroid < centroidCount; centroid++) {
+            if (population[centroid] > 0) {
+                continue;
+            }
+            int farthest = 0;
+            long farthestError = -1;
+            for (int i = 0; i < distinctColors; i++) {
+                long error = (long) colorCount[i] * nearestDistance[i];
+                if (error > farthestError) {
+                    farthestError = error;
+                    farthest = i;
+                }
+            }
+            if (farthestError == 0) {
+                break; // Every color already sits on a centroid
+            }
+            centroidRed[centroid] = colorRed[farthest];
+            centroidGreen[centroid] = colorGreen[farthest];
+            centroidBlue[centroid] = colorBlue[farthest];
+            nearestDistance[farthest] = 0; // So the next empty centroid takes another color
+            reseeded = true;
+        }
+        return reseeded;
+    }
+
+    // At most 3 * (31 << 8)^2, well within an int
+    private int distance(int color, int centroid) {
+        int red = colorRed[color] - centroidRed[centroid];
+        int green = colorGreen[color] - centroidGreen[centroid];
+        int blue = colorBlue[color] - centroidBlue[centroid];
+        return red * red + green * green + blue * blue;
+    }
+
+    /*
+     * Widens the fixed point channels to 8 bits the way ColorHistogram.toArgb() widens whole
+     * ones: c * 8.25, rounded down, is exactly (c << 3) | (c >> 2).
+     */
+    private static int toArgb(int red, int green, int blue) {
+        return 0xFF000000 | (widen(red) << 16) | (widen(green) << 8) | widen(blue);
+    }
+
+    private static int widen(int channel) {
+        return (channel * 33) >> (FRACTION_BITS + 2);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * The median cut algorithm Palette uses, without its per call allocations: the histogram, the
+ * sorted colors and the boxes all live in arrays that are allocated once and reused for every
+ * frame. The boxes are kept in parallel arrays instead of a priority queue of objects. There are
+ * never more than maxColors of them, so finding the next box to split is a short linear scan.
+ */
+public class MedianCutQuantizer implements ColorQuantizer {
+    private static final int RED = 0;
+    private static final int GREEN = 1;
+    private static final int BLUE = 2;
+
+
+    private final ColorHistogram histogram = new ColorHistogram();
+    // The distinct colors of the histogram, as histogram bins, and a scratch array for sorting:
+    private final int[] colors = new int[ColorHistogram.BIN_COUNT];
+    private final int[] sortBuffer = new int[ColorHistogram.BIN_COUNT];
+    private final int[] componentCounts = new int[ColorHistogram.CHANNEL_MAX + 2];
+
+    // Box i covers colors[boxLower[i]] to colors[boxUpper[i]], both inclusive:
+    private int[] boxLower = new int[0];
+    private int[] boxUpper = new int[0];
+    private int[] boxMinRed = new int[0];
+    private int[] boxMaxRed = new int[0];
+    private int[] boxMinGreen = new int[0];
+    private int[] boxMaxGreen = new int[0];
+    private int[] boxMinBlue = new int[0];
+    private int[] boxMaxBlue = new int[0];
+
+
+    @Override
+    public int quantize(int[] pixels, int count, int maxColors, int[] outColors,
+                        int[] outPopulations) {
+        histogram.clear();
+        histogram.addAll(pixels, 0, count);
+        return quantize(histogram, maxColors, outColors, outPopulations);
+    }
+
+    @Override
+    public int quantize(ColorHistogram histogram, int maxColors, int[] outColors,
+                        int[] outPopulations) {
+        if (maxColors <= 0 || histogram.getActiveBinCount() == 0) {
+            return 0;
+        }
+
+        // Take the bins in order rather than in the order they were first seen, so the result
+        // only depends on the counts:
+        int distinctColors = histogram.copySortedActiveBins(colors, sortBuffer);
+
+        if (distinctColors <= maxColors) {
+            // Nothing to quantize, every color is its own swatch
+            for (int i = 0; i < distinctColors; i++) {
+                int bin = colors[i];
+                outColors[i] = ColorHistogram.toArgb(ColorHistogram.redOf(bin),
+                        ColorHistogram.greenOf(bin), ColorHistogram.blueOf(bin));
+                outPopulations[i] = histogram.getCount(bin);
+            }
+            return distinctColors;
+        }
+
+        ensureBoxCapacity(maxColors);
+        int boxCount = 1;
+        boxLower[0] = 0;
+        boxUpper[0] = distinctColors - 1;
+        fitBox(0);
+        while (boxCount < maxColors) {
+            int box = findLargestSplittableBox(boxCount);
+            if (box < 0) {
+                break;
+            }
+            splitBox(histogram, box, boxCount);
+            boxCount++;
+        }
+
+        for (int i = 0; i < boxCount; i++) {
+            writeAverageColor(histogram, i, outColors, outPopulations);
+        }
+        return boxCount;
+    }
+
+    private void ensureBoxCapacity(int maxColors) {
+        if (boxLower.length >= maxColors) {
+            return;
+        }
+        boxLower = new int[maxColors];
+        boxUpper = new int[maxColors];
+        boxMinRed = new int[maxColors];
+        boxMaxRed = new int[maxColors];
+        boxMinGreen = new int[maxColors];
+        boxMaxGreen = new int[maxColors];
+        boxMinBlue = new int[maxColors];
+        boxMaxBlue = new int[maxColors];
+    }
+
+    // Shrinks the bounds of the box to the colors it contains
+    private void fitBox(int box) {
+        int minRed = ColorHistogram.CHANNEL_MAX, maxRed = 0;
+        int minGreen = ColorHistogram.CHANNEL_MAX, maxGreen = 0;
+        int minBlue = ColorHistogram.CHANNEL_MAX, maxBlue = 0;
+        for (int i = boxLower[box]; i <= boxUpper[box]; i++) {
+            int bin = colors[i];
+            int red = ColorHistogram.redOf(bin);
+            int green = ColorHistogram.greenOf(bin);
+            int blue = ColorHistogram.blueOf(bin);
+            minRed = Math.min(minRed, red);
+            maxRed = Math.max(maxRed, red);
+            minGreen = Math.min(minGreen, green);
+            maxGreen = Math.max(maxGreen, green);
+            minBlue = Math.min(minBlue, blue);
+            maxBlue = Math.max(maxBlue, blue);
+        }
+        boxMinRed[box] = minRed;
+        boxMaxRed[box] = maxRed;
+        boxMinGreen[box] = minGreen;
+        boxMaxGreen[box] = maxGreen;
+        boxMinBlue[box] = minBlue;
+        boxMaxBlue[box] = maxBlue;
+    }
+
+    private int findLargestSplittableBox(int boxCount) {
+        int largestBox = -1;
+        int largestVolume = -1;
+        for (int i = 0; i < boxCount; i++) {
+            if (boxLower[i] == boxUpper[i]) {
+                continue; // A single color can't be split
+            }
+            int volume = (boxMaxRed[i] - boxMinRed[i] + 1) *
+                    (boxMaxGreen[i] - boxMinGreen[i] + 1) * (boxMaxBlue[i] - boxMinBlue[i] + 1);
+            if (volume > largestVolume) {
+                largestVolume = volume;
+                largestBox = i;
+            }
+        }
+        return largestBox;
+    }
+
+    // Splits the box at the median of its longest dimension. The upper half becomes newBox.
+    private void splitBox(ColorHistogram histogram, int box, int newBox) {
+        int lower = boxLower[box];
+        int upper = boxUpper[box];
+        int dimension = getLongestDimension(box);
+        sortByComponent(lower, upper, dimension);
+
+        long boxPopulation = 0;
+        for (int i = lower; i <= upper; i++) {
+            boxPopulation += histogram.getCount(colors[i]);
+        }
+        long midPoint = boxPopulation / 2;
+        int splitPoint = upper - 1;
+        long population = 0;
+        for (int i = lower; i < upper; i++) {
+            population += histogram.getCount(colors[i]);
+            if (population >= midPoint) {
+                splitPoint = i;
+                break;
+            }
+        }
+
+        boxLower[newBox] = splitPoint + 1;
+        boxUpper[newBox] = upper;
+        boxUpper[box] = splitPoint;
+        fitBox(box);
+        fitBox(newBox);
+    }
+
+    private int getLongestDimension(int box) {
+        int redLength = boxMaxRed[box] - boxMinRed[box];
+        int greenLength = boxMaxGreen[box] - boxMinGreen[box];
+        int blueLength = boxMaxBlue[box] - boxMinBlue[box];
+        if (redLength >= greenLength && redLength >= blueLength) {
+            return RED;
+        } else if (greenLength >= redLength && greenLength >= blueLength) {
+            return GREEN;
+        }
+        return BLUE;
+    }
+
+    /*
+     * The components only have 32 possible values, so a counting sort is both faster than a
+     * comparison sort and, unlike Arrays.sort(), guaranteed not to allocate.
+     */
+    private void sortByComponent(int lower, int upper, int dimension) {
+        for (int i = 0; i < componentCounts.length; i++) {
+            componentCounts[i] = 0;
+        }
+        for (int i = lower; i <= upper; i++) {
+            componentCounts[component(colors[i], dimension) + 1]++;
+        }
+        for (int i = 1; i < componentCounts.length; i++) {
+            componentCounts[i] += componentCounts[i - 1];
+        }
+        for (int i = lower; i <= upper; i++) {
+            int bin = colors[i];
+            sortBuffer[lower + componentCounts[component(bin, dimension)]++] = bin;
+        }
+        System.arraycopy(sortBuffer, lower, colors, lower, upper - lower + 1);
+    }
+
+    private static int component(int bin, int dimension) {
+        switch (dimension) {
+            case RED:
+                return ColorHistogram.redOf(bin);
+            case GREEN:
+                return ColorHistogram.greenOf(bin);
+            default:
+                return ColorHistogram.blueOf(bin);
+        }
+    }
+
+    private void writeAverageColor(ColorHistogram histogram, int box, int[] outColors,
+                                   int[] outPopulations) {
+        long redSum = 0, greenSum = 0, blueSum = 0;
+        long population = 0;
+        for (int i = boxLower[box]; i <= boxUpper[box]; i++) {
+            int bin = colors[i];
+            int count = histogram.getCount(bin);
+            redSum += (long) ColorHistogram.redOf(bin) * count;
+            greenSum += (long) ColorHistogram.greenOf(bin) * count;
+            blueSum += (long) ColorHistogram.blueOf(bin) * count;
+            population += count;
+        }
+        long half = population / 2;
+        outColors[box] = ColorHistogram.toArgb((int) ((redSum + half) / population),
+                (int) ((greenSum + half) / population), (int) ((blueSum + half) / population));
+        outPopulations[box] = (int) population;
+    }
+}
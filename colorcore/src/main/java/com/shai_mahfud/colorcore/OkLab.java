@@ -0,0 +1,81 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * Converts sRGB colors to OKLab, a perceptual color space: the Euclidean distance between two
+ * OKLab colors (their delta E) follows how different they look, which the distance between RGB
+ * values doesn't. About 0.02 is a just noticeable difference. See
+ * https://bottosson.github.io/posts/oklab/ for the matrices.
+ *
+ * Decoding the sRGB transfer function, a pow() per channel, is the expensive part of the
+ * conversion, so it goes through a table of the 256 channel values computed once. For the 32768
+ * histogram bins the whole conversion is tabled, built the first time it's needed.
+ */
+public final class OkLab {
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (c <= 0.04045 ? c / 12.92 :
+                    Math.pow((c + 0.055) / 1.055, 2.4));
+        }
+    }
+
+    // L, a and b of every histogram bin, interleaved
+    private static volatile float[] binLab;
+
+
+    private OkLab() {
+    }
+
+
+    // Writes L, a and b of the color to out[offset], out[offset + 1] and out[offset + 2]
+    public static void fromArgb(int argb, float[] out, int offset) {
+        fromLinear(SRGB_TO_LINEAR[(argb >> 16) & 0xFF], SRGB_TO_LINEAR[(argb >> 8) & 0xFF],
+                SRGB_TO_LINEAR[argb & 0xFF], out, offset);
+    }
+
+    /*
+     * Same as fromArgb() for the representative color of a ColorHistogram bin (see
+     * ColorHistogram.toArgb()), from a table. The other colors of the bin can be up to 0.13 away
+     * (near black), so it doesn't stand in for the colors that fall in the bin.
+     */
+    public static void fromBin(int bin, float[] out, int offset) {
+        float[] table = binLab;
+        if (table == null) {
+            table = buildBinTable();
+        }
+        System.arraycopy(table, bin * 3, out, offset, 3);
+    }
+
+    public static float distanceSquared(float[] lab1, int offset1, float[] lab2, int offset2) {
+        float dL = lab1[offset1] - lab2[offset2];
+        float da = lab1[offset1 + 1] - lab2[offset2 + 1];
+        float db = lab1[offset1 + 2] - lab2[offset2 + 2];
+        return dL * dL + da * da + db * db;
+    }
+
+    private static void fromLinear(float r, float g, float b, float[] out, int offset) {
+        double l = Math.cbrt(0.4122214708 * r + 0.5363325363 * g + 0.0514459929 * b);
+        double m = Math.cbrt(0.2119034982 * r + 0.6806995451 * g + 0.1073969566 * b);
+        double s = Math.cbrt(0.0883024619 * r + 0.2817188376 * g + 0.6299787005 * b);
+        out[offset] = (float) (0.2104542553 * l + 0.7936177850 * m - 0.0040720468 * s);
+        out[offset + 1] = (float) (1.9779984951 * l - 2.4285922050 * m + 0.4505937099 * s);
+        out[offset + 2] = (float) (0.0259040371 * l + 0.7827717662 * m - 0.8086757660 * s);
+    }
+
+    // Racing threads may both build the table, they build the same one
+    private static float[] buildBinTable() {
+        float[] table = new float[ColorHistogram.BIN_COUNT * 3];
+        for (int bin = 0; bin < ColorHistogram.BIN_COUNT; bin++) {
+            fromArgb(ColorHistogram.toArgb(ColorHistogram.redOf(bin), ColorHistogram.greenOf(bin),
+                    ColorHistogram.blueOf(bin)), table, bin * 3);
+        }
+        binLab = table;
+        return table;
+    }
+}
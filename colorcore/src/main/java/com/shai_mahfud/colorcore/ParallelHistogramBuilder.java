@@ -0,0 +1,173 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Builds the color histogram of a large frame on several cores. The sampled rows are split into
+ * bands; every band decodes its rows into its own pixel buffer and fills its own histogram, so the
+ * workers share nothing while they run. The band histograms are then merged pairwise up the same
+ * fork/join tree: a task only merges the histograms of its two halves after joining them, so the
+ * merge needs no locks either.
+ *
+ * The counts are exactly those a single thread would get, and MedianCutQuantizer only looks at the
+ * counts, so the colors found are bit for bit the same.
+ *
+ * The band buffers are kept between frames. build() isn't reentrant: one analysis thread uses it.
+ */
+public class ParallelHistogramBuilder {
+    // Every worker gets a few bands, so a slow core doesn't hold up the whole frame
+    private static final int BANDS_PER_THREAD = 2;
+
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final ColorHistogram[] bandHistograms;
+    private final int[][] bandPixels;
+
+    // The frame being built, read by the band tasks. ForkJoinPool.invoke() publishes them.
+    // Either data or planes is set.
+    private byte[] data;
+    private YuvPlanes planes;
+    private int format;
+    private int width;
+    private int height;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+    private int stride;
+    private int sampleRows;
+
+
+    public ParallelHistogramBuilder(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        pool = new ForkJoinPool(parallelism);
+        int bandCount = parallelism * BANDS_PER_THREAD;
+        bandHistograms = new ColorHistogram[bandCount];
+        bandPixels = new int[bandCount][];
+        for (int i = 0; i < bandCount; i++) {
+            bandHistograms[i] = new ColorHistogram();
+        }
+    }
+
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /*
+     * Adds the pixels YuvDecoder.sampleToArgb() would sample from the frame to out, each with the
+     * given weight, and returns how many there were.
+     */
+    public int build(byte[] data, int format, int width, int height, int left, int top,
+                     int right, int bottom, int stride, ColorHistogram out, int weight) {
+        YuvDecoder.checkFrame(data, format, width, height);
+        this.data = data;
+        this.format = format;
+        try {
+            return buildBands(width, height, left, top, right, bottom, stride, out, weight);
+        } finally {
+            this.data = null;
+        }
+    }
+
+    // Like build() for a byte array. The planes are only read, so the bands share them.
+    public int build(YuvPlanes planes, int left, int top, int right, int bottom, int stride,
+                     ColorHistogram out, int weight) {
+        planes.check();
+        this.planes = planes;
+        try {
+            return buildBands(planes.getWidth(), planes.getHeight(), left, top, right, bottom,
+                    stride, out, weight);
+        } finally {
+            this.planes = null;
+        }
+    }
+
+    // Stops the worker threads. The builder can't be used anymore.
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private int buildBands(int width, int height, int left, int top, int right, int bottom,
+                           int stride, ColorHistogram out, int weight) {
+        if (left < 0 || top < 0 || right > width || bottom > height || left >= right ||
+                top >= bottom || stride <= 0) {
+            throw new IllegalArgumentException("Invalid region or stride");
+        }
+
+        this.width = width;
+        this.height = height;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.stride = stride;
+        sampleRows = (bottom - top + stride - 1) / stride;
+        int bandCount = Math.min(bandHistograms.length, sampleRows);
+        pool.invoke(new BandTask(0, bandCount, bandCount));
+
+        out.addAll(bandHistograms[0], weight);
+        return (int) bandHistograms[0].getTotalCount();
+    }
+
+    /*
+     * Fills the histogram of a single band: sample rows [band * sampleRows / bandCount,
+     * (band + 1) * sampleRows / bandCount).
+     */
+    private void fillBand(int band, int bandCount) {
+        int firstRow = (int) ((long) band * sampleRows / bandCount);
+        int endRow = (int) ((long) (band + 1) * sampleRows / bandCount);
+        int bandTop = top + firstRow * stride;
+        int bandBottom = Math.min(bottom, top + endRow * stride);
+        int columns = (right - left + stride - 1) / stride;
+        int samples = columns * (endRow - firstRow);
+        if (bandPixels[band] == null || bandPixels[band].length < samples) {
+            bandPixels[band] = new int[samples];
+        }
+
+        ColorHistogram histogram = bandHistograms[band];
+        histogram.clear();
+        int count = planes != null ?
+                YuvDecoder.sampleToArgb(planes, left, bandTop, right, bandBottom, stride,
+                        bandPixels[band]) :
+                YuvDecoder.sampleToArgb(data, format, width, height, left, bandTop, right,
+                        bandBottom, stride, bandPixels[band]);
+        histogram.addAll(bandPixels[band], 0, count);
+    }
+
+    // Handles bands [from, to) and leaves their merged histogram in bandHistograms[from]
+    @SuppressWarnings("serial")
+    private class BandTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final int bandCount;
+
+
+        BandTask(int from, int to, int bandCount) {
+            this.from = from;
+            this.to = to;
+            this.bandCount = bandCount;
+        }
+
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                fillBand(from, bandCount);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BandTask(from, middle, bandCount), new BandTask(middle, to, bandCount));
+            bandHistograms[from].addAll(bandHistograms[middle], 1);
+        }
+    }
+}
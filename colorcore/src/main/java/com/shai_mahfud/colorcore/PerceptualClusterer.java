@@ -0,0 +1,108 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.util.Arrays;
+
+/*
+ * Merges colors that look alike: two colors closer than a delta E in OKLab end up in the same
+ * cluster. Merging only the swatches whose ARGB values are exactly equal leaves near identical
+ * shades as separate "prominent" colors, which wastes the few places of the ranking.
+ *
+ * The clustering is greedy, in one pass: the colors are taken from the most to the least
+ * populated, and each one joins the first cluster whose leading (most populated) color is close
+ * enough, or leads a new cluster. A cluster's color is the population-weighted average of its
+ * members, like the swatches of MedianCutQuantizer.
+ *
+ * The colors themselves are converted to OKLab, not the histogram bins they fall in: neighbouring
+ * bins are 0.02 to 0.03 apart for greys and up to 0.13 near black, more than the thresholds worth
+ * merging with, so comparing bins would merge or split colors nowhere near the threshold. The
+ * sRGB decoding is tabled (see OkLab), leaving three cube roots per color; the cost is then
+ * dominated by one distance per color and cluster, cheap enough for thousands of colors per frame.
+ *
+ * The scratch arrays are kept between calls, so clustering as many colors as before allocates
+ * nothing. Not thread safe.
+ */
+public class PerceptualClusterer {
+    private long[] order = new long[0];
+    private float[] leaderLab = new float[0];
+    private long[] clusterRed = new long[0];
+    private long[] clusterGreen = new long[0];
+    private long[] clusterBlue = new long[0];
+    private long[] clusterPopulation = new long[0];
+
+
+    /*
+     * Clusters the first count colors and writes one color and population per cluster to
+     * outColors and outPopulations, which must have room for count entries. Returns the number
+     * of clusters. maxDeltaE is the OKLab distance under which two colors are merged.
+     */
+    public int cluster(int[] colors, int[] populations, int count, float maxDeltaE,
+                       int[] outColors, int[] outPopulations) {
+        if (maxDeltaE < 0) {
+            throw new IllegalArgumentException("Invalid delta E: " + maxDeltaE);
+        }
+        ensureCapacity(count);
+
+        // Most populated first, and the smaller index first among equals so the result doesn't
+        // depend on the sort. Populations are positive, so the packed keys sort like them.
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) (Integer.MAX_VALUE - populations[i]) << 32) | i;
+        }
+        Arrays.sort(order, 0, count);
+
+        float maxDistanceSquared = maxDeltaE * maxDeltaE;
+        int clusterCount = 0;
+        float[] lab = leaderLab;
+        for (int i = 0; i < count; i++) {
+            int index = (int) order[i];
+            int color = colors[index];
+            int candidate = clusterCount * 3;
+            OkLab.fromArgb(color, lab, candidate);
+
+            int cluster = 0;
+            while (cluster < clusterCount &&
+                    OkLab.distanceSquared(lab, cluster * 3, lab, candidate) >= maxDistanceSquared) {
+                cluster++;
+            }
+            if (cluster == clusterCount) {
+                // Leads a new cluster, its Lab values are already in place
+                clusterRed[cluster] = 0;
+                clusterGreen[cluster] = 0;
+                clusterBlue[cluster] = 0;
+                clusterPopulation[cluster] = 0;
+                clusterCount++;
+            }
+            long population = populations[index];
+            clusterRed[cluster] += ((color >> 16) & 0xFF) * population;
+            clusterGreen[cluster] += ((color >> 8) & 0xFF) * population;
+            clusterBlue[cluster] += (color & 0xFF) * population;
+            clusterPopulation[cluster] += population;
+        }
+
+        for (int cluster = 0; cluster < clusterCount; cluster++) {
+            long population = clusterPopulation[cluster];
+            int red = (int) ((clusterRed[cluster] + population / 2) / population);
+            int green = (int) ((clusterGreen[cluster] + population / 2) / population);
+            int blue = (int) ((clusterBlue[cluster] + population / 2) / population);
+            outColors[cluster] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+            outPopulations[cluster] = (int) Math.min(Integer.MAX_VALUE, population);
+        }
+        return clusterCount;
+    }
+
+    private void ensureCapacity(int count) {
+        if (order.length >= count) {
+            return;
+        }
+        order = new long[count];
+        // One more slot for the Lab values of the color being placed
+        leaderLab = new float[(count + 1) * 3];
+        clusterRed = new long[count];
+        clusterGreen = new long[count];
+        clusterBlue = new long[count];
+        clusterPopulation = new long[count];
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Counts what happens to the preview frames and how long each stage of the pipeline takes. The
+ * camera thread, the analysis thread and the UI thread all record into the same instance, so
+ * everything is kept in atomic arrays: recording is a few atomic adds, never blocks and never
+ * allocates, cheap enough to leave on.
+ *
+ * Latencies go into a histogram per stage with fixed buckets, four per power of two of
+ * microseconds. A bucket is up to 25% wider than its lower end, so a percentile, reported as the
+ * upper end of its bucket, is at most 25% above the actual value from 1 microsecond to minutes.
+ * Percentiles are read from the buckets as they are, while they may still be updated; each count
+ * is exact, they are just not a snapshot of a single instant.
+ */
+public class PipelineMetrics {
+    // Preview frames delivered by the camera
+    public static final int COUNTER_FRAMES_RECEIVED = 0;
+    // Frames the scheduler decided not to analyze
+    public static final int COUNTER_FRAMES_SKIPPED = 1;
+    // Frames replaced by a newer one before their analysis started
+    public static final int COUNTER_FRAMES_DROPPED = 2;
+    // Frames analyzed successfully, not counting those that couldn't be decoded
+    public static final int COUNTER_FRAMES_ANALYZED = 3;
+    // Analyzed frames whose scene didn't change, so the previous results were kept
+    public static final int COUNTER_FRAMES_UNCHANGED = 4;
+    public static final int COUNTER_RESULTS_SHOWN = 5;
+    // Frames whose analysis threw, so they have no results
+    public static final int COUNTER_FRAMES_FAILED = 6;
+    public static final int COUNTER_COUNT = 7;
+
+    // From the submission of a frame to the start of its analysis
+    public static final int STAGE_QUEUE = 0;
+    // Decoding and sampling the frame into the histogram
+    public static final int STAGE_DECODE = 1;
+    // Quantizing the histogram and ranking the swatches
+    public static final int STAGE_QUANTIZE = 2;
+    // The whole analysis of a frame
+    public static final int STAGE_ANALYSIS = 3;
+    // From the end of the analysis to the results being shown
+    public static final int STAGE_DELIVERY = 4;
+    // From asking for the camera to the first results being shown, once per camera session
+    public static final int STAGE_COLD_START = 5;
+    public static final int STAGE_COUNT = 6;
+
+    private static final String[] COUNTER_NAMES = {"received", "skipped", "dropped", "analyzed",
+            "unchanged", "shown", "failed"};
+    private static final String[] STAGE_NAMES = {"queue", "decode", "quantize", "analysis",
+            "delivery", "cold start"};
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Up to 2^30 microseconds, about 18 minutes; anything longer goes into the last bucket
+    private static final int MAX_EXPONENT = 30;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTER_COUNT);
+    private final AtomicLongArray buckets = new AtomicLongArray(STAGE_COUNT * BUCKET_COUNT);
+    private final AtomicLongArray sampleCounts = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray maxNanos = new AtomicLongArray(STAGE_COUNT);
+
+
+    public void increment(int counter) {
+        counters.incrementAndGet(counter);
+    }
+
+    public long getCount(int counter) {
+        return counters.get(counter);
+    }
+
+    public void recordLatency(int stage, long nanos) {
+        if (nanos < 0) {
+            nanos = 0; // A clock that went backwards
+        }
+        // The maximum first, so a reader that sees the sample in its bucket sees it there too
+        long max = maxNanos.get(stage);
+        while (nanos > max && !maxNanos.compareAndSet(stage, max, nanos)) {
+            max = maxNanos.get(stage);
+        }
+        buckets.incrementAndGet(stage * BUCKET_COUNT + bucketOf(nanos / 1000));
+        sampleCounts.incrementAndGet(stage);
+        totalNanos.addAndGet(stage, nanos);
+    }
+
+    public long getSampleCount(int stage) {
+        return sampleCounts.get(stage);
+    }
+
+    public long getMeanNanos(int stage) {
+        long samples = sampleCounts.get(stage);
+        return samples > 0 ? totalNanos.get(stage) / samples : 0;
+    }
+
+    public long getMaxNanos(int stage) {
+        return maxNanos.get(stage);
+    }
+
+    /*
+     * The latency under which the given fraction of the samples of the stage fall, e.g. 0.95 for
+     * p95: the upper end of the bucket holding that sample, or the slowest sample if that is
+     * lower. 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(int stage, double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("Invalid fraction: " + fraction);
+        }
+        int offset = stage * BUCKET_COUNT;
+        long samples = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            samples += buckets.get(offset + i);
+        }
+        if (samples == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * samples));
+        long cumulative = 0;
+        int bucket = 0;
+        while (bucket < BUCKET_COUNT - 1) {
+            cumulative += buckets.get(offset + bucket);
+            if (cumulative >= rank) {
+                break;
+            }
+            bucket++;
+        }
+        return Math.min(lowerBoundOf(bucket + 1) * 1000, maxNanos.get(stage));
+    }
+
+    // Forgets everything recorded so far
+    public void reset() {
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            counters.set(i, 0);
+        }
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            sampleCounts.set(i, 0);
+            totalNanos.set(i, 0);
+            maxNanos.set(i, 0);
+        }
+    }
+
+    /*
+     * Appends the counters, a line each ("1234 received"), then a line per stage with its p50,
+     * p95, p99 and max in milliseconds ("decode 1.25/2.50/3.00/4.10"), short enough for a narrow
+     * overlay. Lines are separated by '\n'. Doesn't allocate once the builder has room.
+     */
+    public void appendSummary(StringBuilder out) {
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            out.append(counters.get(i)).append(' ').append(COUNTER_NAMES[i]).append('\n');
+        }
+        out.append("ms p50/p95/p99/max");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            out.append('\n').append(STAGE_NAMES[stage]).append(' ');
+            appendMillis(getPercentileNanos(stage, 0.5), out);
+            out.append('/');
+            appendMillis(getPercentileNanos(stage, 0.95), out);
+            out.append('/');
+            appendMillis(getPercentileNanos(stage, 0.99), out);
+            out.append('/');
+            appendMillis(maxNanos.get(stage), out);
+        }
+    }
+
+    // With 2 decimals, rounded half up
+    private static void appendMillis(long nanos, StringBuilder out) {
+        long hundredths = (nanos + 5000) / 10000;
+        out.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    /*
+     * Values below 4 microseconds have a bucket each. Above, every power of two is split into 4
+     * buckets by the 2 bits under its leading one.
+     */
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // The smallest number of microseconds that falls into the bucket
+    static long lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
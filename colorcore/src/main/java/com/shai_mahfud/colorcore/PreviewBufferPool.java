@@ -0,0 +1,153 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * A fixed set of preview buffers for Camera.setPreviewCallbackWithBuffer(). Every buffer is either
+ * queued at the camera, waiting to be filled and delivered to onPreviewFrame(), or in flight
+ * while the analysis reads it. Delivered frames that aren't analyzed go straight back to the
+ * camera with drop(); analyzed frames go back with release() once the analysis is done with them.
+ * Nothing is allocated per frame.
+ *
+ * The camera is hidden behind CallbackBufferSink, so this class has no Android dependencies.
+ */
+public class PreviewBufferPool {
+    // Camera.addCallbackBuffer(), or a fake camera in tests
+    public interface CallbackBufferSink {
+        void addCallbackBuffer(byte[] buffer);
+    }
+
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_QUEUED = 1;
+    private static final int STATE_IN_FLIGHT = 2;
+
+
+    private final byte[][] buffers;
+    private final int[] states;
+    private CallbackBufferSink sink;
+    private int bufferSize = -1;
+    private long droppedCount;
+
+
+    public PreviewBufferPool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        buffers = new byte[capacity][];
+        states = new int[capacity];
+    }
+
+
+    /*
+     * Hands every buffer that isn't in flight to the sink. The buffers are only (re)allocated
+     * when the frame size changes, so restarting the preview reuses them.
+     */
+    public synchronized void start(CallbackBufferSink sink, int bufferSize) {
+        if (bufferSize != this.bufferSize) {
+            // Buffers of the old size that are still in flight become unknown to the pool and are
+            // simply ignored when they are released
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = new byte[bufferSize];
+                states[i] = STATE_IDLE;
+            }
+            this.bufferSize = bufferSize;
+        }
+        this.sink = sink;
+        for (int i = 0; i < buffers.length; i++) {
+            if (states[i] != STATE_IN_FLIGHT) {
+                queue(i);
+            }
+        }
+    }
+
+    /*
+     * Forgets the sink, e.g. when the camera is released. Buffers that were queued at it are
+     * handed again on the next start(), buffers in flight stay in flight until released.
+     */
+    public synchronized void stop() {
+        sink = null;
+        for (int i = 0; i < buffers.length; i++) {
+            if (states[i] != STATE_IN_FLIGHT) {
+                states[i] = STATE_IDLE;
+            }
+        }
+    }
+
+    /*
+     * Marks a frame delivered by the camera as taken by the analysis. Returns false if the frame
+     * isn't one of the pool's buffers.
+     */
+    public synchronized boolean acquire(byte[] frame) {
+        int index = indexOf(frame);
+        if (index < 0) {
+            return false;
+        }
+        states[index] = STATE_IN_FLIGHT;
+        return true;
+    }
+
+    // The analysis is done with the frame. Give it back to the camera.
+    public synchronized void release(byte[] frame) {
+        int index = indexOf(frame);
+        if (index >= 0 && states[index] == STATE_IN_FLIGHT) {
+            queue(index);
+        }
+    }
+
+    // The frame won't be analyzed. Give it straight back to the camera.
+    public synchronized void drop(byte[] frame) {
+        droppedCount++;
+        int index = indexOf(frame);
+        if (index >= 0) {
+            queue(index);
+        }
+    }
+
+    public int getCapacity() {
+        return buffers.length;
+    }
+
+    public synchronized int getInFlightCount() {
+        return countInState(STATE_IN_FLIGHT);
+    }
+
+    // The number of buffers queued at the camera, ready to be filled
+    public synchronized int getFreeCount() {
+        return countInState(STATE_QUEUED);
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private void queue(int index) {
+        if (sink == null) {
+            states[index] = STATE_IDLE;
+            return;
+        }
+        states[index] = STATE_QUEUED;
+        sink.addCallbackBuffer(buffers[index]);
+    }
+
+    private int indexOf(byte[] frame) {
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] == frame) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int countInState(int state) {
+        int count = 0;
+        for (int s : states) {
+            if (s == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * Picks the preview size and format a camera should deliver for the analysis. Color analysis
+ * rarely needs more than VGA, and every pixel more is more to copy, decode and keep in the buffer
+ * pool, so the preview is the smallest supported size that still has the resolution the analysis
+ * asks for, in the format YuvDecoder reads with the fewest bytes per frame.
+ *
+ * Sizes are compared regardless of their orientation: cameras list landscape sizes, and the
+ * resolution may be given either way.
+ */
+public class PreviewSizeSelector {
+    public static final int NO_FORMAT = -1;
+
+
+    private PreviewSizeSelector() {
+    }
+
+
+    /*
+     * The index of the smallest of the count sizes that is at least minWidth x minHeight, or of the
+     * largest one if none is; the first of equally large sizes. -1 if count is 0.
+     */
+    public static int selectSize(int[] widths, int[] heights, int count, int minWidth,
+                                 int minHeight) {
+        int minLong = Math.max(minWidth, minHeight);
+        int minShort = Math.min(minWidth, minHeight);
+        int smallest = -1;
+        long smallestArea = Long.MAX_VALUE;
+        int largest = -1;
+        long largestArea = -1;
+        for (int i = 0; i < count; i++) {
+            long area = (long) widths[i] * heights[i];
+            if (area > largestArea) {
+                largest = i;
+                largestArea = area;
+            }
+            boolean large = Math.max(widths[i], heights[i]) >= minLong &&
+                    Math.min(widths[i], heights[i]) >= minShort;
+            if (large && area < smallestArea) {
+                smallest = i;
+                smallestArea = area;
+            }
+        }
+        return smallest >= 0 ? smallest : largest;
+    }
+
+    /*
+     * Of the count formats, the one YuvDecoder supports with the smallest frames, NV21 where it's
+     * offered; the first of equally small ones. NO_FORMAT if YuvDecoder supports none of them.
+     */
+    public static int selectFormat(int[] formats, int count) {
+        int selected = NO_FORMAT;
+        int selectedSize = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int format = formats[i];
+            if (!YuvDecoder.isSupportedFormat(format)) {
+                continue;
+            }
+            // The size of a 2x2 frame is enough to compare formats by their bytes per pixel
+            int size = YuvDecoder.getFrameSize(format, 2, 2);
+            if (size < selectedSize) {
+                selected = format;
+                selectedSize = size;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.util.Arrays;
+
+/*
+ * Maps every color to the closest of a few reference colors, e.g. brand colors, or to none when
+ * none is within a tolerance. The colors are compared in OKLab, like PerceptualClusterer does,
+ * and the tolerance is a delta E.
+ *
+ * The mapping is a table of a byte per ColorHistogram bin (32x32x32, 32 KB), computed once when
+ * the references are set. Looking a color up is then an array access, so a frame's coverage can
+ * be counted without quantizing it: FrameAnalyzer looks up the bins of its histogram.
+ *
+ * So the tolerance applies to bins, not to single colors: a bin matches when its representative
+ * color is within the tolerance. Neighbouring bins are 0.02 to 0.03 apart for most colors and up
+ * to 0.13 near black, so a tolerance below that spacing can leave a reference away from the color
+ * of its own bin; every reference therefore also covers its own bin, whatever the tolerance.
+ *
+ * Not thread safe: FrameAnalyzer rebuilds and reads it on the analysis thread.
+ */
+public class ReferenceColorTable {
+    public static final int MAX_REFERENCES = 16;
+    // What lookup() returns for a color that isn't close to any reference
+    public static final int NO_MATCH = -1;
+
+
+    private final byte[] table = new byte[ColorHistogram.BIN_COUNT];
+    private final int[] colors = new int[MAX_REFERENCES];
+    private final float[] referenceLab = new float[MAX_REFERENCES * 3];
+    private final float[] binLab = new float[3];
+    private int count;
+
+
+    public ReferenceColorTable() {
+        Arrays.fill(table, (byte) NO_MATCH);
+    }
+
+
+    /*
+     * Sets the first count of colors as the references and maps every bin to the closest one
+     * less than maxDeltaE away, and the bin of every reference that matched nothing to that
+     * reference (the first one, if several share it). Takes a few milliseconds, so it's only
+     * worth calling when the references change.
+     */
+    public void set(int[] colors, int count, float maxDeltaE) {
+        if (count < 0 || count > MAX_REFERENCES || count > colors.length) {
+            throw new IllegalArgumentException("Invalid reference count: " + count);
+        }
+        if (maxDeltaE < 0) {
+            throw new IllegalArgumentException("Invalid delta E: " + maxDeltaE);
+        }
+        this.count = count;
+        for (int i = 0; i < count; i++) {
+            this.colors[i] = colors[i];
+            OkLab.fromArgb(colors[i], referenceLab, i * 3);
+        }
+
+        float maxDistanceSquared = maxDeltaE * maxDeltaE;
+        for (int bin = 0; bin < ColorHistogram.BIN_COUNT; bin++) {
+            OkLab.fromBin(bin, binLab, 0);
+            int closest = NO_MATCH;
+            float closestDistance = maxDistanceSquared;
+            for (int i = 0; i < count; i++) {
+                float distance = OkLab.distanceSquared(binLab, 0, referenceLab, i * 3);
+                if (distance < closestDistance) {
+                    closest = i;
+                    closestDistance = distance;
+                }
+            }
+            table[bin] = (byte) closest;
+        }
+        for (int i = 0; i < count; i++) {
+            int bin = ColorHistogram.toBin(colors[i]);
+            if (table[bin] == NO_MATCH) {
+                table[bin] = (byte) i;
+            }
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getColor(int index) {
+        return colors[index];
+    }
+
+    // The index of the reference the bin maps to, or NO_MATCH
+    public int lookupBin(int bin) {
+        return table[bin];
+    }
+
+    // Same as lookupBin() for the bin of an ARGB color
+    public int lookup(int argb) {
+        return table[ColorHistogram.toBin(argb)];
+    }
+}
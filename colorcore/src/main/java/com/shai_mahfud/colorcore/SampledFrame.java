@@ -0,0 +1,112 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+/*
+ * The pixels AnalysisGraph decoded from a frame, shared by all of its analyses: the samples of the
+ * region of interest as packed ARGB ints, getColumns() x getRows() of them in row-major order, so
+ * they can be analyzed like any small image. Sample (column, row) was decoded from pixel
+ * (getLeft() + column * getStride(), getTop() + row * getStride()) of the frame, which was sampled
+ * up to getRight() and getBottom().
+ *
+ * Several analyses read the same pixels at the same time, so nothing may write to them. The graph
+ * recycles the frame once every analysis it was given to is done with it.
+ */
+public class SampledFrame {
+    private int[] pixels = new int[0];
+    private int columns;
+    private int rows;
+    private int frameWidth;
+    private int frameHeight;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+    private int stride;
+    private long frameNumber;
+    // The analyses that still have to finish with the frame, guarded by the graph's lock
+    int pendingAnalyses;
+
+
+    SampledFrame() {
+    }
+
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getSampleCount() {
+        return columns * rows;
+    }
+
+    public int getPixel(int index) {
+        return pixels[index];
+    }
+
+    /*
+     * The samples themselves, for analyses that take an array, e.g. FrameAnalyzer.analyzeArgb().
+     * Read only, and possibly longer than getSampleCount().
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    // The end of the region the frame was sampled from, exclusive
+    public int getRight() {
+        return right;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    // Counts the frames the graph decoded, from 1, so an analysis can tell how many it skipped
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    // Makes room for the samples of a frame; allocates only when the frame has more than before
+    void reset(int frameWidth, int frameHeight, int left, int top, int right, int bottom,
+               int stride, long frameNumber) {
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.stride = stride;
+        this.frameNumber = frameNumber;
+        columns = (right - left + stride - 1) / stride;
+        rows = (bottom - top + stride - 1) / stride;
+        if (pixels.length < columns * rows) {
+            pixels = new int[columns * rows];
+        }
+    }
+}
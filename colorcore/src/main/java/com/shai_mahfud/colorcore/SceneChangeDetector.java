@@ -0,0 +1,262 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Tells whether a frame differs enough from the last analyzed one to be worth analyzing again.
+ * The frame is reduced to a coarse signature: the mean Y, U and V of every cell of a 16x12 grid,
+ * read straight from the raw bytes with a sampling step, so it costs a fraction of a decode. The
+ * difference between two signatures is the mean absolute difference over all the cells and
+ * channels, in levels (0 - 255).
+ *
+ * The signature of a changed frame becomes the reference. Frames that are similar enough don't,
+ * so a slow drift adds up until it crosses the threshold instead of going unnoticed forever.
+ *
+ * Not thread safe: FrameAnalyzer only uses it from the analysis thread. The counters may be read
+ * from any thread.
+ */
+public class SceneChangeDetector {
+    public static final int GRID_COLUMNS = 16;
+    public static final int GRID_ROWS = 12;
+
+
+    private static final int CHANNELS = 3;
+    private static final int SAMPLE_STEP = 4;
+    // The means are kept in 1/16 of a level, so small differences don't round away
+    private static final int MEAN_SHIFT = 4;
+
+
+    private final int[] sums = new int[GRID_COLUMNS * GRID_ROWS * CHANNELS];
+    private final int[] counts = new int[GRID_COLUMNS * GRID_ROWS];
+    private int[] signature = new int[GRID_COLUMNS * GRID_ROWS * CHANNELS];
+    private int[] reference = new int[GRID_COLUMNS * GRID_ROWS * CHANNELS];
+    private boolean hasReference;
+    private int referenceFormat;
+    private int referenceWidth;
+    private int referenceHeight;
+    private float threshold;
+    private float lastDifference;
+
+    private volatile long unchangedCount;
+    private volatile long changedCount;
+
+
+    public SceneChangeDetector(float threshold) {
+        setThreshold(threshold);
+    }
+
+
+    // The mean difference, in levels, above which a frame counts as changed
+    public void setThreshold(float threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Invalid threshold: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /*
+     * Returns true if the frame differs from the reference by more than the threshold, or if
+     * there is no reference for frames of this format and size. The frame then becomes the
+     * reference. A frame smaller than the grid has no signature: it always counts as changed, and
+     * leaves no reference behind.
+     */
+    public boolean hasChanged(byte[] data, int format, int width, int height) {
+        if (!YuvDecoder.isSupportedFormat(format)) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        if (data == null || data.length < YuvDecoder.getFrameSize(format, width, height)) {
+            throw new IllegalArgumentException("Frame data is too short");
+        }
+        if (width < GRID_COLUMNS || height < GRID_ROWS) {
+            return changedWithoutSignature();
+        }
+
+        computeSignature(data, format, width, height);
+        return updateReference(format, width, height);
+    }
+
+    // Like hasChanged() for a byte array; planar frames are only compared with planar frames
+    public boolean hasChanged(YuvPlanes planes) {
+        planes.check();
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        if (width < GRID_COLUMNS || height < GRID_ROWS) {
+            return changedWithoutSignature();
+        }
+
+        computeSignature(planes);
+        return updateReference(YuvDecoder.FORMAT_YUV_420_888, width, height);
+    }
+
+    // Forgets the reference, so the next frame counts as changed
+    public void reset() {
+        hasReference = false;
+    }
+
+    // The difference computed by the last call to hasChanged(), infinite without a reference
+    public float getLastDifference() {
+        return lastDifference;
+    }
+
+    // Frames found similar to the reference, whose analysis could be skipped
+    public long getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    public long getChangedCount() {
+        return changedCount;
+    }
+
+    // A frame too small to compare. The next frame has nothing to be compared with either.
+    private boolean changedWithoutSignature() {
+        hasReference = false;
+        lastDifference = Float.POSITIVE_INFINITY;
+        changedCount++;
+        return true;
+    }
+
+    // Compares the signature just computed with the reference, which it replaces if it changed
+    private boolean updateReference(int format, int width, int height) {
+        boolean comparable = hasReference && format == referenceFormat &&
+                width == referenceWidth && height == referenceHeight;
+        lastDifference = comparable ? difference() : Float.POSITIVE_INFINITY;
+        if (comparable && lastDifference <= threshold) {
+            unchangedCount++;
+            return false;
+        }
+
+        int[] previous = reference;
+        reference = signature;
+        signature = previous;
+        hasReference = true;
+        referenceFormat = format;
+        referenceWidth = width;
+        referenceHeight = height;
+        changedCount++;
+        return true;
+    }
+
+    /*
+     * NV21, NV16 and YUY2 only differ by where the Y and chroma bytes of a pixel are, so one loop
+     * serves them all: Y is at yRow + col * yStep, and the chroma pair of the pixel starts at
+     * chromaRow + (col & ~1) * yStep.
+     */
+    private void computeSignature(byte[] data, int format, int width, int height) {
+        int frameSize = width * height;
+        int yStep = format == YuvDecoder.FORMAT_YUY2 ? 2 : 1;
+        int uOffset = format == YuvDecoder.FORMAT_NV16 ? 0 : 1;
+        int vOffset = format == YuvDecoder.FORMAT_NV21 ? 0 : (format == YuvDecoder.FORMAT_NV16 ?
+                1 : 3);
+
+        for (int cellRow = 0; cellRow < GRID_ROWS; cellRow++) {
+            int top = cellRow * height / GRID_ROWS;
+            int bottom = (cellRow + 1) * height / GRID_ROWS;
+            for (int cellColumn = 0; cellColumn < GRID_COLUMNS; cellColumn++) {
+                int left = cellColumn * width / GRID_COLUMNS;
+                int right = (cellColumn + 1) * width / GRID_COLUMNS;
+                int ySum = 0, uSum = 0, vSum = 0, count = 0;
+                for (int row = top; row < bottom; row += SAMPLE_STEP) {
+                    int yRow, chromaRow;
+                    switch (format) {
+                        case YuvDecoder.FORMAT_NV21:
+                            yRow = row * width;
+                            chromaRow = frameSize + (row >> 1) * width;
+                            break;
+                        case YuvDecoder.FORMAT_NV16:
+                            yRow = row * width;
+                            chromaRow = frameSize + row * width;
+                            break;
+                        default:
+                            yRow = row * width * 2;
+                            chromaRow = yRow;
+                            break;
+                    }
+                    for (int col = left; col < right; col += SAMPLE_STEP) {
+                        int chromaIndex = chromaRow + (col & ~1) * yStep;
+                        ySum += data[yRow + col * yStep] & 0xFF;
+                        uSum += data[chromaIndex + uOffset] & 0xFF;
+                        vSum += data[chromaIndex + vOffset] & 0xFF;
+                        count++;
+                    }
+                }
+                int cell = cellRow * GRID_COLUMNS + cellColumn;
+                counts[cell] = count;
+                sums[cell * CHANNELS] = ySum;
+                sums[cell * CHANNELS + 1] = uSum;
+                sums[cell * CHANNELS + 2] = vSum;
+            }
+        }
+
+        computeMeans();
+    }
+
+    // The same cells and samples, read from the planes with their strides
+    private void computeSignature(YuvPlanes planes) {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        ByteBuffer yBuffer = planes.getBuffer(YuvPlanes.PLANE_Y);
+        ByteBuffer uBuffer = planes.getBuffer(YuvPlanes.PLANE_U);
+        ByteBuffer vBuffer = planes.getBuffer(YuvPlanes.PLANE_V);
+        int yRowStride = planes.getRowStride(YuvPlanes.PLANE_Y);
+        int yPixelStride = planes.getPixelStride(YuvPlanes.PLANE_Y);
+        int uRowStride = planes.getRowStride(YuvPlanes.PLANE_U);
+        int uPixelStride = planes.getPixelStride(YuvPlanes.PLANE_U);
+        int vRowStride = planes.getRowStride(YuvPlanes.PLANE_V);
+        int vPixelStride = planes.getPixelStride(YuvPlanes.PLANE_V);
+
+        for (int cellRow = 0; cellRow < GRID_ROWS; cellRow++) {
+            int top = cellRow * height / GRID_ROWS;
+            int bottom = (cellRow + 1) * height / GRID_ROWS;
+            for (int cellColumn = 0; cellColumn < GRID_COLUMNS; cellColumn++) {
+                int left = cellColumn * width / GRID_COLUMNS;
+                int right = (cellColumn + 1) * width / GRID_COLUMNS;
+                int ySum = 0, uSum = 0, vSum = 0, count = 0;
+                for (int row = top; row < bottom; row += SAMPLE_STEP) {
+                    int yRow = row * yRowStride;
+                    int uRow = (row >> 1) * uRowStride;
+                    int vRow = (row >> 1) * vRowStride;
+                    for (int col = left; col < right; col += SAMPLE_STEP) {
+                        ySum += yBuffer.get(yRow + col * yPixelStride) & 0xFF;
+                        uSum += uBuffer.get(uRow + (col >> 1) * uPixelStride) & 0xFF;
+                        vSum += vBuffer.get(vRow + (col >> 1) * vPixelStride) & 0xFF;
+                        count++;
+                    }
+                }
+                int cell = cellRow * GRID_COLUMNS + cellColumn;
+                counts[cell] = count;
+                sums[cell * CHANNELS] = ySum;
+                sums[cell * CHANNELS + 1] = uSum;
+                sums[cell * CHANNELS + 2] = vSum;
+            }
+        }
+        computeMeans();
+    }
+
+    private void computeMeans() {
+        for (int cell = 0; cell < counts.length; cell++) {
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                int index = cell * CHANNELS + channel;
+                signature[index] = (sums[index] << MEAN_SHIFT) / counts[cell];
+            }
+        }
+    }
+
+    private float difference() {
+        long total = 0;
+        for (int i = 0; i < signature.length; i++) {
+            total += Math.abs(signature[i] - reference[i]);
+        }
+        return total / (float) (signature.length << MEAN_SHIFT);
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Converts raw camera preview frames straight to packed ARGB pixels, without going through
+ * YuvImage.compressToJpeg() and BitmapFactory. This class deliberately doesn't touch any Android
+ * class, so it can be tested on a plain JVM.
+ *
+ * The conversion uses the full range BT.601 (JFIF) coefficients, which is what the JPEG round
+ * trip this class replaces used to produce:
+ *   R = Y + 1.402 * (V - 128)
+ *   G = Y - 0.344136 * (U - 128) - 0.714136 * (V - 128)
+ *   B = Y + 1.772 * (U - 128)
+ *
+ * Besides byte arrays, YUV_420_888 frames given as separate planes (see YuvPlanes) are decoded
+ * straight from their buffers, whatever their strides.
+ */
+public final class YuvDecoder {
+    // Same values as the ImageFormat constants. They are duplicated here so this class doesn't
+    // depend on android.graphics:
+    public static final int FORMAT_NV16 = 16;
+    public static final int FORMAT_NV21 = 17;
+    public static final int FORMAT_YUY2 = 20;
+    // Only comes as YuvPlanes, never as a byte array
+    public static final int FORMAT_YUV_420_888 = 35;
+
+
+    private static final int SCALE_BITS = 16;
+    private static final int ONE_HALF = 1 << (SCALE_BITS - 1);
+    private static final int OPAQUE = 0xFF000000;
+
+    // Per chroma value contributions, in 16.16 fixed point. Computing them once turns the
+    // per-pixel conversion into a few table lookups and additions:
+    private static final int[] V_TO_R = new int[256];
+    private static final int[] U_TO_B = new int[256];
+    private static final int[] U_TO_G = new int[256];
+    private static final int[] V_TO_G = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i - 128;
+            V_TO_R[i] = fix(1.402) * c + ONE_HALF;
+            U_TO_B[i] = fix(1.772) * c + ONE_HALF;
+            U_TO_G[i] = -fix(0.344136) * c;
+            V_TO_G[i] = -fix(0.714136) * c + ONE_HALF;
+        }
+    }
+
+
+    private YuvDecoder() {
+    }
+
+
+    public static boolean isSupportedFormat(int format) {
+        return format == FORMAT_NV21 || format == FORMAT_YUY2 || format == FORMAT_NV16;
+    }
+
+    /*
+     * Returns the number of bytes a frame of the given format and size occupies. Only even
+     * widths and heights are supported, like the camera preview sizes.
+     */
+    public static int getFrameSize(int format, int width, int height) {
+        switch (format) {
+            case FORMAT_NV21:
+                return width * height * 3 / 2;
+            case FORMAT_NV16:
+            case FORMAT_YUY2:
+                return width * height * 2;
+            default:
+                throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+    }
+
+    /*
+     * Decodes the given frame into out, one packed ARGB int per pixel in row-major order. The
+     * caller owns out and should reuse it between frames; it must hold at least width * height
+     * ints.
+     */
+    public static void decodeToArgb(byte[] data, int format, int width, int height, int[] out) {
+        checkFrame(data, format, width, height);
+        if (out == null || out.length < width * height) {
+            throw new IllegalArgumentException("Output buffer is too short");
+        }
+
+        switch (format) {
+            case FORMAT_NV21:
+                decodeSemiPlanar(data, width, height, true, 1, out);
+                break;
+            case FORMAT_NV16:
+                decodeSemiPlanar(data, width, height, false, 0, out);
+                break;
+            default:
+                decodeYuy2(data, width, height, out);
+                break;
+        }
+    }
+
+    /*
+     * Decodes only the pixels (left + i * stride, top + j * stride) inside the rectangle
+     * [left, right) x [top, bottom), reading them straight from the Y and chroma planes, and
+     * returns how many were written to out. Rows of samples are written one after the other.
+     */
+    public static int sampleToArgb(byte[] data, int format, int width, int height, int left,
+                                   int top, int right, int bottom, int stride, int[] out) {
+        checkFrame(data, format, width, height);
+        if (left < 0 || top < 0 || right > width || bottom > height || left >= right ||
+                top >= bottom || stride <= 0) {
+            throw new IllegalArgumentException("Invalid region or stride");
+        }
+        int columns = (right - left + stride - 1) / stride;
+        int rows = (bottom - top + stride - 1) / stride;
+        if (out == null || out.length < columns * rows) {
+            throw new IllegalArgumentException("Output buffer is too short");
+        }
+
+        switch (format) {
+            case FORMAT_NV21:
+                return sampleSemiPlanar(data, width, height, true, 1, left, top, right, bottom,
+                        stride, out);
+            case FORMAT_NV16:
+                return sampleSemiPlanar(data, width, height, false, 0, left, top, right, bottom,
+                        stride, out);
+            default:
+                return sampleYuy2(data, width, left, top, right, bottom, stride, out);
+        }
+    }
+
+    // Like decodeToArgb(), for a frame given as planes
+    public static void decodeToArgb(YuvPlanes planes, int[] out) {
+        planes.check();
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        if (out == null || out.length < width * height) {
+            throw new IllegalArgumentException("Output buffer is too short");
+        }
+
+        ByteBuffer yBuffer = planes.getBuffer(YuvPlanes.PLANE_Y);
+        ByteBuffer uBuffer = planes.getBuffer(YuvPlanes.PLANE_U);
+        ByteBuffer vBuffer = planes.getBuffer(YuvPlanes.PLANE_V);
+        int yRowStride = planes.getRowStride(YuvPlanes.PLANE_Y);
+        int yPixelStride = planes.getPixelStride(YuvPlanes.PLANE_Y);
+        int uRowStride = planes.getRowStride(YuvPlanes.PLANE_U);
+        int uPixelStride = planes.getPixelStride(YuvPlanes.PLANE_U);
+        int vRowStride = planes.getRowStride(YuvPlanes.PLANE_V);
+        int vPixelStride = planes.getPixelStride(YuvPlanes.PLANE_V);
+        // Two rows at a time, so every chroma sample is read once for the four pixels it covers
+        for (int row = 0; row < height; row += 2) {
+            int yIndex = row * yRowStride;
+            int uIndex = (row >> 1) * uRowStride;
+            int vIndex = (row >> 1) * vRowStride;
+            int outIndex = row * width;
+            int end = outIndex + width;
+            while (outIndex < end) {
+                int u = uBuffer.get(uIndex) & 0xFF;
+                int v = vBuffer.get(vIndex) & 0xFF;
+                uIndex += uPixelStride;
+                vIndex += vPixelStride;
+                out[outIndex] = yuvToArgb(yBuffer.get(yIndex) & 0xFF, u, v);
+                out[outIndex + width] = yuvToArgb(yBuffer.get(yIndex + yRowStride) & 0xFF, u, v);
+                yIndex += yPixelStride;
+                out[outIndex + 1] = yuvToArgb(yBuffer.get(yIndex) & 0xFF, u, v);
+                out[outIndex + width + 1] = yuvToArgb(yBuffer.get(yIndex + yRowStride) & 0xFF,
+                        u, v);
+                yIndex += yPixelStride;
+                outIndex += 2;
+            }
+        }
+    }
+
+    // Like sampleToArgb(), for a frame given as planes
+    public static int sampleToArgb(YuvPlanes planes, int left, int top, int right, int bottom,
+                                   int stride, int[] out) {
+        planes.check();
+        if (left < 0 || top < 0 || right > planes.getWidth() || bottom > planes.getHeight() ||
+                left >= right || top >= bottom || stride <= 0) {
+            throw new IllegalArgumentException("Invalid region or stride");
+        }
+        int columns = (right - left + stride - 1) / stride;
+        int rows = (bottom - top + stride - 1) / stride;
+        if (out == null || out.length < columns * rows) {
+            throw new IllegalArgumentException("Output buffer is too short");
+        }
+
+        ByteBuffer yBuffer = planes.getBuffer(YuvPlanes.PLANE_Y);
+        ByteBuffer uBuffer = planes.getBuffer(YuvPlanes.PLANE_U);
+        ByteBuffer vBuffer = planes.getBuffer(YuvPlanes.PLANE_V);
+        int yRowStride = planes.getRowStride(YuvPlanes.PLANE_Y);
+        int yPixelStride = planes.getPixelStride(YuvPlanes.PLANE_Y);
+        int uRowStride = planes.getRowStride(YuvPlanes.PLANE_U);
+        int uPixelStride = planes.getPixelStride(YuvPlanes.PLANE_U);
+        int vRowStride = planes.getRowStride(YuvPlanes.PLANE_V);
+        int vPixelStride = planes.getPixelStride(YuvPlanes.PLANE_V);
+        int outIndex = 0;
+        for (int row = top; row < bottom; row += stride) {
+            int yRow = row * yRowStride;
+            int uRow = (row >> 1) * uRowStride;
+            int vRow = (row >> 1) * vRowStride;
+            for (int col = left; col < right; col += stride) {
+                int chromaCol = col >> 1;
+                out[outIndex++] = yuvToArgb(yBuffer.get(yRow + col * yPixelStride) & 0xFF,
+                        uBuffer.get(uRow + chromaCol * uPixelStride) & 0xFF,
+                        vBuffer.get(vRow + chromaCol * vPixelStride) & 0xFF);
+            }
+        }
+        return outIndex;
+    }
+
+    public static int yuvToArgb(int y, int u, int v) {
+        int yScaled = y << SCALE_BITS;
+        int r = (yScaled + V_TO_R[v]) >> SCALE_BITS;
+        int g = (yScaled + U_TO_G[u] + V_TO_G[v]) >> SCALE_BITS;
+        int b = (yScaled + U_TO_B[u]) >> SCALE_BITS;
+        return OPAQUE | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+    }
+
+    /*
+     * NV21 and NV16 share the same layout: a full resolution Y plane followed by interleaved
+     * chroma samples, each covering two horizontal pixels. NV21 stores V before U and has one
+     * chroma row for every two luma rows, NV16 stores U before V and has a chroma row for every
+     * luma row. chromaRowShift is the log2 of the number of luma rows sharing a chroma row.
+     */
+    private static void decodeSemiPlanar(byte[] data, int width, int height, boolean vFirst,
+                                         int chromaRowShift, int[] out) {
+        int frameSize = width * height;
+        int uOffset = vFirst ? 1 : 0;
+        int vOffset = vFirst ? 0 : 1;
+        int outIndex = 0;
+        for (int row = 0; row < height; row++) {
+            int yIndex = row * width;
+            int chromaIndex = frameSize + (row >> chromaRowShift) * width;
+            for (int col = 0; col < width; col += 2) {
+                int u = data[chromaIndex + uOffset] & 0xFF;
+                int v = data[chromaIndex + vOffset] & 0xFF;
+                chromaIndex += 2;
+                out[outIndex++] = yuvToArgb(data[yIndex++] & 0xFF, u, v);
+                out[outIndex++] = yuvToArgb(data[yIndex++] & 0xFF, u, v);
+            }
+        }
+    }
+
+    // YUY2 packs every two pixels as Y0 U Y1 V
+    private static void decodeYuy2(byte[] data, int width, int height, int[] out) {
+        int pixelCount = width * height;
+        int index = 0;
+        for (int outIndex = 0; outIndex < pixelCount; outIndex += 2) {
+            int y0 = data[index] & 0xFF;
+            int u = data[index + 1] & 0xFF;
+            int y1 = data[index + 2] & 0xFF;
+            int v = data[index + 3] & 0xFF;
+            index += 4;
+            out[outIndex] = yuvToArgb(y0, u, v);
+            out[outIndex + 1] = yuvToArgb(y1, u, v);
+        }
+    }
+
+    private static int sampleSemiPlanar(byte[] data, int width, int height, boolean vFirst,
+                                        int chromaRowShift, int left, int top, int right,
+                                        int bottom, int stride, int[] out) {
+        int frameSize = width * height;
+        int uOffset = vFirst ? 1 : 0;
+        int vOffset = vFirst ? 0 : 1;
+        int outIndex = 0;
+        for (int row = top; row < bottom; row += stride) {
+            int yRow = row * width;
+            int chromaRow = frameSize + (row >> chromaRowShift) * width;
+            for (int col = left; col < right; col += stride) {
+                int chromaIndex = chromaRow + (col & ~1);
+                out[outIndex++] = yuvToArgb(data[yRow + col] & 0xFF,
+                        data[chromaIndex + uOffset] & 0xFF, data[chromaIndex + vOffset] & 0xFF);
+            }
+        }
+        return outIndex;
+    }
+
+    private static int sampleYuy2(byte[] data, int width, int left, int top, int right,
+                                  int bottom, int stride, int[] out) {
+        int outIndex = 0;
+        for (int row = top; row < bottom; row += stride) {
+            int rowIndex = row * width * 2;
+            for (int col = left; col < right; col += stride) {
+                int macroPixel = rowIndex + (col & ~1) * 2;
+                out[outIndex++] = yuvToArgb(data[macroPixel + (col & 1) * 2] & 0xFF,
+                        data[macroPixel + 1] & 0xFF, data[macroPixel + 3] & 0xFF);
+            }
+        }
+        return outIndex;
+    }
+
+    // Throws IllegalArgumentException if the frame can't be decoded
+    static void checkFrame(byte[] data, int format, int width, int height) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        if (data == null || data.length < getFrameSize(format, width, height)) {
+            throw new IllegalArgumentException("Frame data is too short");
+        }
+    }
+
+    private static int clamp(int channel) {
+        return channel < 0 ? 0 : (channel > 255 ? 255 : channel);
+    }
+
+    private static int fix(double value) {
+        return (int) (value * (1 << SCALE_BITS) + 0.5);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ All rights reserved to Shai Mahfud.
+ */
+
+package com.shai_mahfud.colorcore;
+
+import java.nio.ByteBuffer;
+
+/*
+ * A YUV 4:2:0 frame made of three separate planes, the way Camera2 and ImageReader deliver
+ * YUV_420_888 Images: a full resolution Y plane and U and V planes of half the width and height.
+ * The sample of pixel (x, y) of a plane is at y * rowStride + x * pixelStride in its buffer,
+ * counting from index 0 whatever the buffer's position. Rows may be padded, and the U and V
+ * planes may be interleaved in the same memory (a pixel stride of 2), so nothing can be assumed
+ * beyond the strides.
+ *
+ * The buffers are only read with absolute gets, so direct buffers are read in place and their
+ * position and limit never change. An instance only describes the frame and can be reused for
+ * every frame; it owns none of the memory.
+ */
+public class YuvPlanes {
+    public static final int PLANE_Y = 0;
+    public static final int PLANE_U = 1;
+    public static final int PLANE_V = 2;
+    public static final int PLANE_COUNT = 3;
+
+
+    private final ByteBuffer[] buffers = new ByteBuffer[PLANE_COUNT];
+    private final int[] rowStrides = new int[PLANE_COUNT];
+    private final int[] pixelStrides = new int[PLANE_COUNT];
+    private int width;
+    private int height;
+
+
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public void setPlane(int plane, ByteBuffer buffer, int rowStride, int pixelStride) {
+        buffers[plane] = buffer;
+        rowStrides[plane] = rowStride;
+        pixelStrides[plane] = pixelStride;
+    }
+
+    // Drops the buffers, so a reused instance doesn't keep the memory of an old frame reachable
+    public void clear() {
+        for (int i = 0; i < PLANE_COUNT; i++) {
+            buffers[i] = null;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public ByteBuffer getBuffer(int plane) {
+        return buffers[plane];
+    }
+
+    public int getRowStride(int plane) {
+        return rowStrides[plane];
+    }
+
+    public int getPixelStride(int plane) {
+        return pixelStrides[plane];
+    }
+
+    /*
+     * Throws IllegalArgumentException unless every plane has a buffer, the strides make sense
+     * and every sample of the frame is inside its buffer. The last row of a plane doesn't need
+     * its padding, cameras often leave it out.
+     */
+    void check() {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+            throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+        }
+        for (int plane = 0; plane < PLANE_COUNT; plane++) {
+            int columns = plane == PLANE_Y ? width : width / 2;
+            int rows = plane == PLANE_Y ? height : height / 2;
+            ByteBuffer buffer = buffers[plane];
+            int rowStride = rowStrides[plane];
+            int pixelStride = pixelStrides[plane];
+            if (buffer == null || pixelStride <= 0 || rowStride < columns * pixelStride -
+                    (pixelStride - 1)) {
+                throw new IllegalArgumentException("Invalid plane " + plane);
+            }
+            long lastSample = (long) (rows - 1) * rowStride + (long) (columns - 1) * pixelStride;
+            if (lastSample >= buffer.limit()) {
+                throw new IllegalArgumentException("Plane " + plane + " is too short");
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/*
+ * Measures the bytes the current thread allocates, using the HotSpot extension of ThreadMXBean.
+ * Tests that use it are skipped on JVMs that don't support it.
+ */
+final class AllocationCounter {
+    private final com.sun.management.ThreadMXBean threadBean;
+
+
+    AllocationCounter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+
+    long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
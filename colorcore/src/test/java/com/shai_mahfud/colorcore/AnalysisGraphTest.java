@@ -0,0 +1,306 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class AnalysisGraphTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+
+    private AnalysisGraph graph;
+
+
+    @After
+    public void tearDown() {
+        if (graph != null) {
+            graph.shutdown();
+        }
+    }
+
+    @Test
+    public void analyses_shareOneDecodedFrame() {
+        graph = new AnalysisGraph(0);
+        final SampledFrame[] seen = new SampledFrame[2];
+        final int[] pixels = new int[WIDTH * HEIGHT];
+        graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                seen[0] = frame;
+                System.arraycopy(frame.getPixels(), 0, pixels, 0, frame.getSampleCount());
+            }
+        });
+        graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                seen[1] = frame;
+            }
+        });
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 1),
+                WIDTH, HEIGHT);
+
+        assertTrue(graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        assertSame(seen[0], seen[1]);
+        assertEquals(WIDTH, seen[0].getColumns());
+        assertEquals(HEIGHT, seen[0].getRows());
+        assertEquals(1, seen[0].getFrameNumber());
+        int[] expected = new int[WIDTH * HEIGHT];
+        YuvDecoder.decodeToArgb(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, expected);
+        assertArrayEquals(expected, pixels);
+        for (int i = 0; i < 2; i++) {
+            PipelineMetrics metrics = graph.getMetrics(i);
+            assertEquals(1, metrics.getCount(PipelineMetrics.COUNTER_FRAMES_ANALYZED));
+            assertEquals(1, metrics.getSampleCount(PipelineMetrics.STAGE_ANALYSIS));
+        }
+    }
+
+    @Test
+    public void frameAnalyzer_findsTheSameColorsInTheSharedFrame() {
+        graph = new AnalysisGraph(0);
+        final FrameAnalyzer shared = new FrameAnalyzer(FrameAnalyzer.NUM_OF_COLORS);
+        graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                shared.analyzeArgb(frame.getPixels(), frame.getColumns(), frame.getRows());
+            }
+        });
+        graph.setSampleStride(2);
+        FrameAnalyzer direct = new FrameAnalyzer(FrameAnalyzer.NUM_OF_COLORS);
+        direct.setSampleStride(2);
+        int[] colors = {0xFFC02020, 0xFF20A040, 0xFF2040C0};
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                new double[]{0.5, 0.3, 0.2}, 4, 2), WIDTH, HEIGHT);
+
+        graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+        direct.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+
+        assertEquals(direct.getResultCount(), shared.getResultCount());
+        assertEquals(direct.getTotalPopulation(), shared.getTotalPopulation());
+        for (int i = 0; i < direct.getResultCount(); i++) {
+            assertEquals(direct.getColor(i), shared.getColor(i));
+            assertEquals(direct.getPopulation(i), shared.getPopulation(i));
+        }
+    }
+
+    @Test
+    public void frameAnalyzerAndGrid_shareOneDecode() {
+        graph = new AnalysisGraph(0);
+        final FrameAnalyzer analyzer = new FrameAnalyzer(FrameAnalyzer.NUM_OF_COLORS);
+        final GridColorAnalyzer grid = new GridColorAnalyzer(4, 2);
+        int colorsAnalysis = graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                analyzer.analyzeArgb(frame.getPixels(), frame.getColumns(), frame.getRows());
+            }
+        });
+        int gridAnalysis = graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                grid.analyze(frame);
+            }
+        });
+        PipelineMetrics metrics = new PipelineMetrics();
+        graph.setMetrics(metrics);
+        int[] colors = {0xFFC02020, 0xFF20A040, 0xFF2040C0, 0xFFE0D040};
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                new double[]{0.25, 0.25, 0.25, 0.25}, 4, 1), WIDTH, HEIGHT);
+        GridColorAnalyzer rawGrid = new GridColorAnalyzer(4, 2);
+        rawGrid.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, 1);
+
+        assertTrue(graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        assertEquals(1, metrics.getSampleCount(PipelineMetrics.STAGE_DECODE));
+        assertEquals(1, graph.getMetrics(colorsAnalysis).getCount(
+                PipelineMetrics.COUNTER_FRAMES_ANALYZED));
+        assertEquals(1, graph.getMetrics(gridAnalysis).getCount(
+                PipelineMetrics.COUNTER_FRAMES_ANALYZED));
+        assertTrue(analyzer.getResultCount() >= colors.length);
+        for (int tile = 0; tile < grid.getTileCount(); tile++) {
+            FrameAnalyzerTest.assertColorNear(rawGrid.getColor(tile), grid.getColor(tile));
+        }
+    }
+
+    @Test
+    public void regionAndStride_decodeOnlyTheirSamples() {
+        graph = new AnalysisGraph(0);
+        final int[] pixels = new int[WIDTH * HEIGHT];
+        final SampledFrame[] seen = new SampledFrame[1];
+        graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                seen[0] = frame;
+                System.arraycopy(frame.getPixels(), 0, pixels, 0, frame.getSampleCount());
+            }
+        });
+        graph.setRegionOfInterest(0.25f, 0.5f, 1, 1);
+        graph.setSampleStride(3);
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 2),
+                WIDTH, HEIGHT);
+        YuvPlanes planes = SyntheticFrames.toPlanes(frame, WIDTH, HEIGHT, 8, false);
+
+        graph.analyze(planes);
+
+        assertEquals(40, seen[0].getLeft());
+        assertEquals(60, seen[0].getTop());
+        assertEquals(40, seen[0].getColumns());
+        assertEquals(20, seen[0].getRows());
+        int[] expected = new int[WIDTH * HEIGHT];
+        int count = YuvDecoder.sampleToArgb(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 40, 60,
+                WIDTH, HEIGHT, 3, expected);
+        assertEquals(count, seen[0].getSampleCount());
+        assertArrayEquals(expected, pixels);
+    }
+
+    @Test
+    public void slowAnalysis_skipsFramesWithoutHoldingUpTheOthers() throws InterruptedException {
+        graph = new AnalysisGraph(2);
+        final CountDownLatch slowRelease = new CountDownLatch(1);
+        final long[] slowFrames = new long[1];
+        int slow = graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                slowFrames[0] = frame.getFrameNumber();
+                try {
+                    slowRelease.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        int fast = graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+            }
+        });
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.solid(WIDTH, HEIGHT, 0xFF808080),
+                WIDTH, HEIGHT);
+
+        for (int i = 0; i < 5; i++) {
+            graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+            while (graph.isBusy(fast)) {
+                Thread.sleep(1);
+            }
+        }
+        assertTrue(graph.isBusy(slow));
+        slowRelease.countDown();
+        graph.awaitIdle();
+
+        PipelineMetrics fastMetrics = graph.getMetrics(fast);
+        assertEquals(5, fastMetrics.getCount(PipelineMetrics.COUNTER_FRAMES_ANALYZED));
+        assertEquals(0, fastMetrics.getCount(PipelineMetrics.COUNTER_FRAMES_SKIPPED));
+        PipelineMetrics slowMetrics = graph.getMetrics(slow);
+        assertEquals(5, slowMetrics.getCount(PipelineMetrics.COUNTER_FRAMES_RECEIVED));
+        assertEquals(4, slowMetrics.getCount(PipelineMetrics.COUNTER_FRAMES_SKIPPED));
+        assertEquals(1, slowMetrics.getCount(PipelineMetrics.COUNTER_FRAMES_ANALYZED));
+        assertEquals(1, slowFrames[0]);
+    }
+
+    @Test
+    public void frameEveryAnalysisSkips_isNotDecoded() throws InterruptedException {
+        graph = new AnalysisGraph(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        int analysis = graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        PipelineMetrics metrics = new PipelineMetrics();
+        graph.setMetrics(metrics);
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.solid(WIDTH, HEIGHT, 0xFF808080),
+                WIDTH, HEIGHT);
+
+        graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+        graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+        release.countDown();
+        graph.awaitIdle();
+
+        assertEquals(1, metrics.getSampleCount(PipelineMetrics.STAGE_DECODE));
+        assertEquals(1,
+                graph.getMetrics(analysis).getCount(PipelineMetrics.COUNTER_FRAMES_SKIPPED));
+    }
+
+    @Test
+    public void throwingAnalysis_keepsItsWorkerAlive() throws InterruptedException {
+        assertThrowingAnalysisLosesOneFrame(1);
+    }
+
+    @Test
+    public void throwingAnalysis_doesNotFailTheCaller() throws InterruptedException {
+        assertThrowingAnalysisLosesOneFrame(0);
+    }
+
+    @Test
+    public void invalidFrame_isRejected() {
+        graph = new AnalysisGraph(0);
+
+        assertFalse(graph.analyze(new byte[10], YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertFalse(graph.analyze(new byte[WIDTH * HEIGHT * 2], 256, WIDTH, HEIGHT));
+    }
+
+    private void assertThrowingAnalysisLosesOneFrame(int threads)
+            throws InterruptedException {
+        graph = new AnalysisGraph(threads);
+        final int[] calls = new int[1];
+        int analysis = graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                if (++calls[0] == 1) {
+                    throw new IllegalStateException("Bad frame");
+                }
+            }
+        });
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.solid(WIDTH, HEIGHT, 0xFF808080),
+                WIDTH, HEIGHT);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+            graph.awaitIdle();
+        }
+
+        PipelineMetrics metrics = graph.getMetrics(analysis);
+        assertEquals(3, calls[0]);
+        assertEquals(1, metrics.getCount(PipelineMetrics.COUNTER_FRAMES_FAILED));
+        assertEquals(2, metrics.getCount(PipelineMetrics.COUNTER_FRAMES_ANALYZED));
+    }
+
+    @Test
+    public void steadyState_doesNotAllocate() {
+        AllocationCounter allocationCounter = new AllocationCounter();
+        graph = new AnalysisGraph(0);
+        final long[] sums = new long[2];
+        for (int i = 0; i < 2; i++) {
+            final int analysis = i;
+            graph.register(new AnalysisGraph.Analysis() {
+                @Override
+                public void analyze(SampledFrame frame) {
+                    for (int p = 0; p < frame.getSampleCount(); p++) {
+                        sums[analysis] += frame.getPixel(p) & 0xFF;
+                    }
+                }
+            });
+        }
+        graph.setSampleStride(2);
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 3),
+                WIDTH, HEIGHT);
+        for (int i = 0; i < 100; i++) {
+            graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+        }
+
+        long before = allocationCounter.allocatedBytes();
+        for (int i = 0; i < 20; i++) {
+            graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+        }
+        assertEquals(0, allocationCounter.allocatedBytes() - before);
+        assertEquals(sums[0], sums[1]);
+    }
+}
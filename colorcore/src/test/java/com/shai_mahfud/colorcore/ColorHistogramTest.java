@@ -0,0 +1,86 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ColorHistogramTest {
+    private final ColorHistogram histogram = new ColorHistogram();
+
+
+    @Test
+    public void toArgb_widensTheBinBack() {
+        int bin = ColorHistogram.toBin(0xFFFF8000);
+
+        assertEquals(31, ColorHistogram.redOf(bin));
+        assertEquals(16, ColorHistogram.greenOf(bin));
+        assertEquals(0, ColorHistogram.blueOf(bin));
+        assertEquals(0xFFFF8400, ColorHistogram.toArgb(31, 16, 0));
+    }
+
+    @Test
+    public void clear_forgetsEveryBin() {
+        histogram.addAll(new int[]{0xFFFF0000, 0xFF00FF00, 0xFF00FF00}, 0, 3);
+        assertEquals(2, histogram.getActiveBinCount());
+        assertEquals(3, histogram.getTotalCount());
+
+        histogram.clear();
+
+        assertEquals(0, histogram.getActiveBinCount());
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getCount(ColorHistogram.toBin(0xFF00FF00)));
+    }
+
+    @Test
+    public void scale_roundsDownAndDropsEmptyBins() {
+        int red = ColorHistogram.toBin(0xFFFF0000);
+        int green = ColorHistogram.toBin(0xFF00FF00);
+        int blue = ColorHistogram.toBin(0xFF0000FF);
+        histogram.addToBin(red, 100);
+        histogram.addToBin(green, 10);
+        histogram.addToBin(blue, 1);
+
+        histogram.scale(7, 8);
+
+        assertEquals(87, histogram.getCount(red));
+        assertEquals(8, histogram.getCount(green));
+        assertEquals(0, histogram.getCount(blue));
+        assertEquals(95, histogram.getTotalCount());
+        assertEquals(2, histogram.getActiveBinCount());
+
+        // A bin that comes back after being dropped is counted once
+        histogram.addToBin(blue, 5);
+        histogram.clear();
+        assertEquals(0, histogram.getCount(blue));
+        assertEquals(0, histogram.getActiveBinCount());
+    }
+
+    @Test
+    public void copySortedActiveBins_listsTheBinsInOrder() {
+        int[] out = new int[ColorHistogram.BIN_COUNT];
+        int[] scratch = new int[ColorHistogram.BIN_COUNT];
+        Random random = new Random(1);
+        // A few bins are sorted, most of them are found by a scan of the table
+        for (int bins : new int[]{100, ColorHistogram.BIN_COUNT / 2}) {
+            histogram.clear();
+            boolean[] used = new boolean[ColorHistogram.BIN_COUNT];
+            for (int i = 0; i < bins; i++) {
+                int bin = random.nextInt(ColorHistogram.BIN_COUNT);
+                histogram.addToBin(bin, 1);
+                used[bin] = true;
+            }
+
+            int count = histogram.copySortedActiveBins(out, scratch);
+
+            assertEquals(histogram.getActiveBinCount(), count);
+            int next = 0;
+            for (int bin = 0; bin < ColorHistogram.BIN_COUNT; bin++) {
+                if (used[bin]) {
+                    assertEquals(bin, out[next++]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class ColorPopulationTableTest {
+    @Test
+    public void add_sumsPopulationsOfEqualColors() {
+        ColorPopulationTable table = new ColorPopulationTable(4);
+        table.add(0xFFFF0000, 5);
+        table.add(0xFF00FF00, 3);
+        table.add(0xFFFF0000, 7);
+
+        assertEquals(2, table.size());
+        assertEquals(0xFFFF0000, table.getColor(0));
+        assertEquals(12, table.getPopulation(0));
+        assertEquals(3, table.getPopulation(1));
+    }
+
+    @Test
+    public void add_growsPastTheExpectedSize() {
+        ColorPopulationTable table = new ColorPopulationTable(2);
+        for (int i = 0; i < 100; i++) {
+            table.add(i, 1);
+            table.add(i, i);
+        }
+
+        assertEquals(100, table.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, table.getColor(i));
+            assertEquals(i + 1, table.getPopulation(i));
+        }
+    }
+
+    @Test
+    public void clear_forgetsAllColors() {
+        ColorPopulationTable table = new ColorPopulationTable(4);
+        table.add(0, 1);
+        table.add(-1, 1);
+        table.clear();
+        table.add(-1, 2);
+
+        assertEquals(1, table.size());
+        assertEquals(2, table.getPopulation(0));
+    }
+
+    @Test
+    public void selectTop_ranksByPopulationThenByColor() {
+        ColorPopulationTable table = new ColorPopulationTable(8);
+        table.add(30, 1);
+        table.add(20, 9);
+        table.add(10, 4);
+        table.add(40, 9);
+        table.add(50, 4);
+        int[] colors = new int[3];
+        int[] populations = new int[3];
+
+        assertEquals(3, table.selectTop(3, colors, populations));
+        assertArrayEquals(new int[]{20, 40, 10}, colors);
+        assertArrayEquals(new int[]{9, 9, 4}, populations);
+    }
+
+    @Test
+    public void selectTop_matchesAFullSort() {
+        Random random = new Random(1);
+        ColorPopulationTable table = new ColorPopulationTable(16);
+        for (int i = 0; i < 1000; i++) {
+            table.add(random.nextInt(300) - 150, random.nextInt(50));
+        }
+        int[] colors = new int[table.size()];
+        int[] populations = new int[table.size()];
+        int[] topColors = new int[10];
+        int[] topPopulations = new int[10];
+
+        table.selectTop(table.size(), colors, populations);
+        assertEquals(10, table.selectTop(10, topColors, topPopulations));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(colors[i], topColors[i]);
+            assertEquals(populations[i], topPopulations[i]);
+        }
+        for (int i = 1; i < colors.length; i++) {
+            assertTrue(populations[i - 1] > populations[i] ||
+                    (populations[i - 1] == populations[i] && colors[i - 1] < colors[i]));
+        }
+    }
+
+    // The swatches of a frame rank the same as with the TreeMap FrameDiagnosisService used to have
+    @Test
+    public void selectTop_ranksLikeTheTreeMapItReplaced() {
+        for (int swatchCount : new int[]{16, 64, 256}) {
+            int[] swatchColors = new int[swatchCount];
+            int[] swatchPopulations = new int[swatchCount];
+            Random random = new Random(swatchCount);
+            for (int i = 0; i < swatchCount; i++) {
+                // Roughly one swatch in four repeats the color of an earlier one
+                swatchColors[i] = i > 0 && random.nextInt(4) == 0 ?
+                        swatchColors[random.nextInt(i)] : 0xFF000000 | random.nextInt(0x1000000);
+                swatchPopulations[i] = 1 + random.nextInt(5000);
+            }
+            ColorPopulationTable table = new ColorPopulationTable(swatchCount);
+            for (int i = 0; i < swatchCount; i++) {
+                table.add(swatchColors[i], swatchPopulations[i]);
+            }
+            int[] tableColors = new int[5];
+
+            table.selectTop(5, tableColors, new int[5]);
+
+            assertArrayEquals(rankWithTreeMap(swatchColors, swatchPopulations, 5), tableColors);
+        }
+    }
+
+
+    private static int[] rankWithTreeMap(int[] swatchColors, int[] swatchPopulations, int topK) {
+        Map<Integer, Integer> rgbToPop = new TreeMap<>();
+        for (int i = 0; i < swatchColors.length; i++) {
+            int rgb = swatchColors[i];
+            int swatchPop = swatchPopulations[i];
+            rgbToPop.put(rgb, (rgbToPop.containsKey(rgb)) ? rgbToPop.get(rgb) + swatchPop :
+                    swatchPop);
+        }
+        int[] topColors = new int[topK];
+        for (int i = 0; i < topK && !rgbToPop.isEmpty(); i++) {
+            int mostProminentRgb = -1;
+            int maxPop = -1;
+            for (Integer rgb : rgbToPop.keySet()) {
+                int pop = rgbToPop.get(rgb);
+                if (pop > maxPop) {
+                    maxPop = pop;
+                    mostProminentRgb = rgb;
+                }
+            }
+            rgbToPop.remove(mostProminentRgb);
+            topColors[i] = mostProminentRgb;
+        }
+        return topColors;
+    }
+}
@@ -0,0 +1,158 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class ColorResultExchangerTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final int CAPACITY = 5;
+
+
+    private final ColorResultExchanger exchanger = new ColorResultExchanger(CAPACITY);
+
+
+    @Test
+    public void acquire_returnsTheLatestResultOnce() {
+        assertNull(exchanger.acquire());
+
+        FrameAnalyzer analyzer = analyzedStripes();
+        exchanger.getWriteBuffer().set(analyzer);
+        assertTrue(exchanger.publish());
+        exchanger.getWriteBuffer().clear();
+        // The reader didn't take the first result yet, so there is no need to notify it again
+        assertFalse(exchanger.publish());
+
+        ColorAnalysisResult result = exchanger.acquire();
+        assertEquals(0, result.getCount());
+        assertNull(exchanger.acquire());
+
+        exchanger.getWriteBuffer().set(analyzer);
+        assertTrue(exchanger.publish());
+        result = exchanger.acquire();
+        assertEquals(analyzer.getResultCount(), result.getCount());
+        assertEquals(analyzer.getColor(0), result.getColor(0));
+        assertEquals(analyzer.getPopulation(2), result.getPopulation(2));
+        assertEquals(WIDTH * HEIGHT, result.getTotalPopulation());
+    }
+
+    @Test
+    public void appendPercentage_matchesStringFormat() {
+        ColorAnalysisResult result = exchanger.getWriteBuffer();
+        result.set(analyzedStripes());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < result.getCount(); i++) {
+            text.setLength(0);
+            result.appendPercentage(i, text);
+            double share = result.getPopulation(i) * 100.0 / result.getTotalPopulation();
+            assertEquals(String.format(Locale.US, "%.2f", share) + "%", text.toString());
+        }
+
+        text.setLength(0);
+        result.clear();
+        result.set(new FrameAnalyzer(CAPACITY));
+        assertEquals(0, result.getCount());
+    }
+
+    @Test
+    public void appendPercentage_roundsHalfUp() {
+        FrameAnalyzer analyzer = new FrameAnalyzer(CAPACITY);
+        // 1 pixel in 8 is 12.5%, 1 in 3 is 33.33%, 1 in 40000 rounds to 0.00%
+        int[] pixels = new int[40000];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i < 5000 ? 0xFFFF0000 : (i == 5000 ? 0xFF00FF00 : 0xFF0000FF);
+        }
+        assertTrue(analyzer.analyzeArgb(pixels, 200, 200));
+        ColorAnalysisResult result = exchanger.getWriteBuffer();
+        result.set(analyzer);
+        StringBuilder text = new StringBuilder();
+        result.appendPercentage(1, text);
+        assertEquals("12.50%", text.toString());
+        text.setLength(0);
+        result.appendPercentage(2, text);
+        assertEquals("0.00%", text.toString());
+    }
+
+    // The result is never torn: the reader sees whole results, each newer than the previous
+    @Test
+    public void concurrentExchange_neverTearsAResult() throws InterruptedException {
+        final int results = 200000;
+        final FrameAnalyzer[] analyzers = {analyzedStripes(), analyzedSolid()};
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < results; i++) {
+                    exchanger.getWriteBuffer().set(analyzers[i & 1]);
+                    exchanger.publish();
+                }
+            }
+        });
+        writer.start();
+
+        int acquired = 0;
+        while (writer.isAlive() || acquired == 0) {
+            ColorAnalysisResult result = exchanger.acquire();
+            if (result == null) {
+                continue;
+            }
+            acquired++;
+            FrameAnalyzer expected = result.getCount() == 1 ? analyzers[1] : analyzers[0];
+            assertEquals(expected.getResultCount(), result.getCount());
+            for (int i = 0; i < result.getCount(); i++) {
+                assertEquals(expected.getColor(i), result.getColor(i));
+                assertEquals(expected.getPopulation(i), result.getPopulation(i));
+            }
+        }
+        writer.join();
+        assertTrue(acquired > 0);
+    }
+
+    @Test
+    public void steadyStateDelivery_doesNotAllocate() {
+        AllocationCounter allocationCounter = new AllocationCounter();
+        FrameAnalyzer analyzer = analyzedStripes();
+        StringBuilder text = new StringBuilder(16);
+        // Long enough for the JIT to settle, its recompilations allocate a little
+        for (int i = 0; i < 50000; i++) {
+            deliver(analyzer, text);
+        }
+
+        long before = allocationCounter.allocatedBytes();
+        for (int i = 0; i < 1000; i++) {
+            deliver(analyzer, text);
+        }
+        assertEquals(0, allocationCounter.allocatedBytes() - before);
+    }
+
+
+    // What the analysis thread and the UI thread do for every frame
+    private void deliver(FrameAnalyzer analyzer, StringBuilder text) {
+        exchanger.getWriteBuffer().set(analyzer);
+        exchanger.publish();
+        ColorAnalysisResult result = exchanger.acquire();
+        for (int i = 0; i < result.getCount(); i++) {
+            text.setLength(0);
+            result.appendPercentage(i, text);
+        }
+    }
+
+    private static FrameAnalyzer analyzedStripes() {
+        FrameAnalyzer analyzer = new FrameAnalyzer(CAPACITY);
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT,
+                new int[]{0xFF2060C0, 0xFFE0C020, 0xFF30A040}, new double[]{0.47, 0.31, 0.22},
+                0, 1), WIDTH, HEIGHT);
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        return analyzer;
+    }
+
+    private static FrameAnalyzer analyzedSolid() {
+        FrameAnalyzer analyzer = new FrameAnalyzer(CAPACITY);
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.solid(WIDTH, HEIGHT, 0xFFD02020),
+                WIDTH, HEIGHT);
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        return analyzer;
+    }
+}
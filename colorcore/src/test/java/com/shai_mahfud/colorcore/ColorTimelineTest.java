@@ -0,0 +1,232 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class ColorTimelineTest {
+    private static final long SECOND = 1000000000L;
+    private static final long FRAME = SECOND / 10;
+    private static final int MAX_COLORS = 4;
+
+
+    private final ColorTimeline timeline = new ColorTimeline(MAX_COLORS, 100, 100, 100);
+    private final ColorTimeline.Cursor cursor = new ColorTimeline.Cursor(timeline);
+
+
+    @Test
+    public void frames_areQueriedByTimeRange() {
+        for (int i = 0; i < 20; i++) {
+            appendFrame(i * FRAME, i);
+        }
+
+        cursor.query(ColorTimeline.TIER_FRAMES, 5 * FRAME, 8 * FRAME);
+        for (int i = 5; i <= 8; i++) {
+            assertTrue(cursor.next());
+            assertEquals(i * FRAME, cursor.getTimestampNanos());
+            assertEquals(100, cursor.getTotalPopulation());
+            assertEquals(2, cursor.getCount());
+            assertEquals(0xFF000000 | i, cursor.getColor(0));
+            assertEquals(60, cursor.getPopulation(0));
+            assertEquals(40, cursor.getPopulation(1));
+        }
+        assertFalse(cursor.next());
+
+        cursor.query(ColorTimeline.TIER_FRAMES, 30 * FRAME, 40 * FRAME);
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void fullRing_keepsTheLatestEntries() {
+        ColorTimeline small = new ColorTimeline(MAX_COLORS, 4, 4, 4);
+        ColorTimeline.Cursor smallCursor = new ColorTimeline.Cursor(small);
+        int[] colors = new int[1];
+        int[] populations = {1};
+        for (int i = 0; i < 10; i++) {
+            colors[0] = i;
+            small.append(i * FRAME, colors, populations, 1, 1);
+        }
+
+        assertEquals(10, small.getWrittenCount(ColorTimeline.TIER_FRAMES));
+        smallCursor.query(ColorTimeline.TIER_FRAMES, Long.MIN_VALUE, Long.MAX_VALUE);
+        for (int i = 6; i < 10; i++) {
+            assertTrue(smallCursor.next());
+            assertEquals(i, smallCursor.getColor(0));
+        }
+        assertFalse(smallCursor.next());
+    }
+
+    @Test
+    public void secondsAndMinutes_sumTheirFrames() {
+        // Two shades of the same bin, then another color for the last second
+        int[] colors = new int[2];
+        int[] populations = {30, 10};
+        for (int i = 0; i < 30; i++) {
+            boolean lastSecond = i >= 20;
+            colors[0] = lastSecond ? 0xFF2040C0 : (i % 2 == 0 ? 0xFFC02020 : 0xFFC22222);
+            colors[1] = 0xFF20A040;
+            timeline.append(i * FRAME, colors, populations, 2, 50);
+        }
+
+        // The last second is only written once it's over
+        assertEquals(2, timeline.getWrittenCount(ColorTimeline.TIER_SECONDS));
+        timeline.flush();
+        assertEquals(3, timeline.getWrittenCount(ColorTimeline.TIER_SECONDS));
+        assertEquals(1, timeline.getWrittenCount(ColorTimeline.TIER_MINUTES));
+
+        cursor.query(ColorTimeline.TIER_SECONDS, SECOND, Long.MAX_VALUE);
+        assertTrue(cursor.next());
+        assertEquals(SECOND, cursor.getTimestampNanos());
+        assertEquals(500, cursor.getTotalPopulation());
+        assertEquals(2, cursor.getCount());
+        assertEquals(0xFFC12121, cursor.getColor(0));
+        assertEquals(300, cursor.getPopulation(0));
+        assertEquals(0xFF20A040, cursor.getColor(1));
+        assertEquals(100, cursor.getPopulation(1));
+        assertTrue(cursor.next());
+        assertEquals(0xFF2040C0, cursor.getColor(0));
+        assertFalse(cursor.next());
+
+        cursor.query(ColorTimeline.TIER_MINUTES, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertTrue(cursor.next());
+        assertEquals(0, cursor.getTimestampNanos());
+        assertEquals(1500, cursor.getTotalPopulation());
+        assertEquals(3, cursor.getCount());
+        assertEquals(600, cursor.getPopulation(0));
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void clockGoingBack_neverUnsortsTheTimeline() {
+        appendFrame(10 * FRAME, 1);
+        appendFrame(5 * FRAME, 2);
+
+        cursor.query(ColorTimeline.TIER_FRAMES, 10 * FRAME, 10 * FRAME);
+        assertTrue(cursor.next());
+        assertTrue(cursor.next());
+        assertEquals(0xFF000002, cursor.getColor(0));
+    }
+
+    @Test
+    public void csvExport_writesALinePerEntry() throws IOException {
+        appendFrame(0, 0x10);
+        appendFrame(FRAME, 0xABCDEF);
+        StringWriter out = new StringWriter();
+
+        timeline.exportCsv(ColorTimeline.TIER_FRAMES, Long.MIN_VALUE, Long.MAX_VALUE, out);
+
+        assertEquals("timestamp_nanos,total,color1,population1,color2,population2,color3," +
+                "population3,color4,population4\n" +
+                "0,100,#000010,60,#FF0000,40\n" +
+                "100000000,100,#ABCDEF,60,#FF0000,40\n", out.toString());
+    }
+
+    @Test
+    public void binaryExport_holdsTheEntries() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            appendFrame(i * FRAME, i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        timeline.exportBinary(ColorTimeline.TIER_FRAMES, FRAME, Long.MAX_VALUE, out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(ColorTimeline.MAGIC, in.readInt());
+        assertEquals(ColorTimeline.VERSION, in.readInt());
+        assertEquals(MAX_COLORS, in.readInt());
+        for (int i = 1; i < 3; i++) {
+            assertEquals(i * FRAME, in.readLong());
+            assertEquals(100, in.readLong());
+            assertEquals(2, in.readInt());
+            assertEquals(0xFF000000 | i, in.readInt());
+            assertEquals(60, in.readLong());
+            assertEquals(0xFFFF0000, in.readInt());
+            assertEquals(40, in.readLong());
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void append_doesNotAllocate() {
+        AllocationCounter allocationCounter = new AllocationCounter();
+        int[] colors = {0xFFC02020, 0xFF2040C0, 0xFF20A040};
+        int[] populations = {50, 30, 20};
+        long timestamp = 0;
+        // Crosses many seconds, so the downsampled tiers are written too
+        for (int i = 0; i < 20000; i++) {
+            timeline.append(timestamp += FRAME, colors, populations, 3, 100);
+        }
+
+        long before = allocationCounter.allocatedBytes();
+        for (int i = 0; i < 20000; i++) {
+            timeline.append(timestamp += FRAME, colors, populations, 3, 100);
+        }
+        assertEquals(0, allocationCounter.allocatedBytes() - before);
+    }
+
+    /*
+     * Every entry is written whole or skipped, however fast the writer overwrites the ring, and
+     * none is read from outside the range
+     */
+    @Test
+    public void concurrentReaders_neverSeeTornEntries() throws InterruptedException {
+        final ColorTimeline small = new ColorTimeline(MAX_COLORS, 8, 8, 8);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int[] colors = new int[MAX_COLORS];
+                int[] populations = new int[MAX_COLORS];
+                for (int i = 0; i < 500000; i++) {
+                    for (int c = 0; c < MAX_COLORS; c++) {
+                        colors[c] = i;
+                        populations[c] = i;
+                    }
+                    small.append(i, colors, populations, 1 + i % MAX_COLORS, i);
+                }
+            }
+        });
+        writer.start();
+
+        ColorTimeline.Cursor reader = new ColorTimeline.Cursor(small);
+        long read = 0;
+        while (writer.isAlive() || read == 0) {
+            reader.query(ColorTimeline.TIER_FRAMES, Long.MIN_VALUE, Long.MAX_VALUE);
+            long previous = -1;
+            while (reader.next()) {
+                long i = reader.getTimestampNanos();
+                assertTrue(i > previous);
+                previous = i;
+                assertEquals(i, reader.getTotalPopulation());
+                assertEquals(1 + i % MAX_COLORS, reader.getCount());
+                for (int c = 0; c < reader.getCount(); c++) {
+                    assertEquals(i, reader.getColor(c));
+                    assertEquals(i, reader.getPopulation(c));
+                }
+                read++;
+            }
+
+            // Nor entries from before the range, when the ring moves on during the query
+            long from = small.getWrittenCount(ColorTimeline.TIER_FRAMES) - 4;
+            reader.query(ColorTimeline.TIER_FRAMES, from, Long.MAX_VALUE);
+            while (reader.next()) {
+                assertTrue(reader.getTimestampNanos() + " < " + from,
+                        reader.getTimestampNanos() >= from);
+            }
+        }
+        writer.join();
+        assertTrue(read > 0);
+    }
+
+
+    // A frame of two colors: color with 60% of it, red with the rest
+    private void appendFrame(long timestampNanos, int color) {
+        timeline.append(timestampNanos, new int[]{0xFF000000 | color, 0xFFFF0000},
+                new int[]{60, 40}, 2, 100);
+    }
+}
@@ -0,0 +1,381 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FrameAnalysisEngineTest {
+    // Records what the engine reports, keyed by frame buffer
+    private static class RecordingListener implements FrameAnalysisEngine.Listener {
+        final Map<byte[], Long> submitTimes = new IdentityHashMap<>();
+        final Map<byte[], Integer> sequenceNumbers = new IdentityHashMap<>();
+        final List<Integer> analyzedSequence = new ArrayList<>();
+        final List<Long> latencies = new ArrayList<>();
+        int releasedCount;
+        int droppedCount;
+        PreviewBufferPool pool;
+        private byte[] lastAnalyzed;
+
+        synchronized void submitted(byte[] frame, int sequenceNumber) {
+            submitTimes.put(frame, System.nanoTime());
+            sequenceNumbers.put(frame, sequenceNumber);
+        }
+
+        @Override
+        public void onFrameAnalyzed(FrameAnalyzer analyzer) {
+            assertTrue(analyzer.getResultCount() > 0);
+        }
+
+        @Override
+        public synchronized void onFrameReleased(byte[] data, boolean dropped) {
+            releasedCount++;
+            if (dropped) {
+                droppedCount++;
+                pool.drop(data);
+            } else {
+                latencies.add(System.nanoTime() - submitTimes.get(data));
+                analyzedSequence.add(sequenceNumbers.get(data));
+                lastAnalyzed = data;
+                pool.release(data);
+            }
+        }
+
+        @Override
+        public void onPlanesReleased(YuvPlanes planes, boolean dropped) {
+            fail("No planes were submitted");
+        }
+    }
+
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+
+    private FrameAnalysisEngine engine;
+
+
+    @After
+    public void tearDown() {
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+
+    @Test
+    public void producerAt60Fps_alwaysGetsTheLatestFrameAnalyzed() throws Exception {
+        final Queue<byte[]> cameraQueue = new ArrayDeque<>();
+        PreviewBufferPool pool = new PreviewBufferPool(3);
+        RecordingListener listener = new RecordingListener();
+        listener.pool = pool;
+        engine = new FrameAnalysisEngine(new FrameAnalyzer(5), listener);
+        PipelineMetrics metrics = new PipelineMetrics();
+        engine.setMetrics(metrics);
+        engine.start();
+        pool.start(new PreviewBufferPool.CallbackBufferSink() {
+            @Override
+            public void addCallbackBuffer(byte[] buffer) {
+                synchronized (cameraQueue) {
+                    cameraQueue.add(buffer);
+                }
+            }
+        }, WIDTH * HEIGHT * 3 / 2);
+        byte[] content = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 1),
+                WIDTH, HEIGHT);
+
+        int submitted = 0;
+        int skippedByCamera = 0;
+        long next = System.nanoTime();
+        for (int i = 0; i < 120; i++) {
+            next += FRAME_INTERVAL_NANOS;
+            while (System.nanoTime() < next) {
+                Thread.sleep(1);
+            }
+            byte[] frame;
+            synchronized (cameraQueue) {
+                frame = cameraQueue.poll();
+            }
+            if (frame == null) {
+                skippedByCamera++; // Every buffer is busy, the camera skips the frame
+                continue;
+            }
+            System.arraycopy(content, 0, frame, 0, content.length);
+            pool.acquire(frame);
+            listener.submitted(frame, i);
+            engine.submit(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+            submitted++;
+        }
+        Thread.sleep(500);
+        engine.stop();
+
+        synchronized (listener) {
+            assertEquals(submitted, engine.getSubmittedCount());
+            assertEquals(submitted, engine.getAnalyzedCount() + engine.getDroppedCount());
+            assertEquals(submitted, listener.releasedCount);
+            assertEquals(engine.getDroppedCount(), listener.droppedCount);
+            assertEquals(listener.droppedCount, pool.getDroppedCount());
+            assertEquals(0, pool.getInFlightCount());
+            assertFalse(listener.analyzedSequence.isEmpty());
+
+            // Frames are analyzed in order, and the very last one is never dropped
+            for (int i = 1; i < listener.analyzedSequence.size(); i++) {
+                assertTrue(listener.analyzedSequence.get(i - 1) <
+                        listener.analyzedSequence.get(i));
+            }
+            assertTrue(listener.sequenceNumbers.get(listener.lastAnalyzed) >= 120 - 1 -
+                    skippedByCamera);
+
+            // A frame waits for at most one analysis before its own starts
+            long maxLatency = 0;
+            for (long latency : listener.latencies) {
+                maxLatency = Math.max(maxLatency, latency);
+            }
+            assertTrue(String.format("analyzed %d of %d frames, dropped %d, camera skipped %d, " +
+                            "max latency %.1f ms", listener.analyzedSequence.size(), submitted,
+                    listener.droppedCount, skippedByCamera, maxLatency / 1e6),
+                    maxLatency < 1000000000L);
+
+            // Every analysis and drop is in the metrics, with the timing of every stage
+            long analyzed = engine.getAnalyzedCount();
+            assertEquals(analyzed, metrics.getCount(PipelineMetrics.COUNTER_FRAMES_ANALYZED));
+            assertEquals(engine.getDroppedCount(),
+                    metrics.getCount(PipelineMetrics.COUNTER_FRAMES_DROPPED));
+            assertEquals(analyzed, metrics.getSampleCount(PipelineMetrics.STAGE_QUEUE));
+            assertEquals(analyzed, metrics.getSampleCount(PipelineMetrics.STAGE_DECODE));
+            assertEquals(analyzed, metrics.getSampleCount(PipelineMetrics.STAGE_QUANTIZE));
+            assertEquals(analyzed, metrics.getSampleCount(PipelineMetrics.STAGE_ANALYSIS));
+            assertTrue(metrics.getPercentileNanos(PipelineMetrics.STAGE_DECODE, 0.5) <=
+                    metrics.getPercentileNanos(PipelineMetrics.STAGE_ANALYSIS, 0.5));
+        }
+    }
+
+    @Test
+    public void throwingAnalysis_losesOnlyItsFrame() throws InterruptedException {
+        final List<byte[]> released = new ArrayList<>();
+        final CountDownLatch analyzed = new CountDownLatch(1);
+        FrameAnalyzer analyzer = new FrameAnalyzer(5) {
+            private boolean thrown;
+
+            @Override
+            public boolean analyze(byte[] data, int format, int width, int height) {
+                if (!thrown) {
+                    thrown = true;
+                    throw new IllegalStateException("The first frame fails");
+                }
+                return super.analyze(data, format, width, height);
+            }
+        };
+        engine = new FrameAnalysisEngine(analyzer, new FrameAnalysisEngine.Listener() {
+            @Override
+            public void onFrameAnalyzed(FrameAnalyzer analyzer) {
+                analyzed.countDown();
+            }
+
+            @Override
+            public void onFrameReleased(byte[] data, boolean dropped) {
+                synchronized (released) {
+                    released.add(data);
+                    released.notifyAll();
+                }
+            }
+
+            @Override
+            public void onPlanesReleased(YuvPlanes planes, boolean dropped) {
+                fail("No planes were submitted");
+            }
+        });
+        engine.start();
+        byte[] first = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 1),
+                WIDTH, HEIGHT);
+        byte[] second = first.clone();
+
+        engine.submit(first, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+        synchronized (released) {
+            while (released.isEmpty()) {
+                released.wait();
+            }
+        }
+        engine.submit(second, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+
+        assertTrue(analyzed.await(10, TimeUnit.SECONDS));
+        assertEquals(1, engine.getFailedCount());
+        synchronized (released) {
+            assertSame(first, released.get(0));
+        }
+    }
+
+    @Test
+    public void undecodableFrame_isNotCountedAsAnalyzedInTheMetrics() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        engine = new FrameAnalysisEngine(new FrameAnalyzer(5), new FrameAnalysisEngine.Listener() {
+            @Override
+            public void onFrameAnalyzed(FrameAnalyzer analyzer) {
+                fail("The frame is too short to be analyzed");
+            }
+
+            @Override
+            public void onFrameReleased(byte[] data, boolean dropped) {
+                released.countDown();
+            }
+
+            @Override
+            public void onPlanesReleased(YuvPlanes planes, boolean dropped) {
+            }
+        });
+        PipelineMetrics metrics = new PipelineMetrics();
+        engine.setMetrics(metrics);
+        engine.start();
+
+        engine.submit(new byte[16], YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+
+        assertTrue(released.await(10, TimeUnit.SECONDS));
+        engine.stop();
+        assertEquals(1, engine.getAnalyzedCount());
+        assertEquals(0, metrics.getCount(PipelineMetrics.COUNTER_FRAMES_ANALYZED));
+        assertEquals(1, metrics.getSampleCount(PipelineMetrics.STAGE_ANALYSIS));
+    }
+
+    @Test
+    public void submitWhileStopped_releasesTheFrameRightAway() {
+        final List<byte[]> dropped = new ArrayList<>();
+        engine = new FrameAnalysisEngine(new FrameAnalyzer(5), new FrameAnalysisEngine.Listener() {
+            @Override
+            public void onFrameAnalyzed(FrameAnalyzer analyzer) {
+            }
+
+            @Override
+            public void onFrameReleased(byte[] data, boolean wasDropped) {
+                if (wasDropped) {
+                    dropped.add(data);
+                }
+            }
+
+            @Override
+            public void onPlanesReleased(YuvPlanes planes, boolean dropped) {
+            }
+        });
+        byte[] first = new byte[16];
+        engine.submit(first, YuvDecoder.FORMAT_NV21, 4, 2);
+        assertEquals(1, dropped.size());
+        assertSame(first, dropped.get(0));
+        assertEquals(1, engine.getDroppedCount());
+    }
+
+    @Test
+    public void stop_releasesTheWaitingFrame() throws Exception {
+        final List<byte[]> released = new ArrayList<>();
+        final Object analysisStarted = new Object();
+        final boolean[] blocked = {true};
+        engine = new FrameAnalysisEngine(new FrameAnalyzer(5) {
+            @Override
+            public boolean analyze(byte[] data, int format, int width, int height) {
+                synchronized (analysisStarted) {
+                    analysisStarted.notifyAll();
+                    while (blocked[0]) {
+                        try {
+                            analysisStarted.wait();
+                        } catch (InterruptedException e) {
+                            return false;
+                        }
+                    }
+                }
+                return false;
+            }
+        }, new FrameAnalysisEngine.Listener() {
+            @Override
+            public void onFrameAnalyzed(FrameAnalyzer analyzer) {
+            }
+
+            @Override
+            public synchronized void onFrameReleased(byte[] data, boolean dropped) {
+                released.add(data);
+            }
+
+            @Override
+            public void onPlanesReleased(YuvPlanes planes, boolean dropped) {
+            }
+        });
+        engine.start();
+        byte[] analyzed = new byte[16];
+        byte[] waiting = new byte[16];
+        synchronized (analysisStarted) {
+            engine.submit(analyzed, YuvDecoder.FORMAT_NV21, 4, 2);
+            analysisStarted.wait(5000);
+        }
+        engine.submit(waiting, YuvDecoder.FORMAT_NV21, 4, 2);
+
+        Thread unblocker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Only let the analysis finish once stop() has emptied the mailbox
+                while (engine.getDroppedCount() == 0) {
+                    Thread.yield();
+                }
+                synchronized (analysisStarted) {
+                    blocked[0] = false;
+                    analysisStarted.notifyAll();
+                }
+            }
+        });
+        unblocker.start();
+        engine.stop();
+        unblocker.join();
+
+        assertEquals(2, released.size());
+        assertTrue(released.contains(analyzed));
+        assertTrue(released.contains(waiting));
+        assertEquals(1, engine.getAnalyzedCount());
+        assertEquals(1, engine.getDroppedCount());
+    }
+
+    @Test
+    public void planes_areAnalyzedAndReleasedAsPlanes() throws Exception {
+        final List<YuvPlanes> released = new ArrayList<>();
+        final int[] resultCount = new int[1];
+        FrameAnalysisEngine.Listener listener = new FrameAnalysisEngine.Listener() {
+            @Override
+            public void onFrameAnalyzed(FrameAnalyzer analyzer) {
+                resultCount[0] = analyzer.getResultCount();
+            }
+
+            @Override
+            public void onFrameReleased(byte[] data, boolean dropped) {
+                fail("No byte array was submitted");
+            }
+
+            @Override
+            public synchronized void onPlanesReleased(YuvPlanes planes, boolean dropped) {
+                assertFalse(dropped);
+                released.add(planes);
+                notifyAll();
+            }
+        };
+        engine = new FrameAnalysisEngine(new FrameAnalyzer(5), listener);
+        engine.start();
+        YuvPlanes planes = SyntheticFrames.toPlanes(SyntheticFrames.toNv21(
+                SyntheticFrames.randomPixels(WIDTH, HEIGHT, 2), WIDTH, HEIGHT), WIDTH, HEIGHT, 64,
+                true);
+        engine.submit(planes);
+
+        synchronized (listener) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (released.isEmpty() && System.currentTimeMillis() < deadline) {
+                listener.wait(100);
+            }
+        }
+        assertEquals(1, released.size());
+        assertSame(planes, released.get(0));
+        assertEquals(5, resultCount[0]);
+    }
+}
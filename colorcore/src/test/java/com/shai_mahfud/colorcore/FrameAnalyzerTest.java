@@ -0,0 +1,480 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameAnalyzerTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+
+    private static final int TOP_K = 5;
+
+
+    private final FrameAnalyzer analyzer = new FrameAnalyzer(TOP_K);
+
+
+    @Test
+    public void stripes_areRankedByTheirShare() {
+        int[] colors = {0xFF2060C0, 0xFFE0C020, 0xFF30A040};
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                new double[]{0.5, 0.3, 0.2}, 0, 1), WIDTH, HEIGHT);
+
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        assertEquals(3, analyzer.getResultCount());
+        assertEquals(WIDTH * HEIGHT, analyzer.getTotalPopulation());
+        for (int i = 0; i < colors.length; i++) {
+            assertColorNear(colors[i], analyzer.getColor(i));
+        }
+        assertEquals(0.5, analyzer.getPopulation(0) / (double) analyzer.getTotalPopulation(), 0.02);
+        assertEquals(0.3, analyzer.getPopulation(1) / (double) analyzer.getTotalPopulation(), 0.02);
+    }
+
+    @Test
+    public void noisyFrame_isLimitedToMaxResults() {
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 2),
+                WIDTH, HEIGHT);
+
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        assertEquals(5, analyzer.getResultCount());
+        for (int i = 1; i < analyzer.getResultCount(); i++) {
+            assertTrue(analyzer.getPopulation(i - 1) >= analyzer.getPopulation(i));
+        }
+    }
+
+    @Test
+    public void undecodableFrame_clearsTheResults() {
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.solid(WIDTH, HEIGHT, 0xFFFF0000),
+                WIDTH, HEIGHT);
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        assertFalse(analyzer.analyze(frame, 0x100, WIDTH, HEIGHT));
+        assertEquals(0, analyzer.getResultCount());
+        assertFalse(analyzer.analyze(new byte[10], YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertEquals(0, analyzer.getResultCount());
+    }
+
+
+    @Test
+    public void argbPixels_areAnalyzedLikeFrames() {
+        // Colors the histogram can represent come back exactly, there is no YUV round trip
+        int[] colors = {ColorHistogram.toArgb(6, 14, 22), ColorHistogram.toArgb(26, 8, 6),
+                ColorHistogram.toArgb(8, 20, 10)};
+        int[] pixels = SyntheticFrames.stripes(WIDTH, HEIGHT, colors, new double[]{0.5, 0.3, 0.2},
+                0, 1);
+
+        assertTrue(analyzer.analyzeArgb(pixels, WIDTH, HEIGHT));
+        assertEquals(3, analyzer.getResultCount());
+        assertEquals(WIDTH * HEIGHT, analyzer.getTotalPopulation());
+        for (int i = 0; i < colors.length; i++) {
+            assertEquals(colors[i], analyzer.getColor(i));
+        }
+        assertEquals(WIDTH * HEIGHT / 2, analyzer.getPopulation(0));
+
+        analyzer.setRegionOfInterest(0.5f, 0, 1, 1);
+        analyzer.setSampleStride(2);
+        assertTrue(analyzer.analyzeArgb(pixels, WIDTH, HEIGHT));
+        assertEquals(2, analyzer.getResultCount());
+        assertEquals(colors[1], analyzer.getColor(0));
+        assertEquals(WIDTH / 4 * HEIGHT / 2, analyzer.getTotalPopulation());
+
+        assertFalse(analyzer.analyzeArgb(new int[10], WIDTH, HEIGHT));
+        assertEquals(0, analyzer.getResultCount());
+    }
+
+    @Test
+    public void regionOfInterest_onlySeesItsPart() {
+        // Blue on the left half, yellow on the right half
+        int[] colors = {0xFF2060C0, 0xFFE0C020};
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                new double[]{0.5, 0.5}, 0, 3), WIDTH, HEIGHT);
+
+        analyzer.setRegionOfInterest(0.5f, 0.25f, 1, 0.75f);
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        assertEquals(1, analyzer.getResultCount());
+        assertColorNear(colors[1], analyzer.getColor(0));
+        assertEquals(WIDTH / 2 * HEIGHT / 2, analyzer.getTotalPopulation());
+
+        analyzer.clearRegionOfInterest();
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertEquals(2, analyzer.getResultCount());
+    }
+
+    @Test
+    public void gridSize_findsTheColorsOfTheTilesOfTheRegion() {
+        // Blue on the left half, yellow on the right half
+        int[] colors = {0xFF2060C0, 0xFFE0C020};
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                new double[]{0.5, 0.5}, 0, 3), WIDTH, HEIGHT);
+
+        analyzer.setGridSize(4, 2);
+        analyzer.setRegionOfInterest(0.25f, 0, 0.75f, 1);
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        assertEquals(4, analyzer.getGridColumns());
+        assertEquals(2, analyzer.getGridRows());
+        assertEquals(WIDTH / 2, analyzer.getGridRegionWidth());
+        assertEquals(HEIGHT, analyzer.getGridRegionHeight());
+        for (int tile = 0; tile < 8; tile++) {
+            assertColorNear(colors[tile % 4 < 2 ? 0 : 1], analyzer.getGridColor(tile));
+        }
+
+        assertTrue(analyzer.analyzeArgb(new int[4], 2, 2));
+        assertEquals(0, analyzer.getGridColumns());
+        assertEquals(0, analyzer.getGridColor(0));
+
+        analyzer.setGridSize(0, 0);
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertEquals(0, analyzer.getGridColumns());
+        assertEquals(0, analyzer.getGridRows());
+        assertEquals(0, analyzer.getGridColor(0));
+    }
+
+    @Test
+    public void referenceColors_measureTheirCoverage() {
+        int[] colors = {0xFF2060C0, 0xFFE0C020, 0xFF30A040};
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                new double[]{0.5, 0.3, 0.2}, 2, 1), WIDTH, HEIGHT);
+        // Yellow, nothing like the frame, and blue
+        int[] references = {0xFFE4C41C, 0xFFFF00FF, 0xFF2060C0};
+
+        analyzer.setReferenceColors(references, references.length, 0.05f);
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        assertEquals(3, analyzer.getResultCount());
+        assertEquals(WIDTH * HEIGHT, analyzer.getTotalPopulation());
+        for (int i = 0; i < references.length; i++) {
+            assertEquals(references[i], analyzer.getColor(i));
+        }
+        assertEquals(0.3, analyzer.getPopulation(0) / (double) analyzer.getTotalPopulation(), 0.02);
+        assertEquals(0, analyzer.getPopulation(1));
+        assertEquals(0.5, analyzer.getPopulation(2) / (double) analyzer.getTotalPopulation(), 0.02);
+
+        analyzer.clearReferenceColors();
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertColorNear(colors[0], analyzer.getColor(0));
+    }
+
+    @Test
+    public void planes_areAnalyzedLikeTheByteArray() {
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 5),
+                WIDTH, HEIGHT);
+        YuvPlanes planes = SyntheticFrames.toPlanes(frame, WIDTH, HEIGHT, 24, true);
+        FrameAnalyzer reference = new FrameAnalyzer(TOP_K);
+        for (int stride = 1; stride <= 3; stride += 2) {
+            analyzer.setSampleStride(stride);
+            reference.setSampleStride(stride);
+            assertTrue(analyzer.analyze(planes));
+            assertTrue(reference.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+            assertEquals(reference.getResultCount(), analyzer.getResultCount());
+            assertEquals(reference.getTotalPopulation(), analyzer.getTotalPopulation());
+            for (int i = 0; i < reference.getResultCount(); i++) {
+                assertEquals(reference.getColor(i), analyzer.getColor(i));
+                assertEquals(reference.getPopulation(i), analyzer.getPopulation(i));
+            }
+        }
+
+        planes.setPlane(YuvPlanes.PLANE_V, null, 0, 0);
+        assertFalse(analyzer.analyze(planes));
+        assertEquals(0, analyzer.getResultCount());
+    }
+
+    @Test
+    public void targetSampleCount_neverAnalyzesFewerPixels() {
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 4),
+                WIDTH, HEIGHT);
+        analyzer.setTargetSampleCount(1000);
+        assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        // 19200 pixels, stride 4 gives 40 * 30 samples
+        assertEquals(1200, analyzer.getTotalPopulation());
+    }
+
+    /*
+     * Compares the top colors of subsampled analyses with those of the full frame: every top
+     * color of the full frame must be found close by, with about the same share.
+     */
+    @Test
+    public void subsampling_keepsTheTopColors() {
+        int width = 640;
+        int height = 480;
+        // Channels in the middle of the histogram bins, so the noise keeps every stripe in one
+        // swatch and the full frame analysis finds exactly these colors
+        int[] colors = {0xFF3474B4, 0xFFD44434, 0xFF44A454, 0xFFF4E4C4, 0xFF242424};
+        double[] shares = {0.35, 0.25, 0.2, 0.12, 0.08};
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(width, height, colors,
+                shares, 2, 5), width, height);
+
+        FrameAnalyzer full = new FrameAnalyzer(TOP_K);
+        assertTrue(full.analyze(frame, YuvDecoder.FORMAT_NV21, width, height));
+
+        int[] strides = {2, 4, 8, 16};
+        for (int stride : strides) {
+            analyzer.setSampleStride(stride);
+            assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, width, height));
+
+            int maxColorError = 0;
+            double maxShareError = 0;
+            for (int i = 0; i < full.getResultCount(); i++) {
+                int closest = -1;
+                int closestDistance = Integer.MAX_VALUE;
+                for (int j = 0; j < analyzer.getResultCount(); j++) {
+                    int distance = channelDistance(full.getColor(i), analyzer.getColor(j));
+                    if (distance < closestDistance) {
+                        closestDistance = distance;
+                        closest = j;
+                    }
+                }
+                double fullShare = full.getPopulation(i) / (double) full.getTotalPopulation();
+                double sampledShare = analyzer.getPopulation(closest) /
+                        (double) analyzer.getTotalPopulation();
+                maxColorError = Math.max(maxColorError, closestDistance);
+                maxShareError = Math.max(maxShareError, Math.abs(fullShare - sampledShare));
+            }
+            assertTrue("stride " + stride + ": max channel error " + maxColorError,
+                    maxColorError <= 16);
+            assertTrue("stride " + stride + ": max share error " + maxShareError,
+                    maxShareError <= 0.05);
+        }
+    }
+
+    @Test
+    public void temporalWindow_convergesToTheNewScene() {
+        int first = 0xFF2060C0;
+        int second = 0xFFE0C020;
+        byte[] firstFrame = SyntheticFrames.toNv21(SyntheticFrames.solid(WIDTH, HEIGHT, first),
+                WIDTH, HEIGHT);
+        byte[] secondFrame = SyntheticFrames.toNv21(SyntheticFrames.solid(WIDTH, HEIGHT, second),
+                WIDTH, HEIGHT);
+        analyzer.setTemporalWindow(8);
+        // Long enough for the history to reach its steady state
+        for (int i = 0; i < 100; i++) {
+            assertTrue(analyzer.analyze(firstFrame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        }
+        assertEquals(1, analyzer.getResultCount());
+        assertColorNear(first, analyzer.getColor(0));
+
+        // Every frame keeps 7/8 of the history, so the old scene fades out geometrically
+        for (int frame = 1; frame <= 40; frame++) {
+            assertTrue(analyzer.analyze(secondFrame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+            double expectedShare = 1 - Math.pow(7 / 8.0, frame);
+            assertEquals(expectedShare, shareOf(second), 0.01);
+        }
+        assertColorNear(second, analyzer.getColor(0));
+
+        // Starting over forgets the second scene right away
+        analyzer.resetTemporalHistory();
+        assertTrue(analyzer.analyze(firstFrame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertEquals(1, analyzer.getResultCount());
+        assertColorNear(first, analyzer.getColor(0));
+    }
+
+    @Test
+    public void temporalWindow_ofAStaticSceneMatchesASingleFrame() {
+        int[] colors = {0xFF3474B4, 0xFFD44434, 0xFF44A454};
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                new double[]{0.5, 0.3, 0.2}, 0, 1), WIDTH, HEIGHT);
+        analyzer.setTemporalWindow(16);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        }
+
+        assertEquals(3, analyzer.getResultCount());
+        for (int i = 0; i < colors.length; i++) {
+            assertColorNear(colors[i], analyzer.getColor(i));
+        }
+        assertEquals(0.5, shareOf(analyzer.getColor(0)), 0.001);
+        assertEquals(0.3, shareOf(analyzer.getColor(1)), 0.001);
+    }
+
+    // The point of the temporal window is analyzing few samples per frame, see
+    // FramePipelineBenchmark for what it saves
+    @Test
+    public void temporalWindow_doesNotAllocate() {
+        int width = 640;
+        int height = 480;
+        byte[][] frames = new byte[4][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(width, height, i),
+                    width, height);
+        }
+        analyzer.setTemporalWindow(16);
+        analyzer.setSampleStride(4);
+        AllocationCounter allocationCounter = new AllocationCounter();
+        for (int i = 0; i < 50; i++) {
+            analyzer.analyze(frames[i % frames.length], YuvDecoder.FORMAT_NV21, width, height);
+        }
+
+        long before = allocationCounter.allocatedBytes();
+        for (int i = 0; i < 100; i++) {
+            analyzer.analyze(frames[i % frames.length], YuvDecoder.FORMAT_NV21, width, height);
+        }
+        assertEquals(0, allocationCounter.allocatedBytes() - before);
+    }
+
+    @Test(timeout = 10000)
+    public void makeRoomForSamples_lowersTheWeightOfHugeFrames() {
+        ColorHistogram histogram = new ColorHistogram();
+        histogram.addToBin(ColorHistogram.toBin(0xFF2060C0), 1 << 20);
+
+        // Fits at full weight once the histogram is halved
+        int samples = Integer.MAX_VALUE / 32;
+        assertEquals(16, FrameAnalyzer.makeRoomForSamples(histogram, samples));
+        assertTrue(histogram.getTotalCount() + 16L * samples <= Integer.MAX_VALUE);
+        assertTrue(histogram.getTotalCount() > 0);
+
+        // Even an empty histogram couldn't take these at full weight
+        samples = Integer.MAX_VALUE / 4;
+        assertEquals(4, FrameAnalyzer.makeRoomForSamples(histogram, samples));
+        assertTrue(histogram.getTotalCount() + 4L * samples <= Integer.MAX_VALUE);
+        assertEquals(1, FrameAnalyzer.makeRoomForSamples(histogram, Integer.MAX_VALUE));
+        assertEquals(0, histogram.getTotalCount());
+    }
+
+    @Test
+    public void sceneChangeThreshold_reusesTheResultsOfAStaticScene() {
+        int[] colors = {0xFF2060C0, 0xFFE0C020, 0xFF30A040};
+        double[] shares = {0.5, 0.3, 0.2};
+        analyzer.setSceneChangeThreshold(2);
+        assertTrue(analyzer.analyze(SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT,
+                colors, shares, 4, 0), WIDTH, HEIGHT), YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertFalse(analyzer.isResultReused());
+        int topColor = analyzer.getColor(0);
+        int topPopulation = analyzer.getPopulation(0);
+
+        for (int i = 1; i <= 5; i++) {
+            byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                    shares, 4, i), WIDTH, HEIGHT);
+            assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+            assertTrue(analyzer.isResultReused());
+            assertEquals(topColor, analyzer.getColor(0));
+            assertEquals(topPopulation, analyzer.getPopulation(0));
+        }
+        assertEquals(1, analyzer.getSceneChangedCount());
+        assertEquals(5, analyzer.getSceneUnchangedCount());
+
+        // Another scene is analyzed again
+        byte[] other = SyntheticFrames.toNv21(SyntheticFrames.solid(WIDTH, HEIGHT, 0xFFD02020),
+                WIDTH, HEIGHT);
+        assertTrue(analyzer.analyze(other, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertFalse(analyzer.isResultReused());
+        assertEquals(1, analyzer.getResultCount());
+
+        // So is the same scene once the region of interest changes
+        analyzer.setRegionOfInterest(0, 0, 0.5f, 1);
+        assertTrue(analyzer.analyze(other, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertFalse(analyzer.isResultReused());
+        assertEquals(WIDTH / 2 * HEIGHT, analyzer.getTotalPopulation());
+    }
+
+    @Test
+    public void kMeansQuantizer_findsTheStripes() {
+        int[] colors = {0xFF2060C0, 0xFFE0C020, 0xFF30A040};
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                new double[]{0.5, 0.3, 0.2}, 8, 1), WIDTH, HEIGHT);
+        analyzer.setQuantizer(FrameAnalyzer.QUANTIZER_K_MEANS);
+        analyzer.setKMeansIterations(1);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(analyzer.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+            assertEquals(WIDTH * HEIGHT, analyzer.getTotalPopulation());
+            // The noisy stripes take several swatches each, but every swatch belongs to one
+            assertTrue(channelDistance(colors[0], analyzer.getColor(0)) <= 12);
+            for (int j = 0; j < analyzer.getResultCount(); j++) {
+                int color = analyzer.getColor(j);
+                assertTrue(channelDistance(colors[0], color) <= 12 ||
+                        channelDistance(colors[1], color) <= 12 ||
+                        channelDistance(colors[2], color) <= 12);
+            }
+        }
+    }
+
+    @Test
+    public void kMeansQuantizer_startsOverOnASceneChange() {
+        byte[] first = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT,
+                new int[]{0xFF2060C0, 0xFFE0C020, 0xFF30A040}, new double[]{0.5, 0.3, 0.2}, 8, 1),
+                WIDTH, HEIGHT);
+        byte[] second = SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT,
+                new int[]{0xFFC05030, 0xFF8040A0, 0xFFF0F0F0}, new double[]{0.4, 0.4, 0.2}, 8, 2),
+                WIDTH, HEIGHT);
+        FrameAnalyzer fresh = new FrameAnalyzer(TOP_K);
+        for (FrameAnalyzer each : new FrameAnalyzer[]{analyzer, fresh}) {
+            each.setQuantizer(FrameAnalyzer.QUANTIZER_K_MEANS);
+            each.setKMeansIterations(1);
+            each.setSceneChangeThreshold(2);
+        }
+
+        assertTrue(analyzer.analyze(first, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertTrue(analyzer.analyze(second, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertTrue(fresh.analyze(second, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        // The swatches of the first scene don't carry over into the second
+        assertEquals(fresh.getResultCount(), analyzer.getResultCount());
+        for (int i = 0; i < fresh.getResultCount(); i++) {
+            assertEquals(fresh.getColor(i), analyzer.getColor(i));
+            assertEquals(fresh.getPopulation(i), analyzer.getPopulation(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setQuantizer_rejectsUnknownAlgorithms() {
+        analyzer.setQuantizer(2);
+    }
+
+    @Test
+    public void perceptualMergeThreshold_mergesNearShades() {
+        // Three shades of one blue, then a yellow that is smaller than the blue but bigger than
+        // any single shade of it
+        int[] colors = {0xFF2060C0, 0xFF2868C0, 0xFF2464C8, 0xFFE0C020};
+        int[] pixels = SyntheticFrames.stripes(WIDTH, HEIGHT, colors,
+                new double[]{0.2, 0.2, 0.2, 0.4}, 0, 1);
+
+        assertTrue(analyzer.analyzeArgb(pixels, WIDTH, HEIGHT));
+        assertEquals(4, analyzer.getResultCount());
+        assertColorNear(colors[3], analyzer.getColor(0));
+
+        analyzer.setPerceptualMergeThreshold(0.05f);
+        assertTrue(analyzer.analyzeArgb(pixels, WIDTH, HEIGHT));
+        assertEquals(2, analyzer.getResultCount());
+        assertColorNear(0xFF2464C4, analyzer.getColor(0));
+        assertEquals(0.6, analyzer.getPopulation(0) / (double) analyzer.getTotalPopulation(), 0.02);
+        assertEquals(WIDTH * HEIGHT, analyzer.getTotalPopulation());
+
+        analyzer.setPerceptualMergeThreshold(0);
+        assertTrue(analyzer.analyzeArgb(pixels, WIDTH, HEIGHT));
+        assertEquals(4, analyzer.getResultCount());
+    }
+
+
+    private double shareOf(int color) {
+        for (int i = 0; i < analyzer.getResultCount(); i++) {
+            if (channelDistance(color, analyzer.getColor(i)) <= 12) {
+                return analyzer.getPopulation(i) / (double) analyzer.getTotalPopulation();
+            }
+        }
+        return 0;
+    }
+
+    private static int channelDistance(int a, int b) {
+        int distance = 0;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            distance = Math.max(distance, Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF)));
+        }
+        return distance;
+    }
+
+    // The YUV round trip and the 5 bit histogram move every channel by a few levels at most
+    static void assertColorNear(int expected, int actual) {
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int e = (expected >> shift) & 0xFF;
+            int a = (actual >> shift) & 0xFF;
+            assertTrue("expected " + Integer.toHexString(expected) + " but was " +
+                    Integer.toHexString(actual), Math.abs(e - a) <= 12);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FrameRecordingTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @Test
+    public void recordedFrames_areReadBackAsTheyWere() throws IOException {
+        File file = folder.newFile("frames.rec");
+        byte[][] frames = new byte[5][];
+        try (FrameRecorder recorder = new FrameRecorder(file, 8)) {
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, i),
+                        WIDTH, HEIGHT);
+                // Recorded from a bigger buffer, like a camera buffer with room to spare
+                byte[] buffer = Arrays.copyOf(frames[i], frames[i].length + 100);
+                assertTrue(recorder.record(buffer, frames[i].length, YuvDecoder.FORMAT_NV21,
+                        WIDTH, HEIGHT, 1000000000L + i * 33000000L));
+            }
+        }
+
+        try (FrameRecordingReader reader = new FrameRecordingReader(file)) {
+            for (int i = 0; i < frames.length; i++) {
+                assertTrue(reader.next());
+                assertEquals(frames[i].length, reader.getLength());
+                assertArrayEquals(frames[i], Arrays.copyOf(reader.data(), reader.getLength()));
+                assertEquals(YuvDecoder.FORMAT_NV21, reader.getFormat());
+                assertEquals(WIDTH, reader.getWidth());
+                assertEquals(HEIGHT, reader.getHeight());
+                assertEquals(1000000000L + i * 33000000L, reader.getTimestampNanos());
+            }
+            assertFalse(reader.next());
+            assertEquals(frames.length, reader.getFrameCount());
+        }
+    }
+
+    @Test
+    public void close_writesEveryQueuedFrame() throws IOException {
+        File file = folder.newFile("frames.rec");
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        FrameRecorder recorder = new FrameRecorder(file, 4);
+        int queued = 0;
+        for (int i = 0; i < 100; i++) {
+            if (recorder.record(frame, frame.length, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, i)) {
+                queued++;
+            }
+        }
+        recorder.close();
+
+        assertEquals(queued, recorder.getRecordedCount());
+        assertEquals(100 - queued, recorder.getDroppedCount());
+        assertEquals(FrameRecorder.FILE_HEADER_BYTES + queued *
+                (4 + FrameRecorder.RECORD_HEADER_BYTES + frame.length), file.length());
+    }
+
+    @Test
+    public void truncatedLastRecord_isIgnored() throws IOException {
+        File file = folder.newFile("frames.rec");
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        try (FrameRecorder recorder = new FrameRecorder(file, 4)) {
+            // Both fit in the slots, neither is dropped
+            recorder.record(frame, frame.length, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 0);
+            recorder.record(frame, frame.length, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 1);
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 10);
+        }
+
+        try (FrameRecordingReader reader = new FrameRecordingReader(file)) {
+            assertTrue(reader.next());
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFiles_areRejected() throws IOException {
+        File file = folder.newFile("frames.nv21");
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.write(new byte[1000]);
+        }
+        new FrameRecordingReader(file).close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void record_afterClose_fails() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(folder.newFile("frames.rec"), 1);
+        recorder.close();
+        recorder.record(new byte[1], 1, YuvDecoder.FORMAT_NV21, 1, 1, 0);
+    }
+}
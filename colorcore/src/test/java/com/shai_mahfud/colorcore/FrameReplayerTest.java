@@ -0,0 +1,129 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameReplayerTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final int FRAMES = 20;
+    private static final long FRAME_INTERVAL_NANOS = 1000000000L / 30;
+
+
+    // Keeps the top color of every analyzed frame and hands the frames back to the replayer
+    private static class ReplayListener implements FrameAnalysisEngine.Listener {
+        final List<Integer> topColors = new ArrayList<>();
+        FrameReplayer replayer;
+        int droppedCount;
+
+        @Override
+        public synchronized void onFrameAnalyzed(FrameAnalyzer analyzer) {
+            topColors.add(analyzer.getColor(0));
+        }
+
+        @Override
+        public synchronized void onFrameReleased(byte[] data, boolean dropped) {
+            if (dropped) {
+                droppedCount++;
+            }
+            replayer.onFrameReleased(data, dropped);
+        }
+
+        @Override
+        public void onPlanesReleased(YuvPlanes planes, boolean dropped) {
+        }
+    }
+
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private FrameAnalysisEngine engine;
+
+
+    @After
+    public void tearDown() {
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+
+    @Test
+    public void asFastAsPossible_analyzesEveryFrameLikeTheLiveAnalyzer() throws Exception {
+        File file = record();
+        ReplayListener listener = new ReplayListener();
+        engine = new FrameAnalysisEngine(new FrameAnalyzer(5), listener);
+        listener.replayer = new FrameReplayer(engine, 3);
+        engine.start();
+
+        int submitted;
+        try (FrameRecordingReader reader = new FrameRecordingReader(file)) {
+            submitted = listener.replayer.replay(reader, FrameReplayer.MODE_AS_FAST_AS_POSSIBLE);
+        }
+
+        assertEquals(FRAMES, submitted);
+        FrameAnalyzer reference = new FrameAnalyzer(5);
+        synchronized (listener) {
+            assertEquals(0, listener.droppedCount);
+            assertEquals(FRAMES, listener.topColors.size());
+            for (int i = 0; i < FRAMES; i++) {
+                byte[] frame = frame(i);
+                assertTrue(reference.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+                assertEquals(reference.getColor(0), (int) listener.topColors.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void recordedTiming_takesAsLongAsTheRecording() throws Exception {
+        File file = record();
+        ReplayListener listener = new ReplayListener();
+        engine = new FrameAnalysisEngine(new FrameAnalyzer(5), listener);
+        listener.replayer = new FrameReplayer(engine, 3);
+        engine.start();
+
+        long start = System.nanoTime();
+        int submitted;
+        try (FrameRecordingReader reader = new FrameRecordingReader(file)) {
+            submitted = listener.replayer.replay(reader, FrameReplayer.MODE_RECORDED_TIMING);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed >= (FRAMES - 1) * FRAME_INTERVAL_NANOS);
+        assertEquals(FRAMES, submitted + listener.replayer.getSkippedCount());
+        synchronized (listener) {
+            assertEquals(submitted, listener.topColors.size() + listener.droppedCount);
+        }
+    }
+
+
+    private File record() throws IOException {
+        File file = folder.newFile("frames.rec");
+        try (FrameRecorder recorder = new FrameRecorder(file, FRAMES)) {
+            for (int i = 0; i < FRAMES; i++) {
+                byte[] frame = frame(i);
+                assertTrue(recorder.record(frame, frame.length, YuvDecoder.FORMAT_NV21, WIDTH,
+                        HEIGHT, 5000000000L + i * FRAME_INTERVAL_NANOS));
+            }
+        }
+        return file;
+    }
+
+    // The stripes trade places from frame to frame, so every frame has its own top color
+    private static byte[] frame(int index) {
+        int[] colors = {0xFF2060C0, 0xFFE0C020, 0xFF30A040};
+        double[] shares = index % 3 == 0 ? new double[]{0.5, 0.3, 0.2} :
+                index % 3 == 1 ? new double[]{0.2, 0.5, 0.3} : new double[]{0.3, 0.2, 0.5};
+        return SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, colors, shares, 4,
+                index), WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,168 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameSchedulerTest {
+    private static class FakeClock implements FrameScheduler.Clock {
+        long nanos = 1000;
+        long cpuNanos;
+
+        @Override
+        public long nanoTime() {
+            return nanos;
+        }
+
+        @Override
+        public long currentThreadCpuTimeNanos() {
+            return cpuNanos;
+        }
+    }
+
+
+    private static final long MILLIS = 1000000L;
+    private static final long CAMERA_FRAME_INTERVAL = 1000 * MILLIS / 30;
+
+
+    private FakeClock clock;
+    private FrameScheduler scheduler;
+
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        scheduler = new FrameScheduler(clock);
+    }
+
+
+    @Test
+    public void asFastAsPossible_isTheDefaultAndAcceptsEveryFrame() {
+        assertEquals(FrameScheduler.Mode.AS_FAST_AS_POSSIBLE, scheduler.getMode());
+        assertEquals(300, runCamera(10));
+    }
+
+    @Test
+    public void fixedRate_holdsTheTargetAverageRate() {
+        scheduler.setFixedRate(10);
+        assertEquals(100, runCamera(10), 1);
+
+        scheduler.setFixedRate(12);
+        assertEquals(120, runCamera(10), 1);
+    }
+
+    @Test
+    public void fixedRate_doesNotBurstAfterAPause() {
+        scheduler.setFixedRate(10);
+        assertTrue(scheduler.shouldAnalyze());
+        clock.nanos += 5000 * MILLIS;
+        assertTrue(scheduler.shouldAnalyze());
+        clock.nanos += CAMERA_FRAME_INTERVAL;
+        assertFalse(scheduler.shouldAnalyze());
+    }
+
+    @Test
+    public void fixedRate_higherThanTheCameraAcceptsEveryFrame() {
+        scheduler.setFixedRate(60);
+        assertEquals(300, runCamera(10));
+    }
+
+    @Test
+    public void adaptive_keepsTheDutyCycle() {
+        scheduler.setAdaptive(0.25);
+        // 20ms of CPU per analysis at a 25% duty cycle allows one analysis every 80ms
+        for (int i = 0; i < 50; i++) {
+            scheduler.onAnalysisFinished(20 * MILLIS, 20 * MILLIS);
+        }
+        assertEquals(80 * MILLIS, scheduler.getIntervalNanos());
+        assertEquals(12.5 * 10, runCamera(10), 2);
+    }
+
+    @Test
+    public void adaptive_neverOutrunsTheAnalysisLatency() {
+        scheduler.setAdaptive(1);
+        // The analysis waits for the CPU half of the time: 40ms of wall time for 20ms of CPU
+        for (int i = 0; i < 50; i++) {
+            scheduler.onAnalysisFinished(40 * MILLIS, 20 * MILLIS);
+        }
+        assertEquals(40 * MILLIS, scheduler.getIntervalNanos());
+    }
+
+    @Test
+    public void adaptive_followsChangesInTheCost() {
+        scheduler.setAdaptive(0.5);
+        assertEquals(100 * MILLIS, scheduler.getIntervalNanos());
+
+        scheduler.onAnalysisFinished(10 * MILLIS, 10 * MILLIS);
+        assertEquals(20 * MILLIS, scheduler.getIntervalNanos());
+
+        for (int i = 0; i < 40; i++) {
+            scheduler.onAnalysisFinished(50 * MILLIS, 50 * MILLIS);
+        }
+        assertEquals(100 * MILLIS, scheduler.getIntervalNanos(), 2 * MILLIS);
+    }
+
+    @Test
+    public void adaptive_boundsTheIntervalOfAVerySlowAnalysis() {
+        scheduler.setAdaptive(0.01);
+        scheduler.onAnalysisFinished(1000 * MILLIS, 1000 * MILLIS);
+        assertEquals(2000 * MILLIS, scheduler.getIntervalNanos());
+    }
+
+    @Test
+    public void engine_reportsTheCostOfEveryAnalysis() throws Exception {
+        final Object done = new Object();
+        FrameAnalysisEngine engine = new FrameAnalysisEngine(new FrameAnalyzer(5) {
+            @Override
+            public boolean analyze(byte[] data, int format, int width, int height) {
+                clock.nanos += 30 * MILLIS;
+                clock.cpuNanos += 12 * MILLIS;
+                return true;
+            }
+        }, new FrameAnalysisEngine.Listener() {
+            @Override
+            public void onFrameAnalyzed(FrameAnalyzer analyzer) {
+            }
+
+            @Override
+            public void onFrameReleased(byte[] data, boolean dropped) {
+                synchronized (done) {
+                    done.notifyAll();
+                }
+            }
+
+            @Override
+            public void onPlanesReleased(YuvPlanes planes, boolean dropped) {
+            }
+        });
+        engine.setFrameScheduler(scheduler);
+        engine.start();
+        synchronized (done) {
+            engine.submit(new byte[16], YuvDecoder.FORMAT_NV21, 4, 2);
+            done.wait(5000);
+        }
+        engine.stop();
+
+        assertEquals(30 * MILLIS, scheduler.getAverageWallNanos());
+        assertEquals(12 * MILLIS, scheduler.getAverageCpuNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDutyCycle_isRejected() {
+        scheduler.setAdaptive(1.5);
+    }
+
+
+    // Delivers camera frames at 30 fps for the given time and returns how many were accepted
+    private int runCamera(int seconds) {
+        int accepted = 0;
+        for (int i = 0; i < seconds * 30; i++) {
+            if (scheduler.shouldAnalyze()) {
+                accepted++;
+            }
+            clock.nanos += CAMERA_FRAME_INTERVAL;
+        }
+        return accepted;
+    }
+}
@@ -0,0 +1,181 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GridColorAnalyzerTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final int[] QUADRANT_COLORS = {0xFFC02020, 0xFF20A040, 0xFF2040C0, 0xFFE0D040};
+
+
+    @Test
+    public void quadrants_getTheirOwnColor() {
+        GridColorAnalyzer grid = new GridColorAnalyzer(2, 2);
+        byte[] frame = SyntheticFrames.toNv21(quadrants(), WIDTH, HEIGHT);
+
+        grid.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, 1);
+
+        assertEquals(4, grid.getTileCount());
+        for (int tile = 0; tile < 4; tile++) {
+            FrameAnalyzerTest.assertColorNear(QUADRANT_COLORS[tile], grid.getColor(tile));
+            assertEquals(WIDTH * HEIGHT / 4, grid.getSampleCount(tile));
+            assertEquals(WIDTH * HEIGHT / 4, grid.getDominantCount(tile));
+        }
+    }
+
+    @Test
+    public void largestShareOfATile_isItsColor() {
+        // The left tile is 70% the first color, the right one 70% the second
+        int[] colors = {0xFFC02020, 0xFF2040C0};
+        int[] pixels = SyntheticFrames.stripes(WIDTH, HEIGHT, colors, new double[]{0.35, 0.65}, 3,
+                1);
+        int[] mirrored = new int[pixels.length];
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH / 2; col++) {
+                mirrored[row * WIDTH + col] = pixels[row * WIDTH + col];
+                mirrored[row * WIDTH + WIDTH - 1 - col] = pixels[row * WIDTH + WIDTH / 2 - 1 - col];
+            }
+        }
+        GridColorAnalyzer grid = new GridColorAnalyzer(2, 1);
+
+        grid.analyze(SyntheticFrames.toNv21(pixels, WIDTH, HEIGHT), YuvDecoder.FORMAT_NV21, WIDTH,
+                HEIGHT, 0, 0, WIDTH, HEIGHT, 1);
+        FrameAnalyzerTest.assertColorNear(colors[0], grid.getColor(0));
+        FrameAnalyzerTest.assertColorNear(colors[1], grid.getColor(1));
+        assertTrue(grid.getDominantCount(1) >= grid.getSampleCount(1) / 2);
+
+        grid.analyze(SyntheticFrames.toNv21(mirrored, WIDTH, HEIGHT), YuvDecoder.FORMAT_NV21,
+                WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, 1);
+        FrameAnalyzerTest.assertColorNear(colors[0], grid.getColor(0));
+        FrameAnalyzerTest.assertColorNear(colors[0], grid.getColor(1));
+    }
+
+    @Test
+    public void regionAndStride_spreadTheSamplesOverTheTiles() {
+        GridColorAnalyzer grid = new GridColorAnalyzer(4, 3);
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 1),
+                WIDTH, HEIGHT);
+
+        grid.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 10, 6, 130, 96, 3);
+
+        int total = 0;
+        for (int tile = 0; tile < grid.getTileCount(); tile++) {
+            assertTrue(grid.getSampleCount(tile) > 0);
+            assertTrue(grid.getDominantCount(tile) <= grid.getSampleCount(tile));
+            total += grid.getSampleCount(tile);
+        }
+        assertEquals(40 * 30, total);
+    }
+
+    @Test
+    public void planes_giveTheSameColorsAsTheByteArray() {
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(WIDTH, HEIGHT, 2),
+                WIDTH, HEIGHT);
+        GridColorAnalyzer fromBytes = new GridColorAnalyzer(8, 8);
+        GridColorAnalyzer fromPlanes = new GridColorAnalyzer(8, 8);
+
+        fromBytes.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, 2);
+        fromPlanes.analyze(SyntheticFrames.toPlanes(frame, WIDTH, HEIGHT, 12, false), 0, 0, WIDTH,
+                HEIGHT, 2);
+
+        int[] expected = new int[64];
+        int[] actual = new int[64];
+        fromBytes.copyColors(expected);
+        fromPlanes.copyColors(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void sampledFrame_getsTheTilesOfTheRawFrame() {
+        AnalysisGraph graph = new AnalysisGraph(0);
+        final GridColorAnalyzer fromSamples = new GridColorAnalyzer(2, 2);
+        final SampledFrame[] seen = new SampledFrame[1];
+        graph.register(new AnalysisGraph.Analysis() {
+            @Override
+            public void analyze(SampledFrame frame) {
+                seen[0] = frame;
+                fromSamples.analyze(frame);
+            }
+        });
+        graph.setRegionOfInterest(0.25f, 0.3f, 1, 1);
+        graph.setSampleStride(3);
+        byte[] frame = SyntheticFrames.toNv21(quadrants(), WIDTH, HEIGHT);
+        GridColorAnalyzer fromBytes = new GridColorAnalyzer(2, 2);
+
+        graph.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+        graph.shutdown();
+        fromBytes.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, seen[0].getLeft(),
+                seen[0].getTop(), seen[0].getRight(), seen[0].getBottom(), 3);
+
+        for (int tile = 0; tile < 4; tile++) {
+            assertEquals(fromBytes.getSampleCount(tile), fromSamples.getSampleCount(tile));
+            FrameAnalyzerTest.assertColorNear(fromBytes.getColor(tile), fromSamples.getColor(tile));
+        }
+    }
+
+    @Test
+    public void saturatedSamples_stayInRange() {
+        // Pure blue and red have the largest U and V, half a step past 255 before rounding
+        int[] colors = {0xFF0000FF, 0xFFFF0000, 0xFFFFFFFF, 0xFF000000};
+        SampledFrame frame = new SampledFrame();
+        frame.reset(2, 2, 0, 0, 2, 2, 1, 1);
+        System.arraycopy(colors, 0, frame.getPixels(), 0, colors.length);
+        GridColorAnalyzer grid = new GridColorAnalyzer(2, 2);
+
+        grid.analyze(frame);
+
+        for (int tile = 0; tile < 4; tile++) {
+            assertEquals(1, grid.getDominantCount(tile));
+            FrameAnalyzerTest.assertColorNear(colors[tile], grid.getColor(tile));
+        }
+    }
+
+    @Test
+    public void steadyState_doesNotAllocate() {
+        AllocationCounter allocationCounter = new AllocationCounter();
+        GridColorAnalyzer grid = new GridColorAnalyzer(16, 16);
+        byte[] frame = SyntheticFrames.toNv21(quadrants(), WIDTH, HEIGHT);
+        // Long enough for the JIT to be done compiling the loops
+        for (int i = 0; i < 100; i++) {
+            grid.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, 1);
+        }
+
+        long before = allocationCounter.allocatedBytes();
+        for (int i = 0; i < 20; i++) {
+            grid.analyze(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, 1);
+        }
+        assertEquals(0, allocationCounter.allocatedBytes() - before);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void gridLargerThanTheMaximum_isRejected() {
+        new GridColorAnalyzer(GridColorAnalyzer.MAX_GRID_SIZE + 1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void regionWithTooManySamples_isRejected() {
+        // Past 4K, so the sums of a tile could overflow if it were all one color
+        int width = 4096;
+        int height = 2304;
+        byte[] frame = new byte[width * height * 3 / 2];
+        GridColorAnalyzer grid = new GridColorAnalyzer(1, 1);
+        grid.analyze(frame, YuvDecoder.FORMAT_NV21, width, height, 0, 0, width, height, 2);
+        assertEquals(width / 2 * height / 2, grid.getSampleCount(0));
+
+        grid.analyze(frame, YuvDecoder.FORMAT_NV21, width, height, 0, 0, width, height, 1);
+    }
+
+
+    private static int[] quadrants() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int quadrant = (row < HEIGHT / 2 ? 0 : 2) + (col < WIDTH / 2 ? 0 : 1);
+                pixels[row * WIDTH + col] = QUADRANT_COLORS[quadrant];
+            }
+        }
+        return pixels;
+    }
+}
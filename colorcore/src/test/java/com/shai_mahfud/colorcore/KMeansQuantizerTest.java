@@ -0,0 +1,206 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KMeansQuantizerTest {
+    private static final int MAX_COLORS = 16;
+
+
+    private final KMeansQuantizer quantizer = new KMeansQuantizer();
+    private final int[] colors = new int[MAX_COLORS];
+    private final int[] populations = new int[MAX_COLORS];
+
+
+    @Test
+    public void emptyInput_givesNoColors() {
+        assertEquals(0, quantizer.quantize(new int[0], 0, MAX_COLORS, colors, populations));
+    }
+
+    @Test
+    public void fewColors_areReturnedAsIs() {
+        int[] pixels = new int[100];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i < 70 ? 0xFFFF0000 : (i < 90 ? 0xFF00FF00 : 0xFF0000FF);
+        }
+
+        int count = quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+
+        assertEquals(3, count);
+        assertEquals(70, populationOf(0xFFFF0000, count));
+        assertEquals(20, populationOf(0xFF00FF00, count));
+        assertEquals(10, populationOf(0xFF0000FF, count));
+    }
+
+    @Test
+    public void manyColors_areReducedAndKeepTheirPopulation() {
+        int[] pixels = randomPixels(10000, 1);
+
+        int count = quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+
+        assertEquals(MAX_COLORS, count);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            assertTrue(populations[i] > 0);
+            total += populations[i];
+        }
+        assertEquals(pixels.length, total);
+    }
+
+    @Test
+    public void separateClusters_areFoundExactly() {
+        int[] bases = {0xFF2060C0, 0xFFE0C020, 0xFF30A040, 0xFFD02060};
+        int[] pixels = SyntheticFrames.stripes(200, 100, bases, new double[]{0.4, 0.3, 0.2, 0.1},
+                10, 5);
+
+        int count = quantizer.quantize(pixels, pixels.length, bases.length, colors, populations);
+
+        assertEquals(bases.length, count);
+        for (int base : bases) {
+            int nearest = 0;
+            for (int i = 1; i < count; i++) {
+                if (distance(base, colors[i]) < distance(base, colors[nearest])) {
+                    nearest = i;
+                }
+            }
+            assertTrue(distance(base, colors[nearest]) <= 3 * 12 * 12);
+        }
+    }
+
+    @Test
+    public void error_isNotWorseThanMedianCut() {
+        int[] pixels = SyntheticFrames.stripes(200, 100, new int[]{0xFF2060C0, 0xFFE0C020,
+                0xFF30A040, 0xFF202020, 0xFFF0F0F0}, new double[]{0.3, 0.3, 0.2, 0.1, 0.1}, 40, 6);
+        int count = quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+        long kMeansError = squaredError(pixels, colors, count);
+
+        count = new MedianCutQuantizer().quantize(pixels, pixels.length, MAX_COLORS, colors,
+                populations);
+        long medianCutError = squaredError(pixels, colors, count);
+
+        assertTrue(kMeansError + " > " + medianCutError, kMeansError <= medianCutError);
+    }
+
+    @Test
+    public void warmStart_keepsTheSwatchesOfAStaticScene() {
+        int[] pixels = SyntheticFrames.stripes(200, 100, new int[]{0xFF2060C0, 0xFFE0C020,
+                0xFF30A040}, new double[]{0.5, 0.3, 0.2}, 30, 2);
+        quantizer.setMaxIterations(1);
+        for (int i = 0; i < 10; i++) {
+            quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+        }
+        int[] settledColors = colors.clone();
+        int[] settledPopulations = populations.clone();
+
+        // Another frame of the same scene moves nothing
+        quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+
+        assertArrayEquals(settledColors, colors);
+        assertArrayEquals(settledPopulations, populations);
+    }
+
+    @Test
+    public void sameInput_givesSameOutput() {
+        int[] pixels = randomPixels(5000, 3);
+        int count = quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+        int[] firstColors = colors.clone();
+        int[] firstPopulations = populations.clone();
+
+        assertEquals(count, new KMeansQuantizer().quantize(pixels, pixels.length, MAX_COLORS,
+                colors, populations));
+        assertArrayEquals(firstColors, colors);
+        assertArrayEquals(firstPopulations, populations);
+
+        // So does starting over
+        quantizer.reset();
+        assertEquals(count, quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors,
+                populations));
+        assertArrayEquals(firstColors, colors);
+    }
+
+    @Test
+    public void newScene_reseedsTheCentroidsItLeavesEmpty() {
+        // Dark colors, then only light ones: warm started, every centroid but the lightest
+        // would be left without colors
+        int[] dark = randomPixels(5000, 5);
+        int[] light = randomPixels(5000, 6);
+        for (int i = 0; i < dark.length; i++) {
+            dark[i] &= 0xFF3F3F3F;
+            light[i] |= 0xFFC0C0C0;
+        }
+        quantizer.setMaxIterations(1);
+        quantizer.quantize(dark, dark.length, MAX_COLORS, colors, populations);
+
+        int count = quantizer.quantize(light, light.length, MAX_COLORS, colors, populations);
+
+        assertEquals(MAX_COLORS, count);
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            assertTrue(Integer.toHexString(colors[i]), (colors[i] & 0xC0C0C0) == 0xC0C0C0);
+            total += populations[i];
+        }
+        assertEquals(light.length, total);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMaxIterations_rejectsZero() {
+        quantizer.setMaxIterations(0);
+    }
+
+    @Test
+    public void steadyState_doesNotAllocate() {
+        AllocationCounter allocationCounter = new AllocationCounter();
+        int[] pixels = randomPixels(20000, 4);
+        for (int i = 0; i < 20; i++) {
+            quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+        }
+
+        long before = allocationCounter.allocatedBytes();
+        for (int i = 0; i < 20; i++) {
+            quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+        }
+        assertEquals(0, allocationCounter.allocatedBytes() - before);
+    }
+
+
+    // The sum over the pixels of the squared distance to the nearest swatch
+    static long squaredError(int[] pixels, int[] swatches, int swatchCount) {
+        long error = 0;
+        for (int pixel : pixels) {
+            int nearest = Integer.MAX_VALUE;
+            for (int i = 0; i < swatchCount; i++) {
+                nearest = Math.min(nearest, distance(pixel, swatches[i]));
+            }
+            error += nearest;
+        }
+        return error;
+    }
+
+    private static int distance(int color1, int color2) {
+        int red = ((color1 >> 16) & 0xFF) - ((color2 >> 16) & 0xFF);
+        int green = ((color1 >> 8) & 0xFF) - ((color2 >> 8) & 0xFF);
+        int blue = (color1 & 0xFF) - (color2 & 0xFF);
+        return red * red + green * green + blue * blue;
+    }
+
+    private int populationOf(int color, int count) {
+        for (int i = 0; i < count; i++) {
+            if (colors[i] == color) {
+                return populations[i];
+            }
+        }
+        return 0;
+    }
+
+    private static int[] randomPixels(int count, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+}
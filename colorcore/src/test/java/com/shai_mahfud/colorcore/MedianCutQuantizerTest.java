@@ -0,0 +1,123 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MedianCutQuantizerTest {
+    private static final int MAX_COLORS = 16;
+
+
+    private final MedianCutQuantizer quantizer = new MedianCutQuantizer();
+    private final int[] colors = new int[MAX_COLORS];
+    private final int[] populations = new int[MAX_COLORS];
+
+
+    @Test
+    public void emptyInput_givesNoColors() {
+        assertEquals(0, quantizer.quantize(new int[0], 0, MAX_COLORS, colors, populations));
+    }
+
+    @Test
+    public void fewColors_areReturnedAsIs() {
+        int[] pixels = new int[100];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i < 70 ? 0xFFFF0000 : (i < 90 ? 0xFF00FF00 : 0xFF0000FF);
+        }
+
+        int count = quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+
+        assertEquals(3, count);
+        assertEquals(70, populationOf(0xFFFF0000, count));
+        assertEquals(20, populationOf(0xFF00FF00, count));
+        assertEquals(10, populationOf(0xFF0000FF, count));
+    }
+
+    @Test
+    public void manyColors_areReducedAndKeepTheirPopulation() {
+        int[] pixels = randomPixels(10000, 1);
+
+        int count = quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+
+        assertEquals(MAX_COLORS, count);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            assertTrue(populations[i] > 0);
+            total += populations[i];
+        }
+        assertEquals(pixels.length, total);
+    }
+
+    @Test
+    public void dominantShades_endUpInTheLargestSwatch() {
+        Random random = new Random(2);
+        int[] pixels = new int[20000];
+        for (int i = 0; i < pixels.length; i++) {
+            // 75% of the frame is a noisy orange, the rest is random
+            pixels[i] = i % 4 != 0 ? 0xFFE08020 + random.nextInt(8) : 0xFF000000 |
+                    random.nextInt(0x1000000);
+        }
+
+        int count = quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+
+        int largest = 0;
+        for (int i = 1; i < count; i++) {
+            if (populations[i] > populations[largest]) {
+                largest = i;
+            }
+        }
+        assertTrue(populations[largest] >= pixels.length * 3 / 4);
+        assertEquals(0xE0, (colors[largest] >> 16) & 0xF8);
+        assertEquals(0x80, (colors[largest] >> 8) & 0xF8);
+        assertEquals(0x20, colors[largest] & 0xF8);
+    }
+
+    @Test
+    public void sameInput_givesSameOutput() {
+        int[] pixels = randomPixels(5000, 3);
+        int count = quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+        int[] firstColors = colors.clone();
+        int[] firstPopulations = populations.clone();
+
+        assertEquals(count, new MedianCutQuantizer().quantize(pixels, pixels.length, MAX_COLORS,
+                colors, populations));
+        assertArrayEquals(firstColors, colors);
+        assertArrayEquals(firstPopulations, populations);
+    }
+
+    @Test
+    public void steadyState_doesNotAllocate() {
+        AllocationCounter allocationCounter = new AllocationCounter();
+        int[] pixels = randomPixels(20000, 4);
+        for (int i = 0; i < 20; i++) {
+            quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+        }
+
+        long before = allocationCounter.allocatedBytes();
+        for (int i = 0; i < 20; i++) {
+            quantizer.quantize(pixels, pixels.length, MAX_COLORS, colors, populations);
+        }
+        assertEquals(0, allocationCounter.allocatedBytes() - before);
+    }
+
+
+    private int populationOf(int color, int count) {
+        for (int i = 0; i < count; i++) {
+            if (colors[i] == color) {
+                return populations[i];
+            }
+        }
+        return 0;
+    }
+
+    private static int[] randomPixels(int count, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,68 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OkLabTest {
+    private static final float EPSILON = 0.001f;
+
+
+    private final float[] lab = new float[6];
+
+
+    @Test
+    public void fromArgb_matchesTheReferenceValues() {
+        OkLab.fromArgb(0xFFFFFFFF, lab, 0);
+        assertLab(1, 0, 0);
+
+        OkLab.fromArgb(0xFF000000, lab, 0);
+        assertLab(0, 0, 0);
+
+        OkLab.fromArgb(0xFFFF0000, lab, 0);
+        assertLab(0.62796f, 0.22486f, 0.12585f);
+
+        OkLab.fromArgb(0xFF00FF00, lab, 0);
+        assertLab(0.86644f, -0.23389f, 0.17950f);
+
+        OkLab.fromArgb(0xFF0000FF, lab, 0);
+        assertLab(0.45201f, -0.03246f, -0.31153f);
+    }
+
+    @Test
+    public void fromArgb_ignoresAlpha() {
+        OkLab.fromArgb(0xFF3474B4, lab, 0);
+        OkLab.fromArgb(0x003474B4, lab, 3);
+
+        assertEquals(0, OkLab.distanceSquared(lab, 0, lab, 3), 0);
+    }
+
+    @Test
+    public void fromBin_convertsTheColorOfTheBin() {
+        int[] colors = {0xFF000000, 0xFFFFFFFF, 0xFF3474B4, 0xFFD44434};
+        for (int color : colors) {
+            int bin = ColorHistogram.toBin(color);
+            OkLab.fromBin(bin, lab, 0);
+            OkLab.fromArgb(ColorHistogram.toArgb(ColorHistogram.redOf(bin),
+                    ColorHistogram.greenOf(bin), ColorHistogram.blueOf(bin)), lab, 3);
+
+            assertEquals(0, OkLab.distanceSquared(lab, 0, lab, 3), 0);
+        }
+    }
+
+    @Test
+    public void distance_separatesVisibleDifferencesOnly() {
+        OkLab.fromArgb(0xFF3474B4, lab, 0);
+        OkLab.fromArgb(0xFF3575B4, lab, 3);
+        assertTrue(Math.sqrt(OkLab.distanceSquared(lab, 0, lab, 3)) < 0.02);
+
+        OkLab.fromArgb(0xFFD44434, lab, 3);
+        assertTrue(Math.sqrt(OkLab.distanceSquared(lab, 0, lab, 3)) > 0.2);
+    }
+
+    private void assertLab(float l, float a, float b) {
+        assertEquals(l, lab[0], EPSILON);
+        assertEquals(a, lab[1], EPSILON);
+        assertEquals(b, lab[2], EPSILON);
+    }
+}
@@ -0,0 +1,135 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParallelHistogramBuilderTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int[] FORMATS = {YuvDecoder.FORMAT_NV21, YuvDecoder.FORMAT_NV16,
+            YuvDecoder.FORMAT_YUY2};
+
+
+    private final ParallelHistogramBuilder builder = new ParallelHistogramBuilder(4);
+
+
+    @After
+    public void tearDown() {
+        builder.shutdown();
+    }
+
+    @Test
+    public void counts_matchASingleThread() {
+        for (int format : FORMATS) {
+            byte[] frame = randomFrame(format, WIDTH, HEIGHT, format);
+            assertSameCounts(frame, format, 0, 0, WIDTH, HEIGHT, 1);
+            assertSameCounts(frame, format, 0, 0, WIDTH, HEIGHT, 3);
+            assertSameCounts(frame, format, 31, 17, 250, 199, 4);
+        }
+    }
+
+    @Test
+    public void fewerRowsThanBands_stillWorks() {
+        byte[] frame = randomFrame(YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 1);
+        assertSameCounts(frame, YuvDecoder.FORMAT_NV21, 0, 100, WIDTH, 103, 1);
+        assertSameCounts(frame, YuvDecoder.FORMAT_NV21, 10, 0, 11, HEIGHT, 100);
+    }
+
+    @Test
+    public void weight_multipliesTheCounts() {
+        byte[] frame = randomFrame(YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 2);
+        ColorHistogram histogram = new ColorHistogram();
+
+        int count = builder.build(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 0, 0, WIDTH,
+                HEIGHT, 2, histogram, 16);
+
+        assertEquals(WIDTH / 2 * HEIGHT / 2, count);
+        assertEquals(16L * count, histogram.getTotalCount());
+    }
+
+    @Test
+    public void analyzer_findsTheSameColorsWithThreads() {
+        int width = 1280;
+        int height = 720;
+        byte[] frame = SyntheticFrames.toNv21(SyntheticFrames.randomPixels(width, height, 3),
+                width, height);
+        FrameAnalyzer single = new FrameAnalyzer(FrameAnalyzer.NUM_OF_COLORS);
+        FrameAnalyzer parallel = new FrameAnalyzer(FrameAnalyzer.NUM_OF_COLORS);
+        parallel.setHistogramThreads(4);
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                assertTrue(single.analyze(frame, YuvDecoder.FORMAT_NV21, width, height));
+                assertTrue(parallel.analyze(frame, YuvDecoder.FORMAT_NV21, width, height));
+                assertEquals(single.getResultCount(), parallel.getResultCount());
+                assertEquals(single.getTotalPopulation(), parallel.getTotalPopulation());
+                for (int j = 0; j < single.getResultCount(); j++) {
+                    assertEquals(single.getColor(j), parallel.getColor(j));
+                    assertEquals(single.getPopulation(j), parallel.getPopulation(j));
+                }
+                // The second round with a temporal window
+                single.setTemporalWindow(4);
+                parallel.setTemporalWindow(4);
+            }
+
+            // Released threads start again with the next frame
+            parallel.release();
+            assertTrue(single.analyze(frame, YuvDecoder.FORMAT_NV21, width, height));
+            assertTrue(parallel.analyze(frame, YuvDecoder.FORMAT_NV21, width, height));
+            assertEquals(single.getTotalPopulation(), parallel.getTotalPopulation());
+        } finally {
+            parallel.release();
+        }
+    }
+
+    @Test
+    public void planes_countLikeTheByteArray() {
+        byte[] frame = randomFrame(YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 4);
+        YuvPlanes planes = SyntheticFrames.toPlanes(frame, WIDTH, HEIGHT, 16, true);
+        ColorHistogram expected = new ColorHistogram();
+        builder.build(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 31, 17, 250, 199, 3, expected,
+                1);
+
+        ColorHistogram actual = new ColorHistogram();
+        builder.build(planes, 31, 17, 250, 199, 3, actual, 1);
+        for (int bin = 0; bin < ColorHistogram.BIN_COUNT; bin++) {
+            assertEquals(expected.getCount(bin), actual.getCount(bin));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortFrame_isRejected() {
+        builder.build(new byte[100], YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT,
+                1, new ColorHistogram(), 1);
+    }
+
+
+    private void assertSameCounts(byte[] frame, int format, int left, int top, int right,
+                                  int bottom, int stride) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        int expectedCount = YuvDecoder.sampleToArgb(frame, format, WIDTH, HEIGHT, left, top,
+                right, bottom, stride, pixels);
+        ColorHistogram expected = new ColorHistogram();
+        expected.addAll(pixels, 0, expectedCount);
+
+        ColorHistogram actual = new ColorHistogram();
+        assertEquals(expectedCount, builder.build(frame, format, WIDTH, HEIGHT, left, top, right,
+                bottom, stride, actual, 1));
+        assertEquals(expected.getTotalCount(), actual.getTotalCount());
+        assertEquals(expected.getActiveBinCount(), actual.getActiveBinCount());
+        for (int bin = 0; bin < ColorHistogram.BIN_COUNT; bin++) {
+            assertEquals(expected.getCount(bin), actual.getCount(bin));
+        }
+    }
+
+    // Any bytes make a valid frame, in every format
+    static byte[] randomFrame(int format, int width, int height, long seed) {
+        byte[] frame = new byte[YuvDecoder.getFrameSize(format, width, height)];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+}
@@ -0,0 +1,88 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PerceptualClustererTest {
+    private static final float DELTA_E = 0.05f;
+
+
+    private final PerceptualClusterer clusterer = new PerceptualClusterer();
+    private final int[] outColors = new int[8];
+    private final int[] outPopulations = new int[8];
+
+
+    @Test
+    public void nearShades_areMerged() {
+        int[] colors = {0xFF3070B0, 0xFFD44434, 0xFF3474B4, 0xFF3272B2};
+        int[] populations = {300, 200, 500, 200};
+
+        int count = clusterer.cluster(colors, populations, colors.length, DELTA_E, outColors,
+                outPopulations);
+
+        assertEquals(2, count);
+        // The blues are averaged by population: (0x30 * 300 + 0x34 * 500 + 0x32 * 200) / 1000
+        assertEquals(0xFF3272B2, outColors[0]);
+        assertEquals(1000, outPopulations[0]);
+        assertEquals(0xFFD44434, outColors[1]);
+        assertEquals(200, outPopulations[1]);
+    }
+
+    @Test
+    public void distinctColors_areKept() {
+        int[] colors = {0xFF2060C0, 0xFFE0C020, 0xFF30A040, 0xFF000000, 0xFFFFFFFF};
+        int[] populations = {5, 4, 3, 2, 1};
+
+        int count = clusterer.cluster(colors, populations, colors.length, DELTA_E, outColors,
+                outPopulations);
+
+        assertEquals(colors.length, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(colors[i], outColors[i]);
+            assertEquals(populations[i], outPopulations[i]);
+        }
+    }
+
+    @Test
+    public void colorsOfTheSameBin_areComparedByTheirOwnValues() {
+        // Both fall in the first histogram bin, yet they are 0.13 apart
+        int[] colors = {0xFF000000, 0xFF070707};
+        int[] populations = {2, 1};
+
+        int count = clusterer.cluster(colors, populations, colors.length, DELTA_E, outColors,
+                outPopulations);
+
+        assertEquals(ColorHistogram.toBin(colors[0]), ColorHistogram.toBin(colors[1]));
+        assertEquals(2, count);
+        assertEquals(0xFF000000, outColors[0]);
+        assertEquals(0xFF070707, outColors[1]);
+    }
+
+    @Test
+    public void zeroDeltaE_onlyMergesEqualColors() {
+        int[] colors = {0xFF3474B4, 0xFF3575B4, 0xFF3474B4};
+        int[] populations = {1, 3, 1};
+
+        int count = clusterer.cluster(colors, populations, colors.length, 0, outColors,
+                outPopulations);
+
+        assertEquals(3, count);
+        assertEquals(0xFF3575B4, outColors[0]);
+    }
+
+    @Test
+    public void clustersAreLedByTheMostPopulatedColor() {
+        // Each end is within reach of the middle grey but not of the other end
+        int[] colors = {ColorHistogram.toArgb(12, 12, 12), ColorHistogram.toArgb(14, 14, 14),
+                ColorHistogram.toArgb(16, 16, 16)};
+        int[] populations = {10, 100, 10};
+
+        int count = clusterer.cluster(colors, populations, colors.length, 0.06f, outColors,
+                outPopulations);
+
+        assertEquals(1, count);
+        assertEquals(colors[1], outColors[0]);
+        assertEquals(120, outPopulations[0]);
+    }
+}
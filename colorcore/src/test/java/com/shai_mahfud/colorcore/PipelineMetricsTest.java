@@ -0,0 +1,159 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PipelineMetricsTest {
+    private static final long MICROSECOND = 1000;
+    private static final long MILLISECOND = 1000000;
+
+
+    private final PipelineMetrics metrics = new PipelineMetrics();
+
+
+    @Test
+    public void buckets_coverEveryValueInOrder() {
+        assertEquals(0, PipelineMetrics.bucketOf(0));
+        assertEquals(3, PipelineMetrics.bucketOf(3));
+        for (int bucket = 0; bucket < PipelineMetrics.BUCKET_COUNT - 1; bucket++) {
+            long lower = PipelineMetrics.lowerBoundOf(bucket);
+            long upper = PipelineMetrics.lowerBoundOf(bucket + 1);
+            assertTrue(upper > lower);
+            assertEquals(bucket, PipelineMetrics.bucketOf(lower));
+            assertEquals(bucket, PipelineMetrics.bucketOf(upper - 1));
+            // Four buckets per power of two: no bucket is wider than a quarter of its start
+            assertTrue(lower < 4 || (upper - lower) * 4 <= lower);
+        }
+        assertEquals(PipelineMetrics.BUCKET_COUNT - 1, PipelineMetrics.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_areWithinABucketOfTheSamples() {
+        // 1 to 100 ms, evenly
+        for (int i = 1; i <= 100; i++) {
+            metrics.recordLatency(PipelineMetrics.STAGE_DECODE, i * MILLISECOND);
+        }
+
+        assertEquals(100, metrics.getSampleCount(PipelineMetrics.STAGE_DECODE));
+        assertWithinBucket(50 * MILLISECOND,
+                metrics.getPercentileNanos(PipelineMetrics.STAGE_DECODE, 0.5));
+        assertWithinBucket(95 * MILLISECOND,
+                metrics.getPercentileNanos(PipelineMetrics.STAGE_DECODE, 0.95));
+        assertWithinBucket(99 * MILLISECOND,
+                metrics.getPercentileNanos(PipelineMetrics.STAGE_DECODE, 0.99));
+        assertEquals(100 * MILLISECOND,
+                metrics.getPercentileNanos(PipelineMetrics.STAGE_DECODE, 1));
+        assertEquals(100 * MILLISECOND, metrics.getMaxNanos(PipelineMetrics.STAGE_DECODE));
+        assertEquals(50500 * MICROSECOND, metrics.getMeanNanos(PipelineMetrics.STAGE_DECODE));
+        // The other stages are separate
+        assertEquals(0, metrics.getPercentileNanos(PipelineMetrics.STAGE_QUANTIZE, 0.5));
+    }
+
+    @Test
+    public void tail_showsInTheHighPercentilesOnly() {
+        for (int i = 0; i < 980; i++) {
+            metrics.recordLatency(PipelineMetrics.STAGE_ANALYSIS, 2 * MILLISECOND);
+        }
+        for (int i = 0; i < 20; i++) {
+            metrics.recordLatency(PipelineMetrics.STAGE_ANALYSIS, 40 * MILLISECOND);
+        }
+
+        assertWithinBucket(2 * MILLISECOND,
+                metrics.getPercentileNanos(PipelineMetrics.STAGE_ANALYSIS, 0.5));
+        assertWithinBucket(2 * MILLISECOND,
+                metrics.getPercentileNanos(PipelineMetrics.STAGE_ANALYSIS, 0.95));
+        assertWithinBucket(40 * MILLISECOND,
+                metrics.getPercentileNanos(PipelineMetrics.STAGE_ANALYSIS, 0.99));
+    }
+
+    @Test
+    public void counters_countFromSeveralThreads() throws Exception {
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        metrics.increment(PipelineMetrics.COUNTER_FRAMES_RECEIVED);
+                        metrics.recordLatency(PipelineMetrics.STAGE_QUEUE, j * MICROSECOND);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, metrics.getCount(PipelineMetrics.COUNTER_FRAMES_RECEIVED));
+        assertEquals(40000, metrics.getSampleCount(PipelineMetrics.STAGE_QUEUE));
+        assertEquals(9999 * MICROSECOND, metrics.getMaxNanos(PipelineMetrics.STAGE_QUEUE));
+        assertEquals(0, metrics.getCount(PipelineMetrics.COUNTER_FRAMES_DROPPED));
+    }
+
+    @Test
+    public void reset_forgetsEverything() {
+        metrics.increment(PipelineMetrics.COUNTER_FRAMES_SKIPPED);
+        metrics.recordLatency(PipelineMetrics.STAGE_DELIVERY, MILLISECOND);
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getCount(PipelineMetrics.COUNTER_FRAMES_SKIPPED));
+        assertEquals(0, metrics.getSampleCount(PipelineMetrics.STAGE_DELIVERY));
+        assertEquals(0, metrics.getPercentileNanos(PipelineMetrics.STAGE_DELIVERY, 0.99));
+        assertEquals(0, metrics.getMaxNanos(PipelineMetrics.STAGE_DELIVERY));
+    }
+
+    @Test
+    public void appendSummary_listsCountersAndStages() {
+        metrics.increment(PipelineMetrics.COUNTER_FRAMES_RECEIVED);
+        metrics.increment(PipelineMetrics.COUNTER_FRAMES_RECEIVED);
+        metrics.increment(PipelineMetrics.COUNTER_FRAMES_ANALYZED);
+        metrics.recordLatency(PipelineMetrics.STAGE_DECODE, 1234 * MICROSECOND);
+        StringBuilder summary = new StringBuilder();
+
+        metrics.appendSummary(summary);
+
+        assertEquals("2 received\n0 skipped\n0 dropped\n1 analyzed\n0 unchanged\n0 shown\n" +
+                "0 failed\n" +
+                "ms p50/p95/p99/max\n" +
+                "queue 0.00/0.00/0.00/0.00\n" +
+                "decode 1.23/1.23/1.23/1.23\n" +
+                "quantize 0.00/0.00/0.00/0.00\n" +
+                "analysis 0.00/0.00/0.00/0.00\n" +
+                "delivery 0.00/0.00/0.00/0.00\n" +
+                "cold start 0.00/0.00/0.00/0.00", summary.toString());
+    }
+
+    @Test
+    public void recording_doesNotAllocate() {
+        AllocationCounter allocationCounter = new AllocationCounter();
+        StringBuilder summary = new StringBuilder(1024);
+        // Long enough for the JIT to be done with the atomics, whichever tests used them before
+        for (int i = 0; i < 200000; i++) {
+            record(i);
+        }
+        metrics.appendSummary(summary);
+
+        long before = allocationCounter.allocatedBytes();
+        for (int i = 0; i < 20000; i++) {
+            record(i);
+        }
+        summary.setLength(0);
+        metrics.appendSummary(summary);
+        assertEquals(0, allocationCounter.allocatedBytes() - before);
+    }
+
+
+    private void record(int i) {
+        metrics.increment(PipelineMetrics.COUNTER_FRAMES_RECEIVED);
+        metrics.recordLatency(PipelineMetrics.STAGE_ANALYSIS, (i % 5000) * MICROSECOND);
+    }
+
+    // The percentile is the upper end of the bucket, at most a quarter above the sample
+    private static void assertWithinBucket(long expectedNanos, long actualNanos) {
+        assertTrue(actualNanos + " < " + expectedNanos, actualNanos >= expectedNanos);
+        assertTrue(actualNanos + " > " + expectedNanos, actualNanos <= expectedNanos * 5 / 4);
+    }
+}
@@ -0,0 +1,157 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static org.junit.Assert.*;
+
+public class PreviewBufferPoolTest {
+    // Behaves like Camera with setPreviewCallbackWithBuffer(): it fills the queued buffers in
+    // order, and skips the frame when there is none
+    private static class FakeCamera implements PreviewBufferPool.CallbackBufferSink {
+        private final Queue<byte[]> queuedBuffers = new ArrayDeque<>();
+        private int skippedFrames;
+
+        @Override
+        public void addCallbackBuffer(byte[] buffer) {
+            queuedBuffers.add(buffer);
+        }
+
+        byte[] nextFrame() {
+            byte[] frame = queuedBuffers.poll();
+            if (frame == null) {
+                skippedFrames++;
+            }
+            return frame;
+        }
+    }
+
+
+    private static final int CAPACITY = 3;
+    private static final int BUFFER_SIZE = 64;
+
+
+    private PreviewBufferPool pool;
+    private FakeCamera camera;
+
+
+    @Before
+    public void setUp() {
+        pool = new PreviewBufferPool(CAPACITY);
+        camera = new FakeCamera();
+        pool.start(camera, BUFFER_SIZE);
+    }
+
+
+    @Test
+    public void start_queuesEveryBuffer() {
+        assertEquals(CAPACITY, camera.queuedBuffers.size());
+        assertEquals(CAPACITY, pool.getFreeCount());
+        assertEquals(0, pool.getInFlightCount());
+        for (byte[] buffer : camera.queuedBuffers) {
+            assertEquals(BUFFER_SIZE, buffer.length);
+        }
+    }
+
+    @Test
+    public void acquiredFrame_staysOutOfTheCameraUntilReleased() {
+        byte[] frame = camera.nextFrame();
+        assertTrue(pool.acquire(frame));
+
+        assertEquals(1, pool.getInFlightCount());
+        assertEquals(CAPACITY - 1, pool.getFreeCount());
+        assertFalse(camera.queuedBuffers.contains(frame));
+
+        pool.release(frame);
+
+        assertEquals(0, pool.getInFlightCount());
+        assertEquals(CAPACITY, pool.getFreeCount());
+        assertTrue(camera.queuedBuffers.contains(frame));
+    }
+
+    @Test
+    public void droppedFrame_goesStraightBack() {
+        byte[] frame = camera.nextFrame();
+        pool.drop(frame);
+
+        assertEquals(1, pool.getDroppedCount());
+        assertEquals(CAPACITY, pool.getFreeCount());
+        assertTrue(camera.queuedBuffers.contains(frame));
+    }
+
+    @Test
+    public void slowAnalysis_neverStarvesTheCamera() {
+        // One frame is analyzed at a time, every other delivered frame is dropped
+        byte[] inFlight = null;
+        for (int i = 0; i < 300; i++) {
+            byte[] frame = camera.nextFrame();
+            assertNotNull(frame);
+            if (inFlight == null) {
+                pool.acquire(frame);
+                inFlight = frame;
+            } else {
+                pool.drop(frame);
+            }
+            if (i % 10 == 9) {
+                pool.release(inFlight);
+                inFlight = null;
+            }
+        }
+
+        assertEquals(0, camera.skippedFrames);
+        assertEquals(270, pool.getDroppedCount());
+    }
+
+    @Test
+    public void unknownBuffers_areIgnored() {
+        byte[] foreign = new byte[BUFFER_SIZE];
+        assertFalse(pool.acquire(foreign));
+        pool.release(foreign);
+
+        assertEquals(CAPACITY, camera.queuedBuffers.size());
+    }
+
+    @Test
+    public void restart_reusesBuffersAndKeepsThoseInFlight() {
+        byte[] inFlight = camera.nextFrame();
+        pool.acquire(inFlight);
+        pool.stop();
+
+        FakeCamera newCamera = new FakeCamera();
+        pool.start(newCamera, BUFFER_SIZE);
+        assertEquals(CAPACITY - 1, newCamera.queuedBuffers.size());
+        for (byte[] buffer : newCamera.queuedBuffers) {
+            assertTrue(camera.queuedBuffers.contains(buffer));
+        }
+
+        pool.release(inFlight);
+        assertEquals(CAPACITY, newCamera.queuedBuffers.size());
+    }
+
+    @Test
+    public void releaseAfterStop_doesNotQueue() {
+        byte[] inFlight = camera.nextFrame();
+        pool.acquire(inFlight);
+        pool.stop();
+        pool.release(inFlight);
+
+        assertFalse(camera.queuedBuffers.contains(inFlight));
+        assertEquals(0, pool.getInFlightCount());
+        assertEquals(0, pool.getFreeCount());
+    }
+
+    @Test
+    public void newFrameSize_replacesTheBuffers() {
+        pool.stop();
+        FakeCamera newCamera = new FakeCamera();
+        pool.start(newCamera, BUFFER_SIZE * 2);
+
+        assertEquals(CAPACITY, newCamera.queuedBuffers.size());
+        for (byte[] buffer : newCamera.queuedBuffers) {
+            assertEquals(BUFFER_SIZE * 2, buffer.length);
+        }
+    }
+}
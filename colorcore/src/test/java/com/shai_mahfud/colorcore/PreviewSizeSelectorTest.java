@@ -0,0 +1,38 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PreviewSizeSelectorTest {
+    private static final int[] WIDTHS = {1920, 320, 1280, 640, 800, 176};
+    private static final int[] HEIGHTS = {1080, 240, 720, 480, 480, 144};
+
+
+    @Test
+    public void selectSize_picksTheSmallestSizeWithTheResolution() {
+        assertEquals(3, PreviewSizeSelector.selectSize(WIDTHS, HEIGHTS, WIDTHS.length, 640, 480));
+        assertEquals(1, PreviewSizeSelector.selectSize(WIDTHS, HEIGHTS, WIDTHS.length, 320, 200));
+        assertEquals(2, PreviewSizeSelector.selectSize(WIDTHS, HEIGHTS, WIDTHS.length, 1000, 600));
+    }
+
+    @Test
+    public void selectSize_ignoresTheOrientationOfTheResolution() {
+        assertEquals(3, PreviewSizeSelector.selectSize(WIDTHS, HEIGHTS, WIDTHS.length, 480, 640));
+    }
+
+    @Test
+    public void selectSize_fallsBackToTheLargestSize() {
+        assertEquals(0, PreviewSizeSelector.selectSize(WIDTHS, HEIGHTS, WIDTHS.length, 3840, 2160));
+        assertEquals(-1, PreviewSizeSelector.selectSize(WIDTHS, HEIGHTS, 0, 640, 480));
+    }
+
+    @Test
+    public void selectFormat_prefersTheSmallestSupportedFrames() {
+        // JPEG and RGB_565 aren't decoded, YUY2 takes a third more than NV21
+        int[] formats = {256, YuvDecoder.FORMAT_YUY2, 4, YuvDecoder.FORMAT_NV21};
+        assertEquals(YuvDecoder.FORMAT_NV21, PreviewSizeSelector.selectFormat(formats, 4));
+        assertEquals(YuvDecoder.FORMAT_YUY2, PreviewSizeSelector.selectFormat(formats, 3));
+        assertEquals(PreviewSizeSelector.NO_FORMAT, PreviewSizeSelector.selectFormat(formats, 1));
+    }
+}
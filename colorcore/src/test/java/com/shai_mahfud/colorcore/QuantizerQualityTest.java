@@ -0,0 +1,70 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/*
+ * Median cut against warm started k-means, with 1, 2 and 4 iterations per frame, over a sequence
+ * of preview frames of a slowly moving scene: k-means must not leave a larger mean squared error
+ * of the pixels against their nearest swatch. QuantizerBenchmark in :benchmark times them.
+ */
+public class QuantizerQualityTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int FRAMES = 60;
+    private static final int[] BASE_COLORS = {0xFF2060C0, 0xFFE0C020, 0xFF30A040, 0xFF202020,
+            0xFFF0F0F0, 0xFFC05030, 0xFF8040A0};
+    private static final int NOISE = 24;
+    private static final int[] K_MEANS_ITERATIONS = {1, 2, 4};
+
+
+    @Test
+    public void kMeans_isNotLessAccurateThanMedianCut() {
+        int[][] frames = new int[FRAMES][];
+        ColorHistogram[] histograms = new ColorHistogram[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            frames[i] = frame(i);
+            histograms[i] = new ColorHistogram();
+            histograms[i].addAll(frames[i], 0, frames[i].length);
+        }
+
+        double medianCutError = meanError(new MedianCutQuantizer(), frames, histograms);
+        for (int iterations : K_MEANS_ITERATIONS) {
+            KMeansQuantizer kMeans = new KMeansQuantizer();
+            kMeans.setMaxIterations(iterations);
+            double kMeansError = meanError(kMeans, frames, histograms);
+            assertTrue(iterations + " iterations: " + kMeansError + " > " + medianCutError,
+                    kMeansError <= medianCutError);
+        }
+    }
+
+
+    // The mean squared error per pixel over the frames, quantized one after the other
+    private static double meanError(ColorQuantizer quantizer, int[][] frames,
+                                    ColorHistogram[] histograms) {
+        int[] colors = new int[FrameAnalyzer.NUM_OF_COLORS];
+        int[] populations = new int[FrameAnalyzer.NUM_OF_COLORS];
+        long error = 0;
+        for (int i = 0; i < frames.length; i++) {
+            int count = quantizer.quantize(histograms[i], FrameAnalyzer.NUM_OF_COLORS, colors,
+                    populations);
+            error += KMeansQuantizerTest.squaredError(frames[i], colors, count);
+        }
+        return error / (double) ((long) frames.length * WIDTH * HEIGHT);
+    }
+
+    // The stripes slowly trade their widths, like a panning camera
+    private static int[] frame(int index) {
+        double[] shares = new double[BASE_COLORS.length];
+        double total = 0;
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] = 1 + 0.5 * Math.sin(index * 0.1 + i);
+            total += shares[i];
+        }
+        for (int i = 0; i < shares.length; i++) {
+            shares[i] /= total;
+        }
+        return SyntheticFrames.stripes(WIDTH, HEIGHT, BASE_COLORS, shares, NOISE, index);
+    }
+}
@@ -0,0 +1,58 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReferenceColorTableTest {
+    private static final int RED = 0xFFD02020;
+    private static final int BLUE = 0xFF2040C0;
+
+
+    private final ReferenceColorTable table = new ReferenceColorTable();
+
+
+    @Test
+    public void nearColors_mapToTheClosestReference() {
+        table.set(new int[]{RED, BLUE}, 2, 0.1f);
+
+        assertEquals(0, table.lookup(RED));
+        assertEquals(0, table.lookup(0xFFC82828));
+        assertEquals(1, table.lookup(BLUE));
+        assertEquals(1, table.lookup(0xFF2848B8));
+        assertEquals(ReferenceColorTable.NO_MATCH, table.lookup(0xFF20C040));
+        assertEquals(ReferenceColorTable.NO_MATCH, table.lookup(0xFFFFFFFF));
+    }
+
+    @Test
+    public void tolerance_boundsTheMatches() {
+        int pink = 0xFFE07070;
+        table.set(new int[]{RED}, 1, 0.02f);
+        assertEquals(ReferenceColorTable.NO_MATCH, table.lookup(pink));
+
+        table.set(new int[]{RED}, 1, 0.2f);
+        assertEquals(0, table.lookup(pink));
+
+        table.set(new int[]{RED}, 0, 0.2f);
+        assertEquals(ReferenceColorTable.NO_MATCH, table.lookup(RED));
+    }
+
+    @Test
+    public void referenceOffItsBinsColor_stillCoversItsBin() {
+        // Near black a bin spans 0.13: its color, black, is further from this grey than the
+        // tolerance, yet the grey itself must count
+        int grey = 0xFF060606;
+        table.set(new int[]{RED, grey}, 2, 0.05f);
+
+        assertEquals(1, table.lookup(grey));
+        assertEquals(1, table.lookup(0xFF000000));
+        assertEquals(ReferenceColorTable.NO_MATCH, table.lookup(0xFF181818));
+        assertEquals(0, table.lookup(RED));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyReferences_areRejected() {
+        int count = ReferenceColorTable.MAX_REFERENCES + 1;
+        table.set(new int[count], count, 0.1f);
+    }
+}
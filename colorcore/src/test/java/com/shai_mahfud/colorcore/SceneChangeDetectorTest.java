@@ -0,0 +1,158 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SceneChangeDetectorTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int[] COLORS = {0xFF2060C0, 0xFFE0C020, 0xFF30A040};
+    private static final double[] SHARES = {0.5, 0.3, 0.2};
+
+
+    private final SceneChangeDetector detector = new SceneChangeDetector(2);
+
+
+    @Test
+    public void staticNoisyScene_isUnchanged() {
+        // The same scene, with different sensor noise in every frame
+        assertTrue(detector.hasChanged(noisyScene(0), YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        for (int i = 1; i < 10; i++) {
+            assertFalse(detector.hasChanged(noisyScene(i), YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+            assertTrue(detector.getLastDifference() < 1);
+        }
+
+        assertEquals(1, detector.getChangedCount());
+        assertEquals(9, detector.getUnchangedCount());
+    }
+
+    @Test
+    public void objectEnteringTheScene_isAChange() {
+        int[] scene = SyntheticFrames.stripes(WIDTH, HEIGHT, COLORS, SHARES, 0, 1);
+        assertTrue(detector.hasChanged(SyntheticFrames.toNv21(scene, WIDTH, HEIGHT),
+                YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        // A red square covering about 5% of the frame
+        for (int row = 200; row < 320; row++) {
+            for (int col = 260; col < 380; col++) {
+                scene[row * WIDTH + col] = 0xFFD02020;
+            }
+        }
+        assertTrue(detector.hasChanged(SyntheticFrames.toNv21(scene, WIDTH, HEIGHT),
+                YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertTrue(detector.getLastDifference() > 2);
+    }
+
+    /*
+     * The scene brightens by one level per frame. No two consecutive frames differ by more than
+     * the threshold, but the difference from the last analyzed frame adds up.
+     */
+    @Test
+    public void slowDrift_addsUpUntilItCounts() {
+        assertTrue(detector.hasChanged(gray(100), YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        // Only Y changes, so the mean difference over Y, U and V is a third of the drift
+        for (int drift = 1; drift <= 6; drift++) {
+            assertFalse(detector.hasChanged(gray(100 + drift), YuvDecoder.FORMAT_NV21, WIDTH,
+                    HEIGHT));
+        }
+        assertTrue(detector.hasChanged(gray(107), YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        // The changed frame is the new reference
+        assertFalse(detector.hasChanged(gray(108), YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void zeroThreshold_onlyIgnoresIdenticalFrames() {
+        detector.setThreshold(0);
+        byte[] frame = noisyScene(0);
+
+        assertTrue(detector.hasChanged(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertFalse(detector.hasChanged(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertTrue(detector.hasChanged(noisyScene(1), YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void otherSizeOrReset_isAChange() {
+        byte[] frame = noisyScene(0);
+        assertTrue(detector.hasChanged(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+
+        // The same bytes read as a frame of another size
+        assertTrue(detector.hasChanged(frame, YuvDecoder.FORMAT_NV21, WIDTH / 2, HEIGHT));
+        assertFalse(detector.hasChanged(frame, YuvDecoder.FORMAT_NV21, WIDTH / 2, HEIGHT));
+
+        detector.reset();
+        assertTrue(detector.hasChanged(frame, YuvDecoder.FORMAT_NV21, WIDTH / 2, HEIGHT));
+    }
+
+    @Test
+    public void yuy2Frames_areCompared() {
+        byte[] frame = new byte[WIDTH * HEIGHT * 2];
+        fillYuy2(frame, 120, 100, 150);
+        assertTrue(detector.hasChanged(frame, YuvDecoder.FORMAT_YUY2, WIDTH, HEIGHT));
+        assertFalse(detector.hasChanged(frame, YuvDecoder.FORMAT_YUY2, WIDTH, HEIGHT));
+
+        // Same luma, other chroma
+        fillYuy2(frame, 120, 150, 100);
+        assertTrue(detector.hasChanged(frame, YuvDecoder.FORMAT_YUY2, WIDTH, HEIGHT));
+        assertEquals(100 / 3f, detector.getLastDifference(), 0.01);
+    }
+
+    @Test
+    public void planes_areComparedLikeTheByteArray() {
+        byte[] frame = noisyScene(0);
+        YuvPlanes planes = SyntheticFrames.toPlanes(frame, WIDTH, HEIGHT, 32, false);
+        assertTrue(detector.hasChanged(planes));
+        assertFalse(detector.hasChanged(SyntheticFrames.toPlanes(noisyScene(1), WIDTH, HEIGHT,
+                32, true)));
+
+        // Planes and byte arrays are never each other's reference...
+        assertTrue(detector.hasChanged(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertTrue(detector.hasChanged(planes));
+        // ...but the same frame gives the same difference either way
+        byte[] gray = gray(100);
+        assertTrue(detector.hasChanged(SyntheticFrames.toPlanes(gray, WIDTH, HEIGHT, 0, true)));
+        float planesDifference = detector.getLastDifference();
+        detector.hasChanged(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+        detector.hasChanged(gray, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+        assertEquals(detector.getLastDifference(), planesDifference, 0);
+    }
+
+    @Test
+    public void frameSmallerThanTheGrid_isAlwaysAChange() {
+        byte[] small = SyntheticFrames.toNv21(SyntheticFrames.solid(8, 6, 0xFF808080), 8, 6);
+
+        assertTrue(detector.hasChanged(small, YuvDecoder.FORMAT_NV21, 8, 6));
+        assertTrue(detector.hasChanged(small, YuvDecoder.FORMAT_NV21, 8, 6));
+        assertEquals(Float.POSITIVE_INFINITY, detector.getLastDifference(), 0);
+        assertTrue(detector.hasChanged(SyntheticFrames.toPlanes(small, 8, 6, 0, false)));
+
+        // The small frames left no reference behind
+        assertTrue(detector.hasChanged(gray(128), YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT));
+        assertEquals(4, detector.getChangedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortFrame_isRejected() {
+        detector.hasChanged(new byte[100], YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT);
+    }
+
+
+    private static byte[] noisyScene(long seed) {
+        return SyntheticFrames.toNv21(SyntheticFrames.stripes(WIDTH, HEIGHT, COLORS, SHARES, 6,
+                seed), WIDTH, HEIGHT);
+    }
+
+    private static byte[] gray(int level) {
+        int color = 0xFF000000 | (level << 16) | (level << 8) | level;
+        return SyntheticFrames.toNv21(SyntheticFrames.solid(WIDTH, HEIGHT, color), WIDTH, HEIGHT);
+    }
+
+    private static void fillYuy2(byte[] frame, int y, int u, int v) {
+        for (int i = 0; i < frame.length; i += 4) {
+            frame[i] = (byte) y;
+            frame[i + 1] = (byte) u;
+            frame[i + 2] = (byte) y;
+            frame[i + 3] = (byte) v;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.shai_mahfud.colorcore;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Builds preview frames with known content for the tests
+final class SyntheticFrames {
+    private SyntheticFrames() {
+    }
+
+
+    // Encodes ARGB pixels as NV21, averaging the chroma of every 2x2 block
+    static byte[] toNv21(int[] argb, int width, int height) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        for (int i = 0; i < width * height; i++) {
+            frame[i] = (byte) luma(argb[i]);
+        }
+        int chroma = width * height;
+        for (int row = 0; row < height; row += 2) {
+            for (int col = 0; col < width; col += 2) {
+                int u = 0, v = 0;
+                for (int dy = 0; dy < 2; dy++) {
+                    for (int dx = 0; dx < 2; dx++) {
+                        int pixel = argb[(row + dy) * width + col + dx];
+                        u += chromaBlue(pixel);
+                        v += chromaRed(pixel);
+                    }
+                }
+                frame[chroma++] = (byte) ((v + 2) / 4);
+                frame[chroma++] = (byte) ((u + 2) / 4);
+            }
+        }
+        return frame;
+    }
+
+    /*
+     * Lays an NV21 frame out as YUV_420_888 planes in direct buffers, the way camera HALs do:
+     * every row padded by rowPadding bytes, except the last one of each plane. Interleaved chroma
+     * shares one buffer, V first, with a pixel stride of 2 (the U buffer starts one byte in);
+     * otherwise U and V get a buffer each, with a pixel stride of 1.
+     */
+    static YuvPlanes toPlanes(byte[] nv21, int width, int height, int rowPadding,
+                              boolean interleavedChroma) {
+        YuvPlanes planes = new YuvPlanes();
+        planes.setSize(width, height);
+        int yRowStride = width + rowPadding;
+        ByteBuffer y = ByteBuffer.allocateDirect(yRowStride * (height - 1) + width);
+        for (int row = 0; row < height; row++) {
+            y.position(row * yRowStride);
+            y.put(nv21, row * width, width);
+        }
+        y.clear();
+        planes.setPlane(YuvPlanes.PLANE_Y, y, yRowStride, 1);
+
+        int chromaRows = height / 2;
+        int chromaStart = width * height;
+        if (interleavedChroma) {
+            int rowStride = width + rowPadding;
+            ByteBuffer chroma = ByteBuffer.allocateDirect(rowStride * (chromaRows - 1) + width);
+            for (int row = 0; row < chromaRows; row++) {
+                chroma.position(row * rowStride);
+                chroma.put(nv21, chromaStart + row * width, width);
+            }
+            chroma.clear();
+            ByteBuffer v = chroma.duplicate();
+            v.limit(chroma.capacity() - 1);
+            chroma.position(1);
+            ByteBuffer u = chroma.slice();
+            planes.setPlane(YuvPlanes.PLANE_U, u, rowStride, 2);
+            planes.setPlane(YuvPlanes.PLANE_V, v.slice(), rowStride, 2);
+        } else {
+            int chromaWidth = width / 2;
+            int rowStride = chromaWidth + rowPadding;
+            ByteBuffer u = ByteBuffer.allocateDirect(rowStride * (chromaRows - 1) + chromaWidth);
+            ByteBuffer v = ByteBuffer.allocateDirect(u.capacity());
+            for (int row = 0; row < chromaRows; row++) {
+                for (int col = 0; col < chromaWidth; col++) {
+                    int index = chromaStart + row * width + col * 2;
+                    v.put(row * rowStride + col, nv21[index]);
+                    u.put(row * rowStride + col, nv21[index + 1]);
+                }
+            }
+            planes.setPlane(YuvPlanes.PLANE_U, u, rowStride, 1);
+            planes.setPlane(YuvPlanes.PLANE_V, v, rowStride, 1);
+        }
+        return planes;
+    }
+
+    /*
+     * Vertical stripes of the given colors, stripe i covering the fraction shares[i] of the width,
+     * with some noise added to every channel.
+     */
+    static int[] stripes(int width, int height, int[] colors, double[] shares, int noise,
+                         long seed) {
+        Random random = new Random(seed);
+        int[] argb = new int[width * height];
+        for (int col = 0; col < width; col++) {
+            int stripe = 0;
+            double end = shares[0];
+            while (col >= end * width && stripe < colors.length - 1) {
+                stripe++;
+                end += shares[stripe];
+            }
+            for (int row = 0; row < height; row++) {
+                argb[row * width + col] = addNoise(colors[stripe], noise, random);
+            }
+        }
+        return argb;
+    }
+
+    static int[] solid(int width, int height, int color) {
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = color;
+        }
+        return argb;
+    }
+
+    static int[] randomPixels(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] argb = new int[width * height];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return argb;
+    }
+
+    static int addNoise(int color, int noise, Random random) {
+        if (noise == 0) {
+            return color;
+        }
+        int result = 0xFF000000;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int channel = ((color >> shift) & 0xFF) + random.nextInt(2 * noise + 1) - noise;
+            result |= Math.max(0, Math.min(255, channel)) << shift;
+        }
+        return result;
+    }
+
+    private static int luma(int pixel) {
+        return clamp(0.299 * red(pixel) + 0.587 * green(pixel) + 0.114 * blue(pixel));
+    }
+
+    private static int chromaBlue(int pixel) {
+        return clamp(-0.168736 * red(pixel) - 0.331264 * green(pixel) + 0.5 * blue(pixel) + 128);
+    }
+
+    private static int chromaRed(int pixel) {
+        return clamp(0.5 * red(pixel) - 0.418688 * green(pixel) - 0.081312 * blue(pixel) + 128);
+    }
+
+    private static int red(int pixel) {
+        return (pixel >> 16) & 0xFF;
+    }
+
+    private static int green(int pixel) {
+        return (pixel >> 8) & 0xFF;
+    }
+
+    private static int blue(int pixel) {
+        return pixel & 0xFF;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+}
@@ -0,0 +1,201 @@
+package com.shai_mahfud.colorcore;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YuvDecoderTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+
+    @Test
+    public void nv21_matchesReferenceConversion() {
+        byte[] frame = randomFrame(YuvDecoder.FORMAT_NV21, 1);
+        int[] out = new int[WIDTH * HEIGHT];
+        YuvDecoder.decodeToArgb(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, out);
+
+        int frameSize = WIDTH * HEIGHT;
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int chroma = frameSize + (row / 2) * WIDTH + (col / 2) * 2;
+                int y = frame[row * WIDTH + col] & 0xFF;
+                int v = frame[chroma] & 0xFF;
+                int u = frame[chroma + 1] & 0xFF;
+                assertColorClose(referenceArgb(y, u, v), out[row * WIDTH + col]);
+            }
+        }
+    }
+
+    @Test
+    public void nv16_matchesReferenceConversion() {
+        byte[] frame = randomFrame(YuvDecoder.FORMAT_NV16, 2);
+        int[] out = new int[WIDTH * HEIGHT];
+        YuvDecoder.decodeToArgb(frame, YuvDecoder.FORMAT_NV16, WIDTH, HEIGHT, out);
+
+        int frameSize = WIDTH * HEIGHT;
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int chroma = frameSize + row * WIDTH + (col / 2) * 2;
+                int y = frame[row * WIDTH + col] & 0xFF;
+                int u = frame[chroma] & 0xFF;
+                int v = frame[chroma + 1] & 0xFF;
+                assertColorClose(referenceArgb(y, u, v), out[row * WIDTH + col]);
+            }
+        }
+    }
+
+    @Test
+    public void yuy2_matchesReferenceConversion() {
+        byte[] frame = randomFrame(YuvDecoder.FORMAT_YUY2, 3);
+        int[] out = new int[WIDTH * HEIGHT];
+        YuvDecoder.decodeToArgb(frame, YuvDecoder.FORMAT_YUY2, WIDTH, HEIGHT, out);
+
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                int macroPixel = row * WIDTH * 2 + (col / 2) * 4;
+                int y = frame[macroPixel + (col % 2) * 2] & 0xFF;
+                int u = frame[macroPixel + 1] & 0xFF;
+                int v = frame[macroPixel + 3] & 0xFF;
+                assertColorClose(referenceArgb(y, u, v), out[row * WIDTH + col]);
+            }
+        }
+    }
+
+    @Test
+    public void sampling_matchesTheFullDecode() {
+        int[] formats = {YuvDecoder.FORMAT_NV21, YuvDecoder.FORMAT_NV16, YuvDecoder.FORMAT_YUY2};
+        for (int format : formats) {
+            byte[] frame = randomFrame(format, format);
+            int[] full = new int[WIDTH * HEIGHT];
+            YuvDecoder.decodeToArgb(frame, format, WIDTH, HEIGHT, full);
+
+            for (int stride = 1; stride <= 5; stride++) {
+                int[] sampled = new int[WIDTH * HEIGHT];
+                int count = YuvDecoder.sampleToArgb(frame, format, WIDTH, HEIGHT, 5, 3, 41, 30,
+                        stride, sampled);
+
+                int index = 0;
+                for (int row = 3; row < 30; row += stride) {
+                    for (int col = 5; col < 41; col += stride) {
+                        assertEquals(full[row * WIDTH + col], sampled[index++]);
+                    }
+                }
+                assertEquals(index, count);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void regionOutsideTheFrame_isRejected() {
+        YuvDecoder.sampleToArgb(randomFrame(YuvDecoder.FORMAT_NV21, 4), YuvDecoder.FORMAT_NV21,
+                WIDTH, HEIGHT, 0, 0, WIDTH + 2, HEIGHT, 1, new int[WIDTH * HEIGHT * 2]);
+    }
+
+    @Test
+    public void planes_matchTheNv21Decode() {
+        byte[] frame = randomFrame(YuvDecoder.FORMAT_NV21, 5);
+        int[] expected = new int[WIDTH * HEIGHT];
+        YuvDecoder.decodeToArgb(frame, YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT, expected);
+
+        for (int padding : new int[]{0, 13}) {
+            for (boolean interleaved : new boolean[]{true, false}) {
+                YuvPlanes planes = SyntheticFrames.toPlanes(frame, WIDTH, HEIGHT, padding,
+                        interleaved);
+                int[] out = new int[WIDTH * HEIGHT];
+                YuvDecoder.decodeToArgb(planes, out);
+                assertArrayEquals(expected, out);
+                // Read in place, the buffers are left as they were
+                assertEquals(0, planes.getBuffer(YuvPlanes.PLANE_U).position());
+            }
+        }
+    }
+
+    @Test
+    public void planesSampling_matchesTheFullDecode() {
+        byte[] frame = randomFrame(YuvDecoder.FORMAT_NV21, 6);
+        YuvPlanes planes = SyntheticFrames.toPlanes(frame, WIDTH, HEIGHT, 8, true);
+        int[] full = new int[WIDTH * HEIGHT];
+        YuvDecoder.decodeToArgb(planes, full);
+
+        for (int stride = 1; stride <= 5; stride++) {
+            int[] sampled = new int[WIDTH * HEIGHT];
+            int count = YuvDecoder.sampleToArgb(planes, 5, 3, 41, 30, stride, sampled);
+
+            int index = 0;
+            for (int row = 3; row < 30; row += stride) {
+                for (int col = 5; col < 41; col += stride) {
+                    assertEquals(full[row * WIDTH + col], sampled[index++]);
+                }
+            }
+            assertEquals(index, count);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void planeShorterThanItsStrides_isRejected() {
+        YuvPlanes planes = SyntheticFrames.toPlanes(randomFrame(YuvDecoder.FORMAT_NV21, 7),
+                WIDTH, HEIGHT, 0, false);
+        ByteBuffer y = planes.getBuffer(YuvPlanes.PLANE_Y);
+        planes.setPlane(YuvPlanes.PLANE_Y, y, WIDTH + 4, 1);
+        YuvDecoder.decodeToArgb(planes, new int[WIDTH * HEIGHT]);
+    }
+
+    @Test
+    public void neutralChroma_givesGrayLevels() {
+        assertEquals(0xFF000000, YuvDecoder.yuvToArgb(0, 128, 128));
+        assertEquals(0xFF808080, YuvDecoder.yuvToArgb(128, 128, 128));
+        assertEquals(0xFFFFFFFF, YuvDecoder.yuvToArgb(255, 128, 128));
+    }
+
+    @Test
+    public void extremeChroma_isClamped() {
+        assertEquals(0xFFFF0000, YuvDecoder.yuvToArgb(255, 128, 255) & 0xFFFF0000);
+        assertEquals(0xFF0000FF, YuvDecoder.yuvToArgb(128, 255, 128) & 0xFF0000FF);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shortFrame_isRejected() {
+        YuvDecoder.decodeToArgb(new byte[WIDTH * HEIGHT], YuvDecoder.FORMAT_NV21, WIDTH, HEIGHT,
+                new int[WIDTH * HEIGHT]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedFormat_isRejected() {
+        YuvDecoder.decodeToArgb(new byte[WIDTH * HEIGHT * 4], 0x100, WIDTH, HEIGHT,
+                new int[WIDTH * HEIGHT]);
+    }
+
+
+    private static byte[] randomFrame(int format, long seed) {
+        byte[] frame = new byte[YuvDecoder.getFrameSize(format, WIDTH, HEIGHT)];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+
+    // Floating point JFIF conversion, the same one libjpeg applies when decoding the JPEG that
+    // YuvImage.compressToJpeg() used to produce:
+    private static int referenceArgb(int y, int u, int v) {
+        int r = clamp(Math.round(y + 1.402 * (v - 128)));
+        int g = clamp(Math.round(y - 0.344136 * (u - 128) - 0.714136 * (v - 128)));
+        int b = clamp(Math.round(y + 1.772 * (u - 128)));
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(long channel) {
+        return (int) Math.max(0, Math.min(255, channel));
+    }
+
+    private static void assertColorClose(int expected, int actual) {
+        assertEquals(0xFF, actual >>> 24);
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int e = (expected >> shift) & 0xFF;
+            int a = (actual >> shift) & 0xFF;
+            assertTrue("expected " + Integer.toHexString(expected) + " but was " +
+                    Integer.toHexString(actual), Math.abs(e - a) <= 1);
+        }
+    }
+}